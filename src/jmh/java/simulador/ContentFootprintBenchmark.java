@@ -0,0 +1,70 @@
+package simulador;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Heap ocupado por arquivo de texto de 64 KiB, antes e depois de o compactador comprimir
+// todos os blocos. O JMH mede o tempo da compactação; os bytes por arquivo, crus e
+// comprimidos, são mostrados no fim de cada iteração.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class ContentFootprintBenchmark {
+    private static final int FILES = 1_000;
+    private static final int FILE_SIZE = 64 * 1024;
+    
+    private BlockStore store;
+    private File[] files;
+    private long before;
+    private long raw;
+    
+    @Setup(Level.Iteration)
+    public void createFiles() {
+        store = new BlockStore();
+        store.setCompression(0, 0);
+        Random random = new Random(42);
+        before = SimulatorBenchmark.usedHeap();
+        files = new File[FILES];
+        for (int i = 0; i < files.length; i++) {
+            files[i] = new File("texto" + i, store, SimulatorBenchmark.sampleText(random, FILE_SIZE));
+        }
+        raw = SimulatorBenchmark.usedHeap();
+        // Pela regra dos blocos frios: mais de uma época inteira sem leitura
+        store.setCompression(0, 1);
+    }
+    
+    @Benchmark
+    public void compact() {
+        store.compact();
+        store.compact();
+    }
+    
+    @TearDown(Level.Iteration)
+    public void report() {
+        long compressed = SimulatorBenchmark.usedHeap();
+        double rawPerFile = (raw - before) / (double) FILES;
+        double compressedPerFile = (compressed - before) / (double) FILES;
+        System.out.printf("conteúdo[texto]: %.1f bytes/arquivo cru, %.1f comprimido (%.2f:1)%n",
+                rawPerFile, compressedPerFile, rawPerFile / compressedPerFile);
+        for (File file : files) {
+            file.release();
+        }
+        files = null;
+        store = null;
+    }
+}
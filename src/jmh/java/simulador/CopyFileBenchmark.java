@@ -0,0 +1,39 @@
+package simulador;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+// Cópia de um arquivo com conteúdo de 4 KiB a 16 MiB; os blocos são compartilhados
+@State(Scope.Benchmark)
+public class CopyFileBenchmark extends SimulatorBenchmark {
+    @Param({"4096", "1048576", "16777216"})
+    public int size;
+    
+    private int next;
+    
+    @Override
+    void prepare() {
+        byte[] content = new byte[size];
+        new Random(42).nextBytes(content);
+        fileSystem.createDirectory("/copias");
+        fileSystem.createFile("/origem.bin", "");
+        fileSystem.writeFile("/origem.bin", 0, ByteBuffer.wrap(content));
+    }
+    
+    @Benchmark
+    public FsStatus copyFile() {
+        return fileSystem.copyFile("/origem.bin", "/copias/c" + next++);
+    }
+    
+    @TearDown(Level.Iteration)
+    public void removeCopies() {
+        fileSystem.deleteTree("/copias");
+        fileSystem.createDirectory("/copias");
+    }
+}
@@ -0,0 +1,39 @@
+package simulador;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+// Cópia de uma árvore de 100 mil arquivos em diretórios de mil; ops/s conta itens copiados
+@State(Scope.Benchmark)
+public class CopyTreeBenchmark extends SimulatorBenchmark {
+    private static final int ENTRIES = 100_000;
+    
+    @Override
+    void prepare() {
+        fileSystem.createDirectory("/origem");
+        Directory source = (Directory) fileSystem.findItem("/origem");
+        Directory dir = null;
+        for (int i = 0; i < ENTRIES; i++) {
+            if (i % 1_000 == 0) {
+                dir = new Directory("d" + i / 1_000);
+                source.addChild(dir);
+            }
+            dir.addChild(new File("f" + i, fileSystem.getBlockStore(), "conteúdo " + i % 10));
+        }
+    }
+    
+    @Benchmark
+    @OperationsPerInvocation(ENTRIES)
+    public FsStatus copyTree() {
+        return fileSystem.copyTree("/origem", "/copia");
+    }
+    
+    @TearDown(Level.Invocation)
+    public void removeCopy() {
+        fileSystem.deleteTree("/copia");
+    }
+}
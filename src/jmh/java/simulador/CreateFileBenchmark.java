@@ -0,0 +1,49 @@
+package simulador;
+
+import java.util.ArrayList;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+// Criação de arquivos em diretórios de 10 a 1.000.000 entradas
+@State(Scope.Benchmark)
+public class CreateFileBenchmark extends SimulatorBenchmark {
+    @Param({"10", "1000", "100000", "1000000"})
+    public int entries;
+    
+    private Directory target;
+    private int iteration;
+    private int next;
+    
+    @Override
+    void prepare() {
+        fileSystem.createDirectory("/alvo");
+        target = (Directory) fileSystem.findItem("/alvo");
+        // O diretório é preenchido direto na árvore, sem journal, para não medir a carga
+        for (int i = 0; i < entries; i++) {
+            target.addChild(new File("p" + i, fileSystem.getBlockStore()));
+        }
+    }
+    
+    @Benchmark
+    public FsStatus createFile() {
+        return fileSystem.createFile("/alvo/i" + iteration + "_" + next++, "conteúdo");
+    }
+    
+    // Remove os arquivos criados para que todas as iterações vejam o mesmo tamanho
+    @TearDown(Level.Iteration)
+    public void removeCreated() {
+        for (FileSystemItem child : new ArrayList<>(target.getChildren())) {
+            if (child.getName().startsWith("i")) {
+                target.removeChild(child.getName());
+                ((File) child).release();
+                fileSystem.getDentryCache().invalidate("/alvo/" + child.getName());
+            }
+        }
+        iteration++;
+        next = 0;
+    }
+}
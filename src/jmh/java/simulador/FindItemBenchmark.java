@@ -0,0 +1,37 @@
+package simulador;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+// Resolução de caminhos em várias profundidades; metade das buscas acerta o arquivo e
+// metade consulta nomes inexistentes
+@State(Scope.Benchmark)
+public class FindItemBenchmark extends SimulatorBenchmark {
+    @Param({"1", "4", "16", "64"})
+    public int depth;
+    
+    private String[] paths;
+    private int next;
+    
+    @Override
+    void prepare() {
+        StringBuilder path = new StringBuilder();
+        for (int level = 0; level < depth; level++) {
+            path.append("/d").append(level);
+            fileSystem.createDirectory(path.toString());
+        }
+        String deepest = path.toString();
+        fileSystem.createFile(deepest + "/alvo.txt", "x");
+        paths = new String[64];
+        for (int i = 0; i < paths.length; i++) {
+            paths[i] = deepest + (i % 2 == 0 ? "/alvo.txt" : "/ausente" + i);
+        }
+    }
+    
+    @Benchmark
+    public Object findItem() {
+        return fileSystem.findItem(paths[next++ & (paths.length - 1)]);
+    }
+}
@@ -0,0 +1,56 @@
+package simulador;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Registro e commit de uma operação no journal sem fsync (0), com fsync a cada commit (1)
+// e com group commit de 64
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JournalBenchmark {
+    @Param({"0", "1", "64"})
+    public int groupCommitSize;
+    
+    private Path directory;
+    private Journal journal;
+    private final byte[] payload = new byte[128];
+    private int next;
+    
+    @Setup(Level.Trial)
+    public void open() throws IOException {
+        directory = Files.createTempDirectory("fsbench");
+        journal = new Journal(directory.resolve("filesystem.journal").toString());
+        journal.recover(entry -> { }, 0);
+        journal.setGroupCommitSize(groupCommitSize);
+    }
+    
+    @Benchmark
+    public void commit() {
+        journal.commitOperation(journal.logOperation(JournalOp.CREATE_FILE, payload, "/bench/arquivo" + next++));
+    }
+    
+    @TearDown(Level.Trial)
+    public void close() throws IOException {
+        if (journal != null) journal.close();
+        SimulatorBenchmark.deleteDirectory(directory);
+    }
+}
@@ -0,0 +1,27 @@
+package simulador;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+// Listagem completa de diretórios de 10 a 100.000 entradas
+@State(Scope.Benchmark)
+public class ListDirectoryBenchmark extends SimulatorBenchmark {
+    @Param({"10", "1000", "100000"})
+    public int entries;
+    
+    @Override
+    void prepare() {
+        fileSystem.createDirectory("/lista");
+        Directory target = (Directory) fileSystem.findItem("/lista");
+        for (int i = 0; i < entries; i++) {
+            target.addChild(new File("f" + i, fileSystem.getBlockStore(), "abc"));
+        }
+    }
+    
+    @Benchmark
+    public Object listDirectory() {
+        return fileSystem.listDirectory("/lista");
+    }
+}
@@ -0,0 +1,35 @@
+package simulador;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+// Leitura de páginas de 100 filhos seguindo o cursor, na ordem de inserção ou por nome.
+// O custo por página não deve depender do tamanho do diretório.
+@State(Scope.Benchmark)
+public class ListPageBenchmark extends SimulatorBenchmark {
+    @Param({"1000", "1000000"})
+    public int entries;
+    
+    @Param({"false", "true"})
+    public boolean sorted;
+    
+    private String cursor;
+    
+    @Override
+    void prepare() {
+        fileSystem.createDirectory("/lista");
+        Directory target = (Directory) fileSystem.findItem("/lista");
+        for (int i = 0; i < entries; i++) {
+            target.addChild(new File("f" + i, fileSystem.getBlockStore()));
+        }
+    }
+    
+    @Benchmark
+    public String listPage() {
+        DirectoryPage page = fileSystem.listPage("/lista", cursor, 100, sorted).getValue();
+        cursor = page.getNextCursor();
+        return cursor;
+    }
+}
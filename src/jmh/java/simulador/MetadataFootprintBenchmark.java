@@ -0,0 +1,70 @@
+package simulador;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Heap ocupado por item de metadados: monta, direto na estrutura, uma árvore com entries
+// arquivos vazios em diretórios de mil arquivos. O JMH mede o tempo da montagem; o
+// crescimento do heap dividido pelo número de itens (arquivos e diretórios, com os
+// nomes) é mostrado no fim de cada iteração.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class MetadataFootprintBenchmark {
+    private static final int FANOUT = 1_000;
+    
+    @Param({"100000", "1000000"})
+    public int entries;
+    
+    private final BlockStore store = new BlockStore();
+    private long before;
+    private Directory root;
+    private int items;
+    
+    @Setup(Level.Iteration)
+    public void measureBefore() {
+        root = null;
+        before = SimulatorBenchmark.usedHeap();
+    }
+    
+    @Benchmark
+    public Object buildTree() {
+        Directory tree = new Directory("root");
+        Directory dir = null;
+        int count = 0;
+        for (int i = 0; i < entries; i++) {
+            if (i % FANOUT == 0) {
+                dir = new Directory("d" + i / FANOUT);
+                tree.addChild(dir);
+                count++;
+            }
+            dir.addChild(new File("arquivo" + i, store));
+            count++;
+        }
+        root = tree;
+        items = count;
+        return tree;
+    }
+    
+    @TearDown(Level.Iteration)
+    public void report() {
+        long after = SimulatorBenchmark.usedHeap();
+        System.out.printf("metadados[n=%d]: %.1f bytes/item%n", entries, (after - before) / (double) items);
+        root = null;
+    }
+}
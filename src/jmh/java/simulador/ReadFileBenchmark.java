@@ -0,0 +1,44 @@
+package simulador;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+// Leitura inteira de arquivos de texto de 64 KiB, crus ou comprimidos. São mais blocos do
+// que cabem no cache de blocos descomprimidos, então a versão comprimida paga a
+// descompressão de todos os blocos em cada leitura.
+@State(Scope.Benchmark)
+public class ReadFileBenchmark extends SimulatorBenchmark {
+    private static final int FILES = 256;
+    private static final int FILE_SIZE = 64 * 1024;
+    
+    @Param({"false", "true"})
+    public boolean compressed;
+    
+    private final ByteBuffer buffer = ByteBuffer.allocate(FILE_SIZE);
+    private int next;
+    
+    @Override
+    void prepare() {
+        BlockStore store = fileSystem.getBlockStore();
+        store.setCompression(compressed ? FILE_SIZE : 0, 0);
+        fileSystem.createDirectory("/textos");
+        Random random = new Random(42);
+        for (int i = 0; i < FILES; i++) {
+            fileSystem.createFile("/textos/t" + i, sampleText(random, FILE_SIZE));
+        }
+        if (compressed) {
+            store.compact();
+            store.compact();
+        }
+    }
+    
+    @Benchmark
+    public FsResult<Integer> readFile() {
+        buffer.clear();
+        return fileSystem.readFile("/textos/t" + next++ % FILES, 0, buffer);
+    }
+}
@@ -0,0 +1,40 @@
+package simulador;
+
+import java.util.Random;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+// Buscas por nome (find, com um padrão de prefixo) e por conteúdo (grep, por uma palavra
+// rara) em uma árvore de um milhão de arquivos; o índice é montado antes da medida
+@State(Scope.Benchmark)
+public class SearchBenchmark extends SimulatorBenchmark {
+    private static final int ENTRIES = 1_000_000;
+    
+    private final Random random = new Random(42);
+    
+    @Override
+    void prepare() {
+        fileSystem.createDirectory("/busca");
+        Directory source = (Directory) fileSystem.findItem("/busca");
+        Directory dir = null;
+        for (int i = 0; i < ENTRIES; i++) {
+            if (i % 1_000 == 0) {
+                dir = new Directory("d" + i / 1_000);
+                source.addChild(dir);
+            }
+            dir.addChild(new File("arquivo" + i + ".txt", fileSystem.getBlockStore(), "registro " + i + "\nvalor " + i % 100));
+        }
+        fileSystem.grep("registro", "/busca/d0");
+    }
+    
+    @Benchmark
+    public Object find() {
+        return fileSystem.find("arquivo" + random.nextInt(ENTRIES) + "*", null);
+    }
+    
+    @Benchmark
+    public Object grep() {
+        return fileSystem.grep("registro " + random.nextInt(ENTRIES), null);
+    }
+}
@@ -0,0 +1,81 @@
+package simulador;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Base dos benchmarks sobre um simulador novo
+//
+// Cada benchmark abre o seu simulador num diretório temporário, sem checkpoints
+// automáticos nem fsync do journal (medido à parte em JournalBenchmark), prepara a árvore
+// em prepare() e mede a vazão (ops/s) de uma operação por chamada do método @Benchmark.
+// Os resultados podem ser gravados com -rf csv -rff arquivo.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public abstract class SimulatorBenchmark {
+    Path directory;
+    FileSystemSimulator fileSystem;
+    
+    abstract void prepare() throws Exception;
+    
+    @Setup(Level.Trial)
+    public void open() throws Exception {
+        directory = Files.createTempDirectory("fsbench");
+        fileSystem = new FileSystemSimulator(directory);
+        fileSystem.setCheckpointInterval(0);
+        fileSystem.getJournal().setGroupCommitSize(0);
+        prepare();
+    }
+    
+    @TearDown(Level.Trial)
+    public void close() throws IOException {
+        if (fileSystem != null) fileSystem.close();
+        deleteDirectory(directory);
+    }
+    
+    // Texto com palavras de um vocabulário pequeno, para medir a compressão
+    static String sampleText(Random random, int length) {
+        String[] words = {"arquivo", "diretorio", "bloco", "journal", "registro", "valor", "leitura", "escrita",
+                "cache", "indice", "caminho", "snapshot"};
+        StringBuilder text = new StringBuilder(length + 16);
+        while (text.length() < length) {
+            text.append(words[random.nextInt(words.length)]).append(random.nextInt(8) == 0 ? '\n' : ' ');
+            if (random.nextInt(4) == 0) text.append(random.nextInt(1000)).append(' ');
+        }
+        text.setLength(length);
+        return text.toString();
+    }
+    
+    static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+    
+    static void deleteDirectory(Path directory) throws IOException {
+        if (directory == null) return;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path file : stream) {
+                Files.deleteIfExists(file);
+            }
+        }
+        Files.deleteIfExists(directory);
+    }
+}
@@ -0,0 +1,534 @@
+package simulador;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.CRC32C;
+
+// Verificação de consistência do journal após quedas
+//
+// Executada com `java simulador.FileSystemSimulator --crashtest [-r rodadas] [-n operações] [--seed s]
+// [--recovery n1,n2,...]`, e com poucas rodadas pelo CrashConsistencyTest do mvn test.
+// Cada rodada aplica uma sequência aleatória de operações a um simulador cujo journal
+// passa por uma camada de E/S com falhas: o processo "cai" em um byte qualquer de uma
+// escrita (deixando só um prefixo dela no arquivo) e parte dos fsync não chega ao disco.
+// Depois da queda, o arquivo perde uma parte do que não foi sincronizado e pode ter bytes
+// corrompidos nesse trecho; o simulador é reaberto e a árvore recuperada tem de ser igual
+// ao modelo de referência depois de algum prefixo das operações que deram certo: pelo
+// menos todas as commitadas antes do primeiro byte perdido e no máximo as commitadas até
+// o fim do arquivo. Por fim, mede o tempo de recuperação em função do tamanho do journal.
+class CrashConsistencyHarness {
+    private static final int DEFAULT_ROUNDS = 200;
+    private static final int DEFAULT_OPERATIONS = 400;
+    private static final int[] DEFAULT_RECOVERY_SIZES = {10_000, 100_000, 1_000_000};
+    private static final int[] GROUP_COMMIT_SIZES = {0, 1, 4};
+    private static final double LOST_FSYNC_RATE = 0.25;
+    
+    // Nomes poucos e repetidos, para que as operações colidam e também falhem
+    private static final String[] NAMES = {"a", "b", "c", "notas.txt", "ação"};
+    private static final String RECOVERY_PROBE = "/após-recuperação";
+    
+    // Queda simulada: interrompe a operação em andamento como se o processo tivesse morrido
+    static final class SimulatedCrash extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        
+        SimulatedCrash() {
+            super("queda simulada", null, false, false);
+        }
+    }
+    
+    // Camada de E/S do journal que grava no arquivo de verdade, mas cai quando uma escrita
+    // passa de crashAt (gravando só o prefixo até ali) e ignora uma fração dos fsync.
+    // Depois da queda toda chamada falha, como em um processo que já morreu.
+    static final class FaultInjectingJournalIo implements JournalIo {
+        private final JournalIo delegate;
+        private final Random random;
+        private final double lostFsyncRate;
+        long written;
+        long durable;
+        long crashAt = Long.MAX_VALUE;
+        boolean crashed;
+        int lostFsyncs;
+        
+        FaultInjectingJournalIo(JournalIo delegate, Random random, double lostFsyncRate) {
+            this.delegate = delegate;
+            this.random = random;
+            this.lostFsyncRate = lostFsyncRate;
+        }
+        
+        @Override
+        public long size() throws IOException {
+            checkAlive();
+            return delegate.size();
+        }
+        
+        @Override
+        public void write(ByteBuffer data) throws IOException {
+            checkAlive();
+            int length = data.remaining();
+            if (written + length > crashAt) {
+                ByteBuffer torn = data.duplicate();
+                torn.limit(torn.position() + (int) (crashAt - written));
+                delegate.write(torn);
+                written = crashAt;
+                crashed = true;
+                throw new SimulatedCrash();
+            }
+            delegate.write(data);
+            written += length;
+        }
+        
+        @Override
+        public void force() throws IOException {
+            checkAlive();
+            if (random.nextDouble() < lostFsyncRate) {
+                lostFsyncs++;
+                return;
+            }
+            delegate.force();
+            durable = written;
+        }
+        
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
+        
+        private void checkAlive() {
+            if (crashed) throw new SimulatedCrash();
+        }
+    }
+    
+    // Conteúdo de um arquivo no modelo, com o checksum calculado uma vez só
+    private static final class Content {
+        final byte[] bytes;
+        final int checksum;
+        
+        Content(byte[] bytes) {
+            this.bytes = bytes;
+            CRC32C crc = new CRC32C();
+            crc.update(bytes);
+            this.checksum = (int) crc.getValue();
+        }
+    }
+    
+    private final PrintStream out;
+    private final long seed;
+    private int failures;
+    private long operations;
+    private long crashes;
+    private long tornTails;
+    private long lostFsyncs;
+    private long lostCommits;
+    
+    private CrashConsistencyHarness(PrintStream out, long seed) {
+        this.out = out;
+        this.seed = seed;
+    }
+    
+    public static boolean run(String[] args) {
+        int rounds = DEFAULT_ROUNDS;
+        int operations = DEFAULT_OPERATIONS;
+        long seed = System.nanoTime();
+        int[] recoverySizes = DEFAULT_RECOVERY_SIZES;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-r": rounds = Integer.parseInt(args[++i]); break;
+                case "-n": operations = Integer.parseInt(args[++i]); break;
+                case "--seed": seed = Long.parseLong(args[++i]); break;
+                case "--recovery":
+                    recoverySizes = Arrays.stream(args[++i].split(",")).filter(size -> !size.isEmpty())
+                            .mapToInt(Integer::parseInt).filter(size -> size > 0).toArray();
+                    break;
+                default:
+                    System.out.println("Uso: java simulador.FileSystemSimulator --crashtest [-r rodadas] [-n operações] [--seed s] [--recovery n1,n2,...]");
+                    return false;
+            }
+        }
+        
+        // O simulador informa a recuperação no console; durante o teste as mensagens são descartadas
+        PrintStream out = System.out;
+        PrintStream err = System.err;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        System.setErr(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            CrashConsistencyHarness harness = new CrashConsistencyHarness(out, seed);
+            harness.execute(rounds, operations);
+            harness.measureRecovery(recoverySizes);
+            return harness.failures == 0;
+        } finally {
+            System.setOut(out);
+            System.setErr(err);
+        }
+    }
+    
+    private void execute(int rounds, int operationsPerRound) {
+        out.println("Teste de queda: " + rounds + " rodadas de até " + operationsPerRound + " operações (--seed " + seed + ")");
+        long start = System.nanoTime();
+        for (int round = 0; round < rounds; round++) {
+            try {
+                runRound(round, operationsPerRound);
+            } catch (Exception | AssertionError e) {
+                fail(round, "erro inesperado: " + e);
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        out.printf("Operações: %d, quedas: %d, caudas corrompidas: %d, fsync perdidos: %d, commits perdidos: %d%n",
+                operations, crashes, tornTails, lostFsyncs, lostCommits);
+        out.printf("Inconsistências: %d (%.1f s)%n", failures, elapsed / 1e9);
+    }
+    
+    private void runRound(int round, int operationsPerRound) throws IOException {
+        Random random = new Random(seed * 31 + round);
+        int groupCommit = GROUP_COMMIT_SIZES[random.nextInt(GROUP_COMMIT_SIZES.length)];
+        double lostFsyncRate = random.nextBoolean() ? LOST_FSYNC_RATE : 0;
+        Path directory = Files.createTempDirectory("fscrash");
+        try {
+            FaultInjectingJournalIo[] io = new FaultInjectingJournalIo[1];
+            FileSystemSimulator fileSystem = new FileSystemSimulator(directory,
+                    path -> io[0] = new FaultInjectingJournalIo(JournalIo.open(path), random, lostFsyncRate));
+            fileSystem.setCheckpointInterval(0);
+            fileSystem.getJournal().setGroupCommitSize(groupCommit);
+            
+            // digests[i] é o estado depois das i primeiras operações que deram certo e
+            // commitEnds[i] o fim do seu COMMIT no journal
+            TreeMap<String, Content> model = new TreeMap<>();
+            List<Long> digests = new ArrayList<>();
+            List<Long> commitEnds = new ArrayList<>();
+            digests.add(digest(model));
+            commitEnds.add(io[0].written);
+            
+            // A queda acontece em um byte qualquer dos registros seguintes a uma operação sorteada
+            int crashOperation = random.nextInt(operationsPerRound);
+            for (int i = 0; !io[0].crashed; i++) {
+                if (i == crashOperation) {
+                    io[0].crashAt = io[0].written + random.nextInt(512);
+                }
+                try {
+                    if (apply(fileSystem, model, random) && !io[0].crashed) {
+                        digests.add(digest(model));
+                        commitEnds.add(io[0].written);
+                    }
+                } catch (SimulatedCrash e) {
+                    break;
+                }
+                operations++;
+                if (i < crashOperation && i % 50 == 49 && digest(snapshot(fileSystem)) != digest(model)) {
+                    fail(round, "a árvore em memória divergiu do modelo após " + (i + 1) + " operações");
+                    return;
+                }
+            }
+            crashes++;
+            lostFsyncs += io[0].lostFsyncs;
+            io[0].close();
+            
+            // O que foi sincronizado sobrevive; do resto, sobra um prefixo que pode ter bytes trocados
+            Path journalFile = directory.resolve("filesystem.journal");
+            long durable = io[0].durable;
+            long length = durable + (long) (random.nextDouble() * (io[0].written - durable + 1));
+            long intact = length;
+            try (FileChannel channel = FileChannel.open(journalFile, StandardOpenOption.WRITE)) {
+                channel.truncate(length);
+                if (length > durable && random.nextBoolean()) {
+                    long from = Math.max(durable, length - 512);
+                    intact = from + (long) (random.nextDouble() * (length - from));
+                    byte[] garbage = new byte[(int) Math.min(1 + random.nextInt(64), length - intact)];
+                    random.nextBytes(garbage);
+                    channel.write(ByteBuffer.wrap(garbage), intact);
+                    tornTails++;
+                }
+            }
+            
+            int lowest = countUpTo(commitEnds, intact);
+            int highest = countUpTo(commitEnds, length);
+            FileSystemSimulator recovered = new FileSystemSimulator(directory);
+            TreeMap<String, Content> tree;
+            try {
+                tree = snapshot(recovered);
+                long recoveredDigest = digest(tree);
+                int state = -1;
+                for (int j = highest; j >= lowest && state < 0; j--) {
+                    if (digests.get(j) == recoveredDigest) state = j;
+                }
+                if (state < 0) {
+                    fail(round, String.format("árvore recuperada (%d itens) não corresponde a nenhum estado entre %d e %d"
+                            + " (journal com %d de %d bytes, %d sincronizados, group commit %d)",
+                            tree.size(), lowest, highest, length, io[0].written, durable, groupCommit));
+                    return;
+                }
+                lostCommits += digests.size() - 1 - state;
+                
+                // O que for gravado depois da recuperação não pode se perder atrás da cauda descartada
+                if (recovered.createFile(RECOVERY_PROBE, "ok") != FsStatus.OK) {
+                    fail(round, "o simulador recuperado não aceitou uma nova operação");
+                    return;
+                }
+                tree.put(RECOVERY_PROBE, new Content("ok".getBytes(StandardCharsets.UTF_8)));
+            } finally {
+                recovered.close();
+            }
+            FileSystemSimulator reopened = new FileSystemSimulator(directory);
+            try {
+                if (digest(snapshot(reopened)) != digest(tree)) {
+                    fail(round, "operação gravada após a recuperação se perdeu na reabertura");
+                }
+            } finally {
+                reopened.close();
+            }
+        } finally {
+            deleteDirectory(directory);
+        }
+    }
+    
+    // Aplica uma operação sorteada ao simulador e, se ela der certo, ao modelo
+    private boolean apply(FileSystemSimulator fileSystem, TreeMap<String, Content> model, Random random) {
+        List<String> directories = new ArrayList<>();
+        List<String> files = new ArrayList<>();
+        directories.add("/");
+        for (Map.Entry<String, Content> entry : model.entrySet()) {
+            (entry.getValue() == null ? directories : files).add(entry.getKey());
+        }
+        String parent = directories.get(random.nextInt(directories.size()));
+        String target = child(parent, NAMES[random.nextInt(NAMES.length)]);
+        String file = pick(files, random);
+        String directory = pick(directories.subList(1, directories.size()), random);
+        
+        switch (random.nextInt(14)) {
+            case 0:
+            case 1: {
+                if (fileSystem.createDirectory(target) != FsStatus.OK) return false;
+                model.put(target, null);
+                return true;
+            }
+            case 2:
+            case 3: {
+                String text = "conteúdo " + random.nextInt(1000);
+                if (fileSystem.createFile(target, text) != FsStatus.OK) return false;
+                model.put(target, new Content(text.getBytes(StandardCharsets.UTF_8)));
+                return true;
+            }
+            case 4: {
+                Content current = model.get(file);
+                long offset = current != null ? random.nextInt(current.bytes.length + 16) : 0;
+                byte[] bytes = randomBytes(random);
+                if (fileSystem.writeFile(file, offset, ByteBuffer.wrap(bytes)) != FsStatus.OK) return false;
+                byte[] updated = Arrays.copyOf(current.bytes, Math.max(current.bytes.length, (int) offset + bytes.length));
+                System.arraycopy(bytes, 0, updated, (int) offset, bytes.length);
+                model.put(file, new Content(updated));
+                return true;
+            }
+            case 5: {
+                byte[] bytes = randomBytes(random);
+                if (fileSystem.appendFile(file, ByteBuffer.wrap(bytes)) != FsStatus.OK) return false;
+                byte[] current = model.get(file).bytes;
+                byte[] updated = Arrays.copyOf(current, current.length + bytes.length);
+                System.arraycopy(bytes, 0, updated, current.length, bytes.length);
+                model.put(file, new Content(updated));
+                return true;
+            }
+            case 6: {
+                Content current = model.get(file);
+                long size = current != null ? random.nextInt(current.bytes.length + 8) : 0;
+                if (fileSystem.truncateFile(file, size) != FsStatus.OK) return false;
+                if (size < current.bytes.length) {
+                    model.put(file, new Content(Arrays.copyOf(current.bytes, (int) size)));
+                }
+                return true;
+            }
+            case 7: {
+                if (fileSystem.deleteFile(file) != FsStatus.OK) return false;
+                model.remove(file);
+                return true;
+            }
+            case 8: {
+                if (fileSystem.deleteDirectory(directory) != FsStatus.OK) return false;
+                model.remove(directory);
+                return true;
+            }
+            case 9: {
+                if (random.nextInt(4) != 0 || fileSystem.deleteTree(directory) != FsStatus.OK) return false;
+                subtree(model, directory).clear();
+                model.remove(directory);
+                return true;
+            }
+            case 10: {
+                String name = NAMES[random.nextInt(NAMES.length)];
+                boolean isDirectory = random.nextBoolean();
+                String source = isDirectory ? directory : file;
+                FsStatus status = isDirectory ? fileSystem.renameDirectory(source, name) : fileSystem.renameFile(source, name);
+                if (status != FsStatus.OK) return false;
+                relocate(model, source, child(parentOf(source), name), false);
+                return true;
+            }
+            case 11: {
+                String source = random.nextBoolean() ? directory : file;
+                if (fileSystem.move(source, target) != FsStatus.OK) return false;
+                relocate(model, source, target, false);
+                return true;
+            }
+            case 12: {
+                if (fileSystem.copyFile(file, target) != FsStatus.OK) return false;
+                model.put(target, model.get(file));
+                return true;
+            }
+            default: {
+                // Cópias de subárvores grandes fariam o modelo crescer sem limite
+                if (model.size() > 200 || fileSystem.copyTree(directory, target) != FsStatus.OK) return false;
+                relocate(model, directory, target, true);
+                return true;
+            }
+        }
+    }
+    
+    // Na maioria das vezes um caminho existente; às vezes um que não existe
+    private static String pick(List<String> paths, Random random) {
+        if (paths.isEmpty() || random.nextInt(10) == 0) {
+            return "/" + NAMES[random.nextInt(NAMES.length)] + "/inexistente";
+        }
+        return paths.get(random.nextInt(paths.size()));
+    }
+    
+    // Conteúdo curto quase sempre; de vez em quando maior que o buffer do journal
+    private static byte[] randomBytes(Random random) {
+        byte[] bytes = new byte[random.nextInt(50) == 0 ? 70_000 + random.nextInt(10_000) : 1 + random.nextInt(200)];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+    
+    // Move (ou copia, com keep) o item from e os seus descendentes para to
+    private static void relocate(TreeMap<String, Content> model, String from, String to, boolean keep) {
+        Map<String, Content> moved = new HashMap<>();
+        moved.put(to, model.get(from));
+        SortedMap<String, Content> descendants = subtree(model, from);
+        for (Map.Entry<String, Content> entry : descendants.entrySet()) {
+            moved.put(to + entry.getKey().substring(from.length()), entry.getValue());
+        }
+        if (!keep) {
+            descendants.clear();
+            model.remove(from);
+        }
+        model.putAll(moved);
+    }
+    
+    // Descendentes de path: as chaves entre "path/" e "path0" ('0' vem logo depois de '/')
+    private static SortedMap<String, Content> subtree(TreeMap<String, Content> model, String path) {
+        return model.subMap(path + "/", path + "0");
+    }
+    
+    // Índice do último estado cujo COMMIT terminou até position
+    private static int countUpTo(List<Long> commitEnds, long position) {
+        int count = 0;
+        while (count + 1 < commitEnds.size() && commitEnds.get(count + 1) <= position) {
+            count++;
+        }
+        return count;
+    }
+    
+    // Árvore do simulador no formato do modelo
+    private static TreeMap<String, Content> snapshot(FileSystemSimulator fileSystem) {
+        TreeMap<String, Content> tree = new TreeMap<>();
+        ArrayDeque<String> pending = new ArrayDeque<>();
+        pending.add("/");
+        while (!pending.isEmpty()) {
+            String directory = pending.removeFirst();
+            List<FileSystemItem> children = new ArrayList<>();
+            fileSystem.streamDirectory(directory, false).getValue().forEach(children::add);
+            for (FileSystemItem item : children) {
+                String path = child(directory, item.getName());
+                if (item.isDirectory()) {
+                    tree.put(path, null);
+                    pending.add(path);
+                } else {
+                    ByteBuffer content = ByteBuffer.allocate((int) ((File) item).getSize());
+                    while (content.hasRemaining() && fileSystem.readFile(path, content.position(), content).getValue() > 0) { }
+                    tree.put(path, new Content(content.array()));
+                }
+            }
+        }
+        return tree;
+    }
+    
+    private static long digest(SortedMap<String, Content> tree) {
+        long hash = 17;
+        for (Map.Entry<String, Content> entry : tree.entrySet()) {
+            Content content = entry.getValue();
+            hash = hash * 0x9E3779B97F4A7C15L + entry.getKey().hashCode();
+            hash = hash * 0x9E3779B97F4A7C15L + (content == null ? -1 : ((long) content.bytes.length << 32 | (content.checksum & 0xFFFFFFFFL)));
+        }
+        return hash;
+    }
+    
+    private static String child(String parent, String name) {
+        return parent.equals("/") ? "/" + name : parent + "/" + name;
+    }
+    
+    private static String parentOf(String path) {
+        int lastSlash = path.lastIndexOf('/');
+        return lastSlash <= 0 ? "/" : path.substring(0, lastSlash);
+    }
+    
+    private void fail(int round, String message) {
+        failures++;
+        out.println("Rodada " + round + ": " + message);
+    }
+    
+    // Reabre journals de vários tamanhos (sem snapshot) e mede o tempo até o simulador ficar pronto
+    private void measureRecovery(int[] sizes) {
+        if (sizes.length == 0) return;
+        out.printf("%n%-12s %12s %10s %10s %14s%n", "Operações", "Journal MB", "ms", "MB/s", "ops/s");
+        for (int size : sizes) {
+            try {
+                Path directory = Files.createTempDirectory("fscrash");
+                try {
+                    FileSystemSimulator fileSystem = new FileSystemSimulator(directory);
+                    fileSystem.setCheckpointInterval(0);
+                    int operations = 0;
+                    for (int i = 0; i < size; i++) {
+                        if (i % 1000 == 0) {
+                            fileSystem.createDirectory("/d" + i / 1000);
+                            operations++;
+                        }
+                        fileSystem.createFile("/d" + i / 1000 + "/f" + i, "conteúdo " + i);
+                        operations++;
+                    }
+                    fileSystem.close();
+                    double megabytes = Files.size(directory.resolve("filesystem.journal")) / (1024.0 * 1024.0);
+                    
+                    long start = System.nanoTime();
+                    FileSystemSimulator recovered = new FileSystemSimulator(directory);
+                    long elapsed = System.nanoTime() - start;
+                    long items = recovered.getItemCount();
+                    recovered.close();
+                    if (items != operations) {
+                        failures++;
+                        out.printf("%-12d recuperou %d de %d itens%n", size, items, operations);
+                        continue;
+                    }
+                    double seconds = elapsed / 1e9;
+                    out.printf("%-12d %12.1f %10.1f %10.1f %14.0f%n", operations, megabytes, elapsed / 1e6,
+                            megabytes / seconds, operations / seconds);
+                } finally {
+                    deleteDirectory(directory);
+                }
+            } catch (IOException e) {
+                failures++;
+                out.printf("%-12d erro: %s%n", size, e);
+            }
+        }
+    }
+    
+    private static void deleteDirectory(Path directory) throws IOException {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path file : stream) {
+                Files.deleteIfExists(file);
+            }
+        }
+        Files.deleteIfExists(directory);
+    }
+}
@@ -0,0 +1,209 @@
+package simulador;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Gerador de carga para o servidor TCP
+//
+// Executado com `java simulador.FileSystemSimulator --loadgen [-c clientes] [-d segundos]
+// [--pipeline n] [--writes porcentagem] [--port n]`. Sem --port, sobe um servidor próprio
+// sobre um simulador em um diretório temporário. Cada cliente abre uma conexão, cria o
+// seu diretório, entra nele com cd e envia lotes de --pipeline comandos (criar, acrescentar,
+// ler, consultar e contar arquivos) antes de ler as respostas. A latência de um comando vai
+// do envio do seu lote até a chegada da sua resposta. Ao final mostra a vazão e os
+// percentis de latência.
+class FileSystemLoadGenerator {
+    private static final int DEFAULT_CLIENTS = 100;
+    private static final int DEFAULT_SECONDS = 10;
+    private static final int DEFAULT_PIPELINE = 8;
+    private static final int DEFAULT_WRITE_PERCENT = 30;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    
+    private final int port;
+    private final int pipeline;
+    private final int writePercent;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder brokenClients = new LongAdder();
+    
+    private FileSystemLoadGenerator(int port, int pipeline, int writePercent) {
+        this.port = port;
+        this.pipeline = pipeline;
+        this.writePercent = writePercent;
+    }
+    
+    public static boolean run(String[] args) {
+        int clients = DEFAULT_CLIENTS;
+        int seconds = DEFAULT_SECONDS;
+        int pipeline = DEFAULT_PIPELINE;
+        int writePercent = DEFAULT_WRITE_PERCENT;
+        int port = -1;
+        for (int i = 0; i < args.length; i++) {
+            boolean hasValue = i + 1 < args.length && FileSystemShell.isNumber(args[i + 1]);
+            switch (hasValue ? args[i] : "") {
+                case "-c": clients = Integer.parseInt(args[++i]); break;
+                case "-d": seconds = Integer.parseInt(args[++i]); break;
+                case "--pipeline": pipeline = Math.max(1, Integer.parseInt(args[++i])); break;
+                case "--writes": writePercent = Math.min(100, Integer.parseInt(args[++i])); break;
+                case "--port": port = Integer.parseInt(args[++i]); break;
+                default:
+                    System.out.println("Uso: java simulador.FileSystemSimulator --loadgen [-c clientes] [-d segundos] [--pipeline n]"
+                            + " [--writes porcentagem] [--port n]");
+                    return false;
+            }
+        }
+        
+        Path directory = null;
+        FileSystemSimulator simulator = null;
+        FileSystemServer server = null;
+        try {
+            if (port < 0) {
+                directory = Files.createTempDirectory("fsload");
+                simulator = new FileSystemSimulator(directory);
+                server = new FileSystemServer(simulator, 0);
+                port = server.getPort();
+            }
+            FileSystemLoadGenerator generator = new FileSystemLoadGenerator(port, pipeline, writePercent);
+            System.out.printf("Carga: %d clientes (%s), pipeline %d, %d%% escritas, %d s, porta %d%n", clients,
+                    FileSystemServer.hasVirtualThreads() ? "virtual threads" : "threads", pipeline, writePercent, seconds, port);
+            return generator.execute(clients, seconds);
+        } catch (IOException e) {
+            System.out.println("Erro: " + e.getMessage());
+            return false;
+        } finally {
+            if (server != null) server.close();
+            if (simulator != null) simulator.close();
+            if (directory != null) deleteDirectory(directory);
+        }
+    }
+    
+    private boolean execute(int clients, int seconds) {
+        ExecutorService executor = FileSystemServer.newSessionExecutor();
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.SECONDS.toNanos(seconds);
+        for (int i = 0; i < clients; i++) {
+            int id = i;
+            executor.execute(() -> {
+                try {
+                    runClient(id, deadline);
+                } catch (IOException e) {
+                    brokenClients.increment();
+                }
+            });
+        }
+        executor.shutdown();
+        try {
+            executor.awaitTermination(seconds + 60L, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        
+        long commands = completed.sum();
+        System.out.printf("Comandos: %d em %.1f s (%.0f ops/s), %d falhas, %d clientes com erro de conexão%n",
+                commands, elapsed, commands / elapsed, failed.sum(), brokenClients.sum());
+        System.out.printf("Latência (µs): p50 %.0f, p99 %.0f, p99,9 %.0f, máx %.0f%n",
+                latency.getValueAtPercentile(50) / 1e3, latency.getValueAtPercentile(99) / 1e3,
+                latency.getValueAtPercentile(99.9) / 1e3, latency.getMax() / 1e3);
+        return failed.sum() == 0 && brokenClients.sum() == 0;
+    }
+    
+    // Um cliente: prepara o seu diretório e envia lotes de comandos até o prazo
+    private void runClient(int id, long deadline) throws IOException {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            socket.setTcpNoDelay(true);
+            InputStream input = new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE);
+            OutputStream output = new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE);
+            
+            // O diretório pode existir de uma execução anterior contra o mesmo servidor
+            String home = "/carga/c" + id;
+            send(output, "createdir /carga");
+            send(output, "createdir " + home);
+            send(output, "cd " + home);
+            output.flush();
+            readResponse(input);
+            readResponse(input);
+            if (!readResponse(input).equals("OK")) {
+                throw new IOException("cd " + home + " falhou");
+            }
+            
+            Random random = new Random(id);
+            int files = 0;
+            while (System.nanoTime() < deadline) {
+                long sent = System.nanoTime();
+                for (int i = 0; i < pipeline; i++) {
+                    if (files == 0 || random.nextInt(100) < writePercent) {
+                        if (files == 0 || files < 10_000 && random.nextBoolean()) {
+                            send(output, "createfile f" + files++ + " conteúdo inicial");
+                        } else {
+                            send(output, "append f" + random.nextInt(files) + " mais uma linha");
+                        }
+                        continue;
+                    }
+                    String file = " f" + random.nextInt(files);
+                    switch (random.nextInt(4)) {
+                        case 0: send(output, "cat" + file); break;
+                        case 1: send(output, "stat" + file); break;
+                        case 2: send(output, "count ."); break;
+                        default: send(output, "list --limit 20"); break;
+                    }
+                }
+                output.flush();
+                for (int i = 0; i < pipeline; i++) {
+                    String status = readResponse(input);
+                    latency.record(System.nanoTime() - sent);
+                    completed.increment();
+                    if (!status.equals("OK")) failed.increment();
+                }
+            }
+            send(output, "exit");
+            output.flush();
+        }
+    }
+    
+    private static void send(OutputStream output, String command) throws IOException {
+        output.write((command + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+    
+    // Lê uma resposta "<STATUS> <bytes>" e o seu corpo; devolve o status
+    private static String readResponse(InputStream input) throws IOException {
+        StringBuilder header = new StringBuilder(16);
+        int next;
+        while ((next = input.read()) != '\n') {
+            if (next < 0) throw new EOFException("conexão encerrada pelo servidor");
+            header.append((char) next);
+        }
+        int space = header.indexOf(" ");
+        long remaining = Long.parseLong(header.substring(space + 1));
+        while (remaining > 0) {
+            long skipped = input.skip(remaining);
+            if (skipped <= 0) {
+                if (input.read() < 0) throw new EOFException("resposta incompleta");
+                skipped = 1;
+            }
+            remaining -= skipped;
+        }
+        return header.substring(0, space);
+    }
+    
+    static void deleteDirectory(Path directory) {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path file : stream) {
+                Files.deleteIfExists(file);
+            }
+            Files.deleteIfExists(directory);
+        } catch (IOException e) {
+            System.err.println("Erro ao apagar diretório temporário: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,6933 @@
+package simulador;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.WeakReference;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CountedCompleter;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+// Classe que representa um item no sistema de arquivos (arquivo ou diretório)
+//
+// Os metadados são mínimos: nome (internado, de modo que nomes repetidos na árvore são
+// uma única String), referência ao diretório pai e datas em milissegundos desde a época.
+// O caminho não é guardado; getPath() o monta subindo pelos pais.
+abstract class FileSystemItem {
+    // Maior nome em bytes UTF-8: a imagem guarda o tamanho de cada nome em 16 bits
+    public static final int MAX_NAME_BYTES = 65535;
+    
+    protected String name;
+    protected Directory parent;
+    protected long creationTime;
+    protected long lastModified;
+    // Última captura de checkpoint que já decidiu a versão deste item (Snapshot.Capture)
+    int captureEpoch;
+    
+    public FileSystemItem(String name) {
+        this.name = name.intern();
+        this.creationTime = System.currentTimeMillis();
+        this.lastModified = creationTime;
+    }
+    
+    // Indica se name cabe na imagem; criar, copiar, renomear e mover recusam os que não cabem
+    public static boolean isValidName(String name) {
+        // Um char ocupa no máximo 3 bytes em UTF-8 (um par de surrogates, 4 bytes em 2 chars)
+        return name.length() <= MAX_NAME_BYTES / 3 || name.getBytes(StandardCharsets.UTF_8).length <= MAX_NAME_BYTES;
+    }
+    
+    public String getName() { return name; }
+    public Directory getParent() { return parent; }
+    public long getCreationTime() { return creationTime; }
+    public long getLastModified() { return lastModified; }
+    
+    // Caminho absoluto do item; a raiz (sem pai) é "/"
+    public String getPath() {
+        if (parent == null) return "/";
+        int depth = 0;
+        int length = 0;
+        for (FileSystemItem item = this; item.parent != null; item = item.parent) {
+            depth++;
+            length += item.name.length() + 1;
+        }
+        String[] names = new String[depth];
+        for (FileSystemItem item = this; item.parent != null; item = item.parent) {
+            names[--depth] = item.name;
+        }
+        StringBuilder path = new StringBuilder(length);
+        for (String part : names) {
+            path.append('/').append(part);
+        }
+        return path.toString();
+    }
+    
+    public void setName(String name) { 
+        this.name = name.intern(); 
+        this.lastModified = System.currentTimeMillis();
+    }
+    
+    // Restaura as datas gravadas em um snapshot
+    public void restoreDates(long creationTime, long lastModified) {
+        this.creationTime = creationTime;
+        this.lastModified = lastModified;
+    }
+    
+    public abstract boolean isDirectory();
+    public abstract String getType();
+}
+
+// Bloco de dados de arquivo com contagem de referências
+//
+// O conteúdo de um bloco nunca muda depois de criado; blocos com o mesmo conteúdo
+// são compartilhados por meio do BlockStore que o criou. O compactador do BlockStore pode
+// trocar os bytes crus pela forma comprimida; getData() devolve sempre os bytes crus,
+// passando pelo cache de blocos descomprimidos quando preciso.
+class Block {
+    // Marca de bloco que já foi testado e não comprime o suficiente
+    private static final byte[] INCOMPRESSIBLE = new byte[0];
+    
+    // Bytes crus, ou null quando o bloco está comprimido (então packed está preenchido)
+    private volatile byte[] data;
+    private volatile byte[] packed;
+    private final BlockStore store;
+    private final int length;
+    private final int hash;
+    private final AtomicInteger references;
+    // Época do compactador do último acesso; large marca blocos de arquivos grandes
+    private volatile int touched;
+    private boolean large;
+    
+    Block(BlockStore store, byte[] data) {
+        this.data = data;
+        this.store = store;
+        this.length = data.length;
+        this.hash = Arrays.hashCode(data);
+        this.references = new AtomicInteger(1);
+        this.touched = store.getEpoch();
+    }
+    
+    // O primeiro acesso de cada época a um bloco cru entra no conjunto do compactador
+    public byte[] getData() {
+        int epoch = store.getEpoch();
+        if (touched != epoch) {
+            touched = epoch;
+            if (packed == null) store.touched(this, epoch);
+        }
+        byte[] raw = data;
+        return raw != null ? raw : store.inflate(this, packed, true);
+    }
+    
+    // Bytes crus sem contar como acesso nem passar pelo cache (checkpoint e comparação)
+    byte[] peekData() {
+        byte[] raw = data;
+        return raw != null ? raw : store.inflate(this, packed, false);
+    }
+    
+    public int length() { return length; }
+    
+    boolean isCompressed() { return data == null; }
+    
+    // Ainda não comprimido nem marcado como incompressível
+    boolean isCompressible() { return packed == null; }
+    
+    int getTouched() { return touched; }
+    
+    boolean isLarge() { return large; }
+    
+    // Um bloco que passa a ser de arquivo grande volta ao conjunto do compactador, na
+    // época do último acesso, para não esperar a regra de tempo sem acesso
+    void markLarge() {
+        if (large) return;
+        large = true;
+        store.touched(this, touched);
+    }
+    
+    // Troca os bytes crus pelos comprimidos; devolve os bytes comprimidos, ou null se o
+    // bloco já foi liberado, já foi processado ou não comprime o suficiente
+    synchronized byte[] compress(BlockCodec codec) {
+        byte[] raw = data;
+        if (raw == null || packed != null || references.get() == 0) return null;
+        byte[] result = codec.compress(raw);
+        if (result == null) {
+            packed = INCOMPRESSIBLE;
+            return null;
+        }
+        // packed é publicado antes de data virar null, para quem lê data primeiro
+        packed = result;
+        data = null;
+        return result;
+    }
+    
+    // Tamanho comprimido, ou -1 se o bloco está cru. Sincronizado com compress(), para que
+    // a contabilidade na liberação enxergue uma compressão que terminou antes.
+    synchronized int getPackedLength() {
+        return data == null ? packed.length : -1;
+    }
+    
+    // Ganha uma referência, a menos que o bloco já tenha sido liberado
+    boolean tryRetain() {
+        int current;
+        do {
+            current = references.get();
+            if (current == 0) return false;
+        } while (!references.compareAndSet(current, current + 1));
+        return true;
+    }
+    
+    // Devolve true quando a última referência foi liberada
+    boolean releaseReference() {
+        return references.decrementAndGet() == 0;
+    }
+    
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) return true;
+        if (!(other instanceof Block)) return false;
+        Block block = (Block) other;
+        if (hash != block.hash || length != block.length) return false;
+        byte[] mine = data;
+        byte[] theirs = block.data;
+        // O codec é determinístico: dois blocos comprimidos são iguais se os bytes comprimidos forem
+        if (mine == null && theirs == null) return Arrays.equals(packed, block.packed);
+        return Arrays.equals(mine != null ? mine : peekData(), theirs != null ? theirs : block.peekData());
+    }
+    
+    @Override
+    public int hashCode() { return hash; }
+}
+
+// Codificação dos blocos comprimidos pelo compactador
+//
+// compress() é chamado só pela thread do compactador; decompress() por qualquer leitor.
+// Um codec precisa ser determinístico, porque Block.equals compara blocos comprimidos
+// pelos bytes comprimidos.
+interface BlockCodec {
+    String getName();
+    
+    // Bytes comprimidos, ou null quando a economia não compensa
+    byte[] compress(byte[] raw);
+    
+    byte[] decompress(byte[] packed, int length);
+    
+    // Deflate do java.util.zip no nível mais rápido, sem cabeçalho zlib; exige que o
+    // bloco encolha pelo menos um oitavo
+    static BlockCodec deflate() {
+        return new BlockCodec() {
+            private final Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+            
+            public String getName() { return "deflate"; }
+            
+            public synchronized byte[] compress(byte[] raw) {
+                byte[] buffer = new byte[raw.length - raw.length / 8];
+                deflater.reset();
+                deflater.setInput(raw);
+                deflater.finish();
+                int length = deflater.deflate(buffer);
+                return deflater.finished() ? Arrays.copyOf(buffer, length) : null;
+            }
+            
+            public byte[] decompress(byte[] packed, int length) {
+                Inflater inflater = new Inflater(true);
+                try {
+                    inflater.setInput(packed);
+                    byte[] raw = new byte[length];
+                    int inflated = 0;
+                    while (inflated < length && !inflater.finished()) {
+                        int count = inflater.inflate(raw, inflated, length - inflated);
+                        if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+                        inflated += count;
+                    }
+                    if (inflated != length) {
+                        throw new IllegalStateException("Bloco comprimido corrompido: " + inflated + " de " + length + " bytes");
+                    }
+                    return raw;
+                } catch (DataFormatException e) {
+                    throw new IllegalStateException("Bloco comprimido corrompido", e);
+                } finally {
+                    inflater.end();
+                }
+            }
+        };
+    }
+}
+
+// Cache de blocos comprimidos lidos recentemente, já descomprimidos
+//
+// Leituras seguidas de um arquivo frio descomprimem cada bloco uma vez só. Como o
+// DentryCache, é dividido em segmentos LRU com lock próprio.
+class BlockCache {
+    private static final int SEGMENTS = 16;
+    
+    private final int capacity;
+    private final List<LinkedHashMap<Block, byte[]>> segments;
+    private final LongAdder hits;
+    private final LongAdder misses;
+    
+    BlockCache(int capacity) {
+        this.capacity = capacity;
+        this.segments = new ArrayList<>(SEGMENTS);
+        int segmentCapacity = Math.max(1, capacity / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments.add(new LinkedHashMap<Block, byte[]>(segmentCapacity * 4 / 3 + 1, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Block, byte[]> eldest) {
+                    return size() > segmentCapacity;
+                }
+            });
+        }
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+    }
+    
+    public long getHits() { return hits.sum(); }
+    public long getMisses() { return misses.sum(); }
+    public int getCapacity() { return capacity; }
+    
+    public int size() {
+        int size = 0;
+        for (LinkedHashMap<Block, byte[]> segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+    
+    // Bytes crus do bloco, ou null se ele não está no cache
+    byte[] get(Block block) {
+        LinkedHashMap<Block, byte[]> segment = segmentFor(block);
+        byte[] raw;
+        synchronized (segment) {
+            raw = segment.get(block);
+        }
+        (raw != null ? hits : misses).increment();
+        return raw;
+    }
+    
+    void put(Block block, byte[] raw) {
+        LinkedHashMap<Block, byte[]> segment = segmentFor(block);
+        synchronized (segment) {
+            segment.put(block, raw);
+        }
+    }
+    
+    void remove(Block block) {
+        LinkedHashMap<Block, byte[]> segment = segmentFor(block);
+        synchronized (segment) {
+            segment.remove(block);
+        }
+    }
+    
+    private LinkedHashMap<Block, byte[]> segmentFor(Block block) {
+        int hash = block.hashCode();
+        return segments.get((hash ^ (hash >>> 16)) & (SEGMENTS - 1));
+    }
+}
+
+// Armazenamento de blocos com deduplicação por conteúdo
+//
+// Cada bloco único existe uma vez só; arquivos com trechos idênticos de BLOCK_SIZE
+// bytes (ou caudas idênticas) apontam para o mesmo Block. Cada simulador tem o seu
+// store, como um cache de páginas por sistema de arquivos.
+//
+// O store também comprime os blocos de forma transparente. Depois de startCompactor(),
+// uma thread avança a época uma vez por segundo e comprime os blocos de arquivos com
+// pelo menos compressionThreshold bytes que não foram lidos na época anterior, e os
+// demais blocos sem acesso há mais de coldSeconds. O compactador não percorre o store:
+// cada bloco cru entra no conjunto sujo da época em que foi criado ou lido pela primeira
+// vez (touched), e cada passada só examina as épocas que ficaram para trás. Blocos lidos o
+// tempo todo continuam crus; os comprimidos são descomprimidos a cada leitura, com um
+// cache LRU dos mais recentes. O tamanho lógico (storedBytes) não muda com a compressão;
+// getResidentBytes() diz quanto o conteúdo ocupa de fato.
+class BlockStore {
+    public static final int BLOCK_SIZE = 4096;
+    public static final long DEFAULT_COMPRESSION_THRESHOLD = 64 * 1024;
+    public static final int DEFAULT_COLD_SECONDS = 10 * 60;
+    private static final int HOT_CACHE_BLOCKS = 1024;
+    
+    private final ConcurrentHashMap<Block, Block> blocks;
+    private final FileData empty;
+    private final AtomicLong storedBytes;
+    private final LongAdder deduplicatedBlocks;
+    private final BlockCodec codec;
+    private final BlockCache cache;
+    private final LongAdder compressedBlocks;
+    private final LongAdder compressedBytes;
+    private final LongAdder packedBytes;
+    private volatile long compressionThreshold;
+    private volatile int coldSeconds;
+    private volatile int epoch;
+    // Conjunto sujo: blocos crus por época do acesso, ainda não examinados
+    private final ConcurrentSkipListMap<Integer, Queue<Block>> dirty;
+    // Blocos examinados que esperam a regra de tempo sem acesso; só o compactador usa.
+    // As referências são fracas para não segurar blocos liberados nesse meio tempo.
+    private final TreeMap<Integer, List<WeakReference<Block>>> idle;
+    private ScheduledExecutorService compactor;
+    
+    public BlockStore() {
+        this.blocks = new ConcurrentHashMap<>();
+        this.empty = FileData.empty(this);
+        this.storedBytes = new AtomicLong();
+        this.deduplicatedBlocks = new LongAdder();
+        this.codec = BlockCodec.deflate();
+        this.cache = new BlockCache(HOT_CACHE_BLOCKS);
+        this.compressedBlocks = new LongAdder();
+        this.compressedBytes = new LongAdder();
+        this.packedBytes = new LongAdder();
+        this.compressionThreshold = DEFAULT_COMPRESSION_THRESHOLD;
+        this.coldSeconds = DEFAULT_COLD_SECONDS;
+        this.dirty = new ConcurrentSkipListMap<>();
+        this.idle = new TreeMap<>();
+    }
+    
+    // Conteúdo vazio deste store
+    public FileData getEmpty() { return empty; }
+    
+    public int getBlockCount() { return blocks.size(); }
+    public long getStoredBytes() { return storedBytes.get(); }
+    public long getDeduplicatedBlocks() { return deduplicatedBlocks.sum(); }
+    public BlockCodec getCodec() { return codec; }
+    public BlockCache getCache() { return cache; }
+    public long getCompressedBlocks() { return compressedBlocks.sum(); }
+    public long getCompressedBytes() { return compressedBytes.sum(); }
+    public long getPackedBytes() { return packedBytes.sum(); }
+    public long getCompressionThreshold() { return compressionThreshold; }
+    public int getColdSeconds() { return coldSeconds; }
+    int getEpoch() { return epoch; }
+    
+    // Bytes que o conteúdo ocupa em memória: os blocos crus mais os comprimidos
+    public long getResidentBytes() {
+        return getStoredBytes() - getCompressedBytes() + getPackedBytes();
+    }
+    
+    // Limite de tamanho de arquivo e tempo sem acesso para comprimir; 0 desliga cada regra.
+    // Os blocos já comprimidos continuam comprimidos.
+    public void setCompression(long thresholdBytes, int coldSeconds) {
+        this.compressionThreshold = Math.max(0, thresholdBytes);
+        this.coldSeconds = Math.max(0, coldSeconds);
+    }
+    
+    // Inicia a thread do compactador, se ainda não estiver rodando
+    public synchronized void startCompactor() {
+        if (compactor != null) return;
+        compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "block-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        compactor.scheduleWithFixedDelay(this::compact, 1, 1, TimeUnit.SECONDS);
+    }
+    
+    // Para a thread do compactador; chamado quando o simulador é fechado
+    public synchronized void stopCompactor() {
+        if (compactor == null) return;
+        compactor.shutdownNow();
+        compactor = null;
+    }
+    
+    // Registra um bloco cru no conjunto sujo da época informada
+    void touched(Block block, int epoch) {
+        dirty.computeIfAbsent(epoch, e -> new ConcurrentLinkedQueue<>()).add(block);
+    }
+    
+    // Uma passada do compactador: avança a época e comprime os blocos que se
+    // qualificam. Também pode ser chamada diretamente para forçar uma passada.
+    //
+    // Um bloco registrado na época e que continua com touched igual a e não foi lido
+    // depois dela; se foi, ele está também numa época mais nova e a entrada antiga é
+    // descartada. Com a regra de tempo sem acesso desligada, os blocos que ela esperava
+    // são esquecidos até o próximo acesso.
+    public synchronized void compact() {
+        int now = epoch + 1;
+        epoch = now;
+        long threshold = compressionThreshold;
+        int cold = coldSeconds;
+        Map.Entry<Integer, Queue<Block>> entry;
+        while ((entry = dirty.firstEntry()) != null && entry.getKey() <= now - 2) {
+            int since = entry.getKey();
+            dirty.remove(since);
+            for (Block block : entry.getValue()) {
+                if (block.getTouched() != since || !block.isCompressible()) continue;
+                if (threshold > 0 && block.isLarge()) {
+                    compress(block);
+                } else if (cold > 0) {
+                    idle.computeIfAbsent(since, e -> new ArrayList<>()).add(new WeakReference<>(block));
+                }
+            }
+        }
+        if (cold == 0) {
+            idle.clear();
+            return;
+        }
+        while (!idle.isEmpty() && idle.firstKey() < now - cold) {
+            Map.Entry<Integer, List<WeakReference<Block>>> first = idle.pollFirstEntry();
+            for (WeakReference<Block> reference : first.getValue()) {
+                Block block = reference.get();
+                if (block != null && block.getTouched() == first.getKey() && block.isCompressible()) {
+                    compress(block);
+                }
+            }
+        }
+    }
+    
+    private void compress(Block block) {
+        byte[] packed = block.compress(codec);
+        if (packed != null) {
+            compressedBlocks.increment();
+            compressedBytes.add(block.length());
+            packedBytes.add(packed.length);
+        }
+    }
+    
+    // Bytes crus de um bloco comprimido; cached usa e alimenta o cache de blocos quentes
+    byte[] inflate(Block block, byte[] packed, boolean cached) {
+        if (!cached) return codec.decompress(packed, block.length());
+        byte[] raw = cache.get(block);
+        if (raw == null) {
+            raw = codec.decompress(packed, block.length());
+            cache.put(block, raw);
+        }
+        return raw;
+    }
+    
+    // Devolve o bloco canônico com o conteúdo informado, com uma referência a mais
+    public Block intern(byte[] source, int offset, int length) {
+        Block candidate = new Block(this, Arrays.copyOfRange(source, offset, offset + length));
+        while (true) {
+            Block existing = blocks.putIfAbsent(candidate, candidate);
+            if (existing == null) {
+                storedBytes.addAndGet(length);
+                touched(candidate, candidate.getTouched());
+                return candidate;
+            }
+            if (existing.tryRetain()) {
+                deduplicatedBlocks.increment();
+                return existing;
+            }
+            // O bloco existente está sendo liberado; espera sair do mapa e tenta de novo
+            blocks.remove(existing, existing);
+        }
+    }
+    
+    // Quem zera a contagem faz a contabilidade, mesmo que intern() já tenha tirado o
+    // bloco do mapa
+    public void release(Block block) {
+        if (!block.releaseReference()) return;
+        blocks.remove(block, block);
+        storedBytes.addAndGet(-block.length());
+        int packed = block.getPackedLength();
+        if (packed >= 0) {
+            compressedBlocks.decrement();
+            compressedBytes.add(-block.length());
+            packedBytes.add(-packed);
+            cache.remove(block);
+        }
+    }
+}
+
+// Conteúdo de um arquivo: lista de blocos com tamanho total em bytes
+//
+// Um FileData é imutável e pode ser compartilhado por vários arquivos (cópia com
+// copy-on-write): copiar um arquivo só incrementa a contagem de referências, e uma
+// escrita cria um FileData novo. Quando a última referência é liberada, os blocos
+// são devolvidos ao BlockStore de onde vieram; cada store tem o seu conteúdo vazio.
+//
+// write/truncate também devolvem um FileData novo, mas só os blocos tocados pela
+// alteração são recriados; os demais são compartilhados com o original. Todos os
+// blocos, exceto o último, têm BLOCK_SIZE bytes.
+class FileData {
+    // Maior conteúdo possível: o número de blocos precisa caber em um int
+    public static final long MAX_SIZE = (long) Integer.MAX_VALUE * BlockStore.BLOCK_SIZE;
+    
+    private final BlockStore store;
+    private final Block[] blocks;
+    private final long size;
+    private final AtomicInteger references;
+    
+    private FileData(BlockStore store, Block[] blocks, long size) {
+        this.store = store;
+        this.blocks = blocks;
+        this.size = size;
+        this.references = new AtomicInteger(1);
+    }
+    
+    // Só para o BlockStore; os demais usam store.getEmpty()
+    static FileData empty(BlockStore store) {
+        return new FileData(store, new Block[0], 0);
+    }
+    
+    public static FileData of(BlockStore store, byte[] bytes) {
+        if (bytes.length == 0) return store.getEmpty();
+        Block[] blocks = new Block[(bytes.length + BlockStore.BLOCK_SIZE - 1) / BlockStore.BLOCK_SIZE];
+        for (int i = 0; i < blocks.length; i++) {
+            int offset = i * BlockStore.BLOCK_SIZE;
+            blocks[i] = store.intern(bytes, offset, Math.min(BlockStore.BLOCK_SIZE, bytes.length - offset));
+        }
+        return sized(store, blocks, bytes.length);
+    }
+    
+    public BlockStore getStore() { return store; }
+    
+    public long getSize() { return size; }
+    
+    // Blocos do conteúdo; o array não deve ser alterado
+    Block[] getBlocks() { return blocks; }
+    
+    // Conteúdo formado por blocos que já têm uma referência para ele (lidos da imagem)
+    static FileData fromBlocks(BlockStore store, Block[] blocks, long size) {
+        return blocks.length == 0 ? store.getEmpty() : sized(store, blocks, size);
+    }
+    
+    // Ponto único de criação de conteúdo não vazio: confere que o número de blocos e o
+    // tamanho do último (a cauda) correspondem a size, e marca os blocos de um arquivo
+    // grande, que o compactador comprime assim que deixarem de ser lidos
+    private static FileData sized(BlockStore store, Block[] blocks, long size) {
+        int blockSize = BlockStore.BLOCK_SIZE;
+        if (blocks.length != (size + blockSize - 1) / blockSize
+                || blocks[blocks.length - 1].length() != size - (long) (blocks.length - 1) * blockSize) {
+            throw new IllegalStateException(blocks.length + " blocos não formam um conteúdo de " + size + " bytes");
+        }
+        long threshold = store.getCompressionThreshold();
+        if (threshold > 0 && size >= threshold) {
+            for (Block block : blocks) {
+                block.markLarge();
+            }
+        }
+        return new FileData(store, blocks, size);
+    }
+    
+    public FileData retain() {
+        if (blocks.length > 0) references.incrementAndGet();
+        return this;
+    }
+    
+    public void release() {
+        if (blocks.length == 0 || references.decrementAndGet() > 0) return;
+        for (Block block : blocks) {
+            store.release(block);
+        }
+    }
+    
+    // Copia para dst os bytes a partir de offset; devolve quantos foram copiados ou -1 no fim
+    public int read(long offset, ByteBuffer dst) {
+        if (offset < 0) throw new IllegalArgumentException("Offset negativo: " + offset);
+        if (!dst.hasRemaining()) return 0;
+        if (offset >= size) return -1;
+        int copied = 0;
+        int index = (int) (offset / BlockStore.BLOCK_SIZE);
+        int position = (int) (offset % BlockStore.BLOCK_SIZE);
+        while (index < blocks.length && dst.hasRemaining()) {
+            Block block = blocks[index];
+            int length = Math.min(block.length() - position, dst.remaining());
+            dst.put(block.getData(), position, length);
+            copied += length;
+            index++;
+            position = 0;
+        }
+        return copied;
+    }
+    
+    // Devolve o conteúdo com src gravado em offset; um offset além do fim preenche o
+    // intervalo com zeros. Sem bytes a gravar dentro do arquivo, devolve o próprio FileData.
+    public FileData write(long offset, ByteBuffer src) {
+        if (offset < 0) throw new IllegalArgumentException("Offset negativo: " + offset);
+        int length = src.remaining();
+        if (length == 0 && offset <= size) return this;
+        long end = offset + length;
+        long newSize = Math.max(size, end);
+        if (end < 0 || newSize > MAX_SIZE) {
+            throw new IllegalArgumentException("Arquivo grande demais: " + newSize + " bytes");
+        }
+        int blockSize = BlockStore.BLOCK_SIZE;
+        Block[] updated = new Block[(int) ((newSize + blockSize - 1) / blockSize)];
+        
+        // Blocos de firstDirty até lastDirty mudam: os que recebem bytes de src e, se a
+        // escrita começa além do fim, o antigo último bloco e os intermediários
+        int firstDirty = (int) (Math.min(offset, size) / blockSize);
+        int lastDirty = (int) ((end - 1) / blockSize);
+        byte[] written = new byte[length];
+        src.get(written);
+        
+        for (int i = 0; i < updated.length; i++) {
+            if ((i < firstDirty || i > lastDirty) && i < blocks.length) {
+                updated[i] = share(store, blocks[i]);
+                continue;
+            }
+            long blockStart = (long) i * blockSize;
+            byte[] bytes = new byte[(int) Math.min(blockSize, newSize - blockStart)];
+            if (i < blocks.length) {
+                System.arraycopy(blocks[i].getData(), 0, bytes, 0, blocks[i].length());
+            }
+            long from = Math.max(offset, blockStart);
+            long to = Math.min(end, blockStart + bytes.length);
+            if (from < to) {
+                System.arraycopy(written, (int) (from - offset), bytes, (int) (from - blockStart), (int) (to - from));
+            }
+            updated[i] = store.intern(bytes, 0, bytes.length);
+        }
+        return sized(store, updated, newSize);
+    }
+    
+    // Devolve o conteúdo cortado em newSize bytes; tamanhos maiores não mudam nada
+    public FileData truncate(long newSize) {
+        if (newSize < 0) throw new IllegalArgumentException("Tamanho negativo: " + newSize);
+        if (newSize >= size) return this;
+        if (newSize == 0) return store.getEmpty();
+        int blockSize = BlockStore.BLOCK_SIZE;
+        Block[] updated = new Block[(int) ((newSize + blockSize - 1) / blockSize)];
+        for (int i = 0; i < updated.length - 1; i++) {
+            updated[i] = share(store, blocks[i]);
+        }
+        int last = updated.length - 1;
+        int tail = (int) (newSize - (long) last * blockSize);
+        if (tail == blocks[last].length()) {
+            updated[last] = share(store, blocks[last]);
+        } else {
+            updated[last] = store.intern(blocks[last].getData(), 0, tail);
+        }
+        return sized(store, updated, newSize);
+    }
+    
+    // Mais uma referência a um bloco deste conteúdo, para o FileData novo. Se a última
+    // referência acabou de ser liberada (este FileData já foi solto por outra thread), o
+    // bloco não pode voltar à vida: o conteúdo é internado de novo, como em BlockStore.intern
+    private static Block share(BlockStore store, Block block) {
+        return block.tryRetain() ? block : store.intern(block.getData(), 0, block.length());
+    }
+    
+    public byte[] toBytes() {
+        byte[] bytes = new byte[(int) size];
+        int offset = 0;
+        for (Block block : blocks) {
+            System.arraycopy(block.getData(), 0, bytes, offset, block.length());
+            offset += block.length();
+        }
+        return bytes;
+    }
+    
+    public void writeTo(OutputStream out) throws IOException {
+        for (Block block : blocks) {
+            out.write(block.getData());
+        }
+    }
+}
+
+// Classe que representa um arquivo
+//
+// O conteúdo fica em blocos (FileData), que o BlockStore pode manter comprimidos sem que
+// o arquivo perceba. getContent() o decodifica inteiro como UTF-8;
+// read/write/append/truncate trabalham com trechos em bytes sem materializar o arquivo.
+// Arquivos carregados da imagem começam com o conteúdo só no disco (StoredContent) e
+// o trazem para a memória no primeiro acesso.
+class File extends FileSystemItem {
+    private volatile FileData data;
+    private StoredContent stored;
+    
+    public File(String name, BlockStore store) {
+        super(name);
+        this.data = store.getEmpty();
+    }
+    
+    public File(String name, BlockStore store, String content) {
+        this(name, store, content.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    public File(String name, BlockStore store, byte[] content) {
+        super(name);
+        this.data = FileData.of(store, content);
+    }
+    
+    private File(String name, FileData data) {
+        super(name);
+        this.data = data;
+    }
+    
+    File(String name, StoredContent stored) {
+        super(name);
+        this.stored = stored;
+    }
+    
+    @Override
+    public boolean isDirectory() { return false; }
+    
+    @Override
+    public String getType() { return "FILE"; }
+    
+    public String getContent() { return new String(data().toBytes(), StandardCharsets.UTF_8); }
+    
+    public long getSize() {
+        FileData current = data;
+        if (current != null) return current.getSize();
+        synchronized (this) {
+            return data != null ? data.getSize() : stored.getSize();
+        }
+    }
+    
+    // Conteúdo em memória, lido da imagem se ainda não tiver sido
+    private FileData data() {
+        FileData current = data;
+        if (current != null) return current;
+        synchronized (this) {
+            if (data == null) {
+                data = stored.load();
+                stored = null;
+            }
+            return data;
+        }
+    }
+    
+    // Para o checkpoint: o conteúdo que ainda está só na imagem, ou null se já está em memória
+    synchronized StoredContent getStoredContent() { return stored; }
+    
+    // Referência adicional ao conteúdo atual; deve ser devolvida com FileData.release()
+    public FileData retainData() { return data().retain(); }
+    
+    // Cópia O(1): o novo arquivo compartilha os blocos até que um dos dois seja alterado
+    public synchronized File copyAs(String name) {
+        if (data == null) return new File(name, stored);
+        return new File(name, data.retain());
+    }
+    
+    public synchronized void setContent(String content) {
+        replaceData(FileData.of(data().getStore(), content.getBytes(StandardCharsets.UTF_8)));
+    }
+    
+    // Lê a partir de offset até encher dst; devolve os bytes lidos ou -1 no fim do arquivo
+    public synchronized int read(long offset, ByteBuffer dst) {
+        return data().read(offset, dst);
+    }
+    
+    // Grava src em offset, estendendo o arquivo (com zeros no intervalo) se necessário
+    public synchronized int write(long offset, ByteBuffer src) {
+        int length = src.remaining();
+        replaceData(data().write(offset, src));
+        return length;
+    }
+    
+    // Grava src no fim do arquivo; devolve o offset em que foi gravado
+    public synchronized long append(ByteBuffer src) {
+        long offset = getSize();
+        write(offset, src);
+        return offset;
+    }
+    
+    // Reduz o arquivo para size bytes; tamanhos maiores que o atual não têm efeito
+    public synchronized void truncate(long size) {
+        replaceData(data().truncate(size));
+    }
+    
+    private void replaceData(FileData updated) {
+        FileData previous = data();
+        if (updated != previous) {
+            this.data = updated;
+            previous.release();
+            long growth = updated.getSize() - previous.getSize();
+            if (growth != 0 && parent != null) parent.addUsage(growth, 0, 0);
+        }
+        this.lastModified = System.currentTimeMillis();
+    }
+    
+    // Libera os blocos do arquivo; chamado quando ele sai da árvore
+    public synchronized void release() {
+        FileData previous = data;
+        this.data = previous != null ? previous.getStore().getEmpty() : stored.getImage().getStore().getEmpty();
+        this.stored = null;
+        if (previous != null) previous.release();
+    }
+}
+
+// Classe que representa um diretório
+//
+// A classe não é sincronizada: o simulador protege cada diretório com o lock da sua
+// faixa em LockStripes. Os filhos ficam em um array em ordem de inserção; posições
+// removidas viram null e só são reaproveitadas quando o array cheio é compactado. Com até INDEX_THRESHOLD filhos a
+// busca percorre o array; acima disso uma tabela de espalhamento aberta guarda, para
+// cada nome, a posição do filho no array, tornando busca, inserção e remoção O(1) com
+// poucos bytes por entrada.
+//
+// A listagem em ordem de nome usa um índice ordenado (TreeMap de nome para filho) montado
+// na primeira leitura e, a partir daí, atualizado a cada inclusão, remoção e renomeação
+// em O(log n). Cada página custa O(log n + página) mesmo com o diretório mudando entre
+// uma página e outra; diretórios nunca listados por nome não pagam pelo índice.
+//
+// Cada diretório mantém os totais da sua subárvore (bytes, arquivos e diretórios, sem
+// contar ele mesmo). Incluir ou remover um filho e mudar o tamanho de um arquivo somam a
+// diferença em todos os ancestrais, de modo que o uso de uma subárvore (du) custa O(1).
+// Os totais são atualizados atomicamente, porque cópias paralelas de subárvores alteram
+// diretórios diferentes com o mesmo ancestral ao mesmo tempo.
+class Directory extends FileSystemItem {
+    private static final int INDEX_THRESHOLD = 8;
+    private static final FileSystemItem[] NO_CHILDREN = new FileSystemItem[0];
+    private static final int EMPTY_SLOT = 0;
+    private static final int DELETED_SLOT = -1;
+    private static final AtomicLongFieldUpdater<Directory> TOTAL_BYTES =
+            AtomicLongFieldUpdater.newUpdater(Directory.class, "totalBytes");
+    private static final AtomicIntegerFieldUpdater<Directory> TOTAL_FILES =
+            AtomicIntegerFieldUpdater.newUpdater(Directory.class, "totalFiles");
+    private static final AtomicIntegerFieldUpdater<Directory> TOTAL_DIRECTORIES =
+            AtomicIntegerFieldUpdater.newUpdater(Directory.class, "totalDirectories");
+    
+    private FileSystemItem[] children;
+    private int used;
+    private int childCount;
+    // Posição + 1 no array children, EMPTY_SLOT ou DELETED_SLOT; null em diretórios pequenos
+    private int[] slots;
+    private volatile TreeMap<String, FileSystemItem> sortedIndex;
+    private volatile boolean removed;
+    // Marcas do cache de caminhos (DentryCache): a geração muda quando o diretório sai do
+    // seu caminho, e as chegadas quando aparece um diretório filho
+    private volatile long generation;
+    private volatile long arrivals;
+    private volatile long totalBytes;
+    private volatile int totalFiles;
+    private volatile int totalDirectories;
+    
+    public Directory(String name) {
+        super(name);
+        this.children = NO_CHILDREN;
+    }
+    
+    @Override
+    public boolean isDirectory() { return true; }
+    
+    @Override
+    public String getType() { return "DIRECTORY"; }
+    
+    // Visão somente leitura dos filhos, em ordem de inserção
+    public Collection<FileSystemItem> getChildren() {
+        return new AbstractCollection<FileSystemItem>() {
+            @Override
+            public Iterator<FileSystemItem> iterator() {
+                return new Iterator<FileSystemItem>() {
+                    private int position = advance(0);
+                    
+                    private int advance(int from) {
+                        while (from < used && children[from] == null) from++;
+                        return from;
+                    }
+                    
+                    @Override
+                    public boolean hasNext() { return position < used; }
+                    
+                    @Override
+                    public FileSystemItem next() {
+                        if (position >= used) throw new NoSuchElementException();
+                        FileSystemItem item = children[position];
+                        position = advance(position + 1);
+                        return item;
+                    }
+                };
+            }
+            
+            @Override
+            public int size() { return childCount; }
+        };
+    }
+    
+    public int getChildCount() { return childCount; }
+    
+    // Até limit filhos depois do filho after (null para começar do início), em ordem de
+    // inserção ou de nome. Em ordem de inserção, devolve null se after não for um filho;
+    // em ordem de nome, after não precisa mais existir.
+    public List<FileSystemItem> page(String after, int limit, boolean sorted) {
+        List<FileSystemItem> page = new ArrayList<>(Math.min(limit, childCount));
+        if (sorted) {
+            TreeMap<String, FileSystemItem> index = sortedIndex();
+            for (FileSystemItem item : (after == null ? index : index.tailMap(after, false)).values()) {
+                if (page.size() == limit) break;
+                page.add(item);
+            }
+            return page;
+        }
+        int position = 0;
+        if (after != null) {
+            position = positionOf(after) + 1;
+            if (position == 0) return null;
+        }
+        for (int i = position; i < used && page.size() < limit; i++) {
+            if (children[i] != null) page.add(children[i]);
+        }
+        return page;
+    }
+    
+    // Montado sob o lock de leitura; leitores simultâneos podem montar cópias iguais
+    private TreeMap<String, FileSystemItem> sortedIndex() {
+        TreeMap<String, FileSystemItem> index = sortedIndex;
+        if (index == null) {
+            index = new TreeMap<>();
+            for (FileSystemItem child : getChildren()) {
+                index.put(child.getName(), child);
+            }
+            sortedIndex = index;
+        }
+        return index;
+    }
+    
+    // Indica que o diretório foi removido da árvore; nada mais pode ser criado nele
+    public boolean isRemoved() { return removed; }
+    
+    public void markRemoved() { this.removed = true; }
+    
+    // Alteradas sob o lock de escrita do pai (geração) ou do próprio diretório (chegadas)
+    public long getGeneration() { return generation; }
+    public long getArrivals() { return arrivals; }
+    void setGeneration(long generation) { this.generation = generation; }
+    void setArrivals(long arrivals) { this.arrivals = arrivals; }
+    
+    public boolean isEmpty() { return childCount == 0; }
+    
+    // Totais da subárvore, sem contar o próprio diretório
+    public long getTotalBytes() { return totalBytes; }
+    public int getTotalFiles() { return totalFiles; }
+    public int getTotalDirectories() { return totalDirectories; }
+    
+    // Soma as diferenças aos totais deste diretório e de todos os seus ancestrais
+    void addUsage(long bytes, int files, int directories) {
+        for (Directory dir = this; dir != null; dir = dir.parent) {
+            if (bytes != 0) TOTAL_BYTES.addAndGet(dir, bytes);
+            if (files != 0) TOTAL_FILES.addAndGet(dir, files);
+            if (directories != 0) TOTAL_DIRECTORIES.addAndGet(dir, directories);
+        }
+    }
+    
+    // Soma (sign = 1) ou subtrai (sign = -1) o uso de um filho nos totais
+    private void addUsageOf(FileSystemItem item, int sign) {
+        if (item.isDirectory()) {
+            Directory dir = (Directory) item;
+            addUsage(sign * dir.totalBytes, sign * dir.totalFiles, sign * (dir.totalDirectories + 1));
+        } else {
+            addUsage(sign * ((File) item).getSize(), sign, 0);
+        }
+    }
+    
+    // Adiciona um filho; retorna false se já existir um item com o mesmo nome
+    public boolean addChild(FileSystemItem item) {
+        if (!insert(item)) return false;
+        addUsageOf(item, 1);
+        this.lastModified = System.currentTimeMillis();
+        return true;
+    }
+    
+    // Adiciona um filho carregado de snapshot sem alterar a data de modificação
+    public void restoreChild(FileSystemItem item) {
+        if (insert(item)) addUsageOf(item, 1);
+    }
+    
+    public boolean removeChild(String name) {
+        int position = positionOf(name);
+        if (position < 0) return false;
+        addUsageOf(children[position], -1);
+        if (slots != null) {
+            slots[slotOf(name)] = DELETED_SLOT;
+        }
+        children[position] = null;
+        childCount--;
+        if (sortedIndex != null) sortedIndex.remove(name);
+        this.lastModified = System.currentTimeMillis();
+        return true;
+    }
+    
+    // Renomeia um filho mantendo o índice consistente; false se o nome novo já existir
+    public boolean renameChild(String oldName, String newName) {
+        int position = positionOf(oldName);
+        if (position < 0 || positionOf(newName) >= 0) return false;
+        FileSystemItem item = children[position];
+        if (slots != null) {
+            // Reinsere no fim, como em um diretório que recebe uma entrada nova
+            slots[slotOf(oldName)] = DELETED_SLOT;
+            children[position] = null;
+            childCount--;
+            item.setName(newName);
+            insert(item);
+        } else {
+            item.setName(newName);
+        }
+        TreeMap<String, FileSystemItem> index = sortedIndex;
+        if (index != null) {
+            index.remove(oldName);
+            index.put(newName, item);
+        }
+        this.lastModified = System.currentTimeMillis();
+        return true;
+    }
+    
+    public FileSystemItem findChild(String name) {
+        int position = positionOf(name);
+        return position >= 0 ? children[position] : null;
+    }
+    
+    private boolean insert(FileSystemItem item) {
+        if (positionOf(item.getName()) >= 0) return false;
+        if (used == children.length) {
+            grow();
+        }
+        children[used] = item;
+        if (slots != null) {
+            slots[freeSlotFor(item.getName())] = used + 1;
+        }
+        used++;
+        childCount++;
+        if (sortedIndex != null) sortedIndex.put(item.getName(), item);
+        item.parent = this;
+        return true;
+    }
+    
+    // Abre espaço no fim do array: compacta se houver muitas posições removidas,
+    // senão dobra a capacidade; a tabela é refeita para as posições novas
+    private void grow() {
+        int capacity = childCount < used / 2 ? Math.max(4, used) : Math.max(4, used * 2);
+        FileSystemItem[] compacted = capacity == children.length ? children : new FileSystemItem[capacity];
+        int count = 0;
+        for (int i = 0; i < used; i++) {
+            if (children[i] != null) compacted[count++] = children[i];
+        }
+        Arrays.fill(compacted, count, used, null);
+        children = compacted;
+        used = count;
+        
+        if (capacity <= INDEX_THRESHOLD) {
+            slots = null;
+            return;
+        }
+        slots = new int[capacity * 2];
+        for (int i = 0; i < used; i++) {
+            slots[freeSlotFor(children[i].getName())] = i + 1;
+        }
+    }
+    
+    private int positionOf(String name) {
+        if (slots == null) {
+            for (int i = 0; i < used; i++) {
+                FileSystemItem child = children[i];
+                if (child != null && child.getName().equals(name)) return i;
+            }
+            return -1;
+        }
+        int slot = slotOf(name);
+        return slot >= 0 ? slots[slot] - 1 : -1;
+    }
+    
+    // Sondagem linear. A tabela tem o dobro de posições da capacidade do array e cada
+    // posição marcada como removida corresponde a uma posição nula do array, então
+    // sempre sobram posições vazias para encerrar a busca.
+    private int slotOf(String name) {
+        int mask = slots.length - 1;
+        for (int slot = spread(name) & mask; ; slot = (slot + 1) & mask) {
+            int entry = slots[slot];
+            if (entry == EMPTY_SLOT) return -1;
+            if (entry != DELETED_SLOT && children[entry - 1].getName().equals(name)) return slot;
+        }
+    }
+    
+    private int freeSlotFor(String name) {
+        int mask = slots.length - 1;
+        for (int slot = spread(name) & mask; ; slot = (slot + 1) & mask) {
+            if (slots[slot] == EMPTY_SLOT || slots[slot] == DELETED_SLOT) return slot;
+        }
+    }
+    
+    private static int spread(String name) {
+        int hash = name.hashCode() * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+}
+
+// Códigos das operações gravadas no journal
+enum JournalOp {
+    INIT(1, "Sistema de arquivos inicializado"),
+    CREATE_FILE(2, "Arquivo: %s"),
+    CREATE_DIR(3, "Diretório: %s"),
+    COPY_FILE(4, "Origem: %s -> Destino: %s"),
+    DELETE_FILE(5, "Arquivo: %s"),
+    DELETE_DIR(6, "Diretório: %s"),
+    RENAME_FILE(7, "De: %s Para: %s"),
+    RENAME_DIR(8, "De: %s Para: %s"),
+    LIST_DIR(9, "Diretório: %s"), // Só em journais antigos: listagens não são mais registradas
+    COMMIT(10, "Transação confirmada"),
+    ABORT(11, "Transação abortada"),
+    WRITE(12, "Arquivo: %s Offset: %s"),
+    APPEND(13, "Arquivo: %s"),
+    TRUNCATE(14, "Arquivo: %s Tamanho: %s"),
+    MOVE(15, "De: %s Para: %s"),
+    COPY_TREE(16, "Origem: %s -> Destino: %s"),
+    DELETE_TREE(17, "Diretório: %s");
+    
+    private static final JournalOp[] BY_CODE = new JournalOp[32];
+    static {
+        for (JournalOp op : values()) {
+            BY_CODE[op.code] = op;
+        }
+    }
+    
+    private final byte code;
+    private final String format;
+    
+    JournalOp(int code, String format) {
+        this.code = (byte) code;
+        this.format = format;
+    }
+    
+    public byte getCode() { return code; }
+    
+    public String describe(String[] args) {
+        return String.format(format, (Object[]) args);
+    }
+    
+    public static JournalOp fromCode(byte code) {
+        return code >= 0 && code < BY_CODE.length ? BY_CODE[code] : null;
+    }
+}
+
+// Classe para registrar operações no journal
+class JournalEntry {
+    private static final DateTimeFormatter FORMATTER =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(ZoneId.systemDefault());
+    private static final byte[] EMPTY = new byte[0];
+    private static final String[] NO_ARGS = new String[0];
+    
+    public enum Status { PENDING, COMMITTED, ABORTED }
+    
+    private JournalOp operation;
+    private long sequence;
+    private long transactionId;
+    private long timestamp;
+    private String[] args;
+    private byte[] payload;
+    private Status status;
+    
+    public JournalEntry(JournalOp operation, long sequence, long transactionId, long timestamp,
+                        String[] args, byte[] payload) {
+        this.operation = operation;
+        this.sequence = sequence;
+        this.transactionId = transactionId;
+        this.timestamp = timestamp;
+        this.args = args != null ? args : NO_ARGS;
+        this.payload = payload != null ? payload : EMPTY;
+        this.status = Status.PENDING;
+    }
+    
+    public JournalOp getOperation() { return operation; }
+    public long getSequence() { return sequence; }
+    public long getTransactionId() { return transactionId; }
+    public long getTimestamp() { return timestamp; }
+    public String[] getArgs() { return args; }
+    public byte[] getPayload() { return payload; }
+    public String getPayloadAsString() { return new String(payload, StandardCharsets.UTF_8); }
+    public String getDetails() { return operation.describe(args); }
+    public Status getStatus() { return status; }
+    public boolean isCommitted() { return status == Status.COMMITTED; }
+    
+    public void commit() { this.status = Status.COMMITTED; }
+    public void abort() { this.status = Status.ABORTED; }
+    
+    @Override
+    public String toString() {
+        return String.format("[%s] #%d T%d %s: %s (Status: %s)", 
+                FORMATTER.format(Instant.ofEpochMilli(timestamp)), sequence, transactionId,
+                operation, getDetails(), status);
+    }
+}
+
+// Transação do journal: um grupo de operações confirmado ou abortado de uma só vez.
+// Na reaplicação, as operações de uma transação só são aplicadas se o seu COMMIT
+// estiver no arquivo, e então todas juntas, na ordem em que foram registradas.
+class JournalTransaction {
+    private final Journal journal;
+    private final long id;
+    private final List<JournalEntry> entries;
+    
+    JournalTransaction(Journal journal, long id) {
+        this.journal = journal;
+        this.id = id;
+        this.entries = new ArrayList<>(1);
+    }
+    
+    public long getId() { return id; }
+    
+    List<JournalEntry> getEntries() { return entries; }
+    
+    public void log(JournalOp operation, String... args) {
+        journal.log(this, operation, null, args);
+    }
+    
+    public void log(JournalOp operation, byte[] payload, String... args) {
+        journal.log(this, operation, payload, args);
+    }
+    
+    public void commit() {
+        journal.commitOperation(id);
+    }
+    
+    public void abort() {
+        journal.abortOperation(id);
+    }
+}
+
+// Camada de E/S do arquivo do journal: escrita sequencial no fim e fsync
+//
+// A implementação padrão (open) usa um FileChannel; o teste de consistência
+// (--crashtest) injeta uma que simula quedas no meio das escritas e fsyncs perdidos.
+interface JournalIo extends Closeable {
+    interface Opener {
+        // Abre o arquivo para escrita no fim, criando-o se não existir
+        JournalIo open(Path path) throws IOException;
+    }
+    
+    long size() throws IOException;
+    
+    // Grava todos os bytes restantes de data
+    void write(ByteBuffer data) throws IOException;
+    
+    void force() throws IOException;
+    
+    static JournalIo open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        return new JournalIo() {
+            @Override
+            public long size() throws IOException { return channel.size(); }
+            
+            @Override
+            public void write(ByteBuffer data) throws IOException {
+                while (data.hasRemaining()) {
+                    channel.write(data);
+                }
+            }
+            
+            @Override
+            public void force() throws IOException { channel.force(false); }
+            
+            @Override
+            public void close() throws IOException { channel.close(); }
+        };
+    }
+}
+
+// Classe responsável pelo sistema de journaling (write-ahead log append-only)
+//
+// Formato em disco: cabeçalho (magic + versão) seguido de registros
+// [tamanho][op][sequência][transação][timestamp][nº args]([tamanho][UTF-8])*[tamanho payload][payload][CRC32C],
+// onde o tamanho cobre do op até o fim do payload e o CRC32C é calculado sobre esse mesmo trecho.
+// Cada registro pertence a uma transação, encerrada por um registro COMMIT ou ABORT.
+//
+// Os métodos públicos são sincronizados, de forma que várias threads podem registrar
+// e commitar operações ao mesmo tempo.
+//
+// Uma falha ao abrir, gravar ou sincronizar o arquivo fica registrada (getFailure) e
+// encerra a escrita: a partir dela commitOperation devolve false e o simulador recusa
+// as alterações com IO_ERROR, como um sistema de arquivos remontado só para leitura.
+class Journal {
+    private static final int MAGIC = 0x46534A4C; // "FSJL"
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 8;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int REPLAY_BUFFER_SIZE = 1024 * 1024;
+    private static final int MAX_RECORD_SIZE = 1 << 30;
+    
+    private static final int RECENT_ENTRIES = 1000;
+    
+    // Um fsync por commit: uma operação confirmada sobrevive a uma queda
+    public static final int DEFAULT_GROUP_COMMIT_SIZE = 1;
+    
+    private ArrayDeque<JournalEntry> entries;
+    private Map<Long, JournalTransaction> active;
+    private String journalFile;
+    private JournalIo.Opener opener;
+    private JournalIo channel;
+    private ByteBuffer buffer;
+    private CRC32C crc;
+    private long nextSequence;
+    private long nextTransactionId;
+    private int groupCommitSize;
+    private int unsyncedCommits;
+    private IOException failure;
+    private volatile boolean verbose;
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final LatencyHistogram writeLatency = new LatencyHistogram();
+    private final LatencyHistogram fsyncLatency = new LatencyHistogram();
+    
+    public Journal(String journalFile) {
+        this(journalFile, JournalIo::open);
+    }
+    
+    public Journal(String journalFile, JournalIo.Opener opener) {
+        this.journalFile = journalFile;
+        this.opener = opener;
+        this.entries = new ArrayDeque<>();
+        this.active = new HashMap<>();
+        this.verbose = false;
+        this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        this.crc = new CRC32C();
+        this.nextSequence = 1;
+        this.nextTransactionId = 1;
+        this.groupCommitSize = DEFAULT_GROUP_COMMIT_SIZE;
+    }
+    
+    // Define quantos commits são agrupados por force(); 0 desliga o fsync. Com n > 1, uma
+    // queda pode perder até n - 1 commits já confirmados.
+    public synchronized void setGroupCommitSize(int groupCommitSize) {
+        this.groupCommitSize = Math.max(0, groupCommitSize);
+    }
+    
+    public synchronized int getGroupCommitSize() { return groupCommitSize; }
+    
+    // Primeira falha de E/S do journal, ou null
+    public synchronized IOException getFailure() { return failure; }
+    
+    // Liga ou desliga as mensagens "Journal: ..." de cada registro e commit
+    public void setVerbose(boolean verbose) { this.verbose = verbose; }
+    
+    public synchronized long getLastSequence() { return nextSequence - 1; }
+    
+    // Bytes gravados no arquivo e latências das escritas e dos fsync desde a abertura
+    public long getBytesWritten() { return bytesWritten.get(); }
+    public LatencyHistogram getWriteLatency() { return writeLatency; }
+    public LatencyHistogram getFsyncLatency() { return fsyncLatency; }
+    
+    public long logOperation(JournalOp operation, String... args) {
+        return logOperation(operation, null, args);
+    }
+    
+    // Inicia uma transação com várias operações
+    public synchronized JournalTransaction beginTransaction() {
+        JournalTransaction transaction = new JournalTransaction(this, nextTransactionId++);
+        active.put(transaction.getId(), transaction);
+        return transaction;
+    }
+    
+    // Registra uma operação em uma transação própria e devolve o id da transação,
+    // usado depois em commitOperation ou abortOperation
+    public synchronized long logOperation(JournalOp operation, byte[] payload, String... args) {
+        JournalTransaction transaction = beginTransaction();
+        log(transaction, operation, payload, args);
+        return transaction.getId();
+    }
+    
+    synchronized void log(JournalTransaction transaction, JournalOp operation, byte[] payload, String... args) {
+        if (!active.containsKey(transaction.getId())) {
+            throw new IllegalStateException("Transação " + transaction.getId() + " já encerrada");
+        }
+        JournalEntry entry = new JournalEntry(operation, nextSequence++, transaction.getId(),
+                System.currentTimeMillis(), args, payload);
+        transaction.getEntries().add(entry);
+        // Só as operações mais recentes ficam em memória, para o comando journal
+        if (entries.size() == RECENT_ENTRIES) entries.removeFirst();
+        entries.addLast(entry);
+        append(entry);
+        if (verbose) System.out.println("Journal: " + entry);
+    }
+    
+    // Grava o COMMIT (e o fsync, conforme o group commit). Devolve false se a transação
+    // não estava ativa ou se o registro não chegou ao arquivo; nesse caso as operações
+    // ficam abortadas e não podem ser aplicadas.
+    public synchronized boolean commitOperation(long transactionId) {
+        JournalTransaction transaction = active.remove(transactionId);
+        if (transaction == null) return false;
+        append(new JournalEntry(JournalOp.COMMIT, nextSequence++, transactionId, System.currentTimeMillis(), null, null));
+        flush();
+        unsyncedCommits++;
+        if (groupCommitSize > 0 && unsyncedCommits >= groupCommitSize) {
+            force();
+        }
+        if (failure != null) {
+            for (JournalEntry entry : transaction.getEntries()) {
+                entry.abort();
+            }
+            return false;
+        }
+        for (JournalEntry entry : transaction.getEntries()) {
+            entry.commit();
+        }
+        if (verbose) System.out.println("Journal: Transação T" + transactionId + " commitada (" + transaction.getEntries().size() + " operações)");
+        return true;
+    }
+    
+    // Descarta a transação; as suas operações nunca serão reaplicadas
+    public synchronized void abortOperation(long transactionId) {
+        JournalTransaction transaction = active.remove(transactionId);
+        if (transaction == null) return;
+        for (JournalEntry entry : transaction.getEntries()) {
+            entry.abort();
+        }
+        append(new JournalEntry(JournalOp.ABORT, nextSequence++, transactionId, System.currentTimeMillis(), null, null));
+        if (verbose) System.out.println("Journal: Transação T" + transactionId + " abortada");
+    }
+    
+    // Aborta a transação se ela ainda não foi commitada; usado nos caminhos de erro
+    public synchronized void abortIfActive(long transactionId) {
+        if (active.containsKey(transactionId)) {
+            abortOperation(transactionId);
+        }
+    }
+    
+    // Operações registradas mais recentemente, da mais antiga para a mais nova
+    public synchronized List<JournalEntry> getRecentEntries() {
+        return new ArrayList<>(entries);
+    }
+    
+    // Grava o buffer e força os commits pendentes para o disco
+    public synchronized void sync() {
+        flush();
+        force();
+    }
+    
+    public synchronized void close() {
+        if (channel == null) return;
+        sync();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("Erro ao fechar journal: " + e.getMessage());
+        }
+        channel = null;
+    }
+    
+    // Lê os segmentos e o journal atual, reaplica as operações commitadas após
+    // afterSequence (já contidas no snapshot) e abre o arquivo para escrita
+    public synchronized long recover(Consumer<JournalEntry> applier, long afterSequence) {
+        nextSequence = Math.max(nextSequence, afterSequence + 1);
+        ReplayState state = new ReplayState(applier, afterSequence);
+        for (Path segment : listSegments()) {
+            loadJournal(segment, state);
+        }
+        loadJournal(Paths.get(journalFile), state);
+        openChannel();
+        return state.replayed;
+    }
+    
+    // Fecha o journal atual como segmento "<journal>.<última sequência>" e inicia um novo.
+    // Transações ainda em andamento são regravadas no novo arquivo, para que continuem
+    // legíveis depois que o segmento antigo for apagado. Retorna a última sequência
+    // contida no segmento fechado.
+    public synchronized long rotate() {
+        long lastSequence = getLastSequence();
+        close();
+        try {
+            Path current = Paths.get(journalFile);
+            if (Files.exists(current)) {
+                Files.move(current, Paths.get(journalFile + "." + lastSequence), StandardCopyOption.ATOMIC_MOVE);
+            }
+        } catch (IOException e) {
+            System.err.println("Erro ao rotacionar journal: " + e.getMessage());
+        }
+        openChannel();
+        for (JournalTransaction transaction : active.values()) {
+            for (JournalEntry entry : transaction.getEntries()) {
+                append(entry);
+            }
+        }
+        flush();
+        return lastSequence;
+    }
+    
+    // Remove os segmentos cujas operações já estão todas no snapshot
+    public void deleteSegmentsUpTo(long sequence) {
+        for (Path segment : listSegments()) {
+            if (segmentSequence(segment) <= sequence) {
+                try {
+                    Files.deleteIfExists(segment);
+                } catch (IOException e) {
+                    System.err.println("Erro ao remover segmento do journal: " + e.getMessage());
+                }
+            }
+        }
+    }
+    
+    // Segmentos fechados por rotate(), em ordem crescente de sequência
+    private List<Path> listSegments() {
+        Path current = Paths.get(journalFile).toAbsolutePath();
+        String prefix = current.getFileName() + ".";
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(current.getParent(), prefix + "*")) {
+            for (Path candidate : stream) {
+                if (segmentSequence(candidate) >= 0) {
+                    segments.add(candidate);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Erro ao listar segmentos do journal: " + e.getMessage());
+        }
+        segments.sort(Comparator.comparingLong(this::segmentSequence));
+        return segments;
+    }
+    
+    private long segmentSequence(Path segment) {
+        String name = segment.getFileName().toString();
+        String suffix = name.substring(name.lastIndexOf('.') + 1);
+        if (suffix.isEmpty() || !suffix.chars().allMatch(Character::isDigit)) return -1;
+        return Long.parseLong(suffix);
+    }
+    
+    private void openChannel() {
+        try {
+            channel = opener.open(Paths.get(journalFile));
+            if (channel.size() == 0) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION);
+                header.flip();
+                write(header);
+            }
+        } catch (IOException e) {
+            fail("Erro ao abrir journal: ", e);
+        }
+    }
+    
+    // Serializa o registro no buffer; só vai para o arquivo no próximo flush
+    private void append(JournalEntry entry) {
+        String[] args = entry.getArgs();
+        byte[][] encodedArgs = new byte[args.length][];
+        int bodySize = 1 + 8 + 8 + 8 + 1 + 4 + entry.getPayload().length;
+        for (int i = 0; i < args.length; i++) {
+            encodedArgs[i] = args[i].getBytes(StandardCharsets.UTF_8);
+            bodySize += 4 + encodedArgs[i].length;
+        }
+        int recordSize = 4 + bodySize + 4;
+        if (recordSize > buffer.remaining()) {
+            flush();
+        }
+        ByteBuffer target = recordSize > buffer.capacity() ? ByteBuffer.allocate(recordSize) : buffer;
+        int start = target.position();
+        target.putInt(bodySize);
+        target.put(entry.getOperation().getCode());
+        target.putLong(entry.getSequence());
+        target.putLong(entry.getTransactionId());
+        target.putLong(entry.getTimestamp());
+        target.put((byte) encodedArgs.length);
+        for (byte[] arg : encodedArgs) {
+            target.putInt(arg.length);
+            target.put(arg);
+        }
+        target.putInt(entry.getPayload().length);
+        target.put(entry.getPayload());
+        ByteBuffer body = target.duplicate();
+        body.position(start + 4).limit(start + 4 + bodySize);
+        crc.reset();
+        crc.update(body);
+        target.putInt((int) crc.getValue());
+        if (target != buffer) {
+            target.flip();
+            write(target);
+        }
+    }
+    
+    private void flush() {
+        if (buffer.position() == 0) return;
+        buffer.flip();
+        write(buffer);
+        buffer.clear();
+    }
+    
+    private void write(ByteBuffer data) {
+        if (failure != null) return;
+        if (channel == null) {
+            fail("Erro ao salvar journal: ", new IOException("journal não está aberto"));
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            bytesWritten.addAndGet(data.remaining());
+            channel.write(data);
+            writeLatency.record(System.nanoTime() - start);
+        } catch (IOException e) {
+            fail("Erro ao salvar journal: ", e);
+        }
+    }
+    
+    private void force() {
+        unsyncedCommits = 0;
+        if (failure != null || channel == null) return;
+        long start = System.nanoTime();
+        try {
+            channel.force();
+            fsyncLatency.record(System.nanoTime() - start);
+        } catch (IOException e) {
+            fail("Erro ao sincronizar journal: ", e);
+        }
+    }
+    
+    // Guarda a primeira falha; depois dela nada mais é gravado, porque o arquivo pode ter
+    // ficado com um registro pela metade ou com páginas que o fsync não garantiu
+    private void fail(String message, IOException e) {
+        if (failure != null) return;
+        failure = e;
+        System.err.println(message + e.getMessage());
+    }
+    
+    // Estado da reaplicação compartilhado entre os segmentos do journal
+    private static class ReplayState {
+        final Consumer<JournalEntry> applier;
+        final long afterSequence;
+        final Map<Long, List<JournalEntry>> pending = new HashMap<>();
+        long replayed;
+        
+        ReplayState(Consumer<JournalEntry> applier, long afterSequence) {
+            this.applier = applier;
+            this.afterSequence = afterSequence;
+        }
+    }
+    
+    // Percorre o arquivo em blocos, validando tamanho e CRC de cada registro.
+    // Um registro incompleto ou corrompido no fim é tratado como escrita interrompida e truncado.
+    private void loadJournal(Path path, ReplayState state) {
+        if (!Files.exists(path)) return;
+        
+        boolean unknownFormat = false;
+        try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long fileSize = in.size();
+            if (fileSize == 0) return;
+            if (fileSize < HEADER_SIZE) {
+                // Queda durante a gravação do cabeçalho: nenhum registro chegou ao arquivo
+                in.truncate(0);
+                in.force(true);
+                System.err.println("Journal: cabeçalho incompleto descartado (" + fileSize + " bytes)");
+                return;
+            }
+            
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining() && in.read(header) > 0) { }
+            header.flip();
+            unknownFormat = header.getInt() != MAGIC || header.getInt() != VERSION;
+            if (unknownFormat) return;
+            
+            ByteBuffer readBuffer = ByteBuffer.allocateDirect(REPLAY_BUFFER_SIZE);
+            long validEnd = HEADER_SIZE;
+            long position = HEADER_SIZE;
+            boolean eof = false;
+            
+            readBuffer.limit(0);
+            while (true) {
+                if (readBuffer.remaining() < 4 && !eof) {
+                    eof = fill(in, readBuffer);
+                    continue;
+                }
+                if (readBuffer.remaining() < 4) break;
+                
+                int bodySize = readBuffer.getInt(readBuffer.position());
+                if (bodySize < 30 || bodySize > MAX_RECORD_SIZE) break;
+                int recordSize = 4 + bodySize + 4;
+                // Um tamanho que passa do fim do arquivo vem de uma escrita interrompida ou
+                // corrompida; não vale a pena alocar o buffer para descobrir pelo CRC
+                if (position + recordSize > fileSize) break;
+                if (readBuffer.remaining() < recordSize) {
+                    if (eof) break;
+                    if (recordSize > readBuffer.capacity()) {
+                        ByteBuffer larger = ByteBuffer.allocateDirect(recordSize);
+                        larger.put(readBuffer);
+                        larger.flip();
+                        readBuffer = larger;
+                    }
+                    eof = fill(in, readBuffer);
+                    continue;
+                }
+                
+                JournalEntry entry = decode(readBuffer, bodySize);
+                if (entry == null) break;
+                position += recordSize;
+                validEnd = position;
+                nextSequence = Math.max(nextSequence, entry.getSequence() + 1);
+                nextTransactionId = Math.max(nextTransactionId, entry.getTransactionId() + 1);
+                
+                // O efeito de uma operação está no snapshot se o seu COMMIT foi gravado
+                // antes do checkpoint, por isso a comparação usa a sequência do COMMIT
+                if (entry.getOperation() == JournalOp.COMMIT) {
+                    List<JournalEntry> committed = state.pending.remove(entry.getTransactionId());
+                    if (committed != null && entry.getSequence() > state.afterSequence) {
+                        for (JournalEntry operation : committed) {
+                            operation.commit();
+                            state.applier.accept(operation);
+                            state.replayed++;
+                        }
+                    }
+                } else if (entry.getOperation() == JournalOp.ABORT) {
+                    state.pending.remove(entry.getTransactionId());
+                } else {
+                    // Uma transação regravada por rotate() aparece em dois segmentos;
+                    // a sequência distingue uma cópia repetida de uma operação nova
+                    List<JournalEntry> operations = state.pending.computeIfAbsent(entry.getTransactionId(), id -> new ArrayList<>(1));
+                    if (operations.isEmpty() || operations.get(operations.size() - 1).getSequence() < entry.getSequence()) {
+                        operations.add(entry);
+                    }
+                }
+            }
+            
+            if (validEnd < fileSize) {
+                in.truncate(validEnd);
+                in.force(true);
+                System.err.println("Journal: registro incompleto descartado (" + (fileSize - validEnd) + " bytes)");
+            }
+        } catch (IOException e) {
+            System.err.println("Erro ao carregar journal: " + e.getMessage());
+        } finally {
+            if (unknownFormat) {
+                archiveUnknownFormat(path);
+            }
+        }
+    }
+    
+    // Journais de versões anteriores não são legíveis; são preservados ao lado do novo
+    private void archiveUnknownFormat(Path path) {
+        Path archived = Paths.get(journalFile + ".old");
+        try {
+            Files.move(path, archived, StandardCopyOption.REPLACE_EXISTING);
+            System.err.println("Journal em formato desconhecido, arquivado em: " + archived);
+        } catch (IOException e) {
+            System.err.println("Erro ao arquivar journal: " + e.getMessage());
+        }
+    }
+    
+    // Completa o buffer de leitura; retorna true ao atingir o fim do arquivo
+    private boolean fill(FileChannel in, ByteBuffer readBuffer) throws IOException {
+        readBuffer.compact();
+        int read = 0;
+        while (readBuffer.hasRemaining() && (read = in.read(readBuffer)) > 0) { }
+        readBuffer.flip();
+        return read < 0;
+    }
+    
+    // Decodifica um registro completo a partir da posição atual; null se o CRC não confere
+    private JournalEntry decode(ByteBuffer readBuffer, int bodySize) {
+        int start = readBuffer.position() + 4;
+        ByteBuffer body = readBuffer.duplicate();
+        body.position(start).limit(start + bodySize);
+        crc.reset();
+        crc.update(body);
+        if ((int) crc.getValue() != readBuffer.getInt(start + bodySize)) return null;
+        
+        readBuffer.position(start);
+        JournalOp operation = JournalOp.fromCode(readBuffer.get());
+        long sequence = readBuffer.getLong();
+        long transactionId = readBuffer.getLong();
+        long timestamp = readBuffer.getLong();
+        int argc = readBuffer.get() & 0xFF;
+        String[] args = new String[argc];
+        for (int i = 0; i < argc; i++) {
+            byte[] arg = new byte[readBuffer.getInt()];
+            readBuffer.get(arg);
+            args[i] = new String(arg, StandardCharsets.UTF_8);
+        }
+        byte[] payload = new byte[readBuffer.getInt()];
+        readBuffer.get(payload);
+        readBuffer.getInt();
+        if (operation == null) return null;
+        return new JournalEntry(operation, sequence, transactionId, timestamp, args, payload);
+    }
+}
+
+// Classe que captura a árvore de diretórios para um checkpoint
+//
+// A captura não para as alterações. O checkpoint só trava todas as faixas para rodar o
+// journal e criar uma Capture (O(1)); a árvore é percorrida depois, em segundo plano,
+// com copy-on-write por item: antes da primeira alteração de um item (nome, datas,
+// filhos ou conteúdo) enquanto a captura está aberta, o simulador chama preserve(), que
+// guarda o estado do item como estava na rotação. O percurso usa esse estado guardado
+// ou, se o item não mudou, o atual. Cada item é decidido uma vez por captura, sob o
+// monitor do próprio item, de modo que o percurso e as alterações nunca discordam
+// sobre qual versão entra no snapshot.
+//
+// A cópia capturada é gravada como imagem (FileSystemImage). load() lê o formato
+// anterior, um fluxo com magic, versão e sequência do checkpoint, seguidos dos nós em
+// pré-ordem [tipo][nome][criação][modificação] + ([nº filhos] | [tamanho][conteúdo]) e
+// de um CRC32C final; ele só é usado para migrar snapshots antigos.
+class Snapshot {
+    private static final int MAGIC = 0x4653534E; // "FSSN"
+    private static final int VERSION = 1;
+    private static final byte TYPE_DIRECTORY = 0;
+    private static final byte TYPE_FILE = 1;
+    
+    // Cópia imutável de um nó, feita no momento do checkpoint. Num arquivo, content é o
+    // conteúdo em memória ou, se ele ainda não foi lido da imagem, stored aponta para ela.
+    static class Node {
+        final String name;
+        final long creationTime;
+        final long lastModified;
+        final FileData content;
+        final StoredContent stored;
+        final Node[] children;
+        
+        Node(Image image, Node[] children) {
+            this.name = image.name;
+            this.creationTime = image.creationTime;
+            this.lastModified = image.lastModified;
+            this.content = image.content;
+            this.stored = image.stored;
+            this.children = children;
+        }
+    }
+    
+    // Estado de um item no início da captura; num diretório, os filhos ainda como itens.
+    // Criado com o item estável: sob o seu monitor e o lock que protege a parte alterada.
+    static final class Image {
+        final String name;
+        final long creationTime;
+        final long lastModified;
+        final FileData content;
+        final StoredContent stored;
+        final FileSystemItem[] children;
+        
+        Image(FileSystemItem item) {
+            this.name = item.getName();
+            this.creationTime = item.getCreationTime();
+            this.lastModified = item.getLastModified();
+            if (item.isDirectory()) {
+                this.children = ((Directory) item).getChildren().toArray(new FileSystemItem[0]);
+                this.stored = null;
+                this.content = null;
+            } else {
+                File file = (File) item;
+                this.children = null;
+                this.stored = file.getStoredContent();
+                this.content = stored != null ? null : file.retainData();
+            }
+        }
+        
+        void release() {
+            if (content != null) content.release();
+        }
+    }
+    
+    // Captura aberta entre a rotação do journal e o fim do percurso da árvore
+    static final class Capture {
+        private static final AtomicInteger EPOCHS = new AtomicInteger();
+        
+        private final int epoch;
+        private final Map<FileSystemItem, Image> preserved;
+        private boolean closed;
+        
+        Capture() {
+            this.epoch = EPOCHS.incrementAndGet();
+            this.preserved = new ConcurrentHashMap<>();
+        }
+        
+        // Guarda o estado do item antes da sua primeira alteração nesta captura. Chamado
+        // com o lock que protege a parte a alterar (o do pai para nome e datas, o do
+        // diretório para os filhos, o monitor do arquivo para o conteúdo).
+        void preserve(FileSystemItem item) {
+            if (item.captureEpoch == epoch) return;
+            synchronized (item) {
+                if (item.captureEpoch == epoch) return;
+                Image image = new Image(item);
+                synchronized (this) {
+                    if (closed) {
+                        image.release();
+                        return;
+                    }
+                    preserved.put(item, image);
+                }
+                item.captureEpoch = epoch;
+            }
+        }
+        
+        // Estado do item para o snapshot: o guardado por preserve ou, se o item não mudou
+        // desde a rotação, o atual (lido sob o lock de leitura do diretório)
+        Image take(FileSystemItem item, LockStripes locks) {
+            Lock lock = item.isDirectory() ? locks.readLock((Directory) item) : null;
+            if (lock != null) lock.lock();
+            try {
+                synchronized (item) {
+                    if (item.captureEpoch == epoch) return preserved.remove(item);
+                    item.captureEpoch = epoch;
+                    return new Image(item);
+                }
+            } finally {
+                if (lock != null) lock.unlock();
+            }
+        }
+        
+        // Encerra a captura; estados guardados de itens que o percurso não visitou (itens
+        // criados depois da rotação) são devolvidos
+        synchronized void close() {
+            closed = true;
+            for (Image image : preserved.values()) {
+                image.release();
+            }
+            preserved.clear();
+        }
+    }
+    
+    private final Node root;
+    private final long sequence;
+    
+    private Snapshot(Node root, long sequence) {
+        this.root = root;
+        this.sequence = sequence;
+    }
+    
+    public long getSequence() { return sequence; }
+    
+    // Devolve as referências aos conteúdos copiados em capture
+    public void release() {
+        Deque<Node> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            Node node = stack.pop();
+            if (node.children != null) {
+                for (Node child : node.children) {
+                    stack.push(child);
+                }
+            } else if (node.content != null) {
+                node.content.release();
+            }
+        }
+    }
+    
+    // Copia a estrutura da árvore como estava ao abrir a captura (sem serializar nem
+    // tocar no disco), enquanto a árvore continua sendo alterada. O conteúdo dos arquivos
+    // é compartilhado: o snapshot guarda uma referência a cada FileData (imutável),
+    // devolvida em release() depois da gravação. Fecha a captura ao terminar.
+    public static Snapshot capture(Directory root, long sequence, Capture capture, LockStripes locks) {
+        try {
+            // Pós-ordem iterativa: cada quadro guarda o estado do diretório, o próximo
+            // filho e os nós já copiados
+            Deque<Frame> frames = new ArrayDeque<>();
+            frames.push(new Frame(capture.take(root, locks)));
+            Node result = null;
+            while (result == null) {
+                Frame frame = frames.peek();
+                if (frame.index < frame.nodes.length) {
+                    Image image = capture.take(frame.image.children[frame.index], locks);
+                    if (image.children != null) {
+                        frames.push(new Frame(image));
+                    } else {
+                        frame.nodes[frame.index++] = new Node(image, null);
+                    }
+                } else {
+                    frames.pop();
+                    Node node = new Node(frame.image, frame.nodes);
+                    if (frames.isEmpty()) {
+                        result = node;
+                    } else {
+                        Frame parent = frames.peek();
+                        parent.nodes[parent.index++] = node;
+                    }
+                }
+            }
+            return new Snapshot(result, sequence);
+        } finally {
+            capture.close();
+        }
+    }
+    
+    private static class Frame {
+        final Image image;
+        final Node[] nodes;
+        int index;
+        
+        Frame(Image image) {
+            this.image = image;
+            this.nodes = new Node[image.children.length];
+        }
+    }
+    
+    // Grava a cópia como imagem do sistema de arquivos
+    public void writeTo(Path path) throws IOException {
+        FileSystemImage.write(root, sequence, path);
+    }
+    
+    // Carrega um snapshot no formato anterior, com o conteúdo em store; null se não
+    // existir ou for inválido
+    public static Directory load(Path path, long[] sequenceOut, BlockStore store) {
+        if (!Files.exists(path)) return null;
+        try (InputStream fileIn = new BufferedInputStream(new FileInputStream(path.toFile()), 256 * 1024)) {
+            CheckedInputStream checked = new CheckedInputStream(fileIn, new CRC32C());
+            DataInputStream in = new DataInputStream(checked);
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                System.err.println("Snapshot em formato desconhecido ignorado: " + path);
+                return null;
+            }
+            long sequence = in.readLong();
+            
+            Directory root = null;
+            Deque<Directory> parents = new ArrayDeque<>();
+            Deque<int[]> remaining = new ArrayDeque<>();
+            do {
+                Directory parent = parents.peek();
+                byte type = in.readByte();
+                String name = new String(readBytes(in), StandardCharsets.UTF_8);
+                long creationDate = in.readLong();
+                long lastModified = in.readLong();
+                
+                FileSystemItem item;
+                int childCount = 0;
+                if (type == TYPE_DIRECTORY) {
+                    item = new Directory(name);
+                    childCount = in.readInt();
+                } else {
+                    item = new File(name, store, readBytes(in));
+                }
+                item.restoreDates(creationDate, lastModified);
+                
+                if (parent == null) {
+                    root = (Directory) item;
+                } else {
+                    parent.restoreChild(item);
+                    remaining.peek()[0]--;
+                }
+                if (type == TYPE_DIRECTORY) {
+                    parents.push((Directory) item);
+                    remaining.push(new int[] { childCount });
+                }
+                while (!remaining.isEmpty() && remaining.peek()[0] == 0) {
+                    remaining.pop();
+                    parents.pop();
+                }
+            } while (!parents.isEmpty());
+            
+            int expected = (int) checked.getChecksum().getValue();
+            if (in.readInt() != expected) {
+                System.err.println("Snapshot corrompido ignorado: " + path);
+                return null;
+            }
+            sequenceOut[0] = sequence;
+            return root;
+        } catch (IOException e) {
+            System.err.println("Erro ao carregar snapshot: " + e.getMessage());
+            return null;
+        }
+    }
+    
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return bytes;
+    }
+}
+
+// Conteúdo de arquivo que ainda está só na imagem do sistema de arquivos
+//
+// Guarda só a imagem mapeada e o número do inode; tamanho e blocos são lidos do inode
+// quando pedidos, e os bytes só passam para o BlockStore quando o arquivo é acessado
+// pela primeira vez.
+class StoredContent {
+    private final FileSystemImage image;
+    private final long inode;
+    
+    StoredContent(FileSystemImage image, long inode) {
+        this.image = image;
+        this.inode = inode;
+    }
+    
+    public FileSystemImage getImage() { return image; }
+    public int getFullBlocks() { return (int) (getSize() / FileSystemImage.BLOCK_SIZE); }
+    public long getTailOffset() { return image.tailOffset(inode); }
+    public int getTailLength() { return (int) (getSize() % FileSystemImage.BLOCK_SIZE); }
+    public long getSize() { return image.size(inode); }
+    
+    // Número, na imagem, do i-ésimo bloco cheio do arquivo
+    public int blockAt(int index) {
+        return image.blockAt(inode, index);
+    }
+    
+    // Lê os blocos da imagem e devolve o conteúdo em memória
+    public FileData load() {
+        BlockStore store = image.getStore();
+        long size = getSize();
+        int fullBlocks = getFullBlocks();
+        int tailLength = getTailLength();
+        Block[] blocks = new Block[fullBlocks + (tailLength > 0 ? 1 : 0)];
+        byte[] bytes = new byte[FileSystemImage.BLOCK_SIZE];
+        for (int i = 0; i < fullBlocks; i++) {
+            image.dataBlock(blockAt(i)).get(bytes);
+            blocks[i] = store.intern(bytes, 0, bytes.length);
+        }
+        if (tailLength > 0) {
+            image.readTail(getTailOffset(), bytes, tailLength);
+            blocks[fullBlocks] = store.intern(bytes, 0, tailLength);
+        }
+        return FileData.fromBlocks(store, blocks, size);
+    }
+}
+
+// Arquivo de checkpoint (filesystem.img): um retrato da árvore num layout de blocos com
+// inodes. Não é o armazenamento do sistema de arquivos: a árvore vive no heap, e entre
+// dois checkpoints só o journal guarda as alterações.
+//
+// Layout em blocos de 4 KiB:
+//   bloco 0            superbloco (magic, versão, geometria, sequência do journal, CRC32C)
+//   tabela de inodes   INODE_SIZE bytes por inode; o inode 0 é a raiz
+//   dados              blocos cheios de conteúdo, listas de blocos e entradas de diretório
+//   caudas             o fim parcial de cada arquivo, em bytes contíguos sem alinhamento
+//   bitmap             um bit por bloco de dados e de caudas em uso
+//
+// Inode: [tipo][reservado][criação][modificação][tamanho][início][blocos][cauda][2 ponteiros].
+// Num diretório, início/tamanho apontam para as entradas [inode][tamanho do nome][nome].
+// Num arquivo, os blocos cheios são listados a partir de início, ou, se forem até
+// INLINE_POINTERS, ficam no próprio inode; cauda é a posição do resto na área de caudas,
+// de modo que arquivos pequenos não ocupam um bloco inteiro. Blocos e caudas iguais
+// são gravados uma vez só.
+//
+// A imagem é gravada inteira a cada checkpoint (arquivo temporário, fsync e rename
+// atômico) e lida com MappedByteBuffer: a árvore de diretórios é montada na abertura,
+// mas o conteúdo dos arquivos continua no page cache do sistema até ser acessado.
+// Directory e File não são visões sobre os inodes: todos os itens viram objetos no heap
+// ao abrir, e nada é gravado no lugar, então a imagem não permite árvores maiores que o
+// heap nem evita reescrever os itens que não mudaram.
+class FileSystemImage {
+    public static final int BLOCK_SIZE = 4096;
+    static final int INODE_SIZE = 64;
+    static final int INLINE_POINTERS = 2;
+    
+    private static final int MAGIC = 0x4653494D; // "FSIM"
+    private static final int VERSION = 1;
+    private static final int TYPE_DIRECTORY = 1;
+    private static final int TYPE_FILE = 2;
+    private static final int INODES_PER_BLOCK = BLOCK_SIZE / INODE_SIZE;
+    private static final long REGION_SIZE = 1L << 30;
+    private static final int SUPERBLOCK_FIELDS_SIZE = 80;
+    
+    private final MappedByteBuffer[] regions;
+    private final long dataStart;
+    private final long dataBlocks;
+    private final long tailStart;
+    private final long tailBytes;
+    private final BlockStore store;
+    
+    private FileSystemImage(MappedByteBuffer[] regions, long dataStart, long dataBlocks, long tailStart, long tailBytes,
+            BlockStore store) {
+        this.regions = regions;
+        this.dataStart = dataStart;
+        this.dataBlocks = dataBlocks;
+        this.tailStart = tailStart;
+        this.tailBytes = tailBytes;
+        this.store = store;
+    }
+    
+    // Store em que o conteúdo dos arquivos é carregado
+    public BlockStore getStore() { return store; }
+    
+    // Visão somente leitura do bloco de dados informado (posição 0, limite BLOCK_SIZE)
+    ByteBuffer dataBlock(long block) {
+        if (block < 0 || block >= dataBlocks) {
+            throw new IllegalStateException("Bloco de dados fora da imagem: " + block);
+        }
+        return absoluteBlock(dataStart + block);
+    }
+    
+    private ByteBuffer absoluteBlock(long block) {
+        long position = block * BLOCK_SIZE;
+        ByteBuffer region = regions[(int) (position / REGION_SIZE)].duplicate();
+        int offset = (int) (position % REGION_SIZE);
+        region.position(offset);
+        region.limit(offset + BLOCK_SIZE);
+        return region.slice();
+    }
+    
+    // Copia length bytes da área de caudas, a partir de offset, para target
+    void readTail(long offset, byte[] target, int length) {
+        if (offset < 0 || offset + length > tailBytes) {
+            throw new IllegalStateException("Cauda fora da imagem: " + offset);
+        }
+        long position = tailStart * BLOCK_SIZE + offset;
+        int done = 0;
+        while (done < length) {
+            ByteBuffer region = regions[(int) (position / REGION_SIZE)].duplicate();
+            region.position((int) (position % REGION_SIZE));
+            int chunk = Math.min(length - done, region.remaining());
+            region.get(target, done, chunk);
+            done += chunk;
+            position += chunk;
+        }
+    }
+    
+    // Mapeia a imagem e monta a árvore de diretórios; os arquivos ficam com o conteúdo na
+    // imagem (StoredContent), que os carrega em store no primeiro acesso. Devolve null se a
+    // imagem não existir ou for inválida.
+    public static Directory load(Path path, long[] sequenceOut, BlockStore store) {
+        if (!Files.exists(path)) return null;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize < BLOCK_SIZE || fileSize % BLOCK_SIZE != 0) {
+                System.err.println("Imagem com tamanho inválido ignorada: " + path);
+                return null;
+            }
+            MappedByteBuffer[] regions = new MappedByteBuffer[(int) ((fileSize + REGION_SIZE - 1) / REGION_SIZE)];
+            for (int i = 0; i < regions.length; i++) {
+                long position = i * REGION_SIZE;
+                regions[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(REGION_SIZE, fileSize - position));
+            }
+            
+            ByteBuffer superblock = regions[0].duplicate();
+            CRC32C crc = new CRC32C();
+            ByteBuffer fields = superblock.duplicate();
+            fields.limit(SUPERBLOCK_FIELDS_SIZE);
+            crc.update(fields);
+            if (superblock.getInt(0) != MAGIC || superblock.getInt(4) != VERSION || superblock.getInt(8) != BLOCK_SIZE
+                    || superblock.getInt(12) != INODE_SIZE || superblock.getInt(SUPERBLOCK_FIELDS_SIZE) != (int) crc.getValue()) {
+                System.err.println("Imagem em formato desconhecido ou corrompida ignorada: " + path);
+                return null;
+            }
+            long sequence = superblock.getLong(16);
+            long inodeCount = superblock.getLong(24);
+            long dataStart = superblock.getLong(32);
+            long dataBlocks = superblock.getLong(40);
+            long tailStart = superblock.getLong(48);
+            long tailBytes = superblock.getLong(56);
+            int inodeTableCrc = superblock.getInt(72);
+            if (inodeCount < 1 || dataStart + dataBlocks > tailStart
+                    || tailStart * BLOCK_SIZE + tailBytes > fileSize) {
+                System.err.println("Imagem corrompida ignorada: " + path);
+                return null;
+            }
+            
+            FileSystemImage image = new FileSystemImage(regions, dataStart, dataBlocks, tailStart, tailBytes, store);
+            crc.reset();
+            for (long block = 1; block < 1 + (inodeCount + INODES_PER_BLOCK - 1) / INODES_PER_BLOCK; block++) {
+                ByteBuffer table = image.absoluteBlock(block);
+                long remaining = inodeCount - (block - 1) * INODES_PER_BLOCK;
+                table.limit((int) Math.min(BLOCK_SIZE, remaining * INODE_SIZE));
+                crc.update(table);
+            }
+            if ((int) crc.getValue() != inodeTableCrc) {
+                System.err.println("Tabela de inodes corrompida; imagem ignorada: " + path);
+                return null;
+            }
+            
+            Directory root = image.buildTree();
+            sequenceOut[0] = sequence;
+            return root;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Erro ao carregar imagem: " + e);
+            return null;
+        }
+    }
+    
+    private ByteBuffer inode(long number) {
+        ByteBuffer table = absoluteBlock(1 + number / INODES_PER_BLOCK);
+        table.position((int) (number % INODES_PER_BLOCK) * INODE_SIZE);
+        return table.slice();
+    }
+    
+    long size(long number) {
+        return inode(number).getLong(24);
+    }
+    
+    long tailOffset(long number) {
+        return inode(number).getLong(48);
+    }
+    
+    // Número do i-ésimo bloco cheio de um arquivo: no próprio inode ou na lista de blocos
+    int blockAt(long number, int index) {
+        ByteBuffer fileInode = inode(number);
+        if (fileInode.getLong(40) <= INLINE_POINTERS) return fileInode.getInt(56 + index * 4);
+        ByteBuffer pointers = dataBlock(fileInode.getLong(32) + (long) index * 4 / BLOCK_SIZE);
+        return pointers.getInt(index * 4 % BLOCK_SIZE);
+    }
+    
+    // Percorre os diretórios em largura a partir do inode 0
+    private Directory buildTree() {
+        ByteBuffer rootInode = inode(0);
+        if (rootInode.getInt(0) != TYPE_DIRECTORY) {
+            throw new IllegalStateException("Inode raiz não é um diretório");
+        }
+        Directory root = new Directory("root");
+        root.restoreDates(rootInode.getLong(8), rootInode.getLong(16));
+        
+        Deque<Directory> directories = new ArrayDeque<>();
+        Deque<Long> inodes = new ArrayDeque<>();
+        directories.add(root);
+        inodes.add(0L);
+        byte[] nameBuffer = new byte[256];
+        while (!directories.isEmpty()) {
+            Directory dir = directories.poll();
+            ByteBuffer dirInode = inode(inodes.poll());
+            
+            // Entradas são lidas em sequência através das fronteiras de bloco
+            EntryReader entries = new EntryReader(this, dirInode.getLong(32), dirInode.getLong(24));
+            while (entries.hasMore()) {
+                long number = entries.readInt() & 0xFFFFFFFFL;
+                int nameLength = entries.readShort() & 0xFFFF;
+                if (nameBuffer.length < nameLength) nameBuffer = new byte[nameLength];
+                entries.read(nameBuffer, nameLength);
+                String name = new String(nameBuffer, 0, nameLength, StandardCharsets.UTF_8);
+                
+                ByteBuffer childInode = inode(number);
+                FileSystemItem item;
+                if (childInode.getInt(0) == TYPE_DIRECTORY) {
+                    item = new Directory(name);
+                    directories.add((Directory) item);
+                    inodes.add(number);
+                } else {
+                    item = new File(name, new StoredContent(this, number));
+                }
+                item.restoreDates(childInode.getLong(8), childInode.getLong(16));
+                dir.restoreChild(item);
+            }
+        }
+        return root;
+    }
+    
+    // Leitura sequencial de uma região de blocos de dados contíguos
+    private static class EntryReader {
+        private final FileSystemImage image;
+        private final byte[] scratch;
+        private long block;
+        private long remaining;
+        private ByteBuffer current;
+        
+        EntryReader(FileSystemImage image, long block, long length) {
+            this.image = image;
+            this.scratch = new byte[4];
+            this.block = block;
+            this.remaining = length;
+        }
+        
+        boolean hasMore() { return remaining > 0; }
+        
+        void read(byte[] target, int length) {
+            int done = 0;
+            while (done < length) {
+                if (current == null || !current.hasRemaining()) {
+                    current = image.dataBlock(block++);
+                }
+                int chunk = Math.min(length - done, current.remaining());
+                current.get(target, done, chunk);
+                done += chunk;
+            }
+            remaining -= length;
+        }
+        
+        int readInt() {
+            read(scratch, 4);
+            return (scratch[0] & 0xFF) << 24 | (scratch[1] & 0xFF) << 16 | (scratch[2] & 0xFF) << 8 | (scratch[3] & 0xFF);
+        }
+        
+        int readShort() {
+            read(scratch, 2);
+            return (scratch[0] & 0xFF) << 8 | (scratch[1] & 0xFF);
+        }
+    }
+    
+    // Grava a árvore capturada em path. Os inodes são numerados em largura, de modo que a
+    // tabela de inodes e a área de dados são escritas em sequência, cada uma com o seu
+    // buffer; as caudas vão para um arquivo auxiliar e são copiadas para o fim depois.
+    static void write(Snapshot.Node root, long sequence, Path path) throws IOException {
+        long inodeCount = countNodes(root);
+        long inodeTableBlocks = (inodeCount + INODES_PER_BLOCK - 1) / INODES_PER_BLOCK;
+        long dataStart = 1 + inodeTableBlocks;
+        
+        Path temp = Paths.get(path + ".tmp");
+        Path tailsTemp = Paths.get(path + ".tails");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.READ, StandardOpenOption.TRUNCATE_EXISTING);
+             FileChannel tailChannel = FileChannel.open(tailsTemp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.READ, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.DELETE_ON_CLOSE)) {
+            BlockWriter inodes = new BlockWriter(channel, BLOCK_SIZE);
+            BlockWriter data = new BlockWriter(channel, dataStart * BLOCK_SIZE);
+            BlockWriter tails = new BlockWriter(tailChannel, 0);
+            CRC32C inodeCrc = new CRC32C();
+            ByteBuffer inode = ByteBuffer.allocate(INODE_SIZE);
+            
+            // Blocos e caudas já gravados: os do BlockStore por identidade e os que ainda
+            // estão numa imagem anterior pela posição nela
+            ContentWriter content = new ContentWriter(data, tails);
+            
+            Deque<Snapshot.Node> queue = new ArrayDeque<>();
+            queue.add(root);
+            long nextInode = 1;
+            while (!queue.isEmpty()) {
+                Snapshot.Node node = queue.poll();
+                long start = -1;
+                long size;
+                long fullBlocks = 0;
+                long tailOffset = -1;
+                long[] inline = null;
+                if (node.children != null) {
+                    ByteArrayOutputStream entries = new ByteArrayOutputStream();
+                    DataOutputStream out = new DataOutputStream(entries);
+                    for (Snapshot.Node child : node.children) {
+                        byte[] name = child.name.getBytes(StandardCharsets.UTF_8);
+                        if (name.length > FileSystemItem.MAX_NAME_BYTES) {
+                            // Não deveria acontecer: o simulador recusa esses nomes na criação
+                            throw new IOException("Nome com " + name.length + " bytes não cabe na imagem");
+                        }
+                        out.writeInt((int) nextInode++);
+                        out.writeShort(name.length);
+                        out.write(name);
+                        queue.add(child);
+                    }
+                    size = entries.size();
+                    start = data.writeBlocks(entries.toByteArray(), entries.size());
+                } else {
+                    long[] pointers = node.content != null ? content.write(node.content) : content.copy(node.stored);
+                    size = node.content != null ? node.content.getSize() : node.stored.getSize();
+                    fullBlocks = size / BLOCK_SIZE;
+                    tailOffset = pointers[pointers.length - 1];
+                    if (fullBlocks <= INLINE_POINTERS) {
+                        inline = pointers;
+                    } else {
+                        ByteBuffer list = ByteBuffer.allocate((int) fullBlocks * 4);
+                        for (int i = 0; i < fullBlocks; i++) {
+                            list.putInt((int) pointers[i]);
+                        }
+                        start = data.writeBlocks(list.array(), list.capacity());
+                    }
+                }
+                
+                inode.clear();
+                inode.putInt(node.children != null ? TYPE_DIRECTORY : TYPE_FILE).putInt(0)
+                        .putLong(node.creationTime).putLong(node.lastModified)
+                        .putLong(size).putLong(start).putLong(fullBlocks).putLong(tailOffset);
+                for (int i = 0; i < INLINE_POINTERS; i++) {
+                    inode.putInt(inline != null && i < fullBlocks ? (int) inline[i] : 0);
+                }
+                inodeCrc.update(inode.array(), 0, INODE_SIZE);
+                inodes.write(inode.array(), INODE_SIZE);
+            }
+            inodes.flush();
+            long dataBlocks = data.finish() / BLOCK_SIZE;
+            
+            // Caudas logo depois dos dados, e o bitmap depois delas; a imagem é gravada
+            // compactada, então todos os blocos até o bitmap estão em uso
+            long tailBytes = tails.finish();
+            long tailStart = dataStart + dataBlocks;
+            long tailBlocks = (tailBytes + BLOCK_SIZE - 1) / BLOCK_SIZE;
+            long copied = 0;
+            while (copied < tailBytes) {
+                copied += tailChannel.transferTo(copied, tailBytes - copied, channel.position(tailStart * BLOCK_SIZE + copied));
+            }
+            long used = dataBlocks + tailBlocks;
+            byte[] bits = new byte[(int) ((used + 7) / 8)];
+            Arrays.fill(bits, (byte) 0xFF);
+            if (used % 8 != 0) bits[bits.length - 1] = (byte) ((1 << (used % 8)) - 1);
+            long bitmapStart = tailStart + tailBlocks;
+            BlockWriter bitmap = new BlockWriter(channel, bitmapStart * BLOCK_SIZE);
+            bitmap.writeBlocks(bits, bits.length);
+            // O arquivo termina num múltiplo de BLOCK_SIZE mesmo quando o último trecho
+            // gravado (tabela de inodes, caudas) não completa o bloco
+            long end = (bitmapStart + Math.max(1, bitmap.finish() / BLOCK_SIZE)) * BLOCK_SIZE;
+            if (channel.size() < end) {
+                channel.write(ByteBuffer.wrap(new byte[1]), end - 1);
+            }
+            channel.force(true);
+            
+            ByteBuffer superblock = ByteBuffer.allocate(BLOCK_SIZE);
+            superblock.putInt(MAGIC).putInt(VERSION).putInt(BLOCK_SIZE).putInt(INODE_SIZE)
+                    .putLong(sequence).putLong(inodeCount).putLong(dataStart).putLong(dataBlocks)
+                    .putLong(tailStart).putLong(tailBytes).putLong(bitmapStart).putInt((int) inodeCrc.getValue());
+            CRC32C crc = new CRC32C();
+            crc.update(superblock.array(), 0, SUPERBLOCK_FIELDS_SIZE);
+            superblock.putInt(SUPERBLOCK_FIELDS_SIZE, (int) crc.getValue());
+            superblock.clear();
+            while (superblock.hasRemaining()) {
+                channel.write(superblock, superblock.position());
+            }
+            channel.force(true);
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    
+    private static long countNodes(Snapshot.Node root) {
+        long count = 0;
+        Deque<Snapshot.Node> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            Snapshot.Node node = stack.pop();
+            count++;
+            if (node.children != null) {
+                for (Snapshot.Node child : node.children) {
+                    stack.push(child);
+                }
+            }
+        }
+        return count;
+    }
+    
+    // Grava o conteúdo dos arquivos com deduplicação. Devolve os números dos blocos cheios
+    // seguidos da posição da cauda (-1 se o tamanho for múltiplo de BLOCK_SIZE).
+    private static class ContentWriter {
+        private final BlockWriter data;
+        private final BlockWriter tails;
+        private final Map<Block, Long> blocks = new IdentityHashMap<>();
+        private final Map<Block, Long> tailBlocks = new IdentityHashMap<>();
+        private final Map<FileSystemImage, Map<Long, Long>> copiedBlocks = new IdentityHashMap<>();
+        private final Map<FileSystemImage, Map<Long, Long>> copiedTails = new IdentityHashMap<>();
+        private final byte[] buffer = new byte[BLOCK_SIZE];
+        
+        ContentWriter(BlockWriter data, BlockWriter tails) {
+            this.data = data;
+            this.tails = tails;
+        }
+        
+        long[] write(FileData content) throws IOException {
+            Block[] source = content.getBlocks();
+            int fullBlocks = (int) (content.getSize() / BLOCK_SIZE);
+            long[] pointers = new long[fullBlocks + 1];
+            pointers[fullBlocks] = -1;
+            for (int i = 0; i < source.length; i++) {
+                Block block = source[i];
+                boolean tail = i == fullBlocks;
+                Map<Block, Long> written = tail ? tailBlocks : blocks;
+                Long position = written.get(block);
+                if (position == null) {
+                    byte[] bytes = block.peekData();
+                    position = tail ? tails.writeBytes(bytes, block.length()) : data.writeBlocks(bytes, block.length());
+                    written.put(block, position);
+                }
+                pointers[i] = position;
+            }
+            return pointers;
+        }
+        
+        long[] copy(StoredContent stored) throws IOException {
+            int fullBlocks = stored.getFullBlocks();
+            long[] pointers = new long[fullBlocks + 1];
+            pointers[fullBlocks] = -1;
+            Map<Long, Long> copied = copiedBlocks.computeIfAbsent(stored.getImage(), key -> new HashMap<>());
+            for (int i = 0; i < fullBlocks; i++) {
+                long source = stored.blockAt(i);
+                Long position = copied.get(source);
+                if (position == null) {
+                    stored.getImage().dataBlock(source).get(buffer);
+                    position = data.writeBlocks(buffer, BLOCK_SIZE);
+                    copied.put(source, position);
+                }
+                pointers[i] = position;
+            }
+            int tailLength = stored.getTailLength();
+            if (tailLength > 0) {
+                Map<Long, Long> tailsCopied = copiedTails.computeIfAbsent(stored.getImage(), key -> new HashMap<>());
+                Long position = tailsCopied.get(stored.getTailOffset());
+                if (position == null) {
+                    stored.getImage().readTail(stored.getTailOffset(), buffer, tailLength);
+                    position = tails.writeBytes(buffer, tailLength);
+                    tailsCopied.put(stored.getTailOffset(), position);
+                }
+                pointers[fullBlocks] = position;
+            }
+            return pointers;
+        }
+    }
+    
+    // Escrita sequencial, com buffer, a partir de uma posição do arquivo
+    private static class BlockWriter {
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+        private final long origin;
+        private long position;
+        
+        BlockWriter(FileChannel channel, long position) {
+            this.channel = channel;
+            this.buffer = ByteBuffer.allocateDirect(256 * 1024);
+            this.origin = position;
+            this.position = position;
+        }
+        
+        void write(byte[] bytes, int length) throws IOException {
+            int offset = 0;
+            while (offset < length) {
+                if (!buffer.hasRemaining()) flush();
+                int chunk = Math.min(length - offset, buffer.remaining());
+                buffer.put(bytes, offset, chunk);
+                offset += chunk;
+            }
+        }
+        
+        // Grava os bytes sem alinhamento; devolve a posição deles, relativa à origem
+        long writeBytes(byte[] bytes, int length) throws IOException {
+            long start = position - origin + buffer.position();
+            write(bytes, length);
+            return start;
+        }
+        
+        // Grava os bytes a partir do próximo bloco, completando o último com zeros;
+        // devolve o número (relativo à origem) do primeiro bloco usado
+        long writeBlocks(byte[] bytes, int length) throws IOException {
+            long first = writeBytes(bytes, length) / BLOCK_SIZE;
+            int padding = (BLOCK_SIZE - length % BLOCK_SIZE) % BLOCK_SIZE;
+            write(new byte[padding], padding);
+            return first;
+        }
+        
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            buffer.clear();
+        }
+        
+        // Descarrega o buffer e devolve quantos bytes foram escritos desde a origem
+        long finish() throws IOException {
+            flush();
+            return position - origin;
+        }
+    }
+}
+
+// Cache de caminhos resolvidos (dentry cache) usado por findItem
+//
+// LRU limitado que mapeia caminhos normalizados para itens, incluindo consultas
+// negativas (caminhos que sabidamente não existem, guardados com valor null).
+// As operações que alteram a árvore invalidam as entradas afetadas.
+//
+// O cache é dividido em segmentos por hash do caminho, cada um com seu próprio lock e
+// contador de geração. Uma busca anota a geração do segmento antes de percorrer a
+// árvore e só grava o resultado se nenhuma invalidação tiver ocorrido no meio, o que
+// impede que uma resolução concorrente reintroduza uma entrada já invalidada.
+//
+// Renomear, mover ou remover um diretório muda o caminho de todos os descendentes. Em
+// vez de procurar essas entradas, invalidateTree dá ao diretório uma geração nova, em
+// O(1), tirada de um relógio que só cresce. Cada entrada guarda o diretório onde a
+// resolução terminou (a âncora: o pai do item, ou o diretório em que o caminho deixou de
+// existir) e a maior geração entre a âncora e os seus ancestrais; na leitura o máximo é
+// refeito subindo pelos pais, e uma entrada cujo máximo mudou é descartada. Um diretório
+// que mudou de lugar continua entre os ancestrais da âncora com uma geração maior que a
+// gravada, então só as entradas abaixo dele são afetadas. Da mesma forma, quando um
+// diretório aparece num caminho (criação, renomeação, movimentação, cópia),
+// invalidateAdded marca as chegadas do pai, que entram no máximo das consultas negativas
+// ancoradas nele. A época global fica só para clear().
+class DentryCache {
+    private static final int SEGMENTS = 16;
+    private static final AtomicLong CLOCK = new AtomicLong();
+    
+    // Retornado por lookup quando o caminho não está no cache
+    public static final FileSystemItem MISS = new FileSystemItem("") {
+        @Override
+        public boolean isDirectory() { return false; }
+        
+        @Override
+        public String getType() { return "MISS"; }
+    };
+    
+    private static class CachedEntry {
+        final FileSystemItem item;
+        final Directory anchor;
+        final long stamp;
+        final long epoch;
+        
+        CachedEntry(FileSystemItem item, Directory anchor, long stamp, long epoch) {
+            this.item = item;
+            this.anchor = anchor;
+            this.stamp = stamp;
+            this.epoch = epoch;
+        }
+    }
+    
+    private static class Segment {
+        final LinkedHashMap<String, CachedEntry> entries;
+        long generation;
+        
+        Segment(int capacity) {
+            this.entries = new LinkedHashMap<String, CachedEntry>(capacity * 4 / 3 + 1, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CachedEntry> eldest) {
+                    return size() > capacity;
+                }
+            };
+        }
+    }
+    
+    private final int capacity;
+    private final Segment[] segments;
+    private final AtomicLong epoch;
+    private final LongAdder hits;
+    private final LongAdder misses;
+    
+    public DentryCache(int capacity) {
+        this.capacity = capacity;
+        this.segments = new Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(Math.max(1, capacity / SEGMENTS));
+        }
+        this.epoch = new AtomicLong();
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+    }
+    
+    public long getHits() { return hits.sum(); }
+    public long getMisses() { return misses.sum(); }
+    public int getCapacity() { return capacity; }
+    
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.entries.size();
+            }
+        }
+        return size;
+    }
+    
+    // Geração atual do caminho; deve ser lida antes de percorrer a árvore. Soma a geração
+    // do segmento e a época, que só crescem, de modo que muda quando qualquer uma muda.
+    public long generation(String normalizedPath) {
+        Segment segment = segmentFor(normalizedPath);
+        synchronized (segment) {
+            return segment.generation + epoch.get();
+        }
+    }
+    
+    // Item do caminho, null se o caminho sabidamente não existe, ou MISS
+    public FileSystemItem lookup(String normalizedPath) {
+        Segment segment = segmentFor(normalizedPath);
+        CachedEntry entry;
+        synchronized (segment) {
+            entry = segment.entries.get(normalizedPath);
+        }
+        FileSystemItem item = MISS;
+        if (entry != null) {
+            if (entry.epoch == epoch.get() && entry.stamp == stamp(entry.anchor, entry.item == null)) {
+                item = entry.item;
+            } else {
+                synchronized (segment) {
+                    segment.entries.remove(normalizedPath, entry);
+                }
+            }
+        }
+        if (item == MISS) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return item;
+    }
+    
+    // Maior geração entre a âncora e os seus ancestrais, incluindo as chegadas da âncora
+    // nas consultas negativas. Durante a resolução, o mesmo máximo é acumulado lendo a
+    // geração de cada diretório sob o lock do pai (veja FileSystemSimulator.resolve).
+    public static long stamp(Directory anchor, boolean negative) {
+        long stamp = negative ? anchor.getArrivals() : 0;
+        for (Directory dir = anchor; dir != null; dir = dir.getParent()) {
+            stamp = Math.max(stamp, dir.getGeneration());
+        }
+        return stamp;
+    }
+    
+    // Grava o resultado de uma resolução iniciada na geração informada, que terminou na
+    // âncora com o máximo stamp
+    public void put(String normalizedPath, FileSystemItem item, Directory anchor, long stamp, long generation) {
+        Segment segment = segmentFor(normalizedPath);
+        synchronized (segment) {
+            long current = epoch.get();
+            if (segment.generation + current == generation) {
+                segment.entries.put(normalizedPath, new CachedEntry(item, anchor, stamp, current));
+            }
+        }
+    }
+    
+    // Remove a entrada de um caminho (criação, remoção ou renomeação de um item)
+    public void invalidate(String path) {
+        String normalized = normalizePath(path);
+        Segment segment = segmentFor(normalized);
+        synchronized (segment) {
+            segment.generation++;
+            segment.entries.remove(normalized);
+        }
+    }
+    
+    // O diretório saiu do caminho (renomeação, movimentação ou remoção): invalida o
+    // caminho e todas as entradas abaixo dele, em O(1). Chamado sob o lock de escrita do
+    // pai de onde o diretório saiu.
+    public void invalidateTree(String path, Directory dir) {
+        dir.setGeneration(CLOCK.incrementAndGet());
+        invalidate(path);
+    }
+    
+    // Um diretório chegou ao caminho (criação, renomeação, movimentação ou cópia):
+    // invalida o caminho e as consultas negativas abaixo dele, em O(1). Chamado depois de
+    // incluir o diretório no pai, sob o lock de escrita do pai.
+    public void invalidateAdded(String path, Directory dir) {
+        dir.getParent().setArrivals(CLOCK.incrementAndGet());
+        invalidate(path);
+    }
+    
+    public void clear() {
+        epoch.incrementAndGet();
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.entries.clear();
+            }
+        }
+    }
+    
+    private Segment segmentFor(String normalizedPath) {
+        int hash = normalizedPath.hashCode();
+        return segments[(hash ^ (hash >>> 16)) & (SEGMENTS - 1)];
+    }
+    
+    // Remove barras repetidas e a barra final; "a/b" vira "/a/b"
+    public static String normalizePath(String path) {
+        int length = path.length();
+        boolean clean = length > 0 && path.charAt(0) == '/' && (length == 1 || path.charAt(length - 1) != '/')
+                && path.indexOf("//") < 0;
+        if (clean) return path;
+        
+        StringBuilder normalized = new StringBuilder(length + 1);
+        for (int i = 0; i < length; i++) {
+            char c = path.charAt(i);
+            if (c == '/' && normalized.length() > 0 && normalized.charAt(normalized.length() - 1) == '/') continue;
+            if (normalized.length() == 0 && c != '/') normalized.append('/');
+            normalized.append(c);
+        }
+        if (normalized.length() > 1 && normalized.charAt(normalized.length() - 1) == '/') {
+            normalized.setLength(normalized.length() - 1);
+        }
+        return normalized.length() == 0 ? "/" : normalized.toString();
+    }
+}
+
+// Locks de diretório distribuídos em faixas (lock striping)
+//
+// Cada diretório é associado a uma faixa pelo seu hash de identidade. Buscas usam o
+// lock de leitura da faixa e alterações o de escrita. Quando uma operação precisa de
+// dois diretórios, as faixas são travadas sempre em ordem crescente de índice, o que
+// evita deadlocks entre operações cruzadas como copyFile.
+class LockStripes {
+    private final ReentrantReadWriteLock[] stripes;
+    private final int mask;
+    
+    public LockStripes(int count) {
+        int size = Integer.highestOneBit(Math.max(1, count - 1)) << 1;
+        this.stripes = new ReentrantReadWriteLock[size];
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new ReentrantReadWriteLock();
+        }
+        this.mask = size - 1;
+    }
+    
+    public Lock readLock(Directory dir) { return stripes[indexOf(dir)].readLock(); }
+    public Lock writeLock(Directory dir) { return stripes[indexOf(dir)].writeLock(); }
+    
+    // Trava dois diretórios para escrita, em ordem de faixa
+    public void lockWrite(Directory first, Directory second) {
+        int a = indexOf(first);
+        int b = indexOf(second);
+        stripes[Math.min(a, b)].writeLock().lock();
+        if (a != b) stripes[Math.max(a, b)].writeLock().lock();
+    }
+    
+    public void unlockWrite(Directory first, Directory second) {
+        int a = indexOf(first);
+        int b = indexOf(second);
+        if (a != b) stripes[Math.max(a, b)].writeLock().unlock();
+        stripes[Math.min(a, b)].writeLock().unlock();
+    }
+    
+    // Trava um diretório para leitura e outro para escrita, em ordem de faixa;
+    // se caírem na mesma faixa, basta o lock de escrita
+    public void lockReadWrite(Directory read, Directory write) {
+        int r = indexOf(read);
+        int w = indexOf(write);
+        if (r == w) {
+            stripes[w].writeLock().lock();
+        } else if (r < w) {
+            stripes[r].readLock().lock();
+            stripes[w].writeLock().lock();
+        } else {
+            stripes[w].writeLock().lock();
+            stripes[r].readLock().lock();
+        }
+    }
+    
+    public void unlockReadWrite(Directory read, Directory write) {
+        int r = indexOf(read);
+        int w = indexOf(write);
+        stripes[w].writeLock().unlock();
+        if (r != w) stripes[r].readLock().unlock();
+    }
+    
+    // Trava para escrita as faixas do conjunto, em ordem crescente (cópia de subárvore)
+    public void lockWrite(BitSet set) {
+        for (int i = set.nextSetBit(0); i >= 0; i = set.nextSetBit(i + 1)) {
+            stripes[i].writeLock().lock();
+        }
+    }
+    
+    public void unlockWrite(BitSet set) {
+        for (int i = set.previousSetBit(stripes.length - 1); i >= 0; i = set.previousSetBit(i - 1)) {
+            stripes[i].writeLock().unlock();
+        }
+    }
+    
+    public int size() { return stripes.length; }
+    
+    // Trava todas as faixas, parando todas as operações (usado no checkpoint)
+    public void lockAll() {
+        for (ReentrantReadWriteLock stripe : stripes) {
+            stripe.writeLock().lock();
+        }
+    }
+    
+    public void unlockAll() {
+        for (int i = stripes.length - 1; i >= 0; i--) {
+            stripes[i].writeLock().unlock();
+        }
+    }
+    
+    int indexOf(Directory dir) {
+        int hash = System.identityHashCode(dir);
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+}
+
+// Visitante de walk; pode ser chamado por várias threads ao mesmo tempo. O caminho do
+// item não é montado durante o percurso: quem precisar dele usa getPath().
+interface TreeVisitor {
+    void visit(FileSystemItem item);
+}
+
+// Operações sobre subárvores inteiras, executadas em paralelo no ForkJoinPool comum
+//
+// Cada diretório é uma tarefa (CountedCompleter) que trata os seus filhos e cria uma
+// tarefa para cada subdiretório; a tarefa termina quando todas as suas filhas terminam.
+// Nenhuma tarefa espera outra nem chama outra recursivamente, então a profundidade da
+// árvore não afeta a pilha, e subárvores diferentes são processadas em núcleos
+// diferentes. Os filhos de cada diretório são copiados sob o lock de leitura dele.
+class TreeOperations {
+    private TreeOperations() {}
+    
+    // Copia os filhos de source para target (vazio e ainda fora da árvore); os arquivos
+    // são copiados com copy-on-write. Devolve o número de itens criados. Com locks null os
+    // diretórios são lidos sem lock: quem chama já travou as faixas de toda a origem.
+    public static long copy(Directory source, Directory target, LockStripes locks) {
+        LongAdder items = new LongAdder();
+        ForkJoinPool.commonPool().invoke(new CopyTask(null, source, target, locks, items));
+        return items.sum();
+    }
+    
+    // Libera os arquivos e marca como removidos os diretórios de uma subárvore que já
+    // foi desligada da árvore. Devolve o número de itens liberados, sem contar dir.
+    public static long release(Directory dir, LockStripes locks) {
+        LongAdder items = new LongAdder();
+        dir.markRemoved();
+        ForkJoinPool.commonPool().invoke(new ReleaseTask(null, dir, locks, items));
+        return items.sum();
+    }
+    
+    // Visita todos os itens abaixo de dir (sem incluir dir)
+    public static void walk(Directory dir, LockStripes locks, TreeVisitor visitor) {
+        ForkJoinPool.commonPool().invoke(new WalkTask(null, dir, locks, visitor));
+    }
+    
+    private static FileSystemItem[] childrenOf(Directory dir, LockStripes locks) {
+        if (locks == null) return dir.getChildren().toArray(new FileSystemItem[0]);
+        Lock lock = locks.readLock(dir);
+        lock.lock();
+        try {
+            return dir.getChildren().toArray(new FileSystemItem[0]);
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    private static class CopyTask extends CountedCompleter<Void> {
+        private static final long serialVersionUID = 1L;
+        
+        private final transient Directory source;
+        private final transient Directory target;
+        private final transient LockStripes locks;
+        private final LongAdder items;
+        
+        CopyTask(CountedCompleter<?> parent, Directory source, Directory target, LockStripes locks, LongAdder items) {
+            super(parent);
+            this.source = source;
+            this.target = target;
+            this.locks = locks;
+            this.items = items;
+        }
+        
+        @Override
+        public void compute() {
+            FileSystemItem[] children = childrenOf(source, locks);
+            for (FileSystemItem child : children) {
+                if (child.isDirectory()) {
+                    Directory copy = new Directory(child.getName());
+                    target.addChild(copy);
+                    addToPendingCount(1);
+                    new CopyTask(this, (Directory) child, copy, locks, items).fork();
+                } else {
+                    target.addChild(((File) child).copyAs(child.getName()));
+                }
+            }
+            items.add(children.length);
+            tryComplete();
+        }
+    }
+    
+    private static class ReleaseTask extends CountedCompleter<Void> {
+        private static final long serialVersionUID = 1L;
+        
+        private final transient Directory dir;
+        private final transient LockStripes locks;
+        private final LongAdder items;
+        
+        ReleaseTask(CountedCompleter<?> parent, Directory dir, LockStripes locks, LongAdder items) {
+            super(parent);
+            this.dir = dir;
+            this.locks = locks;
+            this.items = items;
+        }
+        
+        @Override
+        public void compute() {
+            FileSystemItem[] children = childrenOf(dir, locks);
+            for (FileSystemItem child : children) {
+                if (child.isDirectory()) {
+                    ((Directory) child).markRemoved();
+                    addToPendingCount(1);
+                    new ReleaseTask(this, (Directory) child, locks, items).fork();
+                } else {
+                    ((File) child).release();
+                }
+            }
+            items.add(children.length);
+            tryComplete();
+        }
+    }
+    
+    private static class WalkTask extends CountedCompleter<Void> {
+        private static final long serialVersionUID = 1L;
+        
+        private final transient Directory dir;
+        private final transient LockStripes locks;
+        private final transient TreeVisitor visitor;
+        
+        WalkTask(CountedCompleter<?> parent, Directory dir, LockStripes locks, TreeVisitor visitor) {
+            super(parent);
+            this.dir = dir;
+            this.locks = locks;
+            this.visitor = visitor;
+        }
+        
+        @Override
+        public void compute() {
+            for (FileSystemItem child : childrenOf(dir, locks)) {
+                visitor.visit(child);
+                if (child.isDirectory()) {
+                    addToPendingCount(1);
+                    new WalkTask(this, (Directory) child, locks, visitor).fork();
+                }
+            }
+            tryComplete();
+        }
+    }
+}
+
+// Índice de busca por nome e por conteúdo, usado por find e grep
+//
+// O índice é montado na primeira consulta, percorrendo a árvore, e depois mantido pelas
+// operações do simulador; enquanto ninguém consulta, as alterações não custam nada.
+//
+// Nomes: cada nome distinto recebe um número e entra nas listas de trigramas do nome
+// (com marcas de início e fim, de modo que "ab*" e "*.txt" também usam o índice). Um
+// padrão glob é respondido pela interseção das listas dos trigramas dos seus trechos
+// literais, conferindo só os nomes candidatos. Números de nomes que deixaram de existir
+// continuam nas listas até a próxima reconstrução, que ocorre quando eles são maioria.
+//
+// Conteúdo: índice invertido palavra -> arquivos. Arquivos alterados são só marcados, e
+// reindexados na próxima consulta; arquivos maiores que MAX_INDEXED_SIZE não são
+// indexados e são sempre lidos por inteiro no grep.
+class SearchIndex {
+    static final int MAX_INDEXED_SIZE = 1 << 20;
+    private static final char NAME_START = '\u0001';
+    private static final char NAME_END = '\u0002';
+    
+    private static final class NameEntry {
+        int id;
+        // Itens com esse nome, no formato de addMember
+        Object items;
+        
+        NameEntry(int id) {
+            this.id = id;
+        }
+    }
+    
+    private static final class IntList {
+        int[] values = new int[2];
+        int size;
+        
+        void add(int value) {
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            values[size++] = value;
+        }
+    }
+    
+    private volatile boolean built;
+    
+    // Índice de nomes, protegido por nameLock
+    private final ReentrantReadWriteLock nameLock = new ReentrantReadWriteLock();
+    private final Map<String, NameEntry> names = new HashMap<>();
+    private final List<String> namesById = new ArrayList<>();
+    private final Map<Long, IntList> trigrams = new HashMap<>();
+    private int staleIds;
+    
+    // Índice de conteúdo, protegido por contentLock; as marcações são concorrentes
+    private final ReentrantReadWriteLock contentLock = new ReentrantReadWriteLock();
+    private final Map<String, Object> postings = new HashMap<>();
+    private final Map<File, String[]> tokensByFile = new HashMap<>();
+    private final Set<File> unindexed = new HashSet<>();
+    private final Set<File> changedFiles = ConcurrentHashMap.newKeySet();
+    private final Set<File> removedFiles = ConcurrentHashMap.newKeySet();
+    
+    public boolean isBuilt() { return built; }
+    
+    // Indexa a árvore inteira; o chamador garante que ela não muda durante a montagem
+    public void build(Directory root, LockStripes locks) {
+        if (built) return;
+        TreeOperations.walk(root, locks, this::index);
+        built = true;
+    }
+    
+    public void added(FileSystemItem item) {
+        if (built) index(item);
+    }
+    
+    public void removed(FileSystemItem item) {
+        if (!built) return;
+        removeName(item.getName(), item);
+        if (!item.isDirectory()) {
+            changedFiles.remove(item);
+            removedFiles.add((File) item);
+        }
+    }
+    
+    public void renamed(FileSystemItem item, String oldName) {
+        if (!built || oldName.equals(item.getName())) return;
+        removeName(oldName, item);
+        addName(item.getName(), item);
+    }
+    
+    public void contentChanged(File file) {
+        if (built) changedFiles.add(file);
+    }
+    
+    private void index(FileSystemItem item) {
+        addName(item.getName(), item);
+        if (!item.isDirectory()) {
+            changedFiles.add((File) item);
+        }
+    }
+    
+    // Itens cujo nome casa com o padrão glob (* e ?)
+    public List<FileSystemItem> findByName(String glob) {
+        Pattern pattern = globPattern(glob);
+        List<FileSystemItem> result = new ArrayList<>();
+        Lock lock = nameLock.readLock();
+        lock.lock();
+        try {
+            int[] candidates = candidateIds(glob);
+            int count = candidates == null ? namesById.size() : candidates.length;
+            for (int i = 0; i < count; i++) {
+                int id = candidates == null ? i : candidates[i];
+                String name = namesById.get(id);
+                NameEntry entry = names.get(name);
+                // Um nome removido e criado de novo ganha outro número; o antigo é ignorado
+                if (entry == null || entry.id != id || !pattern.matcher(name).matches()) continue;
+                result.addAll(members(entry.items));
+            }
+        } finally {
+            lock.unlock();
+        }
+        return result;
+    }
+    
+    // Arquivos que podem conter todas as palavras do texto: os indexados que têm todas
+    // elas e os que não são indexados. Sem palavras no texto, todos os arquivos.
+    public List<File> candidateFiles(String text) {
+        applyContentChanges();
+        String[] tokens = tokenize(text);
+        Lock lock = contentLock.readLock();
+        lock.lock();
+        try {
+            List<File> result = new ArrayList<>(unindexed);
+            if (tokens.length == 0) {
+                result.addAll(tokensByFile.keySet());
+                return result;
+            }
+            Collection<FileSystemItem> smallest = null;
+            for (String token : tokens) {
+                Object files = postings.get(token);
+                if (files == null) return result;
+                if (smallest == null || members(files).size() < smallest.size()) smallest = members(files);
+            }
+            for (FileSystemItem file : smallest) {
+                boolean all = true;
+                for (String token : tokens) {
+                    if (!members(postings.get(token)).contains(file)) {
+                        all = false;
+                        break;
+                    }
+                }
+                if (all) result.add((File) file);
+            }
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    // Reindexa os arquivos alterados e tira do índice os removidos
+    private void applyContentChanges() {
+        if (changedFiles.isEmpty() && removedFiles.isEmpty()) return;
+        Lock lock = contentLock.writeLock();
+        lock.lock();
+        try {
+            for (Iterator<File> it = removedFiles.iterator(); it.hasNext(); ) {
+                File file = it.next();
+                it.remove();
+                removeTokens(file);
+                unindexed.remove(file);
+            }
+            for (Iterator<File> it = changedFiles.iterator(); it.hasNext(); ) {
+                File file = it.next();
+                it.remove();
+                removeTokens(file);
+                if (file.getSize() > MAX_INDEXED_SIZE) {
+                    unindexed.add(file);
+                    continue;
+                }
+                unindexed.remove(file);
+                String[] tokens = tokenize(file.getContent());
+                tokensByFile.put(file, tokens);
+                for (String token : tokens) {
+                    postings.put(token, addMember(postings.get(token), file));
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    private void removeTokens(File file) {
+        String[] tokens = tokensByFile.remove(file);
+        if (tokens == null) return;
+        for (String token : tokens) {
+            Object files = removeMember(postings.get(token), file);
+            if (files == null) {
+                postings.remove(token);
+            } else {
+                postings.put(token, files);
+            }
+        }
+    }
+    
+    // Conjuntos de itens, quase sempre com um só elemento, são guardados como o próprio
+    // item; só a partir do segundo elemento viram um Set por identidade
+    private static Object addMember(Object members, FileSystemItem item) {
+        if (members == null || members == item) return item;
+        if (members instanceof FileSystemItem) {
+            Set<FileSystemItem> set = Collections.newSetFromMap(new IdentityHashMap<>());
+            set.add((FileSystemItem) members);
+            set.add(item);
+            return set;
+        }
+        members(members).add(item);
+        return members;
+    }
+    
+    // Devolve o conjunto sem o item, ou null se ele ficou vazio
+    private static Object removeMember(Object members, FileSystemItem item) {
+        if (members == null || members == item) return null;
+        if (members instanceof FileSystemItem) return members;
+        Collection<FileSystemItem> set = members(members);
+        set.remove(item);
+        return set.size() == 1 ? set.iterator().next() : members;
+    }
+    
+    @SuppressWarnings("unchecked")
+    private static Collection<FileSystemItem> members(Object members) {
+        if (members == null) return Collections.emptySet();
+        if (members instanceof FileSystemItem) return Collections.singleton((FileSystemItem) members);
+        return (Collection<FileSystemItem>) members;
+    }
+    
+    // Palavras distintas (letras e dígitos, em minúsculas, com pelo menos dois caracteres)
+    static String[] tokenize(String text) {
+        Set<String> tokens = new LinkedHashSet<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean word = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (word && start < 0) {
+                start = i;
+            } else if (!word && start >= 0) {
+                if (i - start >= 2) tokens.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return tokens.toArray(new String[0]);
+    }
+    
+    private void addName(String name, FileSystemItem item) {
+        Lock lock = nameLock.writeLock();
+        lock.lock();
+        try {
+            NameEntry entry = names.get(name);
+            if (entry == null) {
+                entry = new NameEntry(namesById.size());
+                names.put(name, entry);
+                namesById.add(name);
+                addTrigrams(name, entry.id);
+            }
+            entry.items = addMember(entry.items, item);
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    private void removeName(String name, FileSystemItem item) {
+        Lock lock = nameLock.writeLock();
+        lock.lock();
+        try {
+            NameEntry entry = names.get(name);
+            if (entry == null) return;
+            entry.items = removeMember(entry.items, item);
+            if (entry.items == null) {
+                names.remove(name);
+                staleIds++;
+            }
+            if (staleIds > 1024 && staleIds > names.size()) {
+                renumber();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    // Refaz os números e as listas de trigramas só com os nomes existentes
+    private void renumber() {
+        namesById.clear();
+        trigrams.clear();
+        for (Map.Entry<String, NameEntry> entry : names.entrySet()) {
+            entry.getValue().id = namesById.size();
+            namesById.add(entry.getKey());
+            addTrigrams(entry.getKey(), entry.getValue().id);
+        }
+        staleIds = 0;
+    }
+    
+    private void addTrigrams(String name, int id) {
+        String padded = NAME_START + name + NAME_END;
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            IntList ids = trigrams.computeIfAbsent(trigram(padded, i), key -> new IntList());
+            // Um trigrama repetido no nome já terá este número no fim da lista
+            if (ids.size == 0 || ids.values[ids.size - 1] != id) ids.add(id);
+        }
+    }
+    
+    private static long trigram(String text, int offset) {
+        return (long) text.charAt(offset) << 32 | (long) text.charAt(offset + 1) << 16 | text.charAt(offset + 2);
+    }
+    
+    // Números dos nomes que contêm todos os trigramas dos trechos literais do padrão,
+    // em ordem crescente; null se o padrão não tiver nenhum trigrama
+    private int[] candidateIds(String glob) {
+        StringBuilder anchored = new StringBuilder();
+        if (glob.isEmpty() || (glob.charAt(0) != '*' && glob.charAt(0) != '?')) anchored.append(NAME_START);
+        anchored.append(glob);
+        char last = glob.isEmpty() ? ' ' : glob.charAt(glob.length() - 1);
+        if (last != '*' && last != '?') anchored.append(NAME_END);
+        
+        List<IntList> lists = new ArrayList<>();
+        for (String literal : anchored.toString().split("[*?]")) {
+            for (int i = 0; i + 3 <= literal.length(); i++) {
+                IntList ids = trigrams.get(trigram(literal, i));
+                if (ids == null) return new int[0];
+                lists.add(ids);
+            }
+        }
+        if (lists.isEmpty()) return null;
+        
+        // Parte da lista menor; cada número dela é procurado nas outras por busca binária,
+        // de modo que o custo segue a lista mais seletiva e não a mais comum
+        lists.sort(Comparator.comparingInt(ids -> ids.size));
+        int[] result = Arrays.copyOf(lists.get(0).values, lists.get(0).size);
+        int count = result.length;
+        for (int list = 1; list < lists.size() && count > 0; list++) {
+            IntList other = lists.get(list);
+            int kept = 0;
+            for (int i = 0; i < count; i++) {
+                if (Arrays.binarySearch(other.values, 0, other.size, result[i]) >= 0) {
+                    result[kept++] = result[i];
+                }
+            }
+            count = kept;
+        }
+        return Arrays.copyOf(result, count);
+    }
+    
+    static Pattern globPattern(String glob) {
+        StringBuilder regex = new StringBuilder();
+        StringBuilder literal = new StringBuilder();
+        for (char c : glob.toCharArray()) {
+            if (c == '*' || c == '?') {
+                if (literal.length() > 0) regex.append(Pattern.quote(literal.toString()));
+                literal.setLength(0);
+                regex.append(c == '*' ? ".*" : ".");
+            } else {
+                literal.append(c);
+            }
+        }
+        if (literal.length() > 0) regex.append(Pattern.quote(literal.toString()));
+        return Pattern.compile(regex.toString(), Pattern.DOTALL);
+    }
+}
+
+// Histograma de latências em nanossegundos, com baldes log-lineares (como o HdrHistogram)
+//
+// Cada potência de dois é dividida em SUB_BUCKETS baldes iguais, então um percentil
+// lido do histograma erra no máximo 1/SUB_BUCKETS (cerca de 3%) para cima, em qualquer
+// escala. Registrar um valor são alguns incrementos atômicos, sem alocar nada; a leitura
+// não trava quem registra e pode ver um registro pela metade.
+class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+    
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+    
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(bucketOf(value));
+        count.incrementAndGet();
+        total.addAndGet(value);
+        long current;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+            // Outra thread registrou um máximo ao mesmo tempo; tenta de novo
+        }
+    }
+    
+    public long getCount() { return count.get(); }
+    public long getMax() { return max.get(); }
+    
+    public double getMean() {
+        long n = count.get();
+        return n == 0 ? 0.0 : (double) total.get() / n;
+    }
+    
+    // Menor valor (maior do balde) que cobre percent% dos registros; 0 sem registros
+    public long getValueAtPercentile(double percent) {
+        long n = count.get();
+        if (n == 0) return 0;
+        long target = Math.max(1, (long) Math.ceil(n * percent / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return Math.min(lowestValue(i + 1) - 1, max.get());
+            }
+        }
+        return max.get();
+    }
+    
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count.set(0);
+        total.set(0);
+        max.set(0);
+    }
+    
+    // Valores abaixo de SUB_BUCKETS têm um balde cada; acima disso, o expoente escolhe o
+    // grupo e os SUB_BUCKET_BITS bits seguintes ao mais alto escolhem o balde no grupo
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return ((shift + 1) << SUB_BUCKET_BITS) + (int) ((value >>> shift) - SUB_BUCKETS);
+    }
+    
+    static long lowestValue(int bucket) {
+        int group = bucket >>> SUB_BUCKET_BITS;
+        long sub = bucket & (SUB_BUCKETS - 1);
+        if (group == 0) return sub;
+        if (group - 1 >= 64 - SUB_BUCKET_BITS - 1) return Long.MAX_VALUE;
+        return (SUB_BUCKETS + sub) << (group - 1);
+    }
+}
+
+// Métricas do simulador: chamadas, falhas e latência de cada operação pública, e o
+// número de itens da árvore
+//
+// As operações registram a si mesmas com start() e record(); tudo fica em contadores
+// pré-alocados, para que as métricas possam ficar sempre ligadas. Chamadas e falhas são
+// contadas sempre; a latência de operações muito frequentes e baratas (findItem) é
+// medida só em uma amostra das chamadas, porque ler o relógio custaria tanto quanto elas.
+class FsMetrics {
+    static final long NOT_SAMPLED = Long.MIN_VALUE;
+    
+    enum Operation {
+        FIND_ITEM("findItem", 16),
+        CREATE_FILE("createFile"),
+        CREATE_DIR("createDirectory"),
+        COPY_FILE("copyFile"),
+        DELETE_FILE("deleteFile"),
+        DELETE_DIR("deleteDirectory"),
+        DELETE_TREE("deleteTree"),
+        COPY_TREE("copyTree"),
+        RENAME("rename"),
+        MOVE("move"),
+        WRITE("writeFile"),
+        APPEND("appendFile"),
+        TRUNCATE("truncateFile"),
+        READ("readFile"),
+        READ_TEXT("readText"),
+        LIST_DIR("listDirectory"),
+        LIST_PAGE("listPage"),
+        STREAM_DIR("streamDirectory"),
+        STAT("stat"),
+        COUNT("countEntries"),
+        DISK_USAGE("diskUsage"),
+        WALK("walk"),
+        FIND("find"),
+        GREP("grep"),
+        CHECKPOINT("checkpoint");
+        
+        private final String label;
+        // Uma em cada sampleRate chamadas (potência de dois) tem a latência medida
+        private final int sampleMask;
+        
+        Operation(String label) {
+            this(label, 1);
+        }
+        
+        Operation(String label, int sampleRate) {
+            this.label = label;
+            this.sampleMask = sampleRate - 1;
+        }
+        
+        public String getLabel() { return label; }
+    }
+    
+    private static final Operation[] OPERATIONS = Operation.values();
+    
+    private final LatencyHistogram[] latencies = new LatencyHistogram[OPERATIONS.length];
+    private final LongAdder[] calls = new LongAdder[OPERATIONS.length];
+    private final LongAdder[] failures = new LongAdder[OPERATIONS.length];
+    private final AtomicLong items = new AtomicLong();
+    private volatile boolean itemsCounted;
+    
+    FsMetrics() {
+        for (int i = 0; i < OPERATIONS.length; i++) {
+            latencies[i] = new LatencyHistogram();
+            calls[i] = new LongAdder();
+            failures[i] = new LongAdder();
+        }
+    }
+    
+    // Início de uma chamada: System.nanoTime(), ou NOT_SAMPLED se ela não for cronometrada
+    public long start(Operation operation) {
+        if (operation.sampleMask != 0 && (ThreadLocalRandom.current().nextInt() & operation.sampleMask) != 0) {
+            return NOT_SAMPLED;
+        }
+        return System.nanoTime();
+    }
+    
+    // Registra uma chamada iniciada em startNanos, o valor devolvido por start()
+    public void record(Operation operation, long startNanos, boolean ok) {
+        int index = operation.ordinal();
+        calls[index].increment();
+        if (startNanos != NOT_SAMPLED) latencies[index].record(System.nanoTime() - startNanos);
+        if (!ok) failures[index].increment();
+    }
+    
+    public FsStatus record(Operation operation, long startNanos, FsStatus status) {
+        record(operation, startNanos, status.isOk());
+        return status;
+    }
+    
+    public <T> FsResult<T> record(Operation operation, long startNanos, FsResult<T> result) {
+        record(operation, startNanos, result.isOk());
+        return result;
+    }
+    
+    public LatencyHistogram getLatency(Operation operation) { return latencies[operation.ordinal()]; }
+    public long getCalls(Operation operation) { return calls[operation.ordinal()].sum(); }
+    public long getFailures(Operation operation) { return failures[operation.ordinal()].sum(); }
+    
+    // Zera chamadas, latências e falhas; o número de itens continua valendo
+    public void reset() {
+        for (int i = 0; i < OPERATIONS.length; i++) {
+            latencies[i].reset();
+            calls[i].reset();
+            failures[i].reset();
+        }
+    }
+    
+    // Itens criados (positivo) ou removidos (negativo) por uma operação. Antes da primeira
+    // contagem da árvore o total não vale nada; countedItems() o substitui.
+    public void itemsChanged(long delta) {
+        items.addAndGet(delta);
+    }
+    
+    public void countedItems(long count) {
+        items.set(count);
+        itemsCounted = true;
+    }
+    
+    public boolean isItemsCounted() { return itemsCounted; }
+    public long getItems() { return items.get(); }
+}
+
+// MBean com as métricas de um simulador, para JConsole e outras ferramentas JMX
+//
+// Para cada operação (FindItem, CreateFile...) expõe <operação>Count, Failures, MeanMicros, P50Micros,
+// P99Micros, P999Micros e MaxMicros; também expõe o journal (bytes, escritas e fsync),
+// o cache de caminhos, o armazenamento de blocos (com a compressão) e o número de itens da árvore.
+class FsMetricsMBean implements DynamicMBean {
+    private final Map<String, Supplier<Object>> attributes = new LinkedHashMap<>();
+    private final MBeanInfo info;
+    
+    FsMetricsMBean(FileSystemSimulator fileSystem) {
+        List<MBeanAttributeInfo> infos = new ArrayList<>();
+        FsMetrics metrics = fileSystem.getMetrics();
+        for (FsMetrics.Operation operation : FsMetrics.Operation.values()) {
+            String label = operation.getLabel();
+            String name = Character.toUpperCase(label.charAt(0)) + label.substring(1);
+            LatencyHistogram latency = metrics.getLatency(operation);
+            add(infos, Long.class, name + "Count", "Chamadas de " + label, () -> metrics.getCalls(operation));
+            add(infos, Long.class, name + "Failures", "Chamadas de " + label + " que falharam", () -> metrics.getFailures(operation));
+            add(infos, Double.class, name + "MeanMicros", "Latência média de " + label + " (µs)", () -> latency.getMean() / 1000.0);
+            addLatency(infos, name, latency);
+        }
+        Journal journal = fileSystem.getJournal();
+        add(infos, Long.class, "JournalBytesWritten", "Bytes gravados no journal", journal::getBytesWritten);
+        add(infos, Long.class, "JournalWritesCount", "Escritas no arquivo do journal", () -> journal.getWriteLatency().getCount());
+        addLatency(infos, "JournalWrites", journal.getWriteLatency());
+        add(infos, Long.class, "JournalFsyncCount", "Chamadas de fsync do journal", () -> journal.getFsyncLatency().getCount());
+        addLatency(infos, "JournalFsync", journal.getFsyncLatency());
+        DentryCache cache = fileSystem.getDentryCache();
+        add(infos, Long.class, "DentryCacheHits", "Acertos do cache de caminhos", cache::getHits);
+        add(infos, Long.class, "DentryCacheMisses", "Falhas do cache de caminhos", cache::getMisses);
+        add(infos, Double.class, "DentryCacheHitRatio", "Fração de acertos do cache de caminhos", () -> {
+            long lookups = cache.getHits() + cache.getMisses();
+            return lookups == 0 ? 0.0 : (double) cache.getHits() / lookups;
+        });
+        add(infos, Long.class, "DentryCacheSize", "Entradas no cache de caminhos", () -> (long) cache.size());
+        BlockStore store = fileSystem.getBlockStore();
+        add(infos, Long.class, "StoredBlocks", "Blocos únicos em memória", () -> (long) store.getBlockCount());
+        add(infos, Long.class, "StoredBytes", "Bytes em blocos únicos", store::getStoredBytes);
+        add(infos, Long.class, "DeduplicatedBlocks", "Blocos reaproveitados por deduplicação", store::getDeduplicatedBlocks);
+        add(infos, Long.class, "ResidentBytes", "Bytes de conteúdo em memória, com a compressão", store::getResidentBytes);
+        add(infos, Long.class, "CompressedBlocks", "Blocos comprimidos", store::getCompressedBlocks);
+        add(infos, Long.class, "CompressedBytes", "Bytes dos blocos comprimidos antes da compressão", store::getCompressedBytes);
+        add(infos, Long.class, "PackedBytes", "Bytes dos blocos comprimidos depois da compressão", store::getPackedBytes);
+        add(infos, Double.class, "CompressionRatio", "Razão de compressão dos blocos comprimidos", () -> {
+            long packed = store.getPackedBytes();
+            return packed == 0 ? 1.0 : (double) store.getCompressedBytes() / packed;
+        });
+        BlockCache blockCache = store.getCache();
+        add(infos, Long.class, "BlockCacheHits", "Acertos do cache de blocos descomprimidos", blockCache::getHits);
+        add(infos, Long.class, "BlockCacheMisses", "Falhas do cache de blocos descomprimidos", blockCache::getMisses);
+        add(infos, Long.class, "TreeItems", "Arquivos e diretórios na árvore", fileSystem::getItemCount);
+        
+        this.info = new MBeanInfo(FsMetricsMBean.class.getName(), "Métricas do simulador de sistema de arquivos",
+                infos.toArray(new MBeanAttributeInfo[0]), null, null, null);
+    }
+    
+    private void addLatency(List<MBeanAttributeInfo> infos, String name, LatencyHistogram latency) {
+        add(infos, Double.class, name + "P50Micros", "Latência p50 de " + name + " (µs)", () -> latency.getValueAtPercentile(50) / 1000.0);
+        add(infos, Double.class, name + "P99Micros", "Latência p99 de " + name + " (µs)", () -> latency.getValueAtPercentile(99) / 1000.0);
+        add(infos, Double.class, name + "P999Micros", "Latência p99,9 de " + name + " (µs)", () -> latency.getValueAtPercentile(99.9) / 1000.0);
+        add(infos, Double.class, name + "MaxMicros", "Latência máxima de " + name + " (µs)", () -> latency.getMax() / 1000.0);
+    }
+    
+    private void add(List<MBeanAttributeInfo> infos, Class<?> type, String name, String description, Supplier<Object> value) {
+        attributes.put(name, value);
+        infos.add(new MBeanAttributeInfo(name, type.getName(), description, true, false, false));
+    }
+    
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        Supplier<Object> value = attributes.get(attribute);
+        if (value == null) throw new AttributeNotFoundException(attribute);
+        return value.get();
+    }
+    
+    @Override
+    public AttributeList getAttributes(String[] names) {
+        AttributeList list = new AttributeList();
+        for (String name : names) {
+            Supplier<Object> value = attributes.get(name);
+            if (value != null) list.add(new Attribute(name, value.get()));
+        }
+        return list;
+    }
+    
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("Atributo somente leitura: " + attribute.getName());
+    }
+    
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+    
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+        throw new ReflectionException(new NoSuchMethodException(actionName));
+    }
+    
+    @Override
+    public MBeanInfo getMBeanInfo() { return info; }
+}
+
+// Log de acessos das consultas, separado do journal
+//
+// Consultas não alteram a árvore e por isso não passam pelo journal. Para depuração, uma
+// em cada `sampling` delas pode ser registrada em filesystem.access.log, uma linha em
+// texto por consulta; desligado (0) por padrão, o custo em cada consulta é uma leitura
+// volátil. Falhas de escrita desligam o log em vez de afetar a consulta.
+class AccessLog {
+    private final Path file;
+    private volatile int sampling;
+    private Writer writer;
+    private long recorded;
+    
+    AccessLog(Path file) {
+        this.file = file;
+    }
+    
+    // Registra uma em cada sampling consultas, sorteadas; 0 desliga
+    public void setSampling(int sampling) { this.sampling = Math.max(0, sampling); }
+    public int getSampling() { return sampling; }
+    public Path getFile() { return file; }
+    public synchronized long getRecorded() { return recorded; }
+    
+    public FsStatus record(String operation, String argument, FsStatus status) {
+        int rate = sampling;
+        if (rate > 0 && (rate == 1 || ThreadLocalRandom.current().nextInt(rate) == 0)) {
+            write(operation, argument, status);
+        }
+        return status;
+    }
+    
+    public <T> FsResult<T> record(String operation, String argument, FsResult<T> result) {
+        record(operation, argument, result.getStatus());
+        return result;
+    }
+    
+    private synchronized void write(String operation, String argument, FsStatus status) {
+        try {
+            if (writer == null) {
+                writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            }
+            writer.write(Instant.now() + " " + operation + " " + argument + " " + status + "\n");
+            recorded++;
+        } catch (IOException e) {
+            System.err.println("Erro ao gravar log de acessos: " + e.getMessage());
+            sampling = 0;
+        }
+    }
+    
+    public synchronized void close() {
+        if (writer == null) return;
+        try {
+            writer.close();
+        } catch (IOException e) {
+            System.err.println("Erro ao fechar log de acessos: " + e.getMessage());
+        }
+        writer = null;
+    }
+}
+
+// Trace das chamadas à API do simulador, para reproduzir uma carga com TraceReplayer
+//
+// Diferente do journal, que só guarda alterações e em texto, o trace guarda toda chamada
+// pública (consultas inclusive) com os argumentos completos, o status devolvido, a
+// thread, o instante de início e a duração. O formato é binário e compacto: cabeçalho
+// [magic][versão][início em ms desde a época] seguido de um registro por chamada,
+// [operação][thread][início em µs][duração em ns][status][argumentos], com inteiros em
+// varint. Desligado por padrão; o custo em cada chamada é uma leitura volátil. Falhas de
+// escrita desligam o trace em vez de afetar a operação.
+//
+// Leituras feitas por canais e streams vão direto ao arquivo e não são registradas; as
+// escritas passam por writeFile/truncateFile e são.
+class OperationTrace {
+    private static final int MAGIC = 0x46535452; // "FSTR"
+    private static final int VERSION = 1;
+    
+    // Operações registradas. O código gravado é a posição na enum (e o status, a posição
+    // em FsStatus), então valores novos só entram no fim. fields diz os argumentos, em
+    // ordem: S texto (pode ser null), L número, B bytes.
+    enum Op {
+        CREATE_FILE("createFile", "SS"),
+        CREATE_DIR("createDirectory", "S"),
+        COPY_FILE("copyFile", "SS"),
+        DELETE_FILE("deleteFile", "S"),
+        DELETE_DIR("deleteDirectory", "S"),
+        DELETE_TREE("deleteTree", "S"),
+        COPY_TREE("copyTree", "SS"),
+        RENAME_FILE("renameFile", "SS"),
+        RENAME_DIR("renameDirectory", "SS"),
+        MOVE("move", "SS"),
+        WRITE("writeFile", "SLB"),
+        APPEND("appendFile", "SB"),
+        TRUNCATE("truncateFile", "SL"),
+        READ("readFile", "SLL"),
+        READ_TEXT("readText", "S"),
+        LIST_DIR("listDirectory", "S"),
+        LIST_PAGE("listPage", "SSLL"),
+        STREAM_DIR("streamDirectory", "SL"),
+        STAT("stat", "S"),
+        DISK_USAGE("diskUsage", "S"),
+        COUNT("countEntries", "S"),
+        WALK("walk", "S"),
+        FIND("find", "SS"),
+        GREP("grep", "SS"),
+        SET_QUOTA("setQuota", "SLL"),
+        SET_CAPACITY("setCapacity", "L"),
+        CHECKPOINT("checkpoint", "");
+        
+        private final String label;
+        private final String fields;
+        
+        Op(String label, String fields) {
+            this.label = label;
+            this.fields = fields;
+        }
+        
+        public String getLabel() { return label; }
+    }
+    
+    // Uma chamada lida de um trace
+    static final class Record {
+        final Op op;
+        final long thread;
+        final long startMicros;
+        final long durationNanos;
+        final FsStatus status;
+        private final String[] texts = new String[2];
+        private final long[] numbers = new long[2];
+        private byte[] data;
+        
+        private Record(Op op, long thread, long startMicros, long durationNanos, FsStatus status) {
+            this.op = op;
+            this.thread = thread;
+            this.startMicros = startMicros;
+            this.durationNanos = durationNanos;
+            this.status = status;
+        }
+        
+        String text(int index) { return texts[index]; }
+        long number(int index) { return numbers[index]; }
+        byte[] data() { return data; }
+    }
+    
+    private volatile DataOutputStream out;
+    private Path file;
+    private long startNanos;
+    private long recorded;
+    
+    public boolean isRecording() { return out != null; }
+    public synchronized Path getFile() { return file; }
+    public synchronized long getRecorded() { return recorded; }
+    
+    // Começa a gravar em file, substituindo o conteúdo; um trace em andamento é encerrado
+    public synchronized void start(Path file) throws IOException {
+        stop();
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 64 * 1024));
+        output.writeInt(MAGIC);
+        output.writeInt(VERSION);
+        output.writeLong(System.currentTimeMillis());
+        this.file = file;
+        this.startNanos = System.nanoTime();
+        this.recorded = 0;
+        this.out = output;
+    }
+    
+    public synchronized void stop() {
+        DataOutputStream output = out;
+        if (output == null) return;
+        out = null;
+        try {
+            output.close();
+        } catch (IOException e) {
+            System.err.println("Erro ao fechar trace: " + e.getMessage());
+        }
+    }
+    
+    // Registra uma chamada iniciada em start (System.nanoTime) e devolve o status; os
+    // argumentos que a operação não usa são ignorados
+    public FsStatus record(Op op, long start, FsStatus status, String first, String second, long x, long y, byte[] data) {
+        if (out != null) {
+            write(op, start, System.nanoTime() - start, status, first, second, x, y, data);
+        }
+        return status;
+    }
+    
+    public FsStatus record(Op op, long start, FsStatus status, String first) {
+        return record(op, start, status, first, null, 0, 0, null);
+    }
+    
+    public FsStatus record(Op op, long start, FsStatus status, String first, String second) {
+        return record(op, start, status, first, second, 0, 0, null);
+    }
+    
+    public <T> FsResult<T> record(Op op, long start, FsResult<T> result, String first, String second, long x, long y) {
+        record(op, start, result.getStatus(), first, second, x, y, null);
+        return result;
+    }
+    
+    public <T> FsResult<T> record(Op op, long start, FsResult<T> result, String first) {
+        return record(op, start, result, first, null, 0, 0);
+    }
+    
+    public <T> FsResult<T> record(Op op, long start, FsResult<T> result, String first, String second) {
+        return record(op, start, result, first, second, 0, 0);
+    }
+    
+    private synchronized void write(Op op, long start, long duration, FsStatus status,
+            String first, String second, long x, long y, byte[] data) {
+        DataOutputStream output = out;
+        if (output == null) return;
+        try {
+            output.writeByte(op.ordinal());
+            writeVarLong(output, Thread.currentThread().getId());
+            // Chamadas que começaram antes do trace contam a partir do início dele
+            writeVarLong(output, Math.max(0, start - startNanos) / 1000);
+            writeVarLong(output, Math.max(0, duration));
+            output.writeByte(status.ordinal());
+            int texts = 0;
+            int numbers = 0;
+            for (int i = 0; i < op.fields.length(); i++) {
+                switch (op.fields.charAt(i)) {
+                    case 'S': writeText(output, texts++ == 0 ? first : second); break;
+                    case 'L': writeVarLong(output, zigzag(numbers++ == 0 ? x : y)); break;
+                    default:
+                        writeVarLong(output, data.length);
+                        output.write(data);
+                        break;
+                }
+            }
+            recorded++;
+        } catch (IOException e) {
+            System.err.println("Erro ao gravar trace: " + e.getMessage());
+            stop();
+        }
+    }
+    
+    // Abre um trace para leitura, já depois do cabeçalho
+    static DataInputStream open(Path file) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 64 * 1024));
+        try {
+            if (in.readInt() != MAGIC) throw new IOException("Não é um trace do simulador: " + file);
+            int version = in.readInt();
+            if (version != VERSION) throw new IOException("Versão de trace não suportada: " + version);
+            in.readLong();
+            return in;
+        } catch (IOException e) {
+            in.close();
+            throw e instanceof EOFException ? new IOException("Trace vazio ou truncado: " + file) : e;
+        }
+    }
+    
+    // Próximo registro, ou null no fim do arquivo; EOFException se o último estiver
+    // incompleto (trace interrompido no meio de uma escrita)
+    static Record read(DataInputStream in) throws IOException {
+        int code = in.read();
+        if (code < 0) return null;
+        Op[] ops = Op.values();
+        if (code >= ops.length) throw new IOException("Operação desconhecida no trace: " + code);
+        long thread = readVarLong(in);
+        long startMicros = readVarLong(in);
+        long duration = readVarLong(in);
+        int status = in.readUnsignedByte();
+        if (status >= FsStatus.values().length) throw new IOException("Status desconhecido no trace: " + status);
+        Record record = new Record(ops[code], thread, startMicros, duration, FsStatus.values()[status]);
+        int texts = 0;
+        int numbers = 0;
+        for (int i = 0; i < record.op.fields.length(); i++) {
+            switch (record.op.fields.charAt(i)) {
+                case 'S': record.texts[texts++] = readText(in); break;
+                case 'L': record.numbers[numbers++] = unzigzag(readVarLong(in)); break;
+                default:
+                    record.data = new byte[(int) readVarLong(in)];
+                    in.readFully(record.data);
+                    break;
+            }
+        }
+        return record;
+    }
+    
+    // Texto em UTF-8 precedido do tamanho mais um; 0 representa null
+    private static void writeText(DataOutputStream output, String text) throws IOException {
+        if (text == null) {
+            output.writeByte(0);
+            return;
+        }
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(output, bytes.length + 1L);
+        output.write(bytes);
+    }
+    
+    private static String readText(DataInputStream in) throws IOException {
+        long length = readVarLong(in);
+        if (length == 0) return null;
+        byte[] bytes = new byte[(int) (length - 1)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    
+    private static void writeVarLong(DataOutputStream output, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            output.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        output.writeByte((int) value);
+    }
+    
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int next = in.readUnsignedByte();
+            value |= (long) (next & 0x7F) << shift;
+            if ((next & 0x80) == 0) return value;
+        }
+        throw new IOException("Inteiro inválido no trace");
+    }
+    
+    private static long zigzag(long value) { return (value << 1) ^ (value >> 63); }
+    private static long unzigzag(long value) { return (value >>> 1) ^ -(value & 1); }
+}
+
+// Canal de bytes sobre um arquivo do simulador
+//
+// Leituras vão direto ao conteúdo do arquivo; escritas e truncate passam pelos métodos
+// do simulador para ficarem registradas no journal.
+class SimulatedFileChannel implements SeekableByteChannel {
+    private final FileSystemSimulator fileSystem;
+    private final String path;
+    private final File file;
+    private long position;
+    private boolean open;
+    
+    SimulatedFileChannel(FileSystemSimulator fileSystem, String path, File file) {
+        this.fileSystem = fileSystem;
+        this.path = path;
+        this.file = file;
+        this.open = true;
+    }
+    
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        ensureOpen();
+        int read = file.read(position, dst);
+        if (read > 0) position += read;
+        return read;
+    }
+    
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        ensureOpen();
+        int length = src.remaining();
+        FsStatus status = fileSystem.writeFile(path, position, src);
+        if (!status.isOk()) {
+            throw new IOException("Falha ao gravar em " + path + ": " + status.getMessage());
+        }
+        position += length;
+        return length;
+    }
+    
+    @Override
+    public long position() throws IOException {
+        ensureOpen();
+        return position;
+    }
+    
+    @Override
+    public SeekableByteChannel position(long newPosition) throws IOException {
+        ensureOpen();
+        if (newPosition < 0) throw new IllegalArgumentException("Posição negativa: " + newPosition);
+        this.position = newPosition;
+        return this;
+    }
+    
+    @Override
+    public long size() throws IOException {
+        ensureOpen();
+        return file.getSize();
+    }
+    
+    @Override
+    public SeekableByteChannel truncate(long size) throws IOException {
+        ensureOpen();
+        if (size < file.getSize()) {
+            FsStatus status = fileSystem.truncateFile(path, size);
+            if (!status.isOk()) {
+                throw new IOException("Falha ao truncar " + path + ": " + status.getMessage());
+            }
+        }
+        if (position > size) position = size;
+        return this;
+    }
+    
+    @Override
+    public boolean isOpen() { return open; }
+    
+    @Override
+    public void close() { open = false; }
+    
+    private void ensureOpen() throws IOException {
+        if (!open) throw new ClosedChannelException();
+    }
+}
+
+// Resultado de uma operação do simulador
+enum FsStatus {
+    OK("Operação concluída"),
+    FILE_NOT_FOUND("Arquivo não encontrado ou é um diretório"),
+    DIRECTORY_NOT_FOUND("Diretório não encontrado"),
+    NOT_FOUND("Item não encontrado"),
+    PARENT_NOT_FOUND("Diretório pai não encontrado"),
+    ALREADY_EXISTS("Item com esse nome já existe"),
+    DIRECTORY_NOT_EMPTY("Diretório não está vazio"),
+    INVALID_ARGUMENT("Argumento inválido"),
+    BUSY("Operação já em andamento"),
+    QUOTA_EXCEEDED("Cota do diretório excedida"),
+    NO_SPACE("Capacidade do sistema de arquivos esgotada"),
+    NOT_PERMITTED("Comando não permitido em sessões remotas"),
+    IO_ERROR("Falha ao gravar o journal");
+    
+    private final String message;
+    
+    FsStatus(String message) {
+        this.message = message;
+    }
+    
+    public String getMessage() { return message; }
+    
+    public boolean isOk() { return this == OK; }
+}
+
+// Resultado de uma consulta: o status e, quando ele é OK, o valor
+final class FsResult<T> {
+    private final FsStatus status;
+    private final T value;
+    
+    private FsResult(FsStatus status, T value) {
+        this.status = status;
+        this.value = value;
+    }
+    
+    public static <T> FsResult<T> ok(T value) { return new FsResult<>(FsStatus.OK, value); }
+    
+    public static <T> FsResult<T> error(FsStatus status) { return new FsResult<>(status, null); }
+    
+    public FsStatus getStatus() { return status; }
+    public T getValue() { return value; }
+    public boolean isOk() { return status.isOk(); }
+}
+
+// Uma página da listagem de um diretório; nextCursor é o nome a passar como "after"
+// para obter a página seguinte, ou null se esta for a última
+final class DirectoryPage {
+    private final List<FileSystemItem> items;
+    private final String nextCursor;
+    
+    DirectoryPage(List<FileSystemItem> items, String nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+    
+    public List<FileSystemItem> getItems() { return items; }
+    public String getNextCursor() { return nextCursor; }
+}
+
+// Uma linha encontrada pelo grep: caminho do arquivo, número da linha (a partir de 1) e texto
+final class SearchMatch {
+    private final String path;
+    private final int line;
+    private final String text;
+    
+    SearchMatch(String path, int line, String text) {
+        this.path = path;
+        this.line = line;
+        this.text = text;
+    }
+    
+    public String getPath() { return path; }
+    public int getLine() { return line; }
+    public String getText() { return text; }
+}
+
+// Uso de uma subárvore: bytes e número de arquivos e diretórios abaixo do caminho
+final class DiskUsage {
+    private final long bytes;
+    private final int files;
+    private final int directories;
+    
+    DiskUsage(long bytes, int files, int directories) {
+        this.bytes = bytes;
+        this.files = files;
+        this.directories = directories;
+    }
+    
+    public long getBytes() { return bytes; }
+    public int getFiles() { return files; }
+    public int getDirectories() { return directories; }
+}
+
+// Limites de uma subárvore; 0 significa sem limite
+final class Quota {
+    private final long maxBytes;
+    private final long maxFiles;
+    
+    Quota(long maxBytes, long maxFiles) {
+        this.maxBytes = maxBytes;
+        this.maxFiles = maxFiles;
+    }
+    
+    public long getMaxBytes() { return maxBytes; }
+    public long getMaxFiles() { return maxFiles; }
+    
+    // Indica se a subárvore com o uso atual comporta mais bytes e files arquivos
+    boolean allows(Directory dir, long bytes, int files) {
+        return (bytes <= 0 || maxBytes == 0 || dir.getTotalBytes() + bytes <= maxBytes)
+                && (files <= 0 || maxFiles == 0 || dir.getTotalFiles() + files <= maxFiles);
+    }
+}
+
+// Interpretador de comandos do simulador
+//
+// Camada de apresentação sobre a API do FileSystemSimulator: divide cada linha em
+// palavras, chama a operação correspondente e escreve o resultado no PrintWriter
+// informado. As operações em si não escrevem nada; só devolvem um FsStatus.
+class FileSystemShell {
+    private static final int MAX_REPORTED_FAILURES = 20;
+    private static final int LISTING_DEFAULT_LIMIT = 100;
+    private static final DateTimeFormatter LISTING_DATE =
+            DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm").withZone(ZoneId.systemDefault());
+    // Comandos aceitos em sessões remotas: só operações e consultas sobre a árvore. Trace,
+    // log de acessos, compressão, capacidade, cotas e checkpoint mudam o processo inteiro
+    // (e trace grava em qualquer caminho local), então ficam no shell local e nas opções
+    // de linha de comando.
+    private static final Set<String> REMOTE_COMMANDS = Set.of(
+            "help", "createfile", "copyfile", "deletefile", "renamefile", "createdir", "deletedir", "renamedir",
+            "copytree", "walk", "cd", "pwd", "move", "list", "count", "du", "stat", "find", "grep",
+            "cat", "write", "append", "truncate");
+    // Comandos aceitos em sessões remotas só na forma de consulta, sem argumentos
+    private static final Set<String> REMOTE_QUERIES = Set.of("quota", "capacity", "stats");
+    
+    private final FileSystemSimulator fileSystem;
+    private final PrintWriter out;
+    private final boolean remote;
+    private boolean messages;
+    // Diretório de trabalho desta sessão; caminhos sem "/" no início são relativos a ele
+    private String workingDirectory;
+    
+    FileSystemShell(FileSystemSimulator fileSystem, PrintWriter out) {
+        this(fileSystem, out, false);
+    }
+    
+    // Com remote, o shell atende uma sessão do servidor e recusa os comandos de administração
+    FileSystemShell(FileSystemSimulator fileSystem, PrintWriter out, boolean remote) {
+        this.fileSystem = fileSystem;
+        this.out = out;
+        this.remote = remote;
+        this.messages = true;
+        this.workingDirectory = "/";
+    }
+    
+    // Liga ou desliga as mensagens de sucesso e erro de cada operação; listagens e
+    // consultas continuam sendo mostradas
+    public void setMessages(boolean messages) { this.messages = messages; }
+    
+    // Lê comandos com prompt até exit ou o fim da entrada
+    public void runInteractive(BufferedReader input) throws IOException {
+        out.println("=== SIMULADOR DE SISTEMA DE ARQUIVOS ===");
+        out.println("Digite 'help' para ver os comandos disponíveis");
+        out.println("Digite 'exit' para sair\n");
+        
+        while (true) {
+            out.print("fs> ");
+            out.flush();
+            String line = input.readLine();
+            if (line == null) return;
+            String[] parts = tokenize(line);
+            if (parts.length == 0) continue;
+            
+            if (parts[0].equalsIgnoreCase("exit")) {
+                out.println("Saindo do simulador...");
+                out.flush();
+                return;
+            }
+            execute(parts);
+            out.flush();
+        }
+    }
+    
+    // Executa um script de comandos (um por linha, '#' inicia comentário) sem prompt. Ao
+    // final mostra o total de comandos, as falhas por comando e a vazão. O comando exit
+    // encerra o script. Devolve true se nenhum comando falhou.
+    public boolean runBatch(BufferedReader input) throws IOException {
+        Map<String, int[]> counts = new TreeMap<>();
+        Map<FsStatus, Integer> errors = new EnumMap<>(FsStatus.class);
+        List<String> failures = new ArrayList<>();
+        int failed = 0;
+        long lineNumber = 0;
+        long executed = 0;
+        long start = System.nanoTime();
+        try {
+            String line;
+            while ((line = input.readLine()) != null) {
+                lineNumber++;
+                String[] parts = tokenize(line);
+                if (parts.length == 0 || parts[0].startsWith("#")) continue;
+                if (parts[0].equalsIgnoreCase("exit")) break;
+                
+                FsStatus status = execute(parts);
+                executed++;
+                // [0] = executados, [1] = falhas
+                int[] count = counts.computeIfAbsent(parts[0].toLowerCase(), key -> new int[2]);
+                count[0]++;
+                if (!status.isOk()) {
+                    count[1]++;
+                    failed++;
+                    errors.merge(status, 1, Integer::sum);
+                    if (failures.size() < MAX_REPORTED_FAILURES) {
+                        failures.add("linha " + lineNumber + ": " + line.trim() + " (" + status.getMessage() + ")");
+                    }
+                }
+            }
+        } finally {
+            fileSystem.getJournal().sync();
+        }
+        
+        double seconds = (System.nanoTime() - start) / 1e9;
+        out.printf("Script concluído: %d comandos em %.3f s (%.0f comandos/s), %d falhas%n",
+                executed, seconds, seconds > 0 ? executed / seconds : 0.0, failed);
+        for (Map.Entry<String, int[]> entry : counts.entrySet()) {
+            out.printf("  %-12s %10d executados %10d falhas%n", entry.getKey(), entry.getValue()[0], entry.getValue()[1]);
+        }
+        for (Map.Entry<FsStatus, Integer> entry : errors.entrySet()) {
+            out.printf("  %-40s %10d%n", entry.getKey().getMessage(), entry.getValue());
+        }
+        if (!failures.isEmpty()) {
+            out.println("Comandos com falha" + (failed > failures.size() ? " (primeiros " + failures.size() + ")" : "") + ":");
+            for (String failure : failures) {
+                out.println("  " + failure);
+            }
+        }
+        out.flush();
+        return failed == 0;
+    }
+    
+    // Divide a linha em palavras separadas por espaços e tabulações
+    static String[] tokenize(String line) {
+        List<String> tokens = new ArrayList<>(4);
+        int length = line.length();
+        int i = 0;
+        while (i < length) {
+            while (i < length && Character.isWhitespace(line.charAt(i))) i++;
+            int start = i;
+            while (i < length && !Character.isWhitespace(line.charAt(i))) i++;
+            if (i > start) tokens.add(line.substring(start, i));
+        }
+        return tokens.toArray(new String[0]);
+    }
+    
+    // Caminho absoluto de um argumento, relativo ao diretório de trabalho e com "." e ".."
+    // resolvidos; caminhos absolutos sem esses componentes são usados como estão
+    String path(String argument) {
+        if (argument.startsWith("/") && !argument.contains("/.")) return argument;
+        String joined = argument.startsWith("/") ? argument : workingDirectory + "/" + argument;
+        ArrayDeque<String> names = new ArrayDeque<>();
+        for (String name : joined.split("/")) {
+            if (name.isEmpty() || name.equals(".")) continue;
+            if (name.equals("..")) {
+                names.pollLast();
+            } else {
+                names.addLast(name);
+            }
+        }
+        return "/" + String.join("/", names);
+    }
+    
+    static boolean isNumber(String text) {
+        if (text.isEmpty() || text.length() > 18) return false;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) < '0' || text.charAt(i) > '9') return false;
+        }
+        return true;
+    }
+    
+    // Executa um comando já dividido em palavras
+    public FsStatus execute(String[] parts) {
+        String command = parts[0].toLowerCase();
+        if (remote && !isRemoteCommand(command, parts.length)) {
+            out.println("Comando não disponível em sessões remotas: " + command);
+            return FsStatus.NOT_PERMITTED;
+        }
+        
+        switch (command) {
+            case "help":
+                showHelp();
+                return FsStatus.OK;
+            
+            case "createfile":
+                if (parts.length >= 2) {
+                    String content = parts.length > 2 ? String.join(" ", Arrays.copyOfRange(parts, 2, parts.length)) : "";
+                    String path = path(parts[1]);
+                    return report(fileSystem.createFile(path, content), "Arquivo criado", path);
+                }
+                return usage("createfile <caminho> [conteúdo]");
+            
+            case "copyfile":
+                if (parts.length == 3) {
+                    return report(fileSystem.copyFile(path(parts[1]), path(parts[2])), "Arquivo copiado", path(parts[1]), path(parts[2]));
+                }
+                return usage("copyfile <origem> <destino>");
+            
+            case "deletefile":
+                if (parts.length == 2) {
+                    return report(fileSystem.deleteFile(path(parts[1])), "Arquivo apagado", path(parts[1]));
+                }
+                return usage("deletefile <caminho>");
+            
+            case "renamefile":
+                if (parts.length == 3) {
+                    return report(fileSystem.renameFile(path(parts[1]), parts[2]), "Arquivo renomeado", path(parts[1]), parts[2]);
+                }
+                return usage("renamefile <caminho_atual> <novo_nome>");
+            
+            case "createdir":
+                if (parts.length == 2) {
+                    return report(fileSystem.createDirectory(path(parts[1])), "Diretório criado", path(parts[1]));
+                }
+                return usage("createdir <caminho>");
+            
+            case "deletedir":
+                if (parts.length == 2) {
+                    return report(fileSystem.deleteDirectory(path(parts[1])), "Diretório apagado", path(parts[1]));
+                } else if (parts.length == 3 && parts[1].equals("-r")) {
+                    return report(fileSystem.deleteTree(path(parts[2])), "Diretório apagado", path(parts[2]));
+                }
+                return usage("deletedir [-r] <caminho>");
+            
+            case "renamedir":
+                if (parts.length == 3) {
+                    return report(fileSystem.renameDirectory(path(parts[1]), parts[2]), "Diretório renomeado", path(parts[1]), parts[2]);
+                }
+                return usage("renamedir <caminho_atual> <novo_nome>");
+            
+            case "copytree":
+                if (parts.length == 3) {
+                    return report(fileSystem.copyTree(path(parts[1]), path(parts[2])), "Diretório copiado", path(parts[1]), path(parts[2]));
+                }
+                return usage("copytree <origem> <destino>");
+            
+            case "walk": {
+                if (parts.length != 2) {
+                    return usage("walk <caminho>");
+                }
+                Queue<String> paths = new ConcurrentLinkedQueue<>();
+                FsStatus status = fileSystem.walk(path(parts[1]), item -> {
+                    String path = item.getPath();
+                    paths.add(item.isDirectory() && !path.equals("/") ? path + "/" : path);
+                });
+                if (status.isOk()) {
+                    List<String> sorted = new ArrayList<>(paths);
+                    Collections.sort(sorted);
+                    for (String path : sorted) {
+                        out.println(path);
+                    }
+                    out.println(sorted.size() + " itens");
+                }
+                return report(status, null);
+            }
+            
+            case "cd": {
+                String path = parts.length > 1 ? path(parts[1]) : "/";
+                if (parts.length > 2) {
+                    return usage("cd [caminho]");
+                }
+                FsResult<FileSystemItem> result = fileSystem.stat(path);
+                FsStatus status = !result.isOk() || !result.getValue().isDirectory() ? FsStatus.DIRECTORY_NOT_FOUND : FsStatus.OK;
+                if (status.isOk()) {
+                    workingDirectory = path;
+                }
+                return report(status, null);
+            }
+            
+            case "pwd":
+                out.println(workingDirectory);
+                return FsStatus.OK;
+            
+            case "move":
+                if (parts.length == 3) {
+                    return report(fileSystem.move(path(parts[1]), path(parts[2])), "Item movido", path(parts[1]), path(parts[2]));
+                }
+                return usage("move <origem> <destino>");
+            
+            case "list":
+                return list(parts);
+            
+            case "count": {
+                String path = parts.length > 1 ? path(parts[1]) : workingDirectory;
+                FsResult<Integer> result = fileSystem.countEntries(path);
+                if (result.isOk()) {
+                    out.println(path + ": " + result.getValue() + " itens");
+                }
+                return report(result.getStatus(), null);
+            }
+            
+            case "du": {
+                if (parts.length > 2) {
+                    return usage("du [caminho]");
+                }
+                String path = parts.length > 1 ? path(parts[1]) : workingDirectory;
+                FsResult<DiskUsage> result = fileSystem.diskUsage(path);
+                if (result.isOk()) {
+                    DiskUsage diskUsage = result.getValue();
+                    out.println(path + ": " + diskUsage.getBytes() + " bytes, " + diskUsage.getFiles() + " arquivos, "
+                            + diskUsage.getDirectories() + " diretórios");
+                }
+                return report(result.getStatus(), null);
+            }
+            
+            case "quota":
+                return quota(parts);
+            
+            case "capacity":
+                if (parts.length == 2 && isNumber(parts[1])) {
+                    fileSystem.setCapacity(Long.parseLong(parts[1]));
+                } else if (parts.length != 1) {
+                    return usage("capacity [bytes]");
+                }
+                long used = fileSystem.diskUsage("/").getValue().getBytes();
+                out.println(fileSystem.getCapacity() == 0
+                        ? "Capacidade: sem limite (" + used + " bytes em uso)"
+                        : "Capacidade: " + fileSystem.getCapacity() + " bytes (" + used + " bytes em uso)");
+                return FsStatus.OK;
+            
+            case "stat":
+                if (parts.length == 2) {
+                    FsResult<FileSystemItem> result = fileSystem.stat(path(parts[1]));
+                    if (result.isOk()) {
+                        FileSystemItem item = result.getValue();
+                        out.println("Caminho: " + item.getPath());
+                        out.println("Tipo: " + item.getType());
+                        if (!item.isDirectory()) {
+                            out.println("Tamanho: " + ((File) item).getSize() + " bytes");
+                        }
+                        out.println("Criado em: " + LISTING_DATE.format(Instant.ofEpochMilli(item.getCreationTime())));
+                        out.println("Modificado em: " + LISTING_DATE.format(Instant.ofEpochMilli(item.getLastModified())));
+                    }
+                    return report(result.getStatus(), null);
+                }
+                return usage("stat <caminho>");
+            
+            case "find":
+            case "grep":
+                return search(command, parts);
+            
+            case "journal":
+                out.println("\n=== JOURNAL LOG ===");
+                List<JournalEntry> entries = fileSystem.getJournal().getRecentEntries();
+                if (entries.isEmpty()) {
+                    out.println("Nenhuma operação registrada.");
+                } else {
+                    for (JournalEntry entry : entries) {
+                        out.println(entry);
+                    }
+                }
+                out.println("==================\n");
+                return FsStatus.OK;
+            
+            case "cache":
+                DentryCache dentryCache = fileSystem.getDentryCache();
+                long lookups = dentryCache.getHits() + dentryCache.getMisses();
+                out.printf("Dentry cache: %d/%d entradas, %d acertos, %d falhas (%.1f%% de acerto)\n",
+                        dentryCache.size(), dentryCache.getCapacity(), dentryCache.getHits(), dentryCache.getMisses(),
+                        lookups == 0 ? 0.0 : 100.0 * dentryCache.getHits() / lookups);
+                return FsStatus.OK;
+            
+            case "cat":
+                if (parts.length == 2) {
+                    FsResult<String> result = fileSystem.readText(path(parts[1]));
+                    if (result.isOk()) {
+                        out.println(result.getValue());
+                    }
+                    return report(result.getStatus(), null);
+                }
+                return usage("cat <caminho>");
+            
+            case "write":
+                if (parts.length >= 3 && isNumber(parts[2])) {
+                    String text = parts.length > 3 ? String.join(" ", Arrays.copyOfRange(parts, 3, parts.length)) : "";
+                    return report(fileSystem.writeFile(path(parts[1]), Long.parseLong(parts[2]),
+                            ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8))), "Arquivo alterado", path(parts[1]));
+                }
+                return usage("write <caminho> <offset> [texto]");
+            
+            case "append":
+                if (parts.length >= 2) {
+                    String text = parts.length > 2 ? String.join(" ", Arrays.copyOfRange(parts, 2, parts.length)) : "";
+                    return report(fileSystem.appendFile(path(parts[1]), ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8))),
+                            "Arquivo alterado", path(parts[1]));
+                }
+                return usage("append <caminho> [texto]");
+            
+            case "truncate":
+                if (parts.length == 3 && isNumber(parts[2])) {
+                    return report(fileSystem.truncateFile(path(parts[1]), Long.parseLong(parts[2])), "Arquivo alterado", path(parts[1]));
+                }
+                return usage("truncate <caminho> <tamanho>");
+            
+            case "stats":
+                if (parts.length == 2 && parts[1].equals("reset")) {
+                    fileSystem.getMetrics().reset();
+                    out.println("Métricas zeradas");
+                    return FsStatus.OK;
+                }
+                if (parts.length == 1) {
+                    showStats();
+                    return FsStatus.OK;
+                }
+                return usage("stats [reset]");
+            
+            case "accesslog": {
+                AccessLog accessLog = fileSystem.getAccessLog();
+                if (parts.length == 2 && isNumber(parts[1])) {
+                    accessLog.setSampling((int) Math.min(Integer.MAX_VALUE, Long.parseLong(parts[1])));
+                } else if (parts.length != 1) {
+                    return usage("accesslog [n]");
+                }
+                if (accessLog.getSampling() == 0) {
+                    out.println("Log de acessos desligado");
+                } else {
+                    out.println("Log de acessos: 1 em " + accessLog.getSampling() + " consultas em " + accessLog.getFile()
+                            + " (" + accessLog.getRecorded() + " registradas)");
+                }
+                return FsStatus.OK;
+            }
+            
+            case "trace": {
+                if (parts.length == 2 && parts[1].equals("stop")) {
+                    fileSystem.stopTrace();
+                } else if (parts.length == 2) {
+                    try {
+                        fileSystem.startTrace(Paths.get(parts[1]));
+                    } catch (IOException e) {
+                        out.println("Erro ao criar trace: " + e.getMessage());
+                        return FsStatus.INVALID_ARGUMENT;
+                    }
+                } else if (parts.length != 1) {
+                    return usage("trace [arquivo|stop]");
+                }
+                OperationTrace trace = fileSystem.getTrace();
+                out.println(trace.isRecording()
+                        ? "Trace: gravando em " + trace.getFile() + " (" + trace.getRecorded() + " chamadas)"
+                        : "Trace desligado");
+                return FsStatus.OK;
+            }
+            
+            case "storage":
+                BlockStore store = fileSystem.getBlockStore();
+                out.printf("Blocos: %d únicos, %d bytes armazenados, %d reaproveitados por deduplicação\n",
+                        store.getBlockCount(), store.getStoredBytes(), store.getDeduplicatedBlocks());
+                showCompression();
+                return FsStatus.OK;
+            
+            case "compression":
+                if (parts.length == 3 && isNumber(parts[1]) && isNumber(parts[2])) {
+                    fileSystem.getBlockStore().setCompression(Long.parseLong(parts[1]),
+                            (int) Math.min(Integer.MAX_VALUE / 60, Long.parseLong(parts[2])) * 60);
+                } else if (parts.length != 1) {
+                    return usage("compression [bytes minutos]");
+                }
+                showCompression();
+                return FsStatus.OK;
+            
+            case "checkpoint":
+                if (fileSystem.checkpoint()) {
+                    out.println("Checkpoint iniciado (sequência " + fileSystem.getJournal().getLastSequence() + ")");
+                    return FsStatus.OK;
+                }
+                out.println("Já existe um checkpoint em andamento");
+                return FsStatus.BUSY;
+            
+            default:
+                out.println("Comando não reconhecido. Digite 'help' para ajuda.");
+                return FsStatus.INVALID_ARGUMENT;
+        }
+    }
+    
+    // Mostra o resultado de uma operação: "<ação> com sucesso: a -> b" ou "Erro: <motivo>".
+    // Com action null, só os erros são mostrados.
+    private FsStatus report(FsStatus status, String action, String... subjects) {
+        if (!messages) return status;
+        if (!status.isOk()) {
+            out.println("Erro: " + status.getMessage());
+        } else if (action != null) {
+            out.println(action + " com sucesso: " + String.join(" -> ", subjects));
+        }
+        return status;
+    }
+    
+    private FsStatus usage(String syntax) {
+        out.println("Uso: " + syntax);
+        return FsStatus.INVALID_ARGUMENT;
+    }
+    
+    // list [caminho] [--limit n] [--after nome] [--sort name]. Sem --limit nem --after, o
+    // diretório inteiro é lido e impresso aos poucos, página a página.
+    private FsStatus list(String[] parts) {
+        String syntax = "list [caminho] [--limit n] [--after nome] [--sort name]";
+        String path = workingDirectory;
+        String after = null;
+        int limit = 0;
+        boolean sorted = false;
+        for (int i = 1; i < parts.length; i++) {
+            String option = parts[i];
+            boolean hasValue = i + 1 < parts.length;
+            if (option.equals("--limit") && hasValue && isNumber(parts[i + 1])) {
+                limit = (int) Math.min(Integer.MAX_VALUE, Long.parseLong(parts[++i]));
+            } else if (option.equals("--after") && hasValue) {
+                after = parts[++i];
+            } else if (option.equals("--sort") && hasValue && parts[i + 1].equals("name")) {
+                sorted = true;
+                i++;
+            } else if (option.startsWith("--")) {
+                return usage(syntax);
+            } else {
+                path = path(option);
+            }
+        }
+        
+        if (limit == 0 && after == null) {
+            FsResult<Stream<FileSystemItem>> result = fileSystem.streamDirectory(path, sorted);
+            if (result.isOk()) {
+                printListingHeader(path);
+                long[] count = new long[1];
+                result.getValue().forEach(child -> {
+                    printListingEntry(child);
+                    count[0]++;
+                });
+                printListingFooter(count[0], null);
+            }
+            return report(result.getStatus(), null);
+        }
+        
+        FsResult<DirectoryPage> result = fileSystem.listPage(path, after, limit == 0 ? LISTING_DEFAULT_LIMIT : limit, sorted);
+        if (result.isOk()) {
+            DirectoryPage page = result.getValue();
+            printListingHeader(path);
+            for (FileSystemItem child : page.getItems()) {
+                printListingEntry(child);
+            }
+            printListingFooter(page.getItems().size(), page.getNextCursor());
+        }
+        return report(result.getStatus(), null);
+    }
+    
+    private void printListingHeader(String path) {
+        out.println("\n=== Conteúdo de " + path + " ===");
+    }
+    
+    private void printListingEntry(FileSystemItem child) {
+        String type = child.isDirectory() ? "[DIR]" : "[FILE]";
+        String size = child.isDirectory() ? "" : " (" + ((File) child).getSize() + " bytes)";
+        out.printf("%s %-20s %s%s\n", type, child.getName(),
+                LISTING_DATE.format(Instant.ofEpochMilli(child.getLastModified())), size);
+    }
+    
+    private void printListingFooter(long count, String nextCursor) {
+        if (count == 0) {
+            out.println("Diretório vazio");
+        }
+        if (nextCursor != null) {
+            out.println("Próxima página: --after " + nextCursor);
+        }
+        out.println("================================\n");
+    }
+    
+    // quota sem argumentos lista as cotas; quota <caminho> <bytes> [arquivos] define (0: sem
+    // limite; quota <caminho> 0 remove)
+    private FsStatus quota(String[] parts) {
+        if (parts.length == 1) {
+            Map<String, Quota> quotas = fileSystem.getQuotas();
+            for (Map.Entry<String, Quota> entry : quotas.entrySet()) {
+                Quota quota = entry.getValue();
+                DiskUsage used = fileSystem.diskUsage(entry.getKey()).getValue();
+                out.println(entry.getKey() + ": " + describeLimit(used.getBytes(), quota.getMaxBytes()) + " bytes, "
+                        + describeLimit(used.getFiles(), quota.getMaxFiles()) + " arquivos");
+            }
+            if (quotas.isEmpty()) {
+                out.println("Nenhuma cota definida");
+            }
+            return FsStatus.OK;
+        }
+        if ((parts.length == 3 || parts.length == 4) && isNumber(parts[2]) && (parts.length == 3 || isNumber(parts[3]))) {
+            String path = path(parts[1]);
+            long maxFiles = parts.length == 4 ? Long.parseLong(parts[3]) : 0;
+            return report(fileSystem.setQuota(path, Long.parseLong(parts[2]), maxFiles), "Cota definida", path);
+        }
+        return usage("quota [caminho bytes [n]]");
+    }
+    
+    private static String describeLimit(long used, long limit) {
+        return limit == 0 ? used + " (sem limite)" : used + " de " + limit;
+    }
+    
+    private void showCompression() {
+        BlockStore store = fileSystem.getBlockStore();
+        long threshold = store.getCompressionThreshold();
+        int cold = store.getColdSeconds();
+        out.println("Compressão (" + store.getCodec().getName() + "): "
+                + (threshold == 0 ? "regra de tamanho desligada" : "arquivos a partir de " + threshold + " bytes") + ", "
+                + (cold == 0 ? "regra de tempo sem acesso desligada" : "blocos sem acesso há " + cold / 60 + " min"));
+        long compressed = store.getCompressedBytes();
+        long packed = store.getPackedBytes();
+        out.printf("Comprimidos: %d blocos, %d -> %d bytes (%.2f:1); %d bytes em memória%n",
+                store.getCompressedBlocks(), compressed, packed, packed == 0 ? 1.0 : (double) compressed / packed,
+                store.getResidentBytes());
+        BlockCache cache = store.getCache();
+        long lookups = cache.getHits() + cache.getMisses();
+        out.printf("Cache de blocos descomprimidos: %d/%d blocos, %.1f%% de acerto%n", cache.size(), cache.getCapacity(),
+                lookups == 0 ? 0.0 : 100.0 * cache.getHits() / lookups);
+    }
+    
+    // find <padrão> [--in caminho] e grep <texto> [--in caminho]; o texto do grep pode ter espaços
+    private FsStatus search(String command, String[] parts) {
+        String scope = null;
+        List<String> words = new ArrayList<>();
+        for (int i = 1; i < parts.length; i++) {
+            if (parts[i].equals("--in") && i + 1 < parts.length) {
+                scope = path(parts[++i]);
+            } else {
+                words.add(parts[i]);
+            }
+        }
+        if (command.equals("find")) {
+            if (words.size() != 1) {
+                return usage("find <padrão> [--in caminho]");
+            }
+            FsResult<List<String>> result = fileSystem.find(words.get(0), scope);
+            if (result.isOk()) {
+                for (String path : result.getValue()) {
+                    out.println(path);
+                }
+                out.println(result.getValue().size() + " itens");
+            }
+            return report(result.getStatus(), null);
+        }
+        
+        if (words.isEmpty()) {
+            return usage("grep <texto> [--in caminho]");
+        }
+        FsResult<List<SearchMatch>> result = fileSystem.grep(String.join(" ", words), scope);
+        if (result.isOk()) {
+            for (SearchMatch match : result.getValue()) {
+                out.println(match.getPath() + ":" + match.getLine() + ": " + match.getText());
+            }
+            out.println(result.getValue().size() + " linhas");
+        }
+        return report(result.getStatus(), null);
+    }
+    
+    // Chamadas, falhas e latências (em µs) de cada operação já usada, seguidas do journal,
+    // do cache de caminhos e do tamanho da árvore
+    private void showStats() {
+        FsMetrics metrics = fileSystem.getMetrics();
+        out.println("\n=== ESTATÍSTICAS ===");
+        out.printf("%-16s %10s %8s %10s %10s %10s %10s %10s%n",
+                "Operação", "chamadas", "falhas", "média µs", "p50 µs", "p99 µs", "p99,9 µs", "máx µs");
+        for (FsMetrics.Operation operation : FsMetrics.Operation.values()) {
+            LatencyHistogram latency = metrics.getLatency(operation);
+            if (metrics.getCalls(operation) == 0) continue;
+            out.printf("%-16s %10d %8d %10.1f %10.1f %10.1f %10.1f %10.1f%n", operation.getLabel(),
+                    metrics.getCalls(operation), metrics.getFailures(operation), latency.getMean() / 1000.0,
+                    latency.getValueAtPercentile(50) / 1000.0, latency.getValueAtPercentile(99) / 1000.0,
+                    latency.getValueAtPercentile(99.9) / 1000.0, latency.getMax() / 1000.0);
+        }
+        
+        Journal journal = fileSystem.getJournal();
+        LatencyHistogram writes = journal.getWriteLatency();
+        LatencyHistogram fsyncs = journal.getFsyncLatency();
+        out.printf("Journal: %d bytes em %d escritas (p99 %.1f µs); %d fsync (p50 %.1f µs, p99 %.1f µs, máx %.1f µs)%n",
+                journal.getBytesWritten(), writes.getCount(), writes.getValueAtPercentile(99) / 1000.0,
+                fsyncs.getCount(), fsyncs.getValueAtPercentile(50) / 1000.0, fsyncs.getValueAtPercentile(99) / 1000.0,
+                fsyncs.getMax() / 1000.0);
+        DentryCache dentryCache = fileSystem.getDentryCache();
+        long lookups = dentryCache.getHits() + dentryCache.getMisses();
+        out.printf("Cache de caminhos: %d/%d entradas, %.1f%% de acerto%n", dentryCache.size(), dentryCache.getCapacity(),
+                lookups == 0 ? 0.0 : 100.0 * dentryCache.getHits() / lookups);
+        BlockStore store = fileSystem.getBlockStore();
+        out.printf("Árvore: %d itens; blocos: %d únicos, %d bytes (%d em memória)%n",
+                fileSystem.getItemCount(), store.getBlockCount(), store.getStoredBytes(), store.getResidentBytes());
+        out.println("====================\n");
+    }
+    
+    static boolean isRemoteCommand(String command, int words) {
+        return REMOTE_COMMANDS.contains(command) || words == 1 && REMOTE_QUERIES.contains(command);
+    }
+    
+    private void showHelp() {
+        out.println("\n=== COMANDOS DISPONÍVEIS ===");
+        helpLine("createfile <caminho> [conteúdo] - Criar arquivo");
+        helpLine("copyfile <origem> <destino>     - Copiar arquivo");
+        helpLine("cat <caminho>                   - Mostrar conteúdo de arquivo");
+        helpLine("write <caminho> <offset> [txt]  - Gravar texto a partir de um offset");
+        helpLine("append <caminho> [texto]        - Acrescentar texto ao fim do arquivo");
+        helpLine("truncate <caminho> <tamanho>    - Reduzir arquivo para o tamanho dado");
+        helpLine("deletefile <caminho>            - Apagar arquivo");
+        helpLine("renamefile <atual> <novo>       - Renomear arquivo");
+        helpLine("createdir <caminho>             - Criar diretório");
+        helpLine("deletedir [-r] <caminho>        - Apagar diretório (-r: com todo o conteúdo)");
+        helpLine("renamedir <atual> <novo>        - Renomear diretório");
+        helpLine("move <origem> <destino>         - Mover arquivo ou diretório");
+        helpLine("copytree <origem> <destino>     - Copiar diretório com o conteúdo");
+        helpLine("walk <caminho>                  - Listar a subárvore inteira");
+        helpLine("list [caminho] [opções]         - Listar conteúdo (padrão: diretório atual); opções:");
+        out.println("                                  --limit n, --after nome, --sort name");
+        helpLine("cd [caminho]                    - Mudar o diretório de trabalho (padrão: /)");
+        helpLine("pwd                             - Mostrar o diretório de trabalho");
+        helpLine("count [caminho]                 - Contar itens do diretório");
+        helpLine("stat <caminho>                  - Mostrar tipo, tamanho e datas de um item");
+        helpLine("du [caminho]                    - Bytes, arquivos e diretórios da subárvore");
+        helpLine("quota [caminho bytes [n]]       - Listar ou definir cotas de bytes e n arquivos (0: sem limite)");
+        helpLine("capacity [bytes]                - Mostrar ou definir a capacidade total (0: sem limite)");
+        helpLine("find <padrão> [--in caminho]    - Buscar itens pelo nome (* e ?)");
+        helpLine("grep <texto> [--in caminho]     - Buscar texto no conteúdo dos arquivos");
+        helpLine("journal                         - Mostrar log de operações");
+        helpLine("checkpoint                      - Gravar snapshot e truncar o journal");
+        helpLine("cache                           - Estatísticas do cache de caminhos");
+        helpLine("storage                         - Estatísticas do armazenamento de blocos");
+        helpLine("compression [bytes minutos]     - Comprimir arquivos a partir de bytes e blocos sem acesso (0: não)");
+        helpLine("stats [reset]                   - Chamadas e latências das operações (reset: zerar)");
+        helpLine("accesslog [n]                   - Registrar 1 em n consultas no log de acessos (0: desligar)");
+        helpLine("trace [arquivo|stop]            - Gravar todas as chamadas em um trace para --replay (stop: parar)");
+        helpLine("help                            - Mostrar esta ajuda");
+        out.println("exit                            - Sair do simulador (ou encerrar o script)");
+        out.println("============================\n");
+    }
+    
+    // Linha da ajuda; sessões remotas não veem os comandos que não podem usar
+    private void helpLine(String line) {
+        String command = line.substring(0, line.indexOf(' '));
+        if (!remote || REMOTE_COMMANDS.contains(command) || REMOTE_QUERIES.contains(command)) {
+            out.println(line);
+        }
+    }
+    
+    
+    // Expõe as métricas do simulador por JMX; uma falha só desliga o MBean
+    static void registerMBean(FileSystemSimulator simulator) {
+        try {
+            simulator.registerMBean();
+        } catch (JMException e) {
+            System.err.println("Erro ao registrar MBean de métricas: " + e.getMessage());
+        }
+    }
+    
+    // Modo script: --batch <arquivo|-> [--verbose] [--group-commit n] [--capacity bytes] [--trace arquivo]
+    static boolean runScript(String[] args) {
+        String source = null;
+        boolean verbose = false;
+        int groupCommit = Journal.DEFAULT_GROUP_COMMIT_SIZE;
+        long capacity = 0;
+        String traceFile = null;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--verbose")) {
+                verbose = true;
+            } else if (args[i].equals("--group-commit") && i + 1 < args.length && isNumber(args[i + 1])) {
+                groupCommit = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--capacity") && i + 1 < args.length && isNumber(args[i + 1])) {
+                capacity = Long.parseLong(args[++i]);
+            } else if (args[i].equals("--trace") && i + 1 < args.length) {
+                traceFile = args[++i];
+            } else if (source == null) {
+                source = args[i];
+            }
+        }
+        if (source == null) {
+            System.out.println("Uso: java simulador.FileSystemSimulator --batch <arquivo|-> [--verbose] [--group-commit n] [--capacity bytes]"
+                    + " [--trace arquivo]");
+            return false;
+        }
+        
+        FileSystemSimulator simulator = new FileSystemSimulator();
+        simulator.getJournal().setGroupCommitSize(groupCommit);
+        simulator.setCapacity(capacity);
+        registerMBean(simulator);
+        PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out)), false);
+        FileSystemShell shell = new FileSystemShell(simulator, out);
+        shell.setMessages(verbose);
+        if (verbose) out.println(simulator.getRecoveryReport());
+        try (BufferedReader input = new BufferedReader(new InputStreamReader(
+                source.equals("-") ? System.in : Files.newInputStream(Paths.get(source)), StandardCharsets.UTF_8), 1 << 16)) {
+            if (traceFile != null) {
+                simulator.startTrace(Paths.get(traceFile));
+            }
+            return shell.runBatch(input);
+        } catch (IOException e) {
+            out.println("Erro ao ler script: " + e.getMessage());
+            return false;
+        } finally {
+            out.flush();
+            simulator.close();
+        }
+    }
+}
+
+// Servidor TCP que compartilha um simulador entre vários clientes
+//
+// Escuta só na interface de loopback. O protocolo é em linhas: cada linha enviada pelo
+// cliente é um comando do shell, e cada resposta é uma linha "<STATUS> <bytes>" seguida
+// de exatamente esse número de bytes (UTF-8) com a saída do comando. Linhas vazias não
+// têm resposta; "exit" encerra a sessão. O cliente pode enviar vários comandos sem
+// esperar as respostas (pipelining): elas voltam na mesma ordem, e o servidor só esvazia
+// o buffer de saída quando não há mais comandos já recebidos, agrupando as respostas de
+// um lote em poucas escritas no socket.
+//
+// As sessões só aceitam os comandos sobre a árvore (FileSystemShell com remote); os de
+// administração respondem NOT_PERMITTED e ficam no shell local e nas opções de --server.
+//
+// Cada conexão tem a sua sessão do shell, com diretório de trabalho próprio, e roda em
+// uma virtual thread quando o Java oferece (21 ou superior); nas versões anteriores, em
+// um pool de threads comuns.
+class FileSystemServer implements Closeable {
+    public static final int DEFAULT_PORT = 7070;
+    private static final int BACKLOG = 4096;
+    private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+    
+    private final FileSystemSimulator fileSystem;
+    private final ServerSocket serverSocket;
+    private final ExecutorService sessions;
+    private final Thread acceptor;
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+    private final LongAdder accepted = new LongAdder();
+    private volatile boolean closed;
+    
+    // Abre o servidor na porta informada (0: qualquer porta livre) e começa a aceitar conexões
+    FileSystemServer(FileSystemSimulator fileSystem, int port) throws IOException {
+        this.fileSystem = fileSystem;
+        this.serverSocket = new ServerSocket(port, BACKLOG, InetAddress.getLoopbackAddress());
+        this.sessions = newSessionExecutor();
+        this.acceptor = new Thread(this::acceptLoop, "fs-server-accept");
+        acceptor.start();
+    }
+    
+    public int getPort() { return serverSocket.getLocalPort(); }
+    public long getAcceptedConnections() { return accepted.sum(); }
+    public int getOpenConnections() { return connections.size(); }
+    
+    // Uma virtual thread por sessão quando disponível (Executors.newVirtualThreadPerTaskExecutor,
+    // procurado por reflexão para que o código continue compilando no Java 11)
+    static ExecutorService newSessionExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "fs-session");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+    
+    static boolean hasVirtualThreads() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+    
+    private void acceptLoop() {
+        while (!closed) {
+            try {
+                Socket socket = serverSocket.accept();
+                accepted.increment();
+                connections.add(socket);
+                sessions.execute(() -> serve(socket));
+            } catch (IOException e) {
+                if (!closed) System.err.println("Erro ao aceitar conexão: " + e.getMessage());
+            }
+        }
+    }
+    
+    // Atende uma sessão até exit ou o fim da conexão
+    private void serve(Socket socket) {
+        try (Socket connection = socket;
+             BufferedReader input = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8));
+             OutputStream output = new BufferedOutputStream(connection.getOutputStream(), OUTPUT_BUFFER_SIZE)) {
+            connection.setTcpNoDelay(true);
+            StringWriter buffer = new StringWriter();
+            FileSystemShell shell = new FileSystemShell(fileSystem, new PrintWriter(buffer), true);
+            String line;
+            while ((line = input.readLine()) != null) {
+                String[] parts = FileSystemShell.tokenize(line);
+                if (parts.length == 0) continue;
+                if (parts[0].equalsIgnoreCase("exit")) break;
+                
+                String status;
+                try {
+                    status = shell.execute(parts).name();
+                } catch (RuntimeException e) {
+                    // Por exemplo, um diretório alterado por outra sessão durante a listagem
+                    buffer.write("Erro: " + e.getMessage() + "\n");
+                    status = "ERROR";
+                }
+                byte[] body = buffer.toString().getBytes(StandardCharsets.UTF_8);
+                buffer.getBuffer().setLength(0);
+                output.write((status + " " + body.length + "\n").getBytes(StandardCharsets.UTF_8));
+                output.write(body);
+                // Com mais comandos já recebidos, a resposta espera junto com as próximas
+                if (!input.ready()) output.flush();
+            }
+            output.flush();
+        } catch (IOException e) {
+            if (!closed) System.err.println("Erro na sessão: " + e.getMessage());
+        } finally {
+            connections.remove(socket);
+        }
+    }
+    
+    // Para de aceitar conexões e encerra as sessões abertas; o simulador continua aberto
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            System.err.println("Erro ao fechar servidor: " + e.getMessage());
+        }
+        for (Socket socket : connections) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // A sessão já estava sendo encerrada
+            }
+        }
+        sessions.shutdown();
+        try {
+            acceptor.join();
+            sessions.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    // Modo servidor: --server [--port n] [--group-commit n] [--capacity bytes] [--trace arquivo]
+    static void run(String[] args) {
+        int port = DEFAULT_PORT;
+        int groupCommit = Journal.DEFAULT_GROUP_COMMIT_SIZE;
+        long capacity = 0;
+        String traceFile = null;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--port") && i + 1 < args.length && FileSystemShell.isNumber(args[i + 1])) {
+                port = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--group-commit") && i + 1 < args.length && FileSystemShell.isNumber(args[i + 1])) {
+                groupCommit = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--capacity") && i + 1 < args.length && FileSystemShell.isNumber(args[i + 1])) {
+                capacity = Long.parseLong(args[++i]);
+            } else if (args[i].equals("--trace") && i + 1 < args.length) {
+                traceFile = args[++i];
+            } else {
+                System.out.println("Uso: java simulador.FileSystemSimulator --server [--port n] [--group-commit n] [--capacity bytes]"
+                        + " [--trace arquivo]");
+                return;
+            }
+        }
+        
+        FileSystemSimulator simulator = new FileSystemSimulator();
+        simulator.getJournal().setGroupCommitSize(groupCommit);
+        simulator.setCapacity(capacity);
+        FileSystemShell.registerMBean(simulator);
+        FileSystemServer server;
+        try {
+            if (traceFile != null) {
+                simulator.startTrace(Paths.get(traceFile));
+            }
+            server = new FileSystemServer(simulator, port);
+        } catch (IOException e) {
+            System.out.println("Erro ao abrir servidor: " + e.getMessage());
+            simulator.close();
+            return;
+        }
+        // Ctrl+C encerra as sessões e grava o journal
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.close();
+            simulator.close();
+        }));
+        System.out.println("Servidor ouvindo em " + InetAddress.getLoopbackAddress().getHostAddress() + ":" + server.getPort()
+                + (hasVirtualThreads() ? " (virtual threads)" : " (pool de threads)") + "; Ctrl+C encerra");
+    }
+}
+
+// Classe principal do simulador
+public class FileSystemSimulator {
+    private static final int DEFAULT_CHECKPOINT_INTERVAL = 10000;
+    private static final int DEFAULT_DENTRY_CACHE_SIZE = 16384;
+    private static final int LOCK_STRIPES = 256;
+    private static final int LISTING_PAGE_SIZE = 1024;
+    
+    private Directory root;
+    private Journal journal;
+    private final BlockStore blockStore = new BlockStore();
+    private DentryCache dentryCache;
+    private LockStripes locks;
+    private final ReentrantReadWriteLock namespaceLock = new ReentrantReadWriteLock();
+    private final SearchIndex searchIndex = new SearchIndex();
+    private final FsMetrics metrics = new FsMetrics();
+    private ObjectName metricsName;
+    private AccessLog accessLog;
+    private final OperationTrace trace = new OperationTrace();
+    // Cotas por diretório (o objeto, para que renomear ou mover mantenha a cota) e
+    // capacidade total em bytes, 0 sem limite; configuração só em memória, como o group commit
+    private final Map<Directory, Quota> quotas = new ConcurrentHashMap<>();
+    private volatile long capacity;
+    private Path imageFile;
+    private Path legacySnapshotFile;
+    private ExecutorService checkpointExecutor;
+    private AtomicBoolean checkpointRunning;
+    private volatile Snapshot.Capture capture;
+    private volatile int checkpointInterval;
+    private AtomicInteger operationsSinceCheckpoint;
+    // De onde veio o estado restaurado na abertura; só o shell interativo e o modo script
+    // com --verbose mostram
+    private String recoveryReport;
+    
+    public FileSystemSimulator() {
+        this(Paths.get(""));
+    }
+    
+    // Simulador com journal e snapshot guardados no diretório informado
+    public FileSystemSimulator(Path directory) {
+        this(directory, JournalIo::open);
+    }
+    
+    // Simulador cujo journal é gravado pela camada de E/S informada
+    public FileSystemSimulator(Path directory, JournalIo.Opener journalIo) {
+        this.imageFile = directory.resolve("filesystem.img");
+        this.legacySnapshotFile = directory.resolve("filesystem.snapshot");
+        long[] snapshotSequence = new long[1];
+        Directory restored = FileSystemImage.load(imageFile, snapshotSequence, blockStore);
+        Path restoredFrom = imageFile;
+        if (restored == null && !Files.exists(imageFile)) {
+            restored = Snapshot.load(legacySnapshotFile, snapshotSequence, blockStore);
+            restoredFrom = legacySnapshotFile;
+        }
+        this.root = restored != null ? restored : new Directory("root");
+        this.dentryCache = new DentryCache(DEFAULT_DENTRY_CACHE_SIZE);
+        this.locks = new LockStripes(LOCK_STRIPES);
+        this.journal = new Journal(directory.resolve("filesystem.journal").toString(), journalIo);
+        this.accessLog = new AccessLog(directory.resolve("filesystem.access.log"));
+        this.checkpointInterval = DEFAULT_CHECKPOINT_INTERVAL;
+        this.checkpointRunning = new AtomicBoolean(false);
+        this.operationsSinceCheckpoint = new AtomicInteger();
+        blockStore.startCompactor();
+        this.checkpointExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "checkpoint");
+            thread.setDaemon(true);
+            return thread;
+        });
+        
+        long replayed = journal.recover(this::applyJournalEntry, snapshotSequence[0]);
+        this.recoveryReport = (restored != null ? "Snapshot carregado de: " + restoredFrom + " (sequência " + snapshotSequence[0] + ")\n" : "")
+                + "Journal carregado de: " + directory.resolve("filesystem.journal") + " (" + replayed + " operações reaplicadas)";
+        journal.commitOperation(journal.logOperation(JournalOp.INIT));
+    }
+    
+    public Journal getJournal() { return journal; }
+    
+    public BlockStore getBlockStore() { return blockStore; }
+    
+    public String getRecoveryReport() { return recoveryReport; }
+    
+    public DentryCache getDentryCache() { return dentryCache; }
+    
+    public FsMetrics getMetrics() { return metrics; }
+    
+    public AccessLog getAccessLog() { return accessLog; }
+    
+    public OperationTrace getTrace() { return trace; }
+    
+    // Começa a gravar as chamadas em file (ver OperationTrace). A capacidade e as cotas em
+    // vigor são gravadas no início, para que a reprodução parta da mesma configuração;
+    // o conteúdo da árvore não, então o trace deve começar com o sistema vazio.
+    public void startTrace(Path file) throws IOException {
+        trace.start(file);
+        long start = System.nanoTime();
+        if (capacity > 0) {
+            trace.record(OperationTrace.Op.SET_CAPACITY, start, FsStatus.OK, null, null, capacity, 0, null);
+        }
+        for (Map.Entry<String, Quota> entry : getQuotas().entrySet()) {
+            Quota quota = entry.getValue();
+            trace.record(OperationTrace.Op.SET_QUOTA, start, FsStatus.OK, entry.getKey(), null,
+                    quota.getMaxBytes(), quota.getMaxFiles(), null);
+        }
+    }
+    
+    public void stopTrace() { trace.stop(); }
+    
+    // Registra o MBean com as métricas deste simulador no servidor JMX da plataforma;
+    // close() o remove. Devolve o nome registrado.
+    public ObjectName registerMBean() throws JMException {
+        if (metricsName == null) {
+            ObjectName name = new ObjectName("FileSystemSimulator:type=Metrics,directory="
+                    + ObjectName.quote(imageFile.toAbsolutePath().normalize().getParent().toString()));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new FsMetricsMBean(this), name);
+            metricsName = name;
+        }
+        return metricsName;
+    }
+    
+    // Número de itens da árvore, sem contar a raiz. Na primeira consulta a árvore é contada
+    // uma vez, com o lock exclusivo do espaço de nomes; depois as operações mantêm o total.
+    public long getItemCount() {
+        if (!metrics.isItemsCounted()) {
+            Lock namespace = lockNamespace(true);
+            try {
+                if (!metrics.isItemsCounted()) {
+                    LongAdder items = new LongAdder();
+                    TreeOperations.walk(root, locks, item -> items.increment());
+                    metrics.countedItems(items.sum());
+                }
+            } finally {
+                namespace.unlock();
+            }
+        }
+        return metrics.getItems();
+    }
+    
+    // Número de operações commitadas entre checkpoints automáticos; 0 desliga
+    public void setCheckpointInterval(int checkpointInterval) {
+        this.checkpointInterval = Math.max(0, checkpointInterval);
+    }
+    
+    public int getCheckpointInterval() { return checkpointInterval; }
+    
+    // Inicia um checkpoint: fecha o segmento atual do journal e, em segundo plano, copia a
+    // estrutura da árvore e grava o snapshot. Quando o snapshot está no disco, os segmentos
+    // cobertos por ele são apagados. Retorna false se já houver um checkpoint em andamento.
+    // Não pode ser chamado por uma thread que tenha algum lock de diretório.
+    public boolean checkpoint() {
+        long start = System.nanoTime();
+        boolean started = startCheckpoint();
+        trace.record(OperationTrace.Op.CHECKPOINT, start, started ? FsStatus.OK : FsStatus.BUSY, null);
+        return started;
+    }
+    
+    // Os checkpoints automáticos não entram no trace: a reprodução tem os seus
+    private boolean startCheckpoint() {
+        long start = metrics.start(FsMetrics.Operation.CHECKPOINT);
+        if (!checkpointRunning.compareAndSet(false, true)) {
+            metrics.record(FsMetrics.Operation.CHECKPOINT, start, false);
+            return false;
+        }
+        operationsSinceCheckpoint.set(0);
+        
+        // Com todas as faixas travadas nenhuma alteração está no meio do caminho, então a
+        // rotação e a abertura da captura marcam o mesmo estado. A pausa é O(1): a árvore é
+        // percorrida depois, com as alterações preservando o que ela ainda não copiou.
+        long sequence;
+        Snapshot.Capture opened = new Snapshot.Capture();
+        locks.lockAll();
+        try {
+            sequence = journal.rotate();
+            capture = opened;
+        } finally {
+            locks.unlockAll();
+        }
+        // A latência registrada é a pausa; a cópia e a gravação seguem em segundo plano
+        metrics.record(FsMetrics.Operation.CHECKPOINT, start, true);
+        checkpointExecutor.execute(() -> {
+            Snapshot snapshot = null;
+            try {
+                try {
+                    snapshot = Snapshot.capture(root, sequence, opened, locks);
+                } finally {
+                    capture = null;
+                }
+                snapshot.writeTo(imageFile);
+                Files.deleteIfExists(legacySnapshotFile);
+                journal.deleteSegmentsUpTo(snapshot.getSequence());
+            } catch (IOException e) {
+                System.err.println("Erro ao gravar snapshot: " + e.getMessage());
+            } finally {
+                if (snapshot != null) snapshot.release();
+                checkpointRunning.set(false);
+            }
+        });
+        return true;
+    }
+    
+    // Guarda o estado do item para o checkpoint em andamento antes de alterá-lo; chamado
+    // com o lock que protege a parte alterada (veja Snapshot.Capture.preserve)
+    private void preserve(FileSystemItem item) {
+        Snapshot.Capture current = capture;
+        if (current != null) current.preserve(item);
+    }
+    
+    // Commita a transação antes de alterar a árvore: se o journal não conseguir gravá-la,
+    // a operação termina com IO_ERROR sem nenhum efeito. Chamado já com o lock do diretório
+    // alterado, para que a ordem dos COMMITs no journal siga a ordem das alterações na árvore.
+    private FsStatus commit(long transaction) {
+        if (!journal.commitOperation(transaction)) {
+            return FsStatus.IO_ERROR;
+        }
+        operationsSinceCheckpoint.incrementAndGet();
+        return FsStatus.OK;
+    }
+    
+    // Dispara o checkpoint automático; chamado depois de liberar os locks
+    private void checkpointIfDue() {
+        int interval = checkpointInterval;
+        if (interval > 0 && operationsSinceCheckpoint.get() >= interval) {
+            startCheckpoint();
+        }
+    }
+    
+    public boolean isEmpty() { return root.isEmpty(); }
+    
+    // Grava no disco o que ainda estiver pendente no journal e o fecha
+    public void close() {
+        if (metricsName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(metricsName);
+            } catch (JMException e) {
+                System.err.println("Erro ao remover MBean: " + e.getMessage());
+            }
+            metricsName = null;
+        }
+        checkpointExecutor.shutdown();
+        try {
+            checkpointExecutor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        journal.close();
+        accessLog.close();
+        trace.stop();
+        blockStore.stopCompactor();
+    }
+    
+    // Método para copiar arquivo
+    public FsStatus copyFile(String sourcePath, String destPath) {
+        long start = metrics.start(FsMetrics.Operation.COPY_FILE);
+        return trace.record(OperationTrace.Op.COPY_FILE, start, metrics.record(FsMetrics.Operation.COPY_FILE, start, doCopyFile(sourcePath, destPath)), sourcePath, destPath);
+    }
+    
+    private FsStatus doCopyFile(String sourcePath, String destPath) {
+        long transaction = journal.logOperation(JournalOp.COPY_FILE, sourcePath, destPath);
+        Lock namespace = lockNamespace(false);
+        try {
+            FileSystemItem source = findItem(sourcePath);
+            if (source == null || source.isDirectory()) {
+                return FsStatus.FILE_NOT_FOUND;
+            }
+            
+            String destDir = getParentPath(destPath);
+            String destName = getFileName(destPath);
+            if (!FileSystemItem.isValidName(destName)) {
+                return FsStatus.INVALID_ARGUMENT;
+            }
+            
+            FileSystemItem destItem = findItem(destDir);
+            if (destItem == null || !destItem.isDirectory()) {
+                return FsStatus.DIRECTORY_NOT_FOUND;
+            }
+            Directory destDirectory = (Directory) destItem;
+            
+            // A origem é lida sob o lock de leitura do seu diretório e o destino alterado
+            // sob o lock de escrita; os dois são adquiridos em ordem de faixa
+            Directory sourceDirectory = findDirectory(getParentPath(sourcePath));
+            if (sourceDirectory == null) {
+                return FsStatus.FILE_NOT_FOUND;
+            }
+            locks.lockReadWrite(sourceDirectory, destDirectory);
+            try {
+                if (sourceDirectory.findChild(getFileName(sourcePath)) != source) {
+                    return FsStatus.FILE_NOT_FOUND;
+                }
+                if (destDirectory.isRemoved()) {
+                    return FsStatus.DIRECTORY_NOT_FOUND;
+                }
+                if (destDirectory.findChild(destName) != null) {
+                    return FsStatus.ALREADY_EXISTS;
+                }
+                FsStatus limit = checkLimits(destDirectory, ((File) source).getSize(), 1, null);
+                if (!limit.isOk()) {
+                    return limit;
+                }
+                
+                FsStatus committed = commit(transaction);
+                if (!committed.isOk()) {
+                    return committed;
+                }
+                File newFile = ((File) source).copyAs(destName);
+                preserve(destDirectory);
+                destDirectory.addChild(newFile);
+                searchIndex.added(newFile);
+                metrics.itemsChanged(1);
+                dentryCache.invalidate(destPath);
+            } finally {
+                locks.unlockReadWrite(sourceDirectory, destDirectory);
+            }
+            
+            checkpointIfDue();
+            return FsStatus.OK;
+        
+        } finally {
+            namespace.unlock();
+            journal.abortIfActive(transaction);
+        }
+    }
+    
+    // Método para apagar arquivo
+    public FsStatus deleteFile(String filePath) {
+        long start = metrics.start(FsMetrics.Operation.DELETE_FILE);
+        return trace.record(OperationTrace.Op.DELETE_FILE, start, metrics.record(FsMetrics.Operation.DELETE_FILE, start, doDeleteFile(filePath)), filePath);
+    }
+    
+    private FsStatus doDeleteFile(String filePath) {
+        long transaction = journal.logOperation(JournalOp.DELETE_FILE, filePath);
+        Lock namespace = lockNamespace(false);
+        try {
+            String parentPath = getParentPath(filePath);
+            String fileName = getFileName(filePath);
+            
+            Directory parentDir = findDirectory(parentPath);
+            if (parentDir == null) {
+                return FsStatus.PARENT_NOT_FOUND;
+            }
+            
+            Lock lock = locks.writeLock(parentDir);
+            lock.lock();
+            try {
+                FileSystemItem item = parentDir.findChild(fileName);
+                if (item == null || item.isDirectory()) {
+                    return FsStatus.FILE_NOT_FOUND;
+                }
+                FsStatus committed = commit(transaction);
+                if (!committed.isOk()) {
+                    return committed;
+                }
+                
+                preserve(parentDir);
+                preserve(item);
+                parentDir.removeChild(fileName);
+                ((File) item).release();
+                searchIndex.removed(item);
+                metrics.itemsChanged(-1);
+                dentryCache.invalidate(filePath);
+            } finally {
+                lock.unlock();
+            }
+            
+            checkpointIfDue();
+            return FsStatus.OK;
+        
+        } finally {
+            namespace.unlock();
+            journal.abortIfActive(transaction);
+        }
+    }
+    
+    // Método para renomear arquivo
+    public FsStatus renameFile(String oldPath, String newName) {
+        long start = metrics.start(FsMetrics.Operation.RENAME);
+        return trace.record(OperationTrace.Op.RENAME_FILE, start, metrics.record(FsMetrics.Operation.RENAME, start, rename(JournalOp.RENAME_FILE, oldPath, newName)), oldPath, newName);
+    }
+    
+    // Método para criar diretório
+    public FsStatus createDirectory(String dirPath) {
+        long start = metrics.start(FsMetrics.Operation.CREATE_DIR);
+        return trace.record(OperationTrace.Op.CREATE_DIR, start, metrics.record(FsMetrics.Operation.CREATE_DIR, start, doCreateDirectory(dirPath)), dirPath);
+    }
+    
+    private FsStatus doCreateDirectory(String dirPath) {
+        long transaction = journal.logOperation(JournalOp.CREATE_DIR, dirPath);
+        Lock namespace = lockNamespace(false);
+        try {
+            String parentPath = getParentPath(dirPath);
+            String dirName = getFileName(dirPath);
+            if (!FileSystemItem.isValidName(dirName)) {
+                return FsStatus.INVALID_ARGUMENT;
+            }
+            
+            Directory parentDir = findDirectory(parentPath);
+            if (parentDir == null) {
+                return FsStatus.PARENT_NOT_FOUND;
+            }
+            
+            Lock lock = locks.writeLock(parentDir);
+            lock.lock();
+            try {
+                if (parentDir.isRemoved()) {
+                    return FsStatus.PARENT_NOT_FOUND;
+                }
+                if (parentDir.findChild(dirName) != null) {
+                    return FsStatus.ALREADY_EXISTS;
+                }
+                FsStatus committed = commit(transaction);
+                if (!committed.isOk()) {
+                    return committed;
+                }
+                
+                Directory newDir = new Directory(dirName);
+                preserve(parentDir);
+                parentDir.addChild(newDir);
+                searchIndex.added(newDir);
+                metrics.itemsChanged(1);
+                dentryCache.invalidateAdded(dirPath, newDir);
+            } finally {
+                lock.unlock();
+            }
+            
+            checkpointIfDue();
+            return FsStatus.OK;
+        
+        } finally {
+            namespace.unlock();
+            journal.abortIfActive(transaction);
+        }
+    }
+    
+    // Método para apagar diretório
+    public FsStatus deleteDirectory(String dirPath) {
+        long start = metrics.start(FsMetrics.Operation.DELETE_DIR);
+        return trace.record(OperationTrace.Op.DELETE_DIR, start, metrics.record(FsMetrics.Operation.DELETE_DIR, start, doDeleteDirectory(dirPath)), dirPath);
+    }
+    
+    private FsStatus doDeleteDirectory(String dirPath) {
+        long transaction = journal.logOperation(JournalOp.DELETE_DIR, dirPath);
+        Lock namespace = lockNamespace(false);
+        try {
+            String parentPath = getParentPath(dirPath);
+            String dirName = getFileName(dirPath);
+            
+            Directory parentDir = findDirectory(parentPath);
+            if (parentDir == null) {
+                return FsStatus.PARENT_NOT_FOUND;
+            }
+            
+            FileSystemItem item = findItem(dirPath);
+            if (item == null || !item.isDirectory() || item == root) {
+                return FsStatus.DIRECTORY_NOT_FOUND;
+            }
+            
+            // Trava o pai e o próprio diretório, para que nenhuma criação concorrente
+            // aconteça dentro dele entre a verificação de vazio e a remoção
+            Directory dirToDelete = (Directory) item;
+            locks.lockWrite(parentDir, dirToDelete);
+            try {
+                if (parentDir.findChild(dirName) != dirToDelete) {
+                    return FsStatus.DIRECTORY_NOT_FOUND;
+                }
+                if (!dirToDelete.isEmpty()) {
+                    return FsStatus.DIRECTORY_NOT_EMPTY;
+                }
+                FsStatus committed = commit(transaction);
+                if (!committed.isOk()) {
+                    return committed;
+                }
+                
+                preserve(parentDir);
+                parentDir.removeChild(dirName);
+                dirToDelete.markRemoved();
+                searchIndex.removed(dirToDelete);
+                metrics.itemsChanged(-1);
+                dentryCache.invalidateTree(dirPath, dirToDelete);
+            } finally {
+                locks.unlockWrite(parentDir, dirToDelete);
+            }
+            
+            checkpointIfDue();
+            return FsStatus.OK;
+        
+        } finally {
+            namespace.unlock();
+            journal.abortIfActive(transaction);
+        }
+    }
+    
+    // Método para apagar um diretório com todo o seu conteúdo, registrado no journal como
+    // uma única operação. Só o desligamento, O(1), acontece sob o lock exclusivo do espaço
+    // de nomes, que espera as operações em andamento dentro da subárvore; depois dele
+    // nenhum caminho leva mais à subárvore, e os arquivos são liberados em paralelo
+    // (TreeOperations.release) com as outras operações já liberadas.
+    public FsStatus deleteTree(String dirPath) {
+        long start = metrics.start(FsMetrics.Operation.DELETE_TREE);
+        return trace.record(OperationTrace.Op.DELETE_TREE, start, metrics.record(FsMetrics.Operation.DELETE_TREE, start, doDeleteTree(dirPath)), dirPath);
+    }
+    
+    private FsStatus doDeleteTree(String dirPath) {
+        long transaction = journal.logOperation(JournalOp.DELETE_TREE, dirPath);
+        Directory dirToDelete;
+        Lock namespace = lockNamespace(true);
+        try {
+            Directory parentDir = findDirectory(getParentPath(dirPath));
+            dirToDelete = findDirectory(dirPath);
+            if (parentDir == null || dirToDelete == null || dirToDelete == root) {
+                return FsStatus.DIRECTORY_NOT_FOUND;
+            }
+            
+            Lock lock = locks.writeLock(parentDir);
+            lock.lock();
+            try {
+                if (parentDir.findChild(getFileName(dirPath)) != dirToDelete) {
+                    return FsStatus.DIRECTORY_NOT_FOUND;
+                }
+                FsStatus committed = commit(transaction);
+                if (!committed.isOk()) {
+                    return committed;
+                }
+                preserve(parentDir);
+                parentDir.removeChild(dirToDelete.getName());
+                dentryCache.invalidateTree(dirPath, dirToDelete);
+            } finally {
+                lock.unlock();
+            }
+        } finally {
+            namespace.unlock();
+            journal.abortIfActive(transaction);
+        }
+        
+        if (searchIndex.isBuilt()) {
+            TreeOperations.walk(dirToDelete, locks, searchIndex::removed);
+            searchIndex.removed(dirToDelete);
+        }
+        // Um checkpoint aberto antes do desligamento ainda vai copiar a subárvore
+        Snapshot.Capture current = capture;
+        if (current != null) {
+            TreeOperations.walk(dirToDelete, locks, current::preserve);
+        }
+        metrics.itemsChanged(-1 - TreeOperations.release(dirToDelete, locks));
+        
+        checkpointIfDue();
+        return FsStatus.OK;
+    }
+    
+    // Método para copiar um diretório com todo o seu conteúdo para um caminho novo,
+    // registrado no journal como uma única operação. Os arquivos são copiados com
+    // copy-on-write; a cópia é montada em paralelo fora da árvore e ligada a ela no fim.
+    // Durante a cópia ficam travadas para escrita só as faixas dos diretórios da origem e a
+    // do pai do destino (lockSubtree), o que impede qualquer alteração na origem, inclusive
+    // escritas de conteúdo, sem parar o resto da árvore. Uma origem com diretórios em
+    // todas as faixas usa o lock exclusivo do espaço de nomes, que ao menos deixa as
+    // consultas seguirem.
+    public FsStatus copyTree(String sourcePath, String targetPath) {
+        long start = metrics.start(FsMetrics.Operation.COPY_TREE);
+        return trace.record(OperationTrace.Op.COPY_TREE, start, metrics.record(FsMetrics.Operation.COPY_TREE, start, doCopyTree(sourcePath, targetPath)), sourcePath, targetPath);
+    }
+    
+    private FsStatus doCopyTree(String sourcePath, String targetPath) {
+        long transaction = journal.logOperation(JournalOp.COPY_TREE, sourcePath, targetPath);
+        try {
+            FsStatus status = copyTree(transaction, sourcePath, targetPath, false);
+            return status != null ? status : copyTree(transaction, sourcePath, targetPath, true);
+        } finally {
+            journal.abortIfActive(transaction);
+        }
+    }
+    
+    // Uma tentativa de copyTree: com exclusive false, sob o lock compartilhado do espaço de
+    // nomes e as faixas da origem; devolve null se elas forem todas as faixas
+    private FsStatus copyTree(long transaction, String sourcePath, String targetPath, boolean exclusive) {
+        Directory copy;
+        Lock namespace = lockNamespace(exclusive);
+        try {
+            Directory source = findDirectory(sourcePath);
+            if (source == null) {
+                return FsStatus.DIRECTORY_NOT_FOUND;
+            }
+            Directory targetParent = findDirectory(getParentPath(targetPath));
+            if (targetParent == null) {
+                return FsStatus.PARENT_NOT_FOUND;
+            }
+            if (isAncestor(source, targetParent)) {
+                return FsStatus.INVALID_ARGUMENT;
+            }
+            String targetName = getFileName(targetPath);
+            if (!FileSystemItem.isValidName(targetName)) {
+                return FsStatus.INVALID_ARGUMENT;
+            }
+            
+            BitSet stripes = null;
+            if (!exclusive) {
+                stripes = lockSubtree(source, targetParent);
+                if (stripes == null) return null;
+            }
+            try {
+                // A origem ou o destino podem ter sido apagados antes das faixas serem travadas
+                if (source.isRemoved()) {
+                    return FsStatus.DIRECTORY_NOT_FOUND;
+                }
+                if (targetParent.isRemoved()) {
+                    return FsStatus.PARENT_NOT_FOUND;
+                }
+                if (targetParent.findChild(targetName) != null) {
+                    return FsStatus.ALREADY_EXISTS;
+                }
+                FsStatus limit = checkLimits(targetParent, source.getTotalBytes(), source.getTotalFiles(), null);
+                if (!limit.isOk()) {
+                    return limit;
+                }
+                FsStatus committed = commit(transaction);
+                if (!committed.isOk()) {
+                    return committed;
+                }
+                
+                copy = new Directory(targetName);
+                long copied = TreeOperations.copy(source, copy, exclusive ? locks : null);
+                Lock lock = locks.writeLock(targetParent);
+                lock.lock();
+                try {
+                    preserve(targetParent);
+                    targetParent.addChild(copy);
+                    metrics.itemsChanged(1 + copied);
+                    dentryCache.invalidateAdded(targetPath, copy);
+                } finally {
+                    lock.unlock();
+                }
+            } finally {
+                if (stripes != null) locks.unlockWrite(stripes);
+            }
+        } finally {
+            namespace.unlock();
+        }
+        
+        // Os diretórios da cópia podem cair em faixas que estavam travadas acima
+        if (searchIndex.isBuilt()) {
+            searchIndex.added(copy);
+            TreeOperations.walk(copy, locks, searchIndex::added);
+        }
+        checkpointIfDue();
+        return FsStatus.OK;
+    }
+    
+    // Trava para escrita, em ordem de faixa, as faixas de todos os diretórios da subárvore
+    // de dir e a de extra. O lock compartilhado do espaço de nomes impede que diretórios
+    // entrem ou saiam da subárvore por renomeação ou movimento, mas não que sejam criados:
+    // a subárvore é percorrida antes de travar e conferida depois, e um subdiretório
+    // criado no meio numa faixa que ficou de fora faz a tentativa recomeçar. Devolve as
+    // faixas travadas, ou null, sem travar nada, se forem todas.
+    private BitSet lockSubtree(Directory dir, Directory extra) {
+        BitSet stripes = new BitSet(locks.size());
+        stripes.set(locks.indexOf(extra));
+        while (true) {
+            stripes.set(locks.indexOf(dir));
+            TreeOperations.walk(dir, locks, item -> {
+                if (item.isDirectory()) {
+                    synchronized (stripes) {
+                        stripes.set(locks.indexOf((Directory) item));
+                    }
+                }
+            });
+            if (stripes.cardinality() == locks.size()) {
+                return null;
+            }
+            locks.lockWrite(stripes);
+            if (coversSubtree(dir, stripes)) {
+                return stripes;
+            }
+            locks.unlockWrite(stripes);
+        }
+    }
+    
+    // Indica se as faixas cobrem todos os diretórios da subárvore de dir; os filhos de um
+    // diretório só são lidos se a faixa dele estiver no conjunto (e, portanto, travada)
+    private boolean coversSubtree(Directory dir, BitSet stripes) {
+        ArrayDeque<Directory> pending = new ArrayDeque<>();
+        pending.add(dir);
+        while (!pending.isEmpty()) {
+            Directory current = pending.poll();
+            if (!stripes.get(locks.indexOf(current))) {
+                return false;
+            }
+            for (FileSystemItem child : current.getChildren()) {
+                if (child.isDirectory()) pending.add((Directory) child);
+            }
+        }
+        return true;
+    }
+    
+    // Método para percorrer a subárvore de um caminho: o visitante recebe o próprio item e
+    // todos os descendentes, em paralelo e sem ordem definida. Cada diretório é lido sob o
+    // seu lock, mas a subárvore pode mudar durante o percurso.
+    public FsStatus walk(String path, TreeVisitor visitor) {
+        long start = metrics.start(FsMetrics.Operation.WALK);
+        return trace.record(OperationTrace.Op.WALK, start, metrics.record(FsMetrics.Operation.WALK, start, doWalk(path, visitor)), path);
+    }
+    
+    private FsStatus doWalk(String path, TreeVisitor visitor) {
+        FileSystemItem item = findItem(path);
+        if (item == null) {
+            return FsStatus.NOT_FOUND;
+        }
+        visitor.visit(item);
+        if (item.isDirectory()) {
+            TreeOperations.walk((Directory) item, locks, visitor);
+        }
+        return FsStatus.OK;
+    }
+    
+    // Método para renomear diretório
+    public FsStatus renameDirectory(String oldPath, String newName) {
+        long start = metrics.start(FsMetrics.Operation.RENAME);
+        return trace.record(OperationTrace.Op.RENAME_DIR, start, metrics.record(FsMetrics.Operation.RENAME, start, rename(JournalOp.RENAME_DIR, oldPath, newName)), oldPath, newName);
+    }
+    
+    // Método para mover um arquivo ou diretório (com toda a subárvore) para outro caminho,
+    // possivelmente em outro diretório. Custa O(1) em qualquer caso: só o item muda de
+    // pai, e os caminhos dos descendentes são derivados dos pais.
+    public FsStatus move(String sourcePath, String targetPath) {
+        long start = metrics.start(FsMetrics.Operation.MOVE);
+        return trace.record(OperationTrace.Op.MOVE, start, metrics.record(FsMetrics.Operation.MOVE, start, doMove(sourcePath, targetPath)), sourcePath, targetPath);
+    }
+    
+    private FsStatus doMove(String sourcePath, String targetPath) {
+        long transaction = journal.logOperation(JournalOp.MOVE, sourcePath, targetPath);
+        Lock namespace = lockNamespace(false);
+        try {
+            FileSystemItem item = findItem(sourcePath);
+            if (item != null && item.isDirectory()) {
+                // Mover um diretório muda o caminho de toda a subárvore: exige o lock exclusivo,
+                // que também mantém estáveis os ancestrais do destino na verificação de ciclo
+                namespace.unlock();
+                namespace = lockNamespace(true);
+                item = findItem(sourcePath);
+            }
+            Directory sourceParent = findDirectory(getParentPath(sourcePath));
+            if (sourceParent == null || item == null || item == root) {
+                return FsStatus.NOT_FOUND;
+            }
+            Directory targetParent = findDirectory(getParentPath(targetPath));
+            if (targetParent == null) {
+                return FsStatus.PARENT_NOT_FOUND;
+            }
+            String targetName = getFileName(targetPath);
+            if (!FileSystemItem.isValidName(targetName)) {
+                return FsStatus.INVALID_ARGUMENT;
+            }
+            
+            locks.lockWrite(sourceParent, targetParent);
+            try {
+                if (sourceParent.findChild(getFileName(sourcePath)) != item) {
+                    return FsStatus.NOT_FOUND;
+                }
+                if (targetParent.isRemoved()) {
+                    return FsStatus.PARENT_NOT_FOUND;
+                }
+                if (item.isDirectory() && isAncestor((Directory) item, targetParent)) {
+                    return FsStatus.INVALID_ARGUMENT;
+                }
+                if (targetParent.findChild(targetName) != null) {
+                    return FsStatus.ALREADY_EXISTS;
+                }
+                FsStatus limit = item.isDirectory()
+                        ? checkLimits(targetParent, ((Directory) item).getTotalBytes(), ((Directory) item).getTotalFiles(), sourceParent)
+                        : checkLimits(targetParent, ((File) item).getSize(), 1, sourceParent);
+                if (!limit.isOk()) {
+                    return limit;
+                }
+                FsStatus committed = commit(transaction);
+                if (!committed.isOk()) {
+                    return committed;
+                }
+                
+                String oldName = item.getName();
+                preserve(sourceParent);
+                preserve(targetParent);
+                preserve(item);
+                sourceParent.removeChild(oldName);
+                item.setName(targetName);
+                targetParent.addChild(item);
+                searchIndex.renamed(item, oldName);
+                invalidateMoved(item, sourcePath, targetPath);
+            } finally {
+                locks.unlockWrite(sourceParent, targetParent);
+            }
+            
+            checkpointIfDue();
+            return FsStatus.OK;
+        
+        } finally {
+            namespace.unlock();
+            journal.abortIfActive(transaction);
+        }
+    }
+    
+    // Indica se dir é o próprio diretório ou um ancestral de other
+    private static boolean isAncestor(Directory dir, Directory other) {
+        for (Directory current = other; current != null; current = current.getParent()) {
+            if (current == dir) return true;
+        }
+        return false;
+    }
+    
+    // Verifica se acrescentar bytes e files arquivos abaixo de dir respeita a capacidade e
+    // as cotas de dir e dos seus ancestrais. Em um movimento, from é o diretório de origem:
+    // os ancestrais comuns já contam o item, e o total da árvore não muda. A verificação é
+    // feita sob o lock do diretório alterado, mas não das outras subárvores: escritas
+    // concorrentes sob o mesmo ancestral podem ultrapassar o limite em no máximo o que
+    // elas mesmas acrescentam.
+    private FsStatus checkLimits(Directory dir, long bytes, int files, Directory from) {
+        long limit = capacity;
+        if (from == null && bytes > 0 && limit > 0 && root.getTotalBytes() + bytes > limit) {
+            return FsStatus.NO_SPACE;
+        }
+        if (quotas.isEmpty()) return FsStatus.OK;
+        for (Directory current = dir; current != null; current = current.getParent()) {
+            Quota quota = quotas.get(current);
+            if (quota != null && !quota.allows(current, bytes, files) && (from == null || !isAncestor(current, from))) {
+                return FsStatus.QUOTA_EXCEEDED;
+            }
+        }
+        return FsStatus.OK;
+    }
+    
+    // Trava o espaço de nomes. As alterações que resolvem caminhos seguram o lock
+    // compartilhado até o commit; renomear ou mover um diretório, que muda os caminhos de
+    // uma subárvore inteira, exige o exclusivo. Assim nenhuma operação commita com um
+    // caminho resolvido antes de uma renomeação que terminou no meio dela, e o journal
+    // reaplica as operações na mesma ordem em que elas enxergaram a árvore.
+    private Lock lockNamespace(boolean exclusive) {
+        Lock lock = exclusive ? namespaceLock.writeLock() : namespaceLock.readLock();
+        lock.lock();
+        return lock;
+    }
+    
+    // Renomeação de arquivo (RENAME_FILE) ou diretório (RENAME_DIR) dentro do mesmo pai
+    private FsStatus rename(JournalOp operation, String oldPath, String newName) {
+        boolean directory = operation == JournalOp.RENAME_DIR;
+        long transaction = journal.logOperation(operation, oldPath, newName);
+        Lock namespace = lockNamespace(directory);
+        try {
+            String parentPath = getParentPath(oldPath);
+            Directory parentDir = findDirectory(parentPath);
+            FileSystemItem item = findItem(oldPath);
+            if (parentDir == null || item == null || item.isDirectory() != directory || item == root) {
+                return directory ? FsStatus.DIRECTORY_NOT_FOUND : FsStatus.FILE_NOT_FOUND;
+            }
+            
+            if (!FileSystemItem.isValidName(newName)) {
+                return FsStatus.INVALID_ARGUMENT;
+            }
+            String newPath = childPath(parentPath, newName);
+            Lock lock = locks.writeLock(parentDir);
+            lock.lock();
+            try {
+                // Pelo nome do caminho, e não pelo atual do item: outra thread pode tê-lo
+                // renomeado depois da resolução, e o journal registra oldPath
+                if (parentDir.findChild(getFileName(oldPath)) != item) {
+                    return directory ? FsStatus.DIRECTORY_NOT_FOUND : FsStatus.FILE_NOT_FOUND;
+                }
+                if (parentDir.findChild(newName) != null) {
+                    return FsStatus.ALREADY_EXISTS;
+                }
+                FsStatus committed = commit(transaction);
+                if (!committed.isOk()) {
+                    return committed;
+                }
+                String oldName = item.getName();
+                preserve(parentDir);
+                preserve(item);
+                parentDir.renameChild(oldName, newName);
+                searchIndex.renamed(item, oldName);
+                invalidateMoved(item, oldPath, newPath);
+            } finally {
+                lock.unlock();
+            }
+            
+            checkpointIfDue();
+            return FsStatus.OK;
+        
+        } finally {
+            namespace.unlock();
+            journal.abortIfActive(transaction);
+        }
+    }
+    
+    // Método para listar uma página de um diretório: até limit filhos depois de after (null
+    // para a primeira página), em ordem de inserção ou de nome. O custo é proporcional à
+    // página, não ao diretório. Consultas paginadas não passam pelo journal.
+    public FsResult<DirectoryPage> listPage(String dirPath, String after, int limit, boolean sorted) {
+        long start = metrics.start(FsMetrics.Operation.LIST_PAGE);
+        return trace.record(OperationTrace.Op.LIST_PAGE, start, accessLog.record("list", dirPath,
+                metrics.record(FsMetrics.Operation.LIST_PAGE, start, doListPage(dirPath, after, limit, sorted))),
+                dirPath, after, limit, sorted ? 1 : 0);
+    }
+    
+    private FsResult<DirectoryPage> doListPage(String dirPath, String after, int limit, boolean sorted) {
+        if (limit <= 0) {
+            return FsResult.error(FsStatus.INVALID_ARGUMENT);
+        }
+        Directory dir = findDirectory(dirPath);
+        if (dir == null) {
+            return FsResult.error(FsStatus.DIRECTORY_NOT_FOUND);
+        }
+        
+        // Um filho a mais indica se existe uma próxima página
+        List<FileSystemItem> items = readPage(dir, after, Math.min(limit, Integer.MAX_VALUE - 1) + 1, sorted);
+        if (items == null) {
+            return FsResult.error(FsStatus.NOT_FOUND);
+        }
+        String nextCursor = null;
+        if (items.size() > limit) {
+            items = new ArrayList<>(items.subList(0, limit));
+            nextCursor = items.get(limit - 1).getName();
+        }
+        return FsResult.ok(new DirectoryPage(items, nextCursor));
+    }
+    
+    // Método para percorrer um diretório como Stream, lido sob demanda em páginas de
+    // LISTING_PAGE_SIZE filhos. Em ordem de inserção, se o último filho lido for removido
+    // ou renomeado entre duas páginas, a leitura falha com ConcurrentModificationException.
+    public FsResult<Stream<FileSystemItem>> streamDirectory(String dirPath, boolean sorted) {
+        long start = metrics.start(FsMetrics.Operation.STREAM_DIR);
+        return trace.record(OperationTrace.Op.STREAM_DIR, start, accessLog.record("list", dirPath,
+                metrics.record(FsMetrics.Operation.STREAM_DIR, start, doStreamDirectory(dirPath, sorted))), dirPath, null, sorted ? 1 : 0, 0);
+    }
+    
+    private FsResult<Stream<FileSystemItem>> doStreamDirectory(String dirPath, boolean sorted) {
+        Directory dir = findDirectory(dirPath);
+        if (dir == null) {
+            return FsResult.error(FsStatus.DIRECTORY_NOT_FOUND);
+        }
+        
+        Iterator<FileSystemItem> iterator = new Iterator<FileSystemItem>() {
+            private List<FileSystemItem> page = Collections.emptyList();
+            private int index;
+            private String cursor;
+            private boolean last;
+            
+            @Override
+            public boolean hasNext() {
+                while (index == page.size() && !last) {
+                    page = readPage(dir, cursor, LISTING_PAGE_SIZE, sorted);
+                    if (page == null) {
+                        throw new ConcurrentModificationException("Diretório alterado durante a listagem: " + dirPath);
+                    }
+                    index = 0;
+                    last = page.size() < LISTING_PAGE_SIZE;
+                    if (!page.isEmpty()) cursor = page.get(page.size() - 1).getName();
+                }
+                return index < page.size();
+            }
+            
+            @Override
+            public FileSystemItem next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                return page.get(index++);
+            }
+        };
+        return FsResult.ok(StreamSupport.stream(
+                Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false));
+    }
+    
+    // Método para consultar um arquivo ou diretório pelo caminho, sem passar pelo journal
+    public FsResult<FileSystemItem> stat(String path) {
+        long start = metrics.start(FsMetrics.Operation.STAT);
+        FileSystemItem item = findItem(path);
+        FsResult<FileSystemItem> result = item != null ? FsResult.ok(item) : FsResult.error(FsStatus.NOT_FOUND);
+        return trace.record(OperationTrace.Op.STAT, start, accessLog.record("stat", path,
+                metrics.record(FsMetrics.Operation.STAT, start, result)), path);
+    }
+    
+    // Método para consultar o uso de uma subárvore (ou de um arquivo) em O(1), pelos
+    // totais mantidos em cada diretório
+    public FsResult<DiskUsage> diskUsage(String path) {
+        long start = metrics.start(FsMetrics.Operation.DISK_USAGE);
+        return trace.record(OperationTrace.Op.DISK_USAGE, start, metrics.record(FsMetrics.Operation.DISK_USAGE, start, doDiskUsage(path)), path);
+    }
+    
+    private FsResult<DiskUsage> doDiskUsage(String path) {
+        FileSystemItem item = findItem(path);
+        if (item == null) {
+            return FsResult.error(FsStatus.NOT_FOUND);
+        }
+        if (!item.isDirectory()) {
+            return FsResult.ok(new DiskUsage(((File) item).getSize(), 1, 0));
+        }
+        Directory dir = (Directory) item;
+        return FsResult.ok(new DiskUsage(dir.getTotalBytes(), dir.getTotalFiles(), dir.getTotalDirectories()));
+    }
+    
+    // Define a cota de um diretório: no máximo maxBytes bytes e maxFiles arquivos na
+    // subárvore (0: sem limite; os dois 0 removem a cota). A cota vale para as próximas
+    // criações, cópias, escritas e movimentos; o que já existe não é apagado
+    public FsStatus setQuota(String dirPath, long maxBytes, long maxFiles) {
+        long start = System.nanoTime();
+        return trace.record(OperationTrace.Op.SET_QUOTA, start, doSetQuota(dirPath, maxBytes, maxFiles),
+                dirPath, null, maxBytes, maxFiles, null);
+    }
+    
+    private FsStatus doSetQuota(String dirPath, long maxBytes, long maxFiles) {
+        if (maxBytes < 0 || maxFiles < 0) {
+            return FsStatus.INVALID_ARGUMENT;
+        }
+        Directory dir = findDirectory(dirPath);
+        if (dir == null) {
+            return FsStatus.DIRECTORY_NOT_FOUND;
+        }
+        quotas.keySet().removeIf(Directory::isRemoved);
+        if (maxBytes == 0 && maxFiles == 0) {
+            quotas.remove(dir);
+        } else {
+            quotas.put(dir, new Quota(maxBytes, maxFiles));
+        }
+        return FsStatus.OK;
+    }
+    
+    // Cotas definidas, pelo caminho atual de cada diretório
+    public Map<String, Quota> getQuotas() {
+        Map<String, Quota> result = new TreeMap<>();
+        quotas.keySet().removeIf(Directory::isRemoved);
+        for (Map.Entry<Directory, Quota> entry : quotas.entrySet()) {
+            result.put(entry.getKey().getPath(), entry.getValue());
+        }
+        return result;
+    }
+    
+    // Capacidade total em bytes do sistema de arquivos; 0 desliga. Criações, cópias e
+    // escritas que passariam do limite são recusadas com NO_SPACE antes de alocar memória.
+    // O limite vale para o tamanho lógico: cópias contam inteiras, mesmo compartilhando blocos
+    public void setCapacity(long capacity) {
+        long start = System.nanoTime();
+        this.capacity = Math.max(0, capacity);
+        trace.record(OperationTrace.Op.SET_CAPACITY, start, FsStatus.OK, null, null, capacity, 0, null);
+    }
+    
+    public long getCapacity() { return capacity; }
+    
+    // Método para contar os filhos de um diretório em O(1)
+    public FsResult<Integer> countEntries(String dirPath) {
+        long start = metrics.start(FsMetrics.Operation.COUNT);
+        return trace.record(OperationTrace.Op.COUNT, start, accessLog.record("count", dirPath,
+                metrics.record(FsMetrics.Operation.COUNT, start, doCountEntries(dirPath))), dirPath);
+    }
+    
+    private FsResult<Integer> doCountEntries(String dirPath) {
+        Directory dir = findDirectory(dirPath);
+        if (dir == null) {
+            return FsResult.error(FsStatus.DIRECTORY_NOT_FOUND);
+        }
+        Lock lock = locks.readLock(dir);
+        lock.lock();
+        try {
+            return FsResult.ok(dir.getChildCount());
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    private List<FileSystemItem> readPage(Directory dir, String after, int limit, boolean sorted) {
+        Lock lock = locks.readLock(dir);
+        lock.lock();
+        try {
+            return dir.page(after, limit, sorted);
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    // Método para buscar itens pelo nome com um padrão glob (* e ?) dentro do diretório
+    // scope (null para a árvore toda). Usa o índice de nomes e devolve os caminhos em ordem.
+    // Buscas não passam pelo journal.
+    public FsResult<List<String>> find(String glob, String scope) {
+        long start = metrics.start(FsMetrics.Operation.FIND);
+        return trace.record(OperationTrace.Op.FIND, start, accessLog.record("find", glob,
+                metrics.record(FsMetrics.Operation.FIND, start, doFind(glob, scope))), glob, scope);
+    }
+    
+    private FsResult<List<String>> doFind(String glob, String scope) {
+        String prefix = searchScope(scope);
+        if (prefix == null) {
+            return FsResult.error(FsStatus.DIRECTORY_NOT_FOUND);
+        }
+        ensureSearchIndex();
+        List<String> paths = new ArrayList<>();
+        for (FileSystemItem item : searchIndex.findByName(glob)) {
+            String path = item.getPath();
+            if (inScope(path, prefix)) paths.add(path);
+        }
+        Collections.sort(paths);
+        return FsResult.ok(paths);
+    }
+    
+    // Método para buscar um texto no conteúdo dos arquivos dentro de scope, sem diferenciar
+    // maiúsculas; o texto precisa começar e terminar em limites de palavra. O índice
+    // invertido limita a leitura aos arquivos que têm todas as palavras do texto.
+    public FsResult<List<SearchMatch>> grep(String text, String scope) {
+        long start = metrics.start(FsMetrics.Operation.GREP);
+        return trace.record(OperationTrace.Op.GREP, start, accessLog.record("grep", text,
+                metrics.record(FsMetrics.Operation.GREP, start, doGrep(text, scope))), text, scope);
+    }
+    
+    private FsResult<List<SearchMatch>> doGrep(String text, String scope) {
+        if (text.trim().isEmpty()) {
+            return FsResult.error(FsStatus.INVALID_ARGUMENT);
+        }
+        String prefix = searchScope(scope);
+        if (prefix == null) {
+            return FsResult.error(FsStatus.DIRECTORY_NOT_FOUND);
+        }
+        ensureSearchIndex();
+        String word = "[\\p{L}\\p{Nd}]";
+        Pattern pattern = Pattern.compile(
+                (Character.isLetterOrDigit(text.charAt(0)) ? "(?<!" + word + ")" : "")
+                + Pattern.quote(text)
+                + (Character.isLetterOrDigit(text.charAt(text.length() - 1)) ? "(?!" + word + ")" : ""),
+                Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+        
+        List<SearchMatch> matches = new ArrayList<>();
+        for (File file : searchIndex.candidateFiles(text)) {
+            String path = file.getPath();
+            if (!inScope(path, prefix)) continue;
+            String[] lines = file.getContent().split("\n", -1);
+            for (int i = 0; i < lines.length; i++) {
+                if (pattern.matcher(lines[i]).find()) {
+                    matches.add(new SearchMatch(path, i + 1, lines[i]));
+                }
+            }
+        }
+        matches.sort(Comparator.comparing(SearchMatch::getPath).thenComparingInt(SearchMatch::getLine));
+        return FsResult.ok(matches);
+    }
+    
+    // Caminho do diretório que limita uma busca, ou null se ele não existir
+    private String searchScope(String scope) {
+        if (scope == null) return "/";
+        Directory dir = findDirectory(scope);
+        return dir == null ? null : dir.getPath();
+    }
+    
+    private static boolean inScope(String path, String prefix) {
+        return prefix.equals("/") || path.equals(prefix) || path.startsWith(prefix + "/");
+    }
+    
+    // Monta o índice de busca na primeira consulta, com o lock exclusivo do espaço de
+    // nomes para que nenhuma alteração aconteça durante a montagem; a partir daí as
+    // operações o mantêm atualizado
+    private void ensureSearchIndex() {
+        if (searchIndex.isBuilt()) return;
+        Lock namespace = lockNamespace(true);
+        try {
+            searchIndex.build(root, locks);
+        } finally {
+            namespace.unlock();
+        }
+    }
+    
+    // Método para listar conteúdo de um diretório; devolve uma cópia da lista de filhos
+    public FsResult<List<FileSystemItem>> listDirectory(String dirPath) {
+        long start = metrics.start(FsMetrics.Operation.LIST_DIR);
+        return trace.record(OperationTrace.Op.LIST_DIR, start, accessLog.record("list", dirPath,
+                metrics.record(FsMetrics.Operation.LIST_DIR, start, doListDirectory(dirPath))), dirPath);
+    }
+    
+    // Consultas não passam pelo journal: a cópia dos filhos é feita sob o lock de leitura
+    // do diretório, que já garante um retrato consistente dele mesmo com escritores ativos
+    private FsResult<List<FileSystemItem>> doListDirectory(String dirPath) {
+        Directory dir = findDirectory(dirPath);
+        if (dir == null) {
+            return FsResult.error(FsStatus.DIRECTORY_NOT_FOUND);
+        }
+        
+        Lock lock = locks.readLock(dir);
+        lock.lock();
+        try {
+            return FsResult.ok(new ArrayList<>(dir.getChildren()));
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    // Método para ler bytes de um arquivo a partir de um offset; não passa pelo journal.
+    // O valor é quantos bytes foram copiados para dst, -1 no fim do arquivo
+    public FsResult<Integer> readFile(String filePath, long offset, ByteBuffer dst) {
+        long start = metrics.start(FsMetrics.Operation.READ);
+        int length = dst.remaining();
+        return trace.record(OperationTrace.Op.READ, start, accessLog.record("read", filePath,
+                metrics.record(FsMetrics.Operation.READ, start, doReadFile(filePath, offset, dst))), filePath, null, offset, length);
+    }
+    
+    private FsResult<Integer> doReadFile(String filePath, long offset, ByteBuffer dst) {
+        if (offset < 0) {
+            return FsResult.error(FsStatus.INVALID_ARGUMENT);
+        }
+        FileSystemItem item = findItem(filePath);
+        if (item == null || item.isDirectory()) {
+            return FsResult.error(FsStatus.FILE_NOT_FOUND);
+        }
+        return FsResult.ok(((File) item).read(offset, dst));
+    }
+    
+    // Método para gravar bytes em um arquivo a partir de um offset
+    public FsStatus writeFile(String filePath, long offset, ByteBuffer src) {
+        long start = metrics.start(FsMetrics.Operation.WRITE);
+        byte[] bytes = new byte[src.remaining()];
+        src.get(bytes);
+        // Argumentos inválidos são recusados antes do journal: depois do commit a escrita
+        // não pode mais falhar
+        if (offset < 0 || offset > FileData.MAX_SIZE - bytes.length) {
+            return trace.record(OperationTrace.Op.WRITE, start, metrics.record(FsMetrics.Operation.WRITE, start, FsStatus.INVALID_ARGUMENT),
+                    filePath, null, offset, 0, bytes);
+        }
+        long transaction = journal.logOperation(JournalOp.WRITE, bytes, filePath, Long.toString(offset));
+        FsStatus status = metrics.record(FsMetrics.Operation.WRITE, start, updateFile(transaction, filePath,
+                file -> Math.max(0, offset + bytes.length - file.getSize()), file -> file.write(offset, ByteBuffer.wrap(bytes))));
+        return trace.record(OperationTrace.Op.WRITE, start, status, filePath, null, offset, 0, bytes);
+    }
+    
+    // Método para acrescentar bytes ao fim de um arquivo
+    public FsStatus appendFile(String filePath, ByteBuffer src) {
+        long start = metrics.start(FsMetrics.Operation.APPEND);
+        byte[] bytes = new byte[src.remaining()];
+        src.get(bytes);
+        long transaction = journal.logOperation(JournalOp.APPEND, bytes, filePath);
+        FsStatus status = metrics.record(FsMetrics.Operation.APPEND, start,
+                updateFile(transaction, filePath, file -> bytes.length, file -> file.append(ByteBuffer.wrap(bytes))));
+        return trace.record(OperationTrace.Op.APPEND, start, status, filePath, null, 0, 0, bytes);
+    }
+    
+    // Método para reduzir um arquivo para o tamanho informado
+    public FsStatus truncateFile(String filePath, long size) {
+        long start = metrics.start(FsMetrics.Operation.TRUNCATE);
+        if (size < 0) {
+            return trace.record(OperationTrace.Op.TRUNCATE, start, metrics.record(FsMetrics.Operation.TRUNCATE, start, FsStatus.INVALID_ARGUMENT),
+                    filePath, null, size, 0, null);
+        }
+        long transaction = journal.logOperation(JournalOp.TRUNCATE, filePath, Long.toString(size));
+        FsStatus status = metrics.record(FsMetrics.Operation.TRUNCATE, start,
+                updateFile(transaction, filePath, file -> 0, file -> file.truncate(size)));
+        return trace.record(OperationTrace.Op.TRUNCATE, start, status, filePath, null, size, 0, null);
+    }
+    
+    // Aplica uma alteração de conteúdo já registrada no journal. O lock de leitura do
+    // diretório impede que o arquivo seja removido ou renomeado no meio; o monitor do
+    // arquivo mantém a ordem dos COMMITs igual à ordem das escritas nele. growth informa
+    // quantos bytes a alteração acrescenta, para a verificação de cotas e capacidade; os
+    // offsets e tamanhos já foram validados, e update não pode falhar depois do commit.
+    private FsStatus updateFile(long transaction, String filePath, ToLongFunction<File> growth, Consumer<File> update) {
+        Lock namespace = lockNamespace(false);
+        try {
+            Directory parentDir = findDirectory(getParentPath(filePath));
+            FileSystemItem item = findItem(filePath);
+            if (parentDir == null || item == null || item.isDirectory()) {
+                return FsStatus.FILE_NOT_FOUND;
+            }
+            File file = (File) item;
+            
+            Lock lock = locks.readLock(parentDir);
+            lock.lock();
+            try {
+                if (parentDir.findChild(getFileName(filePath)) != file) {
+                    return FsStatus.FILE_NOT_FOUND;
+                }
+                synchronized (file) {
+                    long grown = growth.applyAsLong(file);
+                    if (file.getSize() + grown > FileData.MAX_SIZE) {
+                        return FsStatus.INVALID_ARGUMENT;
+                    }
+                    FsStatus limit = checkLimits(parentDir, grown, 0, null);
+                    if (!limit.isOk()) {
+                        return limit;
+                    }
+                    FsStatus committed = commit(transaction);
+                    if (!committed.isOk()) {
+                        return committed;
+                    }
+                    preserve(file);
+                    update.accept(file);
+                    searchIndex.contentChanged(file);
+                }
+            } finally {
+                lock.unlock();
+            }
+            
+            checkpointIfDue();
+            return FsStatus.OK;
+        
+        } finally {
+            namespace.unlock();
+            journal.abortIfActive(transaction);
+        }
+    }
+    
+    // Canal com posição sobre o conteúdo de um arquivo; as escritas passam pelo journal
+    public SeekableByteChannel openChannel(String filePath) throws IOException {
+        FileSystemItem item = findItem(filePath);
+        if (item == null || item.isDirectory()) {
+            throw new NoSuchFileException(filePath);
+        }
+        return new SimulatedFileChannel(this, filePath, (File) item);
+    }
+    
+    public InputStream openInputStream(String filePath) throws IOException {
+        return Channels.newInputStream(openChannel(filePath));
+    }
+    
+    // Stream que acrescenta ao fim do arquivo
+    public OutputStream openOutputStream(String filePath) throws IOException {
+        SeekableByteChannel channel = openChannel(filePath);
+        channel.position(channel.size());
+        return Channels.newOutputStream(channel);
+    }
+    
+    // Método para ler o conteúdo inteiro de um arquivo como texto
+    public FsResult<String> readText(String filePath) {
+        long start = metrics.start(FsMetrics.Operation.READ_TEXT);
+        return trace.record(OperationTrace.Op.READ_TEXT, start, accessLog.record("cat", filePath,
+                metrics.record(FsMetrics.Operation.READ_TEXT, start, doReadText(filePath))), filePath);
+    }
+    
+    private FsResult<String> doReadText(String filePath) {
+        FileSystemItem item = findItem(filePath);
+        if (item == null || item.isDirectory()) {
+            return FsResult.error(FsStatus.FILE_NOT_FOUND);
+        }
+        return FsResult.ok(((File) item).getContent());
+    }
+    
+    // Método para criar arquivo com conteúdo
+    public FsStatus createFile(String filePath, String content) {
+        long start = metrics.start(FsMetrics.Operation.CREATE_FILE);
+        return trace.record(OperationTrace.Op.CREATE_FILE, start, metrics.record(FsMetrics.Operation.CREATE_FILE, start, doCreateFile(filePath, content)), filePath, content);
+    }
+    
+    private FsStatus doCreateFile(String filePath, String content) {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        long transaction = journal.logOperation(JournalOp.CREATE_FILE, bytes, filePath);
+        Lock namespace = lockNamespace(false);
+        try {
+            String parentPath = getParentPath(filePath);
+            String fileName = getFileName(filePath);
+            if (!FileSystemItem.isValidName(fileName)) {
+                return FsStatus.INVALID_ARGUMENT;
+            }
+            
+            Directory parentDir = findDirectory(parentPath);
+            if (parentDir == null) {
+                return FsStatus.PARENT_NOT_FOUND;
+            }
+            
+            Lock lock = locks.writeLock(parentDir);
+            lock.lock();
+            try {
+                if (parentDir.isRemoved()) {
+                    return FsStatus.PARENT_NOT_FOUND;
+                }
+                if (parentDir.findChild(fileName) != null) {
+                    return FsStatus.ALREADY_EXISTS;
+                }
+                FsStatus limit = checkLimits(parentDir, bytes.length, 1, null);
+                if (!limit.isOk()) {
+                    return limit;
+                }
+                FsStatus committed = commit(transaction);
+                if (!committed.isOk()) {
+                    return committed;
+                }
+                
+                File newFile = new File(fileName, blockStore, bytes);
+                preserve(parentDir);
+                parentDir.addChild(newFile);
+                searchIndex.added(newFile);
+                metrics.itemsChanged(1);
+                dentryCache.invalidate(filePath);
+            } finally {
+                lock.unlock();
+            }
+            
+            checkpointIfDue();
+            return FsStatus.OK;
+        
+        } finally {
+            namespace.unlock();
+            journal.abortIfActive(transaction);
+        }
+    }
+    
+    // Reaplica na árvore uma operação commitada lida do journal, sem registrá-la novamente
+    private void applyJournalEntry(JournalEntry entry) {
+        String[] args = entry.getArgs();
+        switch (entry.getOperation()) {
+            case CREATE_FILE:
+            case CREATE_DIR: {
+                FileSystemItem parent = findItem(getParentPath(args[0]));
+                String name = getFileName(args[0]);
+                if (parent == null || !parent.isDirectory() || ((Directory) parent).findChild(name) != null) break;
+                if (entry.getOperation() == JournalOp.CREATE_DIR) {
+                    Directory dir = new Directory(name);
+                    ((Directory) parent).addChild(dir);
+                    dentryCache.invalidateAdded(args[0], dir);
+                } else {
+                    ((Directory) parent).addChild(new File(name, blockStore, entry.getPayload()));
+                    dentryCache.invalidate(args[0]);
+                }
+                break;
+            }
+            case COPY_FILE: {
+                FileSystemItem source = findItem(args[0]);
+                FileSystemItem parent = findItem(getParentPath(args[1]));
+                if (source == null || source.isDirectory() || parent == null || !parent.isDirectory()) break;
+                File copy = ((File) source).copyAs(getFileName(args[1]));
+                if (((Directory) parent).addChild(copy)) {
+                    dentryCache.invalidate(args[1]);
+                } else {
+                    copy.release();
+                }
+                break;
+            }
+            case DELETE_FILE:
+            case DELETE_DIR: {
+                FileSystemItem item = findItem(args[0]);
+                if (item == null || item == root) break;
+                if (item.isDirectory() && !((Directory) item).isEmpty()) break;
+                (findDirectory(getParentPath(args[0]))).removeChild(item.getName());
+                if (item.isDirectory()) {
+                    dentryCache.invalidateTree(args[0], (Directory) item);
+                } else {
+                    ((File) item).release();
+                    dentryCache.invalidate(args[0]);
+                }
+                break;
+            }
+            case RENAME_FILE:
+            case RENAME_DIR: {
+                FileSystemItem item = findItem(args[0]);
+                if (item == null || item == root) break;
+                String parentPath = getParentPath(args[0]);
+                Directory parent = findDirectory(parentPath);
+                if (parent.renameChild(item.getName(), args[1])) {
+                    invalidateMoved(item, args[0], item.getPath());
+                }
+                break;
+            }
+            case COPY_TREE: {
+                Directory source = findDirectory(args[0]);
+                Directory target = findDirectory(getParentPath(args[1]));
+                if (source == null || target == null || isAncestor(source, target) || findItem(args[1]) != null) break;
+                Directory copy = new Directory(getFileName(args[1]));
+                TreeOperations.copy(source, copy, locks);
+                target.addChild(copy);
+                dentryCache.invalidateAdded(args[1], copy);
+                break;
+            }
+            case DELETE_TREE: {
+                Directory dir = findDirectory(args[0]);
+                if (dir == null || dir == root) break;
+                dir.getParent().removeChild(dir.getName());
+                TreeOperations.release(dir, locks);
+                dentryCache.invalidateTree(args[0], dir);
+                break;
+            }
+            case MOVE: {
+                FileSystemItem item = findItem(args[0]);
+                Directory target = findDirectory(getParentPath(args[1]));
+                String name = getFileName(args[1]);
+                if (item == null || item == root || target == null || target.findChild(name) != null) break;
+                if (item.isDirectory() && isAncestor((Directory) item, target)) break;
+                item.getParent().removeChild(item.getName());
+                item.setName(name);
+                target.addChild(item);
+                invalidateMoved(item, args[0], args[1]);
+                break;
+            }
+            case WRITE:
+            case APPEND:
+            case TRUNCATE: {
+                FileSystemItem item = findItem(args[0]);
+                if (item == null || item.isDirectory()) break;
+                File file = (File) item;
+                if (entry.getOperation() == JournalOp.WRITE) {
+                    file.write(Long.parseLong(args[1]), ByteBuffer.wrap(entry.getPayload()));
+                } else if (entry.getOperation() == JournalOp.APPEND) {
+                    file.append(ByteBuffer.wrap(entry.getPayload()));
+                } else {
+                    file.truncate(Long.parseLong(args[1]));
+                }
+                break;
+            }
+            default:
+                break;
+        }
+    }
+    
+    // Métodos auxiliares
+    FileSystemItem findItem(String path) {
+        long start = metrics.start(FsMetrics.Operation.FIND_ITEM);
+        FileSystemItem item = resolve(path);
+        metrics.record(FsMetrics.Operation.FIND_ITEM, start, item != null);
+        return item;
+    }
+    
+    // Invalida o cache para um item que saiu de oldPath e foi para newPath
+    private void invalidateMoved(FileSystemItem item, String oldPath, String newPath) {
+        if (item.isDirectory()) {
+            dentryCache.invalidateTree(oldPath, (Directory) item);
+            dentryCache.invalidateAdded(newPath, (Directory) item);
+        } else {
+            dentryCache.invalidate(oldPath);
+            dentryCache.invalidate(newPath);
+        }
+    }
+    
+    // Resolve o caminho pelo cache de caminhos ou descendo a árvore a partir da raiz
+    private FileSystemItem resolve(String path) {
+        String normalized = DentryCache.normalizePath(path);
+        if (normalized.equals("/")) return root;
+        
+        long generation = dentryCache.generation(normalized);
+        FileSystemItem cached = dentryCache.lookup(normalized);
+        if (cached != DentryCache.MISS) return cached;
+        
+        // Acumula o máximo de DentryCache.stamp; a geração de cada diretório é lida sob o
+        // lock do pai, o mesmo em que ele é renomeado, movido ou removido
+        FileSystemItem current = root;
+        Directory anchor = root;
+        long stamp = 0;
+        long generationOfCurrent = root.getGeneration();
+        long arrivals = 0;
+        int start = 1;
+        while (current != null && start <= normalized.length()) {
+            int end = normalized.indexOf('/', start);
+            if (end < 0) end = normalized.length();
+            
+            if (!current.isDirectory()) {
+                current = null;
+                break;
+            }
+            anchor = (Directory) current;
+            stamp = Math.max(stamp, generationOfCurrent);
+            Lock lock = locks.readLock(anchor);
+            lock.lock();
+            try {
+                current = anchor.findChild(normalized.substring(start, end));
+                arrivals = anchor.getArrivals();
+                if (current instanceof Directory) {
+                    generationOfCurrent = ((Directory) current).getGeneration();
+                }
+            } finally {
+                lock.unlock();
+            }
+            start = end + 1;
+        }
+        
+        dentryCache.put(normalized, current, anchor, current == null ? Math.max(stamp, arrivals) : stamp, generation);
+        return current;
+    }
+    
+    // Diretório no caminho informado, ou null se não existir ou for um arquivo
+    private Directory findDirectory(String path) {
+        FileSystemItem item = findItem(path);
+        return item instanceof Directory ? (Directory) item : null;
+    }
+    
+    private String childPath(String parentPath, String name) {
+        return parentPath.equals("/") ? "/" + name : parentPath + "/" + name;
+    }
+    
+    private String getParentPath(String path) {
+        int lastSlash = path.lastIndexOf('/');
+        if (lastSlash <= 0) return "/";
+        return path.substring(0, lastSlash);
+    }
+    
+    private String getFileName(String path) {
+        int lastSlash = path.lastIndexOf('/');
+        return path.substring(lastSlash + 1);
+    }
+    
+    // Modo Shell - Interface interativa
+    // Método main para execução
+    public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("--crashtest")) {
+            System.exit(CrashConsistencyHarness.run(Arrays.copyOfRange(args, 1, args.length)) ? 0 : 1);
+        }
+        if (args.length > 0 && args[0].equals("--server")) {
+            FileSystemServer.run(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--loadgen")) {
+            System.exit(FileSystemLoadGenerator.run(Arrays.copyOfRange(args, 1, args.length)) ? 0 : 1);
+        }
+        if (args.length > 0 && args[0].equals("--replay")) {
+            System.exit(TraceReplayer.run(Arrays.copyOfRange(args, 1, args.length)) ? 0 : 1);
+        }
+        if (args.length > 0 && args[0].equals("--batch")) {
+            System.exit(FileSystemShell.runScript(Arrays.copyOfRange(args, 1, args.length)) ? 0 : 1);
+        }
+        
+        FileSystemSimulator simulator = new FileSystemSimulator();
+        System.out.println(simulator.getRecoveryReport());
+        
+        // Criar alguns arquivos e diretórios de exemplo (apenas se o journal não restaurou nada)
+        if (simulator.isEmpty()) {
+            simulator.createDirectory("/docs");
+            simulator.createDirectory("/temp");
+            simulator.createFile("/docs/readme.txt", "Este é um arquivo de exemplo");
+            simulator.createFile("/temp/log.txt", "Log de operações do sistema");
+        }
+        
+        FileSystemShell.registerMBean(simulator);
+        FileSystemShell shell = new FileSystemShell(simulator, new PrintWriter(System.out, true));
+        System.out.println("Sistema inicializado com estrutura de exemplo:");
+        shell.execute(new String[] { "list", "/" });
+        
+        // Executar modo shell, mostrando também os registros do journal
+        simulator.getJournal().setVerbose(true);
+        try {
+            shell.runInteractive(new BufferedReader(new InputStreamReader(System.in)));
+        } catch (IOException e) {
+            System.out.println("Erro ao ler comandos: " + e.getMessage());
+        } finally {
+            simulator.close();
+        }
+    }
+}
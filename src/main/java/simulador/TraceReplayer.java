@@ -0,0 +1,284 @@
+package simulador;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+
+// Reprodução de um trace gravado por OperationTrace
+//
+// Executado com `java simulador.FileSystemSimulator --replay <trace> [-t threads] [--pace]
+// [--csv resultados.csv] [--baseline anterior.csv]`. Repete as chamadas do trace em um
+// simulador novo, num diretório temporário. As chamadas de cada thread gravada vão, na
+// ordem do arquivo, para uma mesma thread de reprodução (as threads gravadas são
+// distribuídas entre as -t threads), de modo que a ordem dentro de cada sessão se mantém;
+// com uma thread a reprodução é determinística. Sem --pace as chamadas seguem o mais
+// rápido possível; com --pace cada uma espera o seu instante original.
+//
+// Ao final mostra a vazão e, por operação, as latências da reprodução ao lado da p50
+// gravada, além das divergências: chamadas que devolveram um status diferente do gravado
+// (o trace não começou com o sistema vazio, ou a intercalação entre threads mudou).
+// --csv grava os números e --baseline compara com um CSV anterior, para comparar versões.
+class TraceReplayer {
+    private final FileSystemSimulator fileSystem;
+    private final boolean paced;
+    private final LatencyHistogram[] replayed;
+    private final LatencyHistogram[] recorded;
+    private final LatencyHistogram total = new LatencyHistogram();
+    private final LongAdder divergences = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    
+    private TraceReplayer(FileSystemSimulator fileSystem, boolean paced) {
+        this.fileSystem = fileSystem;
+        this.paced = paced;
+        int operations = OperationTrace.Op.values().length;
+        this.replayed = new LatencyHistogram[operations];
+        this.recorded = new LatencyHistogram[operations];
+        for (int i = 0; i < operations; i++) {
+            replayed[i] = new LatencyHistogram();
+            recorded[i] = new LatencyHistogram();
+        }
+    }
+    
+    public static boolean run(String[] args) {
+        String source = null;
+        int threads = 1;
+        boolean paced = false;
+        String csv = null;
+        String baseline = null;
+        for (int i = 0; i < args.length; i++) {
+            boolean hasValue = i + 1 < args.length;
+            if (args[i].equals("-t") && hasValue && FileSystemShell.isNumber(args[i + 1])) {
+                threads = Math.max(1, Integer.parseInt(args[++i]));
+            } else if (args[i].equals("--pace")) {
+                paced = true;
+            } else if (args[i].equals("--csv") && hasValue) {
+                csv = args[++i];
+            } else if (args[i].equals("--baseline") && hasValue) {
+                baseline = args[++i];
+            } else if (source == null && !args[i].startsWith("-")) {
+                source = args[i];
+            } else {
+                source = null;
+                break;
+            }
+        }
+        if (source == null) {
+            System.out.println("Uso: java simulador.FileSystemSimulator --replay <trace> [-t threads] [--pace] [--csv resultados.csv]"
+                    + " [--baseline anterior.csv]");
+            return false;
+        }
+        
+        List<List<OperationTrace.Record>> lanes = new ArrayList<>();
+        int calls;
+        int recordedThreads;
+        try {
+            Map<Long, Integer> laneOfThread = new HashMap<>();
+            for (int i = 0; i < threads; i++) {
+                lanes.add(new ArrayList<>());
+            }
+            calls = 0;
+            try (DataInputStream in = OperationTrace.open(Paths.get(source))) {
+                OperationTrace.Record record;
+                while (true) {
+                    try {
+                        record = OperationTrace.read(in);
+                    } catch (EOFException e) {
+                        System.out.println("O trace termina com um registro incompleto, ignorado");
+                        break;
+                    }
+                    if (record == null) break;
+                    int lane = laneOfThread.computeIfAbsent(record.thread, thread -> laneOfThread.size() % lanes.size());
+                    lanes.get(lane).add(record);
+                    calls++;
+                }
+            }
+            recordedThreads = laneOfThread.size();
+        } catch (IOException e) {
+            System.out.println("Erro ao ler trace: " + e.getMessage());
+            return false;
+        }
+        
+        Path directory = null;
+        FileSystemSimulator simulator = null;
+        try {
+            directory = Files.createTempDirectory("fsreplay");
+            simulator = new FileSystemSimulator(directory);
+            System.out.printf("Trace: %d chamadas de %d threads; reprodução em %d threads, %s%n", calls, recordedThreads,
+                    threads, paced ? "no ritmo original" : "na velocidade máxima");
+            TraceReplayer replayer = new TraceReplayer(simulator, paced);
+            double elapsed = replayer.execute(lanes);
+            return replayer.report(elapsed, csv, baseline);
+        } catch (IOException e) {
+            System.out.println("Erro: " + e.getMessage());
+            return false;
+        } finally {
+            if (simulator != null) simulator.close();
+            if (directory != null) FileSystemLoadGenerator.deleteDirectory(directory);
+        }
+    }
+    
+    // Reproduz as filas, uma por thread; devolve o tempo total em segundos
+    private double execute(List<List<OperationTrace.Record>> lanes) {
+        long start = System.nanoTime();
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 1; i < lanes.size(); i++) {
+            List<OperationTrace.Record> lane = lanes.get(i);
+            Thread worker = new Thread(() -> replay(lane, start), "replay-" + i);
+            worker.start();
+            workers.add(worker);
+        }
+        replay(lanes.get(0), start);
+        for (Thread worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return (System.nanoTime() - start) / 1e9;
+    }
+    
+    private void replay(List<OperationTrace.Record> lane, long startNanos) {
+        ByteBuffer buffer = ByteBuffer.allocate(0);
+        for (OperationTrace.Record record : lane) {
+            if (paced) {
+                long due = startNanos + record.startMicros * 1000;
+                long wait;
+                while ((wait = due - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+            }
+            if (record.op == OperationTrace.Op.READ && buffer.capacity() < record.number(1)) {
+                buffer = ByteBuffer.allocate((int) record.number(1));
+            }
+            long start = System.nanoTime();
+            FsStatus status;
+            try {
+                status = execute(record, buffer);
+            } catch (RuntimeException e) {
+                errors.increment();
+                status = null;
+            }
+            long elapsed = System.nanoTime() - start;
+            int index = record.op.ordinal();
+            replayed[index].record(elapsed);
+            recorded[index].record(record.durationNanos);
+            total.record(elapsed);
+            if (status != record.status) divergences.increment();
+        }
+    }
+    
+    private FsStatus execute(OperationTrace.Record record, ByteBuffer buffer) {
+        String path = record.text(0);
+        switch (record.op) {
+            case CREATE_FILE: return fileSystem.createFile(path, record.text(1));
+            case CREATE_DIR: return fileSystem.createDirectory(path);
+            case COPY_FILE: return fileSystem.copyFile(path, record.text(1));
+            case DELETE_FILE: return fileSystem.deleteFile(path);
+            case DELETE_DIR: return fileSystem.deleteDirectory(path);
+            case DELETE_TREE: return fileSystem.deleteTree(path);
+            case COPY_TREE: return fileSystem.copyTree(path, record.text(1));
+            case RENAME_FILE: return fileSystem.renameFile(path, record.text(1));
+            case RENAME_DIR: return fileSystem.renameDirectory(path, record.text(1));
+            case MOVE: return fileSystem.move(path, record.text(1));
+            case WRITE: return fileSystem.writeFile(path, record.number(0), ByteBuffer.wrap(record.data()));
+            case APPEND: return fileSystem.appendFile(path, ByteBuffer.wrap(record.data()));
+            case TRUNCATE: return fileSystem.truncateFile(path, record.number(0));
+            case READ:
+                buffer.clear().limit((int) record.number(1));
+                return fileSystem.readFile(path, record.number(0), buffer).getStatus();
+            case READ_TEXT: return fileSystem.readText(path).getStatus();
+            case LIST_DIR: return fileSystem.listDirectory(path).getStatus();
+            case LIST_PAGE:
+                return fileSystem.listPage(path, record.text(1), (int) record.number(0), record.number(1) != 0).getStatus();
+            case STREAM_DIR: {
+                // A chamada original pode ter lido só parte do stream; aqui ele é lido inteiro
+                FsResult<Stream<FileSystemItem>> result = fileSystem.streamDirectory(path, record.number(0) != 0);
+                if (result.isOk()) {
+                    try (Stream<FileSystemItem> items = result.getValue()) {
+                        items.forEach(item -> { });
+                    }
+                }
+                return result.getStatus();
+            }
+            case STAT: return fileSystem.stat(path).getStatus();
+            case DISK_USAGE: return fileSystem.diskUsage(path).getStatus();
+            case COUNT: return fileSystem.countEntries(path).getStatus();
+            case WALK: return fileSystem.walk(path, item -> { });
+            case FIND: return fileSystem.find(path, record.text(1)).getStatus();
+            case GREP: return fileSystem.grep(path, record.text(1)).getStatus();
+            case SET_QUOTA: return fileSystem.setQuota(path, record.number(0), record.number(1));
+            case SET_CAPACITY:
+                fileSystem.setCapacity(record.number(0));
+                return FsStatus.OK;
+            case CHECKPOINT: return fileSystem.checkpoint() ? FsStatus.OK : FsStatus.BUSY;
+            default: throw new IllegalStateException("Operação sem reprodução: " + record.op);
+        }
+    }
+    
+    private boolean report(double elapsed, String csv, String baseline) {
+        Map<String, Double> previous = baseline != null ? readCsv(Paths.get(baseline)) : Collections.emptyMap();
+        List<String> rows = new ArrayList<>();
+        rows.add("operacao,chamadas,ops_por_segundo,p50_us,p99_us,max_us");
+        
+        long calls = total.getCount();
+        Double previousRate = previous.get("total");
+        System.out.printf("Chamadas: %d em %.2f s (%.0f ops/s%s), %d divergências de status, %d erros%n", calls, elapsed,
+                calls / elapsed, previousRate != null && previousRate > 0
+                        ? String.format(", %+.1f%% vs. base", (calls / elapsed - previousRate) * 100 / previousRate) : "",
+                divergences.sum(), errors.sum());
+        rows.add(row("total", total, calls / elapsed));
+        
+        System.out.printf("%-16s %10s %10s %10s %10s %14s %10s%n", "Operação", "chamadas", "p50 µs", "p99 µs", "máx µs",
+                "p50 gravado µs", "vs. base");
+        for (OperationTrace.Op op : OperationTrace.Op.values()) {
+            LatencyHistogram latency = replayed[op.ordinal()];
+            if (latency.getCount() == 0) continue;
+            Double reference = previous.get(op.getLabel());
+            double p50 = latency.getValueAtPercentile(50) / 1e3;
+            String delta = reference != null && reference > 0 ? String.format("%+.1f%%", (p50 - reference) * 100 / reference) : "";
+            System.out.printf("%-16s %10d %10.1f %10.1f %10.1f %14.1f %10s%n", op.getLabel(), latency.getCount(), p50,
+                    latency.getValueAtPercentile(99) / 1e3, latency.getMax() / 1e3,
+                    recorded[op.ordinal()].getValueAtPercentile(50) / 1e3, delta);
+            rows.add(row(op.getLabel(), latency, latency.getCount() / elapsed));
+        }
+        
+        if (csv != null) {
+            try {
+                Files.write(Paths.get(csv), rows, StandardCharsets.UTF_8);
+                System.out.println("Resultados gravados em: " + csv);
+            } catch (IOException e) {
+                System.out.println("Erro ao gravar resultados: " + e.getMessage());
+            }
+        }
+        return divergences.sum() == 0 && errors.sum() == 0;
+    }
+    
+    private static String row(String name, LatencyHistogram latency, double rate) {
+        return name + "," + latency.getCount() + String.format(Locale.ROOT, ",%.1f,%.1f,%.1f,%.1f", rate,
+                latency.getValueAtPercentile(50) / 1e3, latency.getValueAtPercentile(99) / 1e3, latency.getMax() / 1e3);
+    }
+    
+    // Do CSV anterior: ops/s da linha total e p50 de cada operação
+    private static Map<String, Double> readCsv(Path file) {
+        Map<String, Double> result = new HashMap<>();
+        try {
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                String[] fields = line.split(",");
+                if (fields.length >= 4 && fields[2].matches("[0-9.]+")) {
+                    result.put(fields[0], Double.parseDouble(fields[0].equals("total") ? fields[2] : fields[3]));
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Erro ao ler base: " + e.getMessage());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,117 @@
+package simulador;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// Compactação pelo conjunto sujo: um bloco só é comprimido depois de ficar as épocas da
+// regra sem acesso, uma leitura adia a compressão, e o conteúdo comprimido volta igual.
+// Cada simulador tem o seu BlockStore.
+class BlockCompressionTest {
+    private static final int LARGE = 64 * 1024;
+    
+    @TempDir
+    Path directory;
+    
+    private FileSystemSimulator fileSystem;
+    private BlockStore store;
+    
+    @BeforeEach
+    void open() {
+        fileSystem = new FileSystemSimulator(directory);
+        fileSystem.setCheckpointInterval(0);
+        store = fileSystem.getBlockStore();
+        // As épocas avançam só pelas chamadas de compact() do teste
+        store.stopCompactor();
+        assertEquals(FsStatus.OK, fileSystem.createDirectory("/textos"));
+    }
+    
+    @AfterEach
+    void close() {
+        if (fileSystem != null) fileSystem.close();
+    }
+    
+    @Test
+    void largeFileIsCompressedAfterTwoIdleEpochs() {
+        store.setCompression(LARGE, 0);
+        String content = text(2 * LARGE, 1);
+        assertEquals(FsStatus.OK, fileSystem.createFile("/textos/grande.txt", content));
+        
+        store.compact();
+        assertEquals(0, store.getCompressedBlocks());
+        store.compact();
+        assertEquals(2 * LARGE / BlockStore.BLOCK_SIZE, store.getCompressedBlocks());
+        assertTrue(store.getResidentBytes() < store.getStoredBytes());
+        assertEquals(content, fileSystem.readText("/textos/grande.txt").getValue());
+        
+        // Blocos comprimidos continuam imutáveis: uma escrita cria blocos novos, crus
+        assertEquals(FsStatus.OK, fileSystem.writeFile("/textos/grande.txt", 0, ByteBuffer.wrap(new byte[] {'#'})));
+        assertEquals('#' + content.substring(1), fileSystem.readText("/textos/grande.txt").getValue());
+    }
+    
+    @Test
+    void readPostponesCompression() {
+        store.setCompression(LARGE, 0);
+        String content = text(LARGE, 2);
+        assertEquals(FsStatus.OK, fileSystem.createFile("/textos/lido.txt", content));
+        
+        store.compact();
+        assertEquals(content, fileSystem.readText("/textos/lido.txt").getValue());
+        store.compact();
+        assertEquals(0, store.getCompressedBlocks());
+        store.compact();
+        assertEquals(LARGE / BlockStore.BLOCK_SIZE, store.getCompressedBlocks());
+        assertEquals(content, fileSystem.readText("/textos/lido.txt").getValue());
+    }
+    
+    @Test
+    void smallFileWaitsForColdRule() {
+        store.setCompression(LARGE, 2);
+        String content = text(BlockStore.BLOCK_SIZE, 3);
+        assertEquals(FsStatus.OK, fileSystem.createFile("/textos/pequeno.txt", content));
+        
+        store.compact();
+        store.compact();
+        assertEquals(0, store.getCompressedBlocks());
+        store.compact();
+        assertEquals(1, store.getCompressedBlocks());
+        assertEquals(content, fileSystem.readText("/textos/pequeno.txt").getValue());
+    }
+    
+    @Test
+    void storeBelongsToSimulator(@TempDir Path otherDirectory) {
+        String content = text(LARGE, 4);
+        assertEquals(FsStatus.OK, fileSystem.createFile("/textos/um.txt", content));
+        long blocks = store.getBlockCount();
+        
+        FileSystemSimulator other = new FileSystemSimulator(otherDirectory);
+        try {
+            assertNotSame(store, other.getBlockStore());
+            assertEquals(0, other.getBlockStore().getBlockCount());
+            assertEquals(FsStatus.OK, other.createFile("/um.txt", content));
+            assertEquals(blocks, other.getBlockStore().getBlockCount());
+            assertEquals(0, other.getBlockStore().getDeduplicatedBlocks());
+        } finally {
+            other.close();
+        }
+        assertEquals(FsStatus.OK, fileSystem.deleteFile("/textos/um.txt"));
+        assertEquals(0, store.getBlockCount());
+    }
+    
+    // Texto compressível, diferente a cada bloco
+    private static String text(int length, int seed) {
+        StringBuilder text = new StringBuilder(length);
+        for (int line = 0; text.length() < length; line++) {
+            text.append("registro ").append(seed).append(' ').append(line).append(" valor do arquivo\n");
+        }
+        text.setLength(length);
+        return text.toString();
+    }
+}
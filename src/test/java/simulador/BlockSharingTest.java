@@ -0,0 +1,106 @@
+package simulador;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+// Conteúdo em blocos com copy-on-write e deduplicação: uma escrita só recria os blocos
+// que tocou, blocos iguais são o mesmo objeto enquanto alguém os referencia, e um bloco
+// cuja última referência foi liberada não é reaproveitado
+class BlockSharingTest {
+    private static final int BLOCK = BlockStore.BLOCK_SIZE;
+    
+    private final BlockStore store = new BlockStore();
+    
+    // Conteúdo aleatório, para que blocos diferentes do mesmo conteúdo não coincidam
+    private static byte[] content(long seed, int length) {
+        byte[] bytes = new byte[length];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+    
+    @Test
+    void writeSharesUntouchedBlocks() {
+        byte[] original = content(1, 3 * BLOCK);
+        FileData data = FileData.of(store, original);
+        FileData updated = data.write(BLOCK + 10, ByteBuffer.wrap(new byte[] {1, 2, 3}));
+        
+        assertSame(data.getBlocks()[0], updated.getBlocks()[0]);
+        assertNotSame(data.getBlocks()[1], updated.getBlocks()[1]);
+        assertSame(data.getBlocks()[2], updated.getBlocks()[2]);
+        assertArrayEquals(original, data.toBytes());
+        byte[] expected = original.clone();
+        expected[BLOCK + 10] = 1;
+        expected[BLOCK + 11] = 2;
+        expected[BLOCK + 12] = 3;
+        assertArrayEquals(expected, updated.toBytes());
+        data.release();
+        updated.release();
+    }
+    
+    @Test
+    void truncateSharesFullBlocks() {
+        byte[] original = content(2, 2 * BLOCK + 100);
+        FileData data = FileData.of(store, original);
+        FileData cut = data.truncate(BLOCK + 5);
+        
+        assertEquals(BLOCK + 5, cut.getSize());
+        assertSame(data.getBlocks()[0], cut.getBlocks()[0]);
+        assertEquals(5, cut.getBlocks()[1].length());
+        data.release();
+        cut.release();
+    }
+    
+    @Test
+    void equalBlocksAreDeduplicatedWhileReferenced() {
+        byte[] bytes = content(3, 2 * BLOCK);
+        FileData first = FileData.of(store, bytes);
+        FileData second = FileData.of(store, bytes);
+        assertSame(first.getBlocks()[0], second.getBlocks()[0]);
+        assertSame(first.getBlocks()[1], second.getBlocks()[1]);
+        
+        // A primeira liberação não solta os blocos; depois da última, o mesmo conteúdo
+        // gera blocos novos
+        Block block = first.getBlocks()[0];
+        first.release();
+        FileData third = FileData.of(store, bytes);
+        assertSame(block, third.getBlocks()[0]);
+        second.release();
+        third.release();
+        FileData fourth = FileData.of(store, bytes);
+        assertNotSame(block, fourth.getBlocks()[0]);
+        fourth.release();
+    }
+    
+    @Test
+    void releasedBlocksAreInternedAgain() {
+        byte[] original = content(4, 3 * BLOCK);
+        FileData data = FileData.of(store, original);
+        Block[] blocks = data.getBlocks().clone();
+        data.release();
+        
+        // Os blocos do conteúdo liberado já estão com zero referências: a escrita e o corte
+        // não podem compartilhá-los, e sim internar cópias vivas
+        FileData updated = data.write(BLOCK, ByteBuffer.wrap(new byte[] {7}));
+        FileData cut = data.truncate(2 * BLOCK);
+        assertNotSame(blocks[0], updated.getBlocks()[0]);
+        assertNotSame(blocks[2], updated.getBlocks()[2]);
+        assertSame(updated.getBlocks()[0], cut.getBlocks()[0]);
+        byte[] expected = original.clone();
+        expected[BLOCK] = 7;
+        assertArrayEquals(expected, updated.toBytes());
+        assertArrayEquals(Arrays.copyOf(original, 2 * BLOCK), cut.toBytes());
+        
+        FileData again = FileData.of(store, original);
+        assertSame(updated.getBlocks()[0], again.getBlocks()[0]);
+        updated.release();
+        cut.release();
+        again.release();
+    }
+}
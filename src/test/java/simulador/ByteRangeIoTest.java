@@ -0,0 +1,177 @@
+package simulador;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// E/S por intervalo de bytes: readFile devolve quantos bytes copiou (-1 no fim), escritas
+// além do fim preenchem com zeros, tamanhos contam bytes e não caracteres, os adaptadores
+// de canal e stream passam pelo mesmo caminho, e o journal guarda só o trecho alterado
+class ByteRangeIoTest {
+    private static final String FILE = "/dados.bin";
+    
+    @TempDir
+    Path directory;
+    
+    private FileSystemSimulator fileSystem;
+    
+    @BeforeEach
+    void open() {
+        fileSystem = reopen();
+    }
+    
+    @AfterEach
+    void close() {
+        if (fileSystem != null) fileSystem.close();
+    }
+    
+    @Test
+    void readFileReportsCountAndEnd() {
+        assertEquals(FsStatus.OK, fileSystem.createFile(FILE, "0123456789"));
+        ByteBuffer buffer = ByteBuffer.allocate(4);
+        FsResult<Integer> read = fileSystem.readFile(FILE, 3, buffer);
+        assertEquals(4, read.getValue());
+        assertEquals("3456", new String(buffer.array(), StandardCharsets.UTF_8));
+        
+        buffer.clear();
+        assertEquals(2, fileSystem.readFile(FILE, 8, buffer).getValue());
+        assertEquals(-1, fileSystem.readFile(FILE, 10, ByteBuffer.allocate(4)).getValue());
+        assertEquals(-1, fileSystem.readFile(FILE, 1000, ByteBuffer.allocate(4)).getValue());
+        
+        assertEquals(FsStatus.INVALID_ARGUMENT, fileSystem.readFile(FILE, -1, ByteBuffer.allocate(4)).getStatus());
+        assertEquals(FsStatus.FILE_NOT_FOUND, fileSystem.readFile("/nada", 0, ByteBuffer.allocate(4)).getStatus());
+        assertEquals(FsStatus.OK, fileSystem.createDirectory("/dir"));
+        assertEquals(FsStatus.FILE_NOT_FOUND, fileSystem.readFile("/dir", 0, ByteBuffer.allocate(4)).getStatus());
+    }
+    
+    @Test
+    void writeAppendTruncateAcrossBlocks() {
+        int size = 3 * BlockStore.BLOCK_SIZE + 100;
+        assertEquals(FsStatus.OK, fileSystem.createFile(FILE, ""));
+        
+        // Escrita depois do fim: o intervalo fica com zeros
+        byte[] tail = bytes(200, 7);
+        assertEquals(FsStatus.OK, fileSystem.writeFile(FILE, size - 200, ByteBuffer.wrap(tail)));
+        byte[] expected = new byte[size];
+        System.arraycopy(tail, 0, expected, size - 200, 200);
+        assertArrayEquals(expected, readAll(FILE));
+        
+        // Escrita que atravessa a fronteira de dois blocos
+        byte[] middle = bytes(300, 11);
+        int offset = BlockStore.BLOCK_SIZE - 150;
+        assertEquals(FsStatus.OK, fileSystem.writeFile(FILE, offset, ByteBuffer.wrap(middle)));
+        System.arraycopy(middle, 0, expected, offset, middle.length);
+        assertArrayEquals(expected, readAll(FILE));
+        
+        byte[] appended = bytes(50, 13);
+        assertEquals(FsStatus.OK, fileSystem.appendFile(FILE, ByteBuffer.wrap(appended)));
+        expected = Arrays.copyOf(expected, size + 50);
+        System.arraycopy(appended, 0, expected, size, 50);
+        assertArrayEquals(expected, readAll(FILE));
+        
+        assertEquals(FsStatus.OK, fileSystem.truncateFile(FILE, offset + 10));
+        expected = Arrays.copyOf(expected, offset + 10);
+        assertArrayEquals(expected, readAll(FILE));
+        assertEquals(FsStatus.INVALID_ARGUMENT, fileSystem.truncateFile(FILE, -1));
+        assertEquals(FsStatus.INVALID_ARGUMENT, fileSystem.writeFile(FILE, -1, ByteBuffer.wrap(tail)));
+        
+        fileSystem.close();
+        fileSystem = reopen();
+        assertArrayEquals(expected, readAll(FILE));
+    }
+    
+    @Test
+    void sizeCountsBytes() {
+        String text = "ação não é ñ";
+        assertEquals(FsStatus.OK, fileSystem.createFile(FILE, text));
+        long bytes = text.getBytes(StandardCharsets.UTF_8).length;
+        assertEquals(bytes, ((File) fileSystem.stat(FILE).getValue()).getSize());
+        assertEquals(bytes, fileSystem.diskUsage(FILE).getValue().getBytes());
+        assertEquals(text, fileSystem.readText(FILE).getValue());
+    }
+    
+    @Test
+    void channelAndStreams() throws IOException {
+        assertEquals(FsStatus.OK, fileSystem.createFile(FILE, "abc"));
+        try (OutputStream out = fileSystem.openOutputStream(FILE)) {
+            out.write("def".getBytes(StandardCharsets.UTF_8));
+        }
+        try (SeekableByteChannel channel = fileSystem.openChannel(FILE)) {
+            assertEquals(6, channel.size());
+            channel.position(1);
+            channel.write(ByteBuffer.wrap("XY".getBytes(StandardCharsets.UTF_8)));
+            assertEquals(3, channel.position());
+            channel.truncate(5);
+            assertEquals(5, channel.size());
+        }
+        try (InputStream in = fileSystem.openInputStream(FILE)) {
+            assertEquals("aXYde", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+        assertThrows(NoSuchFileException.class, () -> fileSystem.openChannel("/nada"));
+        
+        fileSystem.close();
+        fileSystem = reopen();
+        assertEquals("aXYde", fileSystem.readText(FILE).getValue());
+    }
+    
+    @Test
+    void journalKeepsOnlyTheChangedExtent() {
+        assertEquals(FsStatus.OK, fileSystem.createFile(FILE, new String(new char[4 * BlockStore.BLOCK_SIZE]).replace('\0', 'a')));
+        assertEquals(FsStatus.OK, fileSystem.writeFile(FILE, 1000, ByteBuffer.wrap(bytes(16, 3))));
+        assertEquals(FsStatus.OK, fileSystem.appendFile(FILE, ByteBuffer.wrap(bytes(8, 5))));
+        
+        List<JournalEntry> entries = fileSystem.getJournal().getRecentEntries();
+        JournalEntry append = entries.get(entries.size() - 1);
+        JournalEntry write = entries.get(entries.size() - 2);
+        assertEquals(JournalOp.WRITE, write.getOperation());
+        assertEquals(16, write.getPayload().length);
+        assertEquals("1000", write.getArgs()[1]);
+        assertEquals(JournalOp.APPEND, append.getOperation());
+        assertEquals(8, append.getPayload().length);
+    }
+    
+    private byte[] readAll(String path) {
+        ByteBuffer buffer = ByteBuffer.allocate((int) ((File) fileSystem.stat(path).getValue()).getSize());
+        // Leituras de um bloco por vez, como faria quem processa o arquivo em partes
+        long offset = 0;
+        while (buffer.hasRemaining()) {
+            ByteBuffer chunk = buffer.slice();
+            chunk.limit(Math.min(chunk.remaining(), BlockStore.BLOCK_SIZE));
+            int read = fileSystem.readFile(path, offset, chunk).getValue();
+            offset += read;
+            buffer.position(buffer.position() + read);
+        }
+        assertEquals(-1, fileSystem.readFile(path, offset, ByteBuffer.allocate(1)).getValue());
+        return buffer.array();
+    }
+    
+    private static byte[] bytes(int length, int seed) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) (seed * 31 + i);
+        }
+        return bytes;
+    }
+    
+    private FileSystemSimulator reopen() {
+        FileSystemSimulator simulator = new FileSystemSimulator(directory);
+        simulator.setCheckpointInterval(0);
+        simulator.getJournal().setGroupCommitSize(0);
+        return simulator;
+    }
+}
@@ -0,0 +1,96 @@
+package simulador;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// Metadados compactos: o caminho é montado pelos pais e acompanha a renomeação e o
+// movimento de qualquer ancestral, nomes repetidos são uma só String, e a árvore lida da
+// imagem mantém datas e caminhos e só carrega o conteúdo quando ele é acessado
+class CompactMetadataTest {
+    @TempDir
+    Path directory;
+    
+    private FileSystemSimulator fileSystem;
+    
+    @BeforeEach
+    void open() {
+        fileSystem = new FileSystemSimulator(directory);
+        fileSystem.setCheckpointInterval(0);
+        assertEquals(FsStatus.OK, fileSystem.createDirectory("/a"));
+        assertEquals(FsStatus.OK, fileSystem.createDirectory("/a/b"));
+        assertEquals(FsStatus.OK, fileSystem.createDirectory("/a/b/c"));
+        assertEquals(FsStatus.OK, fileSystem.createFile("/a/b/c/f.txt", "conteúdo"));
+    }
+    
+    @AfterEach
+    void close() {
+        if (fileSystem != null) fileSystem.close();
+    }
+    
+    @Test
+    void pathFollowsAncestorRenameAndMove() {
+        FileSystemItem file = fileSystem.stat("/a/b/c/f.txt").getValue();
+        FileSystemItem c = fileSystem.stat("/a/b/c").getValue();
+        assertEquals("/", fileSystem.stat("/").getValue().getPath());
+        assertEquals("/a/b/c/f.txt", file.getPath());
+        
+        assertEquals(FsStatus.OK, fileSystem.renameDirectory("/a", "raiz"));
+        assertEquals("/raiz/b/c/f.txt", file.getPath());
+        assertEquals("/raiz/b/c", c.getPath());
+        
+        assertEquals(FsStatus.OK, fileSystem.createDirectory("/outro"));
+        assertEquals(FsStatus.OK, fileSystem.move("/raiz/b", "/outro/b2"));
+        assertEquals("/outro/b2/c/f.txt", file.getPath());
+        assertSame(file, fileSystem.stat("/outro/b2/c/f.txt").getValue());
+        
+        assertEquals(FsStatus.OK, fileSystem.renameFile("/outro/b2/c/f.txt", "g.txt"));
+        assertEquals("/outro/b2/c/g.txt", file.getPath());
+        assertEquals("g.txt", file.getName());
+    }
+    
+    @Test
+    void repeatedNamesShareOneString() {
+        assertEquals(FsStatus.OK, fileSystem.createDirectory("/x"));
+        assertEquals(FsStatus.OK, fileSystem.createFile("/x/" + new String("f.txt".toCharArray()), ""));
+        assertSame(fileSystem.stat("/a/b/c/f.txt").getValue().getName(), fileSystem.stat("/x/f.txt").getValue().getName());
+        
+        assertEquals(FsStatus.OK, fileSystem.renameDirectory("/x", new String("b".toCharArray())));
+        assertSame(fileSystem.stat("/a/b").getValue().getName(), fileSystem.stat("/b").getValue().getName());
+    }
+    
+    @Test
+    void imageKeepsDatesAndLoadsContentLazily() throws IOException {
+        FileSystemItem file = fileSystem.stat("/a/b/c/f.txt").getValue();
+        long created = file.getCreationTime();
+        long modified = file.getLastModified();
+        assertTrue(created > 0 && modified >= created);
+        assertTrue(fileSystem.checkpoint());
+        fileSystem.close();
+        
+        // Sem o journal, a árvore só pode ter vindo da imagem
+        Files.delete(directory.resolve("filesystem.journal"));
+        fileSystem = new FileSystemSimulator(directory);
+        File loaded = (File) fileSystem.stat("/a/b/c/f.txt").getValue();
+        assertEquals("/a/b/c/f.txt", loaded.getPath());
+        assertEquals(created, loaded.getCreationTime());
+        assertEquals(modified, loaded.getLastModified());
+        
+        assertNotNull(loaded.getStoredContent());
+        assertEquals("conteúdo".getBytes(StandardCharsets.UTF_8).length, loaded.getSize());
+        assertNotNull(loaded.getStoredContent());
+        assertEquals("conteúdo", fileSystem.readText("/a/b/c/f.txt").getValue());
+        assertNull(loaded.getStoredContent());
+    }
+}
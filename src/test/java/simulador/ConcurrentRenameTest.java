@@ -0,0 +1,162 @@
+package simulador;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// Renomeações e movimentos entre diretórios em várias threads: as faixas travadas em
+// ordem não deixam duas operações cruzadas se bloquearem, nenhum arquivo some ou aparece
+// duas vezes, e a árvore reaberta do journal é a mesma
+class ConcurrentRenameTest {
+    private static final int THREADS = 4;
+    private static final int FILES = 40;
+    private static final Duration TIMEOUT = Duration.ofSeconds(60);
+    
+    @TempDir
+    Path directory;
+    
+    private FileSystemSimulator fileSystem;
+    
+    @BeforeEach
+    void open() {
+        fileSystem = reopen();
+    }
+    
+    @AfterEach
+    void close() {
+        if (fileSystem != null) fileSystem.close();
+    }
+    
+    @Test
+    void crossDirectoryMovesKeepEveryFile() {
+        assertEquals(FsStatus.OK, fileSystem.createDirectory("/a"));
+        assertEquals(FsStatus.OK, fileSystem.createDirectory("/b"));
+        for (int i = 0; i < FILES; i++) {
+            assertEquals(FsStatus.OK, fileSystem.createFile((i % 2 == 0 ? "/a/f" : "/b/f") + i, "conteúdo " + i));
+        }
+        
+        // Cada thread move arquivos nos dois sentidos; quem perde a corrida recebe FILE_NOT_FOUND
+        AtomicInteger moved = new AtomicInteger();
+        runConcurrently(thread -> {
+            Random random = new Random(thread);
+            for (int i = 0; i < 500; i++) {
+                int file = random.nextInt(FILES);
+                boolean toB = random.nextBoolean();
+                FsStatus status = fileSystem.move((toB ? "/a/f" : "/b/f") + file, (toB ? "/b/f" : "/a/f") + file);
+                if (status.isOk()) moved.incrementAndGet();
+            }
+        });
+        
+        int a = fileSystem.countEntries("/a").getValue();
+        int b = fileSystem.countEntries("/b").getValue();
+        assertEquals(FILES, a + b);
+        for (int i = 0; i < FILES; i++) {
+            String path = fileSystem.stat("/a/f" + i).isOk() ? "/a/f" + i : "/b/f" + i;
+            assertEquals("conteúdo " + i, fileSystem.readText(path).getValue());
+        }
+        fileSystem.close();
+        fileSystem = reopen();
+        assertEquals(a, fileSystem.countEntries("/a").getValue());
+        assertEquals(b, fileSystem.countEntries("/b").getValue());
+    }
+    
+    @Test
+    void onlyOneRenameOfTheSameFileWins() {
+        assertEquals(FsStatus.OK, fileSystem.createDirectory("/origem"));
+        for (int round = 0; round < 50; round++) {
+            assertEquals(FsStatus.OK, fileSystem.createFile("/origem/f" + round, "x"));
+        }
+        AtomicInteger wins = new AtomicInteger();
+        runConcurrently(thread -> {
+            for (int round = 0; round < 50; round++) {
+                if (fileSystem.renameFile("/origem/f" + round, "t" + thread + "_" + round).isOk()) {
+                    wins.incrementAndGet();
+                }
+            }
+        });
+        assertEquals(50, wins.get());
+        assertEquals(50, fileSystem.countEntries("/origem").getValue());
+    }
+    
+    @Test
+    void directoryRenamesRaceWithCreates() {
+        assertEquals(FsStatus.OK, fileSystem.createDirectory("/p"));
+        assertEquals(FsStatus.OK, fileSystem.createDirectory("/p/x"));
+        assertEquals(FsStatus.OK, fileSystem.createDirectory("/q"));
+        AtomicInteger created = new AtomicInteger();
+        runConcurrently(thread -> {
+            for (int i = 0; i < 300; i++) {
+                if (thread == 0) {
+                    // Renomeia e move o diretório de um lado para o outro
+                    fileSystem.renameDirectory("/p/x", "y");
+                    fileSystem.move("/p/y", "/q/x");
+                    fileSystem.move("/q/x", "/p/x");
+                } else {
+                    String name = "/f" + thread + "_" + i;
+                    for (String parent : new String[] {"/p/x", "/p/y", "/q/x"}) {
+                        if (fileSystem.createFile(parent + name, "").isOk()) {
+                            created.incrementAndGet();
+                            break;
+                        }
+                    }
+                }
+            }
+        });
+        
+        String finalPath = fileSystem.stat("/p/x").isOk() ? "/p/x" : fileSystem.stat("/p/y").isOk() ? "/p/y" : "/q/x";
+        assertEquals(created.get(), fileSystem.countEntries(finalPath).getValue());
+        fileSystem.close();
+        fileSystem = reopen();
+        assertEquals(created.get(), fileSystem.countEntries(finalPath).getValue());
+    }
+    
+    interface Worker {
+        void run(int thread) throws Exception;
+    }
+    
+    private void runConcurrently(Worker worker) {
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+            try {
+                CountDownLatch start = new CountDownLatch(1);
+                List<Future<Object>> futures = new ArrayList<>();
+                for (int t = 0; t < THREADS; t++) {
+                    int thread = t;
+                    futures.add(executor.submit((Callable<Object>) () -> {
+                        start.await();
+                        worker.run(thread);
+                        return null;
+                    }));
+                }
+                start.countDown();
+                for (Future<Object> future : futures) {
+                    future.get();
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+        });
+    }
+    
+    private FileSystemSimulator reopen() {
+        FileSystemSimulator simulator = new FileSystemSimulator(directory);
+        simulator.setCheckpointInterval(0);
+        simulator.getJournal().setGroupCommitSize(0);
+        return simulator;
+    }
+}
@@ -0,0 +1,20 @@
+package simulador;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+// Algumas rodadas curtas do teste de queda (CrashConsistencyHarness), com sementes fixas
+// para que uma falha se repita com --crashtest --seed; sem a medição de recuperação
+class CrashConsistencyTest {
+    private static final String ROUNDS = "20";
+    private static final String OPERATIONS = "200";
+    
+    @Test
+    void recoveredTreeMatchesCommittedPrefix() {
+        for (long seed : new long[] {1, 2, 3}) {
+            String[] args = {"-r", ROUNDS, "-n", OPERATIONS, "--seed", Long.toString(seed), "--recovery", ""};
+            assertTrue(CrashConsistencyHarness.run(args), "inconsistência com --seed " + seed);
+        }
+    }
+}
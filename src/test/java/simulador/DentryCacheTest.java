@@ -0,0 +1,120 @@
+package simulador;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// Cache de caminhos: consultas repetidas acertam o cache, e renomear, mover ou apagar um
+// item ou um diretório (com todos os descendentes) nunca deixa uma entrada velha, positiva
+// ou negativa, responder pelo caminho
+class DentryCacheTest {
+    private static final String FILE = "/a/b/c/f.txt";
+    
+    @TempDir
+    Path directory;
+    
+    private FileSystemSimulator fileSystem;
+    private DentryCache cache;
+    
+    @BeforeEach
+    void open() {
+        fileSystem = new FileSystemSimulator(directory);
+        fileSystem.setCheckpointInterval(0);
+        cache = fileSystem.getDentryCache();
+        assertEquals(FsStatus.OK, fileSystem.createDirectory("/a"));
+        assertEquals(FsStatus.OK, fileSystem.createDirectory("/a/b"));
+        assertEquals(FsStatus.OK, fileSystem.createDirectory("/a/b/c"));
+        assertEquals(FsStatus.OK, fileSystem.createFile(FILE, "original"));
+    }
+    
+    @AfterEach
+    void close() {
+        if (fileSystem != null) fileSystem.close();
+    }
+    
+    @Test
+    void repeatedLookupHits() {
+        FileSystemItem item = fileSystem.stat(FILE).getValue();
+        long hits = cache.getHits();
+        assertSame(item, fileSystem.stat(FILE).getValue());
+        assertSame(item, fileSystem.stat("/a//b/c/f.txt/").getValue());
+        assertTrue(cache.getHits() >= hits + 2);
+        assertTrue(cache.size() > 0);
+    }
+    
+    @Test
+    void renameDirectoryInvalidatesDescendants() {
+        FileSystemItem item = fileSystem.stat(FILE).getValue();
+        fileSystem.stat("/a/b/c");
+        assertEquals(FsStatus.OK, fileSystem.renameDirectory("/a/b", "x"));
+        assertFalse(fileSystem.stat(FILE).isOk());
+        assertFalse(fileSystem.stat("/a/b/c").isOk());
+        assertSame(item, fileSystem.stat("/a/x/c/f.txt").getValue());
+        
+        // Um diretório novo com o nome antigo não herda as entradas da árvore renomeada
+        assertEquals(FsStatus.OK, fileSystem.createDirectory("/a/b"));
+        assertFalse(fileSystem.stat(FILE).isOk());
+        assertEquals(FsStatus.OK, fileSystem.createDirectory("/a/b/c"));
+        assertEquals(FsStatus.OK, fileSystem.createFile(FILE, "novo"));
+        assertEquals("novo", fileSystem.readText(FILE).getValue());
+        assertEquals("original", fileSystem.readText("/a/x/c/f.txt").getValue());
+    }
+    
+    @Test
+    void negativeEntriesInvalidatedWhenPathAppears() {
+        assertFalse(fileSystem.stat("/q/b/c/f.txt").isOk());
+        assertFalse(fileSystem.stat("/q/b/c/f.txt").isOk());
+        assertFalse(fileSystem.stat("/a/novo/g.txt").isOk());
+        
+        assertEquals(FsStatus.OK, fileSystem.renameDirectory("/a", "q"));
+        assertTrue(fileSystem.stat("/q/b/c/f.txt").isOk());
+        assertEquals(FsStatus.OK, fileSystem.createDirectory("/q/novo"));
+        assertEquals(FsStatus.OK, fileSystem.createFile("/q/novo/g.txt", "g"));
+        assertTrue(fileSystem.stat("/q/novo/g.txt").isOk());
+        assertFalse(fileSystem.stat("/a/novo/g.txt").isOk());
+    }
+    
+    @Test
+    void moveInvalidatesOldAndNewPaths() {
+        assertEquals(FsStatus.OK, fileSystem.createDirectory("/destino"));
+        assertFalse(fileSystem.stat("/destino/b/c/f.txt").isOk());
+        FileSystemItem item = fileSystem.stat(FILE).getValue();
+        
+        assertEquals(FsStatus.OK, fileSystem.move("/a/b", "/destino/b"));
+        assertFalse(fileSystem.stat(FILE).isOk());
+        assertSame(item, fileSystem.stat("/destino/b/c/f.txt").getValue());
+        assertEquals(FsStatus.OK, fileSystem.move("/destino/b/c/f.txt", "/a/f.txt"));
+        assertFalse(fileSystem.stat("/destino/b/c/f.txt").isOk());
+        assertSame(item, fileSystem.stat("/a/f.txt").getValue());
+    }
+    
+    @Test
+    void deletesInvalidate() {
+        FileSystemItem item = fileSystem.stat(FILE).getValue();
+        assertEquals(FsStatus.OK, fileSystem.deleteFile(FILE));
+        assertFalse(fileSystem.stat(FILE).isOk());
+        assertEquals(FsStatus.OK, fileSystem.createFile(FILE, "outro"));
+        FileSystemItem recreated = fileSystem.stat(FILE).getValue();
+        assertNotSame(item, recreated);
+        
+        assertEquals(FsStatus.OK, fileSystem.renameFile(FILE, "g.txt"));
+        assertFalse(fileSystem.stat(FILE).isOk());
+        assertSame(recreated, fileSystem.stat("/a/b/c/g.txt").getValue());
+        
+        fileSystem.stat("/a/b/c");
+        assertEquals(FsStatus.OK, fileSystem.deleteTree("/a/b"));
+        assertFalse(fileSystem.stat("/a/b/c/g.txt").isOk());
+        assertFalse(fileSystem.stat("/a/b/c").isOk());
+        assertEquals(FsStatus.OK, fileSystem.createDirectory("/a/b"));
+        assertEquals(FsStatus.OK, fileSystem.deleteDirectory("/a/b"));
+        assertFalse(fileSystem.stat("/a/b").isOk());
+    }
+}
@@ -0,0 +1,141 @@
+package simulador;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// Índice de nomes do Directory: a busca continua certa ao passar do array pequeno para a
+// tabela de espalhamento, com remoções, reinserções e renomeações, e a listagem em ordem
+// de nome acompanha as alterações feitas depois de o índice ordenado ser montado
+class DirectoryIndexTest {
+    private static final int ENTRIES = 1000;
+    
+    @Test
+    void lookupAcrossThreshold() {
+        Directory dir = new Directory("grande");
+        List<Directory> children = new ArrayList<>();
+        for (int i = 0; i < ENTRIES; i++) {
+            Directory child = new Directory("d" + i);
+            assertTrue(dir.addChild(child));
+            children.add(child);
+            assertSame(child, dir.findChild("d" + i));
+            assertSame(children.get(i / 2), dir.findChild("d" + i / 2));
+        }
+        assertEquals(ENTRIES, dir.getChildCount());
+        assertFalse(dir.addChild(new Directory("d7")));
+        assertEquals(ENTRIES, dir.getChildCount());
+        assertNull(dir.findChild("d" + ENTRIES));
+        for (int i = 0; i < ENTRIES; i++) {
+            assertSame(children.get(i), dir.findChild("d" + i));
+        }
+    }
+    
+    @Test
+    void removeAndReinsert() {
+        Directory dir = new Directory("grande");
+        for (int i = 0; i < ENTRIES; i++) {
+            dir.addChild(new Directory("d" + i));
+        }
+        for (int i = 0; i < ENTRIES; i += 2) {
+            assertTrue(dir.removeChild("d" + i));
+        }
+        assertFalse(dir.removeChild("d0"));
+        assertEquals(ENTRIES / 2, dir.getChildCount());
+        for (int i = 0; i < ENTRIES; i++) {
+            assertEquals(i % 2 == 1, dir.findChild("d" + i) != null);
+        }
+        
+        for (int i = 0; i < ENTRIES; i += 2) {
+            assertTrue(dir.addChild(new Directory("d" + i)));
+        }
+        Set<String> names = new HashSet<>();
+        for (FileSystemItem child : dir.getChildren()) {
+            assertTrue(names.add(child.getName()));
+        }
+        assertEquals(ENTRIES, names.size());
+        assertEquals(ENTRIES, dir.getChildCount());
+    }
+    
+    @Test
+    void renameKeepsIndexConsistent() {
+        Directory dir = new Directory("grande");
+        for (int i = 0; i < ENTRIES; i++) {
+            dir.addChild(new Directory("d" + i));
+        }
+        FileSystemItem item = dir.findChild("d10");
+        assertTrue(dir.renameChild("d10", "novo"));
+        assertFalse(dir.renameChild("d11", "novo"));
+        assertFalse(dir.renameChild("inexistente", "outro"));
+        assertNull(dir.findChild("d10"));
+        assertSame(item, dir.findChild("novo"));
+        assertEquals("novo", item.getName());
+        assertEquals(ENTRIES, dir.getChildCount());
+    }
+    
+    @Test
+    void sortedListingFollowsChanges() {
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < ENTRIES; i++) {
+            names.add(String.format("n%04d", i));
+        }
+        Collections.shuffle(names, new Random(7));
+        Directory dir = new Directory("grande");
+        for (String name : names) {
+            dir.addChild(new Directory(name));
+        }
+        
+        // Ordem de inserção sem sorted; ordem de nome com o índice ordenado
+        assertEquals(names, names(dir.page(null, ENTRIES, false)));
+        Collections.sort(names);
+        assertEquals(names, names(dir.page(null, ENTRIES, true)));
+        
+        dir.removeChild("n0000");
+        dir.renameChild("n0001", "z");
+        dir.addChild(new Directory("a"));
+        List<String> expected = new ArrayList<>(names.subList(2, names.size()));
+        expected.add(0, "a");
+        expected.add("z");
+        assertEquals(expected, names(dir.page(null, ENTRIES + 1, true)));
+    }
+    
+    @Test
+    void simulatorListsLargeDirectory(@TempDir Path directory) {
+        FileSystemSimulator fileSystem = new FileSystemSimulator(directory);
+        try {
+            fileSystem.setCheckpointInterval(0);
+            fileSystem.getJournal().setGroupCommitSize(0);
+            assertEquals(FsStatus.OK, fileSystem.createDirectory("/grande"));
+            for (int i = 0; i < ENTRIES; i++) {
+                assertEquals(FsStatus.OK, fileSystem.createFile("/grande/f" + i, ""));
+            }
+            assertEquals(FsStatus.ALREADY_EXISTS, fileSystem.createFile("/grande/f500", ""));
+            assertEquals(FsStatus.OK, fileSystem.deleteFile("/grande/f500"));
+            assertEquals(ENTRIES - 1, fileSystem.countEntries("/grande").getValue());
+            assertEquals(ENTRIES - 1, fileSystem.listDirectory("/grande").getValue().size());
+            assertFalse(fileSystem.stat("/grande/f500").isOk());
+            assertTrue(fileSystem.stat("/grande/f999").isOk());
+        } finally {
+            fileSystem.close();
+        }
+    }
+    
+    private static List<String> names(List<FileSystemItem> items) {
+        List<String> names = new ArrayList<>(items.size());
+        for (FileSystemItem item : items) {
+            names.add(item.getName());
+        }
+        return names;
+    }
+}
@@ -0,0 +1,135 @@
+package simulador;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// Listagem paginada: seguir os cursores percorre cada filho uma vez, em ordem de inserção
+// ou de nome; a ordem de nome continua certa com o diretório mudando entre as páginas, o
+// Stream lê o diretório grande em várias páginas, e o shell mostra o cursor seguinte
+class DirectoryPagingTest {
+    private static final String DIR = "/grande";
+    private static final int ENTRIES = 2500;
+    
+    @TempDir
+    Path directory;
+    
+    private FileSystemSimulator fileSystem;
+    private List<String> created;
+    
+    @BeforeEach
+    void open() {
+        fileSystem = new FileSystemSimulator(directory);
+        fileSystem.setCheckpointInterval(0);
+        fileSystem.getJournal().setGroupCommitSize(0);
+        assertEquals(FsStatus.OK, fileSystem.createDirectory(DIR));
+        created = new ArrayList<>();
+        // Nomes fora de ordem, para que inserção e nome deem listagens diferentes
+        for (int i = 0; i < ENTRIES; i++) {
+            String name = String.format("n%05d", i * 7919 % ENTRIES);
+            assertEquals(FsStatus.OK, fileSystem.createFile(DIR + "/" + name, ""));
+            created.add(name);
+        }
+    }
+    
+    @AfterEach
+    void close() {
+        if (fileSystem != null) fileSystem.close();
+    }
+    
+    @Test
+    void cursorsVisitEveryEntryOnce() {
+        assertEquals(created, pages(false, 100));
+        List<String> sorted = new ArrayList<>(created);
+        sorted.sort(null);
+        assertEquals(sorted, pages(true, 100));
+        assertEquals(sorted, pages(true, 7));
+        
+        DirectoryPage last = fileSystem.listPage(DIR, created.get(ENTRIES - 3), 10, false).getValue();
+        assertEquals(2, last.getItems().size());
+        assertNull(last.getNextCursor());
+        assertEquals(FsStatus.INVALID_ARGUMENT, fileSystem.listPage(DIR, null, 0, false).getStatus());
+        assertEquals(FsStatus.DIRECTORY_NOT_FOUND, fileSystem.listPage("/nada", null, 10, false).getStatus());
+    }
+    
+    @Test
+    void sortedCursorSurvivesChangesBetweenPages() {
+        DirectoryPage first = fileSystem.listPage(DIR, null, 10, true).getValue();
+        String cursor = first.getNextCursor();
+        assertEquals("n00009", cursor);
+        
+        // O cursor é só um nome: removê-lo não impede a página seguinte
+        assertEquals(FsStatus.OK, fileSystem.deleteFile(DIR + "/" + cursor));
+        assertEquals(FsStatus.OK, fileSystem.createFile(DIR + "/a-antes", ""));
+        assertEquals(FsStatus.OK, fileSystem.createFile(DIR + "/n00009x", ""));
+        List<String> next = names(fileSystem.listPage(DIR, cursor, 3, true).getValue().getItems());
+        assertEquals(List.of("n00009x", "n00010", "n00011"), next);
+        
+        // Em ordem de inserção, o cursor removido não tem mais posição
+        String insertionCursor = fileSystem.listPage(DIR, null, 5, false).getValue().getNextCursor();
+        assertEquals(FsStatus.OK, fileSystem.deleteFile(DIR + "/" + insertionCursor));
+        assertEquals(FsStatus.NOT_FOUND, fileSystem.listPage(DIR, insertionCursor, 5, false).getStatus());
+    }
+    
+    @Test
+    void streamReadsAcrossPages() {
+        List<String> streamed = fileSystem.streamDirectory(DIR, false).getValue()
+                .map(FileSystemItem::getName).collect(Collectors.toList());
+        assertEquals(created, streamed);
+        List<String> sorted = fileSystem.streamDirectory(DIR, true).getValue()
+                .map(FileSystemItem::getName).collect(Collectors.toList());
+        List<String> expected = new ArrayList<>(created);
+        expected.sort(null);
+        assertEquals(expected, sorted);
+        assertEquals(ENTRIES, fileSystem.countEntries(DIR).getValue());
+        assertEquals(3, fileSystem.streamDirectory(DIR, true).getValue().limit(3).count());
+        assertFalse(fileSystem.streamDirectory("/nada", false).isOk());
+    }
+    
+    @Test
+    void shellPrintsNextCursor() {
+        StringWriter buffer = new StringWriter();
+        FileSystemShell shell = new FileSystemShell(fileSystem, new PrintWriter(buffer, true));
+        assertEquals(FsStatus.OK, shell.execute(new String[] {"list", DIR, "--limit", "2", "--sort", "name"}));
+        String output = buffer.toString();
+        assertTrue(output.contains("n00000"), output);
+        assertTrue(output.contains("Próxima página: --after n00001"), output);
+        
+        buffer.getBuffer().setLength(0);
+        assertEquals(FsStatus.OK, shell.execute(new String[] {"list", DIR, "--limit", "2", "--sort", "name", "--after", "n00001"}));
+        output = buffer.toString();
+        assertTrue(output.contains("n00002") && output.contains("n00003") && !output.contains("n00001 "), output);
+    }
+    
+    private List<String> pages(boolean sorted, int limit) {
+        List<String> names = new ArrayList<>();
+        String cursor = null;
+        do {
+            DirectoryPage page = fileSystem.listPage(DIR, cursor, limit, sorted).getValue();
+            assertTrue(page.getItems().size() <= limit);
+            names.addAll(names(page.getItems()));
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        return names;
+    }
+    
+    private static List<String> names(List<FileSystemItem> items) {
+        List<String> names = new ArrayList<>(items.size());
+        for (FileSystemItem item : items) {
+            names.add(item.getName());
+        }
+        return names;
+    }
+}
@@ -0,0 +1,120 @@
+package simulador;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// Sessões remotas: os comandos sobre a árvore funcionam, e os que mudam a configuração
+// do processo ou gravam arquivos locais (trace, accesslog, compression, capacity, cotas,
+// checkpoint, stats reset) são recusados com NOT_PERMITTED
+class FileSystemServerTest {
+    @TempDir
+    Path directory;
+    
+    private FileSystemSimulator fileSystem;
+    private FileSystemServer server;
+    private Socket socket;
+    private DataInputStream input;
+    private OutputStream output;
+    
+    @BeforeEach
+    void start() throws IOException {
+        fileSystem = new FileSystemSimulator(Files.createDirectory(directory.resolve("fs")));
+        fileSystem.setCheckpointInterval(0);
+        server = new FileSystemServer(fileSystem, 0);
+        socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+        input = new DataInputStream(socket.getInputStream());
+        output = socket.getOutputStream();
+    }
+    
+    @AfterEach
+    void stop() throws IOException {
+        socket.close();
+        server.close();
+        fileSystem.close();
+    }
+    
+    @Test
+    void fileCommandsRunInRemoteSessions() throws IOException {
+        assertEquals("OK", send("createdir /docs")[0]);
+        assertEquals("OK", send("cd /docs")[0]);
+        assertEquals("OK", send("createfile notas.txt abc")[0]);
+        assertEquals("OK", send("append notas.txt def")[0]);
+        assertEquals("abcdef\n", send("cat /docs/notas.txt")[1]);
+        assertEquals("OK", send("copytree /docs /copia")[0]);
+        assertEquals("OK", send("deletedir -r /copia")[0]);
+        assertEquals("FILE_NOT_FOUND", send("cat /copia/notas.txt")[0]);
+    }
+    
+    @Test
+    void administrativeCommandsAreRefused() throws IOException {
+        Path trace = directory.resolve("remoto.trace");
+        for (String command : new String[] {"trace " + trace, "trace stop", "accesslog 1", "compression 1 1", "capacity 5",
+                "quota / 10", "checkpoint", "stats reset", "journal", "storage", "cache"}) {
+            String[] response = send(command);
+            assertEquals("NOT_PERMITTED", response[0], command);
+        }
+        assertFalse(Files.exists(trace));
+        assertFalse(fileSystem.getTrace().isRecording());
+        assertEquals(0, fileSystem.getCapacity());
+        assertTrue(fileSystem.getQuotas().isEmpty());
+        assertEquals(0, fileSystem.getAccessLog().getSampling());
+    }
+    
+    @Test
+    void queriesWithoutArgumentsAreAllowed() throws IOException {
+        assertEquals("OK", send("capacity")[0]);
+        assertEquals("OK", send("quota")[0]);
+        assertEquals("OK", send("stats")[0]);
+        String help = send("help")[1];
+        assertTrue(help.contains("createfile"));
+        assertFalse(help.contains("trace"));
+        assertFalse(help.contains("compression"));
+    }
+    
+    @Test
+    void localShellKeepsAdministrativeCommands() throws IOException {
+        Path trace = directory.resolve("local.trace");
+        FileSystemShell shell = new FileSystemShell(fileSystem, new PrintWriter(new StringWriter()));
+        assertEquals(FsStatus.OK, shell.execute(new String[] {"trace", trace.toString()}));
+        assertEquals(FsStatus.OK, shell.execute(new String[] {"capacity", "4096"}));
+        assertTrue(fileSystem.getTrace().isRecording());
+        assertEquals(4096, fileSystem.getCapacity());
+        assertEquals(FsStatus.OK, shell.execute(new String[] {"trace", "stop"}));
+        assertTrue(Files.exists(trace));
+    }
+    
+    // Envia um comando e lê a resposta "<STATUS> <bytes>" seguida do corpo
+    private String[] send(String command) throws IOException {
+        output.write((command + "\n").getBytes(StandardCharsets.UTF_8));
+        output.flush();
+        String[] header = readLine().split(" ");
+        byte[] body = new byte[Integer.parseInt(header[1])];
+        input.readFully(body);
+        return new String[] {header[0], new String(body, StandardCharsets.UTF_8)};
+    }
+    
+    private String readLine() throws IOException {
+        StringBuilder line = new StringBuilder();
+        for (int c; (c = input.read()) != '\n'; ) {
+            if (c < 0) throw new IOException("Conexão encerrada");
+            line.append((char) c);
+        }
+        return line.toString();
+    }
+}
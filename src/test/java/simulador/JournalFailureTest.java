@@ -0,0 +1,102 @@
+package simulador;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// Falhas de escrita e de fsync do journal: a alteração que não chegou ao arquivo volta
+// IO_ERROR sem mudar a árvore, e as seguintes também são recusadas
+class JournalFailureTest {
+    @TempDir
+    Path directory;
+    
+    private FileSystemSimulator fileSystem;
+    private volatile boolean failWrites;
+    private volatile boolean failForce;
+    
+    @AfterEach
+    void close() {
+        if (fileSystem != null) fileSystem.close();
+    }
+    
+    @Test
+    void failedWriteIsNotApplied() {
+        fileSystem = open();
+        assertEquals(FsStatus.OK, fileSystem.createDirectory("/docs"));
+        assertEquals(FsStatus.OK, fileSystem.createFile("/docs/um.txt", "primeiro"));
+        
+        failWrites = true;
+        assertEquals(FsStatus.IO_ERROR, fileSystem.createFile("/docs/dois.txt", "segundo"));
+        assertEquals(FsStatus.IO_ERROR, fileSystem.writeFile("/docs/um.txt", 0, ByteBuffer.wrap(new byte[] {'X'})));
+        assertEquals(FsStatus.IO_ERROR, fileSystem.deleteFile("/docs/um.txt"));
+        assertFalse(fileSystem.stat("/docs/dois.txt").isOk());
+        assertEquals("primeiro", fileSystem.readText("/docs/um.txt").getValue());
+        assertNotNull(fileSystem.getJournal().getFailure());
+        
+        // Depois de uma falha o journal não volta a gravar, mesmo que o disco se recupere
+        failWrites = false;
+        assertEquals(FsStatus.IO_ERROR, fileSystem.createDirectory("/outro"));
+        assertFalse(fileSystem.stat("/outro").isOk());
+        fileSystem.close();
+        
+        fileSystem = open();
+        assertNull(fileSystem.getJournal().getFailure());
+        assertEquals("primeiro", fileSystem.readText("/docs/um.txt").getValue());
+        assertEquals(1, fileSystem.countEntries("/docs").getValue());
+        assertEquals(FsStatus.OK, fileSystem.createFile("/docs/dois.txt", "segundo"));
+    }
+    
+    @Test
+    void failedFsyncIsNotApplied() {
+        fileSystem = open();
+        assertEquals(FsStatus.OK, fileSystem.createDirectory("/docs"));
+        
+        failForce = true;
+        assertEquals(FsStatus.IO_ERROR, fileSystem.copyTree("/docs", "/copia"));
+        assertEquals(FsStatus.IO_ERROR, fileSystem.renameDirectory("/docs", "papeis"));
+        assertFalse(fileSystem.stat("/copia").isOk());
+        assertEquals(FsStatus.OK, fileSystem.stat("/docs").getStatus());
+    }
+    
+    @Test
+    void durableByDefault() {
+        fileSystem = open();
+        assertEquals(Journal.DEFAULT_GROUP_COMMIT_SIZE, fileSystem.getJournal().getGroupCommitSize());
+        assertEquals(1, Journal.DEFAULT_GROUP_COMMIT_SIZE);
+    }
+    
+    private FileSystemSimulator open() {
+        FileSystemSimulator simulator = new FileSystemSimulator(directory, path -> {
+            JournalIo io = JournalIo.open(path);
+            return new JournalIo() {
+                @Override
+                public long size() throws IOException { return io.size(); }
+                
+                @Override
+                public void write(ByteBuffer data) throws IOException {
+                    if (failWrites) throw new IOException("disco cheio");
+                    io.write(data);
+                }
+                
+                @Override
+                public void force() throws IOException {
+                    if (failForce) throw new IOException("fsync falhou");
+                    io.force();
+                }
+                
+                @Override
+                public void close() throws IOException { io.close(); }
+            };
+        });
+        simulator.setCheckpointInterval(0);
+        return simulator;
+    }
+}
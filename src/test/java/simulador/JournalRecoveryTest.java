@@ -0,0 +1,117 @@
+package simulador;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// Reabertura do journal depois de uma queda no meio da última escrita: as operações
+// commitadas antes dela voltam, o registro incompleto é descartado e o arquivo é
+// truncado, de modo que as operações seguintes sobrevivem a outra reabertura
+class JournalRecoveryTest {
+    @TempDir
+    Path directory;
+    
+    private Path journal;
+    private FileSystemSimulator fileSystem;
+    private long committed;
+    private long written;
+    
+    @BeforeEach
+    void writeJournal() {
+        journal = directory.resolve("filesystem.journal");
+        fileSystem = open();
+        assertEquals(FsStatus.OK, fileSystem.createDirectory("/docs"));
+        assertEquals(FsStatus.OK, fileSystem.createFile("/docs/um.txt", "primeiro"));
+        fileSystem.getJournal().sync();
+        committed = size();
+        assertEquals(FsStatus.OK, fileSystem.createFile("/docs/dois.txt", "segundo"));
+        fileSystem.close();
+        fileSystem = null;
+        written = size();
+        assertTrue(written > committed);
+    }
+    
+    @AfterEach
+    void close() {
+        if (fileSystem != null) fileSystem.close();
+    }
+    
+    @Test
+    void tornTailIsDroppedOnReplay() throws IOException {
+        try (FileChannel channel = FileChannel.open(journal, StandardOpenOption.WRITE)) {
+            channel.truncate(committed + (written - committed) / 2);
+        }
+        
+        fileSystem = open();
+        assertCommittedPrefix();
+    }
+    
+    @Test
+    void corruptedTailIsDroppedOnReplay() throws IOException {
+        // Um byte trocado no último registro invalida o CRC32C
+        try (FileChannel channel = FileChannel.open(journal, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] {(byte) 0xFF}), written - 2);
+        }
+        
+        fileSystem = open();
+        assertEquals("primeiro", fileSystem.readText("/docs/um.txt").getValue());
+        assertFalse(fileSystem.stat("/docs/dois.txt").isOk());
+    }
+    
+    @Test
+    void lengthPastEndOfFileIsDroppedOnReplay() throws IOException {
+        try (FileChannel channel = FileChannel.open(journal, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.allocate(4).putInt(0, Integer.MAX_VALUE));
+        }
+        
+        fileSystem = open();
+        assertEquals("segundo", fileSystem.readText("/docs/dois.txt").getValue());
+    }
+    
+    @Test
+    void operationsAfterRecoverySurviveReopen() throws IOException {
+        try (FileChannel channel = FileChannel.open(journal, StandardOpenOption.WRITE)) {
+            channel.truncate(written - 1);
+        }
+        
+        fileSystem = open();
+        assertEquals(FsStatus.OK, fileSystem.createFile("/docs/tres.txt", "terceiro"));
+        fileSystem.close();
+        
+        fileSystem = open();
+        assertEquals("primeiro", fileSystem.readText("/docs/um.txt").getValue());
+        assertFalse(fileSystem.stat("/docs/dois.txt").isOk());
+        assertEquals("terceiro", fileSystem.readText("/docs/tres.txt").getValue());
+    }
+    
+    private void assertCommittedPrefix() {
+        assertEquals("primeiro", fileSystem.readText("/docs/um.txt").getValue());
+        assertFalse(fileSystem.stat("/docs/dois.txt").isOk());
+        assertEquals(1, fileSystem.countEntries("/docs").getValue());
+    }
+    
+    private FileSystemSimulator open() {
+        FileSystemSimulator simulator = new FileSystemSimulator(directory);
+        simulator.setCheckpointInterval(0);
+        return simulator;
+    }
+    
+    private long size() {
+        try {
+            return Files.size(journal);
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
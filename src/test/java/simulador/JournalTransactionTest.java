@@ -0,0 +1,133 @@
+package simulador;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// Transações do journal: commit e abort valem para o id informado, e não para o último
+// registro; as operações de uma transação são reaplicadas juntas só se o COMMIT foi
+// gravado, e uma operação recusada pelo simulador não fica PENDING
+class JournalTransactionTest {
+    @TempDir
+    Path directory;
+    
+    private Journal journal;
+    
+    @BeforeEach
+    void open() {
+        journal = reopen(new ArrayList<>());
+    }
+    
+    @AfterEach
+    void close() {
+        if (journal != null) journal.close();
+    }
+    
+    @Test
+    void commitAndAbortFollowTheId() {
+        long first = journal.logOperation(JournalOp.CREATE_DIR, "/a");
+        long second = journal.logOperation(JournalOp.CREATE_DIR, "/b");
+        long third = journal.logOperation(JournalOp.CREATE_DIR, "/c");
+        assertNotEquals(first, second);
+        
+        // Confirmar a primeira não confirma a última registrada
+        assertTrue(journal.commitOperation(first));
+        journal.abortOperation(third);
+        assertEquals(JournalEntry.Status.COMMITTED, status(first));
+        assertEquals(JournalEntry.Status.PENDING, status(second));
+        assertEquals(JournalEntry.Status.ABORTED, status(third));
+        
+        // Uma transação encerrada não pode ser confirmada de novo nem receber operações
+        assertFalse(journal.commitOperation(first));
+        assertFalse(journal.commitOperation(third));
+        assertFalse(journal.commitOperation(12345));
+        journal.abortIfActive(first);
+        assertEquals(JournalEntry.Status.COMMITTED, status(first));
+        JournalTransaction transaction = journal.beginTransaction();
+        transaction.commit();
+        assertThrows(IllegalStateException.class, () -> transaction.log(JournalOp.CREATE_DIR, "/d"));
+    }
+    
+    @Test
+    void onlyCommittedTransactionsAreReplayed() {
+        JournalTransaction tree = journal.beginTransaction();
+        tree.log(JournalOp.DELETE_FILE, "/t/um.txt");
+        long single = journal.logOperation(JournalOp.CREATE_DIR, "/solto");
+        tree.log(JournalOp.DELETE_FILE, "/t/dois.txt");
+        tree.log(JournalOp.DELETE_DIR, "/t");
+        JournalTransaction aborted = journal.beginTransaction();
+        aborted.log(JournalOp.CREATE_DIR, "/abortado");
+        JournalTransaction open = journal.beginTransaction();
+        open.log(JournalOp.CREATE_DIR, "/aberto");
+        
+        assertTrue(journal.commitOperation(single));
+        tree.commit();
+        aborted.abort();
+        for (JournalEntry entry : journal.getRecentEntries()) {
+            if (entry.getTransactionId() == tree.getId()) assertTrue(entry.isCommitted());
+        }
+        journal.close();
+        
+        // A transação da árvore volta inteira e na ordem de registro, mesmo intercalada
+        List<JournalEntry> replayed = new ArrayList<>();
+        journal = reopen(replayed);
+        assertEquals(List.of("/solto", "/t/um.txt", "/t/dois.txt", "/t"), paths(replayed));
+        for (JournalEntry entry : replayed) {
+            assertTrue(entry.isCommitted());
+        }
+        
+        // Ids novos não repetem os do arquivo
+        assertTrue(journal.beginTransaction().getId() > open.getId());
+    }
+    
+    @Test
+    void rejectedOperationsAreNotLeftPending(@TempDir Path fsDirectory) {
+        FileSystemSimulator fileSystem = new FileSystemSimulator(fsDirectory);
+        try {
+            fileSystem.setCheckpointInterval(0);
+            assertEquals(FsStatus.OK, fileSystem.createFile("/a.txt", "a"));
+            assertEquals(FsStatus.OK, fileSystem.createFile("/b.txt", "b"));
+            assertEquals(FsStatus.ALREADY_EXISTS, fileSystem.copyFile("/a.txt", "/b.txt"));
+            assertEquals(FsStatus.FILE_NOT_FOUND, fileSystem.copyFile("/x.txt", "/c.txt"));
+            assertEquals(FsStatus.ALREADY_EXISTS, fileSystem.renameFile("/a.txt", "b.txt"));
+            assertEquals(FsStatus.DIRECTORY_NOT_FOUND, fileSystem.deleteTree("/nada"));
+            for (JournalEntry entry : fileSystem.getJournal().getRecentEntries()) {
+                assertFalse(entry.getStatus() == JournalEntry.Status.PENDING, entry.toString());
+            }
+        } finally {
+            fileSystem.close();
+        }
+    }
+    
+    private JournalEntry.Status status(long transactionId) {
+        for (JournalEntry entry : journal.getRecentEntries()) {
+            if (entry.getTransactionId() == transactionId) return entry.getStatus();
+        }
+        throw new AssertionError("Transação " + transactionId + " não registrada");
+    }
+    
+    private static List<String> paths(List<JournalEntry> entries) {
+        List<String> paths = new ArrayList<>();
+        for (JournalEntry entry : entries) {
+            paths.add(entry.getArgs()[0]);
+        }
+        return paths;
+    }
+    
+    private Journal reopen(List<JournalEntry> replayed) {
+        Journal reopened = new Journal(directory.resolve("teste.journal").toString());
+        reopened.setGroupCommitSize(0);
+        reopened.recover(replayed::add, 0);
+        return reopened;
+    }
+}
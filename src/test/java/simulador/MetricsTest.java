@@ -0,0 +1,166 @@
+package simulador;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// Métricas: o histograma responde os percentis com o erro de um balde, os contadores de
+// chamadas e falhas e o total de itens acompanham as operações, o MBean expõe os mesmos
+// valores e sai do servidor JMX no close(), e registrar uma chamada não aloca memória
+class MetricsTest {
+    @TempDir
+    Path directory;
+    
+    private FileSystemSimulator fileSystem;
+    
+    @BeforeEach
+    void open() {
+        fileSystem = new FileSystemSimulator(directory);
+        fileSystem.setCheckpointInterval(0);
+        fileSystem.getJournal().setGroupCommitSize(0);
+    }
+    
+    @AfterEach
+    void close() {
+        if (fileSystem != null) fileSystem.close();
+    }
+    
+    @Test
+    void histogramPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getValueAtPercentile(99));
+        for (long value = 1; value <= 100_000; value++) {
+            histogram.record(value * 1000);
+        }
+        assertEquals(100_000, histogram.getCount());
+        assertEquals(100_000_000, histogram.getMax());
+        assertEquals(50_000_500.0, histogram.getMean(), 1.0);
+        // Cada balde cobre no máximo 1/32 do seu valor
+        assertWithin(50_000_000, histogram.getValueAtPercentile(50));
+        assertWithin(99_000_000, histogram.getValueAtPercentile(99));
+        assertWithin(99_900_000, histogram.getValueAtPercentile(99.9));
+        assertEquals(100_000_000, histogram.getValueAtPercentile(100));
+        
+        for (long value = 0; value < 1_000_000; value = value * 3 / 2 + 1) {
+            int bucket = LatencyHistogram.bucketOf(value);
+            assertTrue(LatencyHistogram.lowestValue(bucket) <= value && value < LatencyHistogram.lowestValue(bucket + 1));
+        }
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+    }
+    
+    @Test
+    void countersFollowOperations() {
+        FsMetrics metrics = fileSystem.getMetrics();
+        assertEquals(0, fileSystem.getItemCount());
+        assertEquals(FsStatus.OK, fileSystem.createDirectory("/d"));
+        for (int i = 0; i < 10; i++) {
+            assertEquals(FsStatus.OK, fileSystem.createFile("/d/f" + i, "x"));
+        }
+        assertEquals(FsStatus.ALREADY_EXISTS, fileSystem.createFile("/d/f0", "x"));
+        assertEquals(FsStatus.PARENT_NOT_FOUND, fileSystem.createFile("/nada/f", "x"));
+        assertFalse(fileSystem.stat("/d/nada").isOk());
+        
+        assertEquals(12, metrics.getCalls(FsMetrics.Operation.CREATE_FILE));
+        assertEquals(2, metrics.getFailures(FsMetrics.Operation.CREATE_FILE));
+        assertEquals(12, metrics.getLatency(FsMetrics.Operation.CREATE_FILE).getCount());
+        assertEquals(1, metrics.getFailures(FsMetrics.Operation.STAT));
+        // findItem é contado sempre, mas cronometrado só em uma amostra
+        long lookups = metrics.getCalls(FsMetrics.Operation.FIND_ITEM);
+        assertTrue(lookups >= 13);
+        assertTrue(metrics.getLatency(FsMetrics.Operation.FIND_ITEM).getCount() < lookups);
+        
+        assertEquals(11, fileSystem.getItemCount());
+        assertEquals(FsStatus.OK, fileSystem.copyTree("/d", "/copia"));
+        assertEquals(22, fileSystem.getItemCount());
+        assertEquals(FsStatus.OK, fileSystem.deleteTree("/d"));
+        assertEquals(FsStatus.OK, fileSystem.deleteFile("/copia/f0"));
+        assertEquals(10, fileSystem.getItemCount());
+        
+        metrics.reset();
+        assertEquals(0, metrics.getCalls(FsMetrics.Operation.CREATE_FILE));
+        assertEquals(10, fileSystem.getItemCount());
+    }
+    
+    @Test
+    void mbeanExposesMetrics() throws Exception {
+        assertEquals(FsStatus.OK, fileSystem.createFile("/a", "conteúdo"));
+        assertEquals(FsStatus.ALREADY_EXISTS, fileSystem.createFile("/a", "conteúdo"));
+        fileSystem.stat("/a");
+        fileSystem.stat("/a");
+        
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = fileSystem.registerMBean();
+        assertTrue(server.isRegistered(name));
+        assertEquals(2L, server.getAttribute(name, "CreateFileCount"));
+        assertEquals(1L, server.getAttribute(name, "CreateFileFailures"));
+        assertEquals(1L, server.getAttribute(name, "TreeItems"));
+        assertTrue((Long) server.getAttribute(name, "JournalBytesWritten") > 0);
+        assertTrue((Double) server.getAttribute(name, "CreateFileP99Micros") > 0);
+        assertTrue((Double) server.getAttribute(name, "DentryCacheHitRatio") > 0);
+        assertEquals(1L, server.getAttribute(name, "StoredBlocks"));
+        
+        fileSystem.close();
+        fileSystem = null;
+        assertFalse(server.isRegistered(name));
+    }
+    
+    @Test
+    void shellShowsAndResetsStats() {
+        assertEquals(FsStatus.OK, fileSystem.createFile("/a", "x"));
+        StringWriter buffer = new StringWriter();
+        FileSystemShell shell = new FileSystemShell(fileSystem, new PrintWriter(buffer, true));
+        assertEquals(FsStatus.OK, shell.execute(new String[] {"stats"}));
+        assertTrue(buffer.toString().contains("createFile"), buffer.toString());
+        assertTrue(buffer.toString().contains("Árvore: 1 itens"), buffer.toString());
+        
+        assertEquals(FsStatus.OK, shell.execute(new String[] {"stats", "reset"}));
+        buffer.getBuffer().setLength(0);
+        assertEquals(FsStatus.OK, shell.execute(new String[] {"stats"}));
+        assertFalse(buffer.toString().contains("createFile"), buffer.toString());
+    }
+    
+    @Test
+    void recordingDoesNotAllocate() {
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+        FsMetrics metrics = fileSystem.getMetrics();
+        long id = Thread.currentThread().getId();
+        
+        int calls = 100_000;
+        record(metrics, calls);
+        long before = threads.getThreadAllocatedBytes(id);
+        record(metrics, calls);
+        long allocated = threads.getThreadAllocatedBytes(id) - before;
+        // Um objeto por chamada seriam megabytes; a folga cobre o que a JVM aloca durante a
+        // medição (compilação, a própria consulta ao ThreadMXBean)
+        assertTrue(allocated < calls / 10, allocated + " bytes alocados em " + 2 * calls + " registros");
+    }
+    
+    private static void record(FsMetrics metrics, int calls) {
+        for (int i = 0; i < calls; i++) {
+            long start = metrics.start(FsMetrics.Operation.FIND_ITEM);
+            metrics.record(FsMetrics.Operation.FIND_ITEM, start, i % 7 != 0);
+            start = metrics.start(FsMetrics.Operation.STAT);
+            metrics.record(FsMetrics.Operation.STAT, start, FsStatus.OK);
+        }
+    }
+    
+    private static void assertWithin(long expected, long actual) {
+        assertTrue(Math.abs(actual - expected) <= expected / 32, "esperado ~" + expected + ", obtido " + actual);
+    }
+}
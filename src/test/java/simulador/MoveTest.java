@@ -0,0 +1,127 @@
+package simulador;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// move entre diretórios: o item (com a subárvore, se for um diretório) muda de pai em uma
+// única operação MOVE do journal, os totais de uso acompanham, os casos inválidos são
+// recusados sem mudar a árvore, e a reabertura reproduz o resultado
+class MoveTest {
+    private static final int FILES = 200;
+    
+    @TempDir
+    Path directory;
+    
+    private FileSystemSimulator fileSystem;
+    
+    @BeforeEach
+    void open() {
+        fileSystem = reopen();
+        assertEquals(FsStatus.OK, fileSystem.createDirectory("/origem"));
+        assertEquals(FsStatus.OK, fileSystem.createDirectory("/origem/sub"));
+        for (int i = 0; i < FILES; i++) {
+            assertEquals(FsStatus.OK, fileSystem.createFile("/origem/sub/f" + i, "arquivo " + i));
+        }
+        assertEquals(FsStatus.OK, fileSystem.createDirectory("/destino"));
+    }
+    
+    @AfterEach
+    void close() {
+        if (fileSystem != null) fileSystem.close();
+    }
+    
+    @Test
+    void moveFileAcrossDirectories() {
+        FileSystemItem item = fileSystem.stat("/origem/sub/f0").getValue();
+        assertEquals(FsStatus.OK, fileSystem.move("/origem/sub/f0", "/destino/novo"));
+        assertFalse(fileSystem.stat("/origem/sub/f0").isOk());
+        assertSame(item, fileSystem.stat("/destino/novo").getValue());
+        assertEquals("arquivo 0", fileSystem.readText("/destino/novo").getValue());
+        assertEquals(FILES - 1, fileSystem.countEntries("/origem/sub").getValue());
+        assertEquals(1, fileSystem.diskUsage("/destino").getValue().getFiles());
+        assertEquals("arquivo 0".length(), fileSystem.diskUsage("/destino").getValue().getBytes());
+    }
+    
+    @Test
+    void moveDirectoryIsOneJournaledOperation() {
+        long usage = fileSystem.diskUsage("/origem").getValue().getBytes();
+        FileSystemItem last = fileSystem.stat("/origem/sub/f" + (FILES - 1)).getValue();
+        int before = fileSystem.getJournal().getRecentEntries().size();
+        
+        assertEquals(FsStatus.OK, fileSystem.move("/origem/sub", "/destino/sub"));
+        List<JournalEntry> added = new ArrayList<>(fileSystem.getJournal().getRecentEntries());
+        added = added.subList(before, added.size());
+        assertEquals(1, added.size());
+        assertEquals(JournalOp.MOVE, added.get(0).getOperation());
+        assertTrue(added.get(0).isCommitted());
+        
+        assertEquals("/destino/sub/f" + (FILES - 1), last.getPath());
+        assertEquals(0, fileSystem.diskUsage("/origem").getValue().getBytes());
+        assertEquals(usage, fileSystem.diskUsage("/destino").getValue().getBytes());
+        assertEquals(FILES, fileSystem.diskUsage("/destino").getValue().getFiles());
+        
+        fileSystem.close();
+        fileSystem = reopen();
+        assertFalse(fileSystem.stat("/origem/sub").isOk());
+        assertEquals(FILES, fileSystem.countEntries("/destino/sub").getValue());
+        assertEquals("arquivo 7", fileSystem.readText("/destino/sub/f7").getValue());
+    }
+    
+    @Test
+    void invalidMovesAreRefusedAndAborted() {
+        assertEquals(FsStatus.OK, fileSystem.createFile("/destino/f1", "ocupado"));
+        assertEquals(FsStatus.NOT_FOUND, fileSystem.move("/origem/nada", "/destino/nada"));
+        assertEquals(FsStatus.NOT_FOUND, fileSystem.move("/", "/destino/raiz"));
+        assertEquals(FsStatus.PARENT_NOT_FOUND, fileSystem.move("/origem/sub/f1", "/inexistente/f1"));
+        assertEquals(FsStatus.ALREADY_EXISTS, fileSystem.move("/origem/sub/f1", "/destino/f1"));
+        assertEquals(FsStatus.INVALID_ARGUMENT, fileSystem.move("/origem", "/origem/sub/dentro"));
+        assertEquals(FsStatus.INVALID_ARGUMENT, fileSystem.move("/origem", "/origem/dentro"));
+        
+        // Uma cota no destino vale também para o que chega por movimento
+        assertEquals(FsStatus.OK, fileSystem.setQuota("/destino", 0, 1));
+        assertEquals(FsStatus.QUOTA_EXCEEDED, fileSystem.move("/origem/sub/f2", "/destino/f2"));
+        assertEquals(FsStatus.OK, fileSystem.move("/origem/sub/f2", "/origem/f2"));
+        
+        for (JournalEntry entry : fileSystem.getJournal().getRecentEntries()) {
+            if (entry.getOperation() == JournalOp.MOVE) {
+                assertEquals(entry.getArgs()[1].equals("/origem/f2"), entry.isCommitted(), entry.toString());
+            }
+        }
+        assertEquals(FILES - 1, fileSystem.countEntries("/origem/sub").getValue());
+        assertEquals("arquivo 1", fileSystem.readText("/origem/sub/f1").getValue());
+        assertEquals("ocupado", fileSystem.readText("/destino/f1").getValue());
+    }
+    
+    @Test
+    void renameLargeDirectoryKeepsDescendants() {
+        List<FileSystemItem> files = new ArrayList<>(fileSystem.listDirectory("/origem/sub").getValue());
+        long[] modified = new long[files.size()];
+        for (int i = 0; i < files.size(); i++) {
+            modified[i] = files.get(i).getLastModified();
+        }
+        assertEquals(FsStatus.OK, fileSystem.renameDirectory("/origem/sub", "renomeado"));
+        for (int i = 0; i < files.size(); i++) {
+            FileSystemItem file = files.get(i);
+            assertEquals("/origem/renomeado/" + file.getName(), file.getPath());
+            assertSame(file, fileSystem.stat(file.getPath()).getValue());
+            assertEquals(modified[i], file.getLastModified());
+        }
+    }
+    
+    private FileSystemSimulator reopen() {
+        FileSystemSimulator simulator = new FileSystemSimulator(directory);
+        simulator.setCheckpointInterval(0);
+        simulator.getJournal().setGroupCommitSize(0);
+        return simulator;
+    }
+}
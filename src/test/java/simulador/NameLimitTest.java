@@ -0,0 +1,70 @@
+package simulador;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// Nomes com mais de 65535 bytes em UTF-8 não cabem na imagem: são recusados por todas as
+// operações que dão nome a um item, e o maior nome aceito volta intacto de um checkpoint
+class NameLimitTest {
+    @TempDir
+    Path directory;
+    
+    private FileSystemSimulator fileSystem;
+    
+    @BeforeEach
+    void open() {
+        fileSystem = new FileSystemSimulator(directory);
+        fileSystem.setCheckpointInterval(0);
+        assertEquals(FsStatus.OK, fileSystem.createDirectory("/docs"));
+        assertEquals(FsStatus.OK, fileSystem.createFile("/docs/um.txt", "primeiro"));
+    }
+    
+    @AfterEach
+    void close() {
+        if (fileSystem != null) fileSystem.close();
+    }
+    
+    @Test
+    void tooLongNamesAreRejected() {
+        String tooLong = "a".repeat(FileSystemItem.MAX_NAME_BYTES + 1);
+        assertEquals(FsStatus.INVALID_ARGUMENT, fileSystem.createFile("/docs/" + tooLong, "x"));
+        assertEquals(FsStatus.INVALID_ARGUMENT, fileSystem.createDirectory("/" + tooLong));
+        assertEquals(FsStatus.INVALID_ARGUMENT, fileSystem.copyFile("/docs/um.txt", "/" + tooLong));
+        assertEquals(FsStatus.INVALID_ARGUMENT, fileSystem.renameFile("/docs/um.txt", tooLong));
+        assertEquals(FsStatus.INVALID_ARGUMENT, fileSystem.move("/docs/um.txt", "/" + tooLong));
+        assertEquals(FsStatus.INVALID_ARGUMENT, fileSystem.copyTree("/docs", "/" + tooLong));
+        assertEquals(1, fileSystem.countEntries("/docs").getValue());
+        assertEquals(1, fileSystem.countEntries("/").getValue());
+    }
+    
+    @Test
+    void limitCountsUtf8Bytes() {
+        // 32768 caracteres de 2 bytes: menos chars que o limite, mas 65536 bytes
+        assertEquals(FsStatus.INVALID_ARGUMENT, fileSystem.createFile("/docs/" + "é".repeat(32768), "x"));
+        assertEquals(FsStatus.OK, fileSystem.createFile("/docs/" + "é".repeat(32767) + "a", "x"));
+    }
+    
+    @Test
+    void longestNameSurvivesImage() throws IOException {
+        String longest = "é".repeat(30000) + "a".repeat(FileSystemItem.MAX_NAME_BYTES - 60000);
+        assertTrue(FileSystemItem.isValidName(longest));
+        assertEquals(FsStatus.OK, fileSystem.renameFile("/docs/um.txt", longest));
+        assertTrue(fileSystem.checkpoint());
+        fileSystem.close();
+        
+        // Sem o journal, o nome só pode ter vindo da imagem
+        Files.delete(directory.resolve("filesystem.journal"));
+        fileSystem = new FileSystemSimulator(directory);
+        assertEquals("primeiro", fileSystem.readText("/docs/" + longest).getValue());
+        assertFalse(fileSystem.stat("/docs/um.txt").isOk());
+    }
+}
@@ -0,0 +1,144 @@
+package simulador;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// Gravação de um trace com OperationTrace, leitura dos registros e reprodução com
+// TraceReplayer em um simulador novo
+class OperationTraceTest {
+    private static final byte[] APPENDED = "de".getBytes(StandardCharsets.UTF_8);
+    
+    @TempDir
+    Path directory;
+    
+    private Path traceFile;
+    private FileSystemSimulator fileSystem;
+    
+    @BeforeEach
+    void open() throws IOException {
+        traceFile = directory.resolve("chamadas.trace");
+        fileSystem = new FileSystemSimulator(Files.createDirectory(directory.resolve("fs")));
+        fileSystem.setCheckpointInterval(0);
+    }
+    
+    @AfterEach
+    void close() {
+        fileSystem.close();
+    }
+    
+    @Test
+    void recordsEveryCallWithItsArguments() throws IOException {
+        recordWorkload();
+        
+        List<OperationTrace.Record> records = readAll();
+        assertEquals(List.of(OperationTrace.Op.SET_CAPACITY, OperationTrace.Op.CREATE_DIR, OperationTrace.Op.CREATE_FILE,
+                OperationTrace.Op.APPEND, OperationTrace.Op.TRUNCATE, OperationTrace.Op.READ_TEXT,
+                OperationTrace.Op.CREATE_FILE, OperationTrace.Op.SET_QUOTA, OperationTrace.Op.COPY_TREE,
+                OperationTrace.Op.DELETE_TREE, OperationTrace.Op.STAT), ops(records));
+        assertEquals(1 << 20, records.get(0).number(0));
+        assertEquals("/a/x.txt", records.get(2).text(0));
+        assertEquals("abc", records.get(2).text(1));
+        assertArrayEquals(APPENDED, records.get(3).data());
+        assertEquals(4, records.get(4).number(0));
+        assertEquals(FsStatus.ALREADY_EXISTS, records.get(6).status);
+        assertEquals(10, records.get(7).number(1));
+        assertEquals("/b", records.get(8).text(1));
+        assertEquals(FsStatus.NOT_FOUND, records.get(10).status);
+        assertEquals(records.size(), fileSystem.getTrace().getRecorded());
+    }
+    
+    @Test
+    void replayReproducesTheRecordedStatuses() throws IOException {
+        recordWorkload();
+        
+        assertTrue(TraceReplayer.run(new String[] {traceFile.toString()}));
+    }
+    
+    @Test
+    void replayReportsDivergences() throws IOException {
+        // O arquivo já existia antes do trace: a reprodução, que parte do sistema vazio,
+        // consegue criar o que foi gravado como ALREADY_EXISTS
+        assertEquals(FsStatus.OK, fileSystem.createFile("/existente.txt", "x"));
+        fileSystem.startTrace(traceFile);
+        assertEquals(FsStatus.ALREADY_EXISTS, fileSystem.createFile("/existente.txt", "y"));
+        fileSystem.stopTrace();
+        
+        assertFalse(TraceReplayer.run(new String[] {traceFile.toString()}));
+    }
+    
+    @Test
+    void truncatedTraceKeepsTheCompleteRecords() throws IOException {
+        recordWorkload();
+        int complete = readAll().size();
+        try (FileChannel channel = FileChannel.open(traceFile, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 1);
+        }
+        
+        List<OperationTrace.Record> records = new ArrayList<>();
+        try (DataInputStream in = OperationTrace.open(traceFile)) {
+            assertThrows(EOFException.class, () -> {
+                for (OperationTrace.Record record; (record = OperationTrace.read(in)) != null; ) {
+                    records.add(record);
+                }
+            });
+        }
+        assertEquals(complete - 1, records.size());
+        assertTrue(TraceReplayer.run(new String[] {traceFile.toString()}));
+    }
+    
+    private void recordWorkload() throws IOException {
+        fileSystem.startTrace(traceFile);
+        fileSystem.setCapacity(1 << 20);
+        assertEquals(FsStatus.OK, fileSystem.createDirectory("/a"));
+        assertEquals(FsStatus.OK, fileSystem.createFile("/a/x.txt", "abc"));
+        assertEquals(FsStatus.OK, fileSystem.appendFile("/a/x.txt", ByteBuffer.wrap(APPENDED)));
+        assertEquals(FsStatus.OK, fileSystem.truncateFile("/a/x.txt", 4));
+        assertEquals("abcd", fileSystem.readText("/a/x.txt").getValue());
+        assertEquals(FsStatus.ALREADY_EXISTS, fileSystem.createFile("/a/x.txt", "outro"));
+        assertEquals(FsStatus.OK, fileSystem.setQuota("/a", 0, 10));
+        assertEquals(FsStatus.OK, fileSystem.copyTree("/a", "/b"));
+        assertEquals(FsStatus.OK, fileSystem.deleteTree("/b"));
+        assertFalse(fileSystem.stat("/b").isOk());
+        fileSystem.stopTrace();
+        assertFalse(fileSystem.getTrace().isRecording());
+    }
+    
+    private List<OperationTrace.Record> readAll() throws IOException {
+        List<OperationTrace.Record> records = new ArrayList<>();
+        try (DataInputStream in = OperationTrace.open(traceFile)) {
+            for (OperationTrace.Record record; (record = OperationTrace.read(in)) != null; ) {
+                records.add(record);
+            }
+            assertNull(OperationTrace.read(in));
+        }
+        return records;
+    }
+    
+    private static List<OperationTrace.Op> ops(List<OperationTrace.Record> records) {
+        List<OperationTrace.Op> ops = new ArrayList<>();
+        for (OperationTrace.Record record : records) {
+            ops.add(record.op);
+        }
+        return ops;
+    }
+}
@@ -0,0 +1,157 @@
+package simulador;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// Consultas fora do journal: listar, stat, contar, buscar e ler não gravam nada nele nem
+// mudam a sua sequência, uma listagem concorrente com escritores vê um retrato coerente
+// do diretório, journais antigos com LIST_DIR continuam legíveis, e o log de acessos
+// separado registra só as consultas sorteadas
+class QueryPathTest {
+    @TempDir
+    Path directory;
+    
+    private FileSystemSimulator fileSystem;
+    
+    @AfterEach
+    void close() {
+        if (fileSystem != null) fileSystem.close();
+    }
+    
+    @Test
+    void queriesDoNotTouchTheJournal() throws IOException {
+        fileSystem = open();
+        assertEquals(FsStatus.OK, fileSystem.createDirectory("/d"));
+        assertEquals(FsStatus.OK, fileSystem.createFile("/d/a.txt", "texto"));
+        fileSystem.getJournal().sync();
+        Journal journal = fileSystem.getJournal();
+        long sequence = journal.getLastSequence();
+        long bytes = journal.getBytesWritten();
+        long size = Files.size(directory.resolve("filesystem.journal"));
+        
+        for (int i = 0; i < 100; i++) {
+            assertTrue(fileSystem.listDirectory("/d").isOk());
+            assertTrue(fileSystem.listPage("/d", null, 10, true).isOk());
+            assertEquals(1, fileSystem.streamDirectory("/d", false).getValue().count());
+            assertTrue(fileSystem.stat("/d/a.txt").isOk());
+            assertFalse(fileSystem.stat("/d/nada").isOk());
+            assertTrue(fileSystem.countEntries("/d").isOk());
+            assertTrue(fileSystem.diskUsage("/").isOk());
+            assertTrue(fileSystem.find("*.txt", null).isOk());
+            assertTrue(fileSystem.grep("texto", null).isOk());
+            assertTrue(fileSystem.readText("/d/a.txt").isOk());
+            assertTrue(fileSystem.readFile("/d/a.txt", 0, ByteBuffer.allocate(8)).isOk());
+        }
+        journal.sync();
+        assertEquals(sequence, journal.getLastSequence());
+        assertEquals(bytes, journal.getBytesWritten());
+        assertEquals(size, Files.size(directory.resolve("filesystem.journal")));
+    }
+    
+    @Test
+    void listingSeesConsistentDirectoryDuringWrites() throws Exception {
+        fileSystem = open();
+        assertEquals(FsStatus.OK, fileSystem.createDirectory("/d"));
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> writer = executor.submit(() -> {
+                for (int i = 0; i < 2000; i++) {
+                    assertEquals(FsStatus.OK, fileSystem.createFile("/d/f" + i, ""));
+                    if (i % 3 == 0) assertEquals(FsStatus.OK, fileSystem.deleteFile("/d/f" + (i / 2)));
+                }
+                return null;
+            });
+            // Cada listagem é copiada sob o lock de leitura do diretório: nunca vê um nome
+            // duas vezes, mesmo com o array de filhos sendo compactado pelo escritor
+            Future<?> reader = executor.submit(() -> {
+                while (!writer.isDone()) {
+                    List<FileSystemItem> children = fileSystem.listDirectory("/d").getValue();
+                    Set<String> names = new HashSet<>();
+                    for (FileSystemItem child : children) {
+                        assertTrue(names.add(child.getName()), child.getName());
+                    }
+                }
+                return null;
+            });
+            writer.get();
+            reader.get();
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(fileSystem.countEntries("/d").getValue(), fileSystem.listDirectory("/d").getValue().size());
+    }
+    
+    @Test
+    void oldJournalWithListingsReplays() {
+        Journal journal = new Journal(directory.resolve("filesystem.journal").toString());
+        journal.recover(entry -> { }, 0);
+        assertTrue(journal.commitOperation(journal.logOperation(JournalOp.CREATE_DIR, "/antigo")));
+        assertTrue(journal.commitOperation(journal.logOperation(JournalOp.LIST_DIR, "/antigo")));
+        assertTrue(journal.commitOperation(journal.logOperation(JournalOp.CREATE_FILE,
+                "depois".getBytes(StandardCharsets.UTF_8), "/antigo/f.txt")));
+        journal.close();
+        
+        fileSystem = open();
+        assertEquals("depois", fileSystem.readText("/antigo/f.txt").getValue());
+        long sequence = fileSystem.getJournal().getLastSequence();
+        fileSystem.listDirectory("/antigo");
+        assertEquals(sequence, fileSystem.getJournal().getLastSequence());
+    }
+    
+    @Test
+    void accessLogRecordsSampledQueries() throws IOException {
+        fileSystem = open();
+        AccessLog accessLog = fileSystem.getAccessLog();
+        assertEquals(0, accessLog.getSampling());
+        assertEquals(FsStatus.OK, fileSystem.createDirectory("/d"));
+        fileSystem.listDirectory("/d");
+        assertEquals(0, accessLog.getRecorded());
+        
+        accessLog.setSampling(1);
+        fileSystem.listDirectory("/d");
+        fileSystem.readText("/nada");
+        fileSystem.find("*.txt", null);
+        assertEquals(FsStatus.OK, fileSystem.createFile("/d/a.txt", ""));
+        assertEquals(3, accessLog.getRecorded());
+        fileSystem.close();
+        fileSystem = null;
+        
+        List<String> lines = Files.readAllLines(accessLog.getFile(), StandardCharsets.UTF_8);
+        assertEquals(3, lines.size());
+        assertTrue(lines.get(0).endsWith(" list /d OK"), lines.get(0));
+        assertTrue(lines.get(1).endsWith(" cat /nada FILE_NOT_FOUND"), lines.get(1));
+        assertTrue(lines.get(2).endsWith(" find *.txt OK"), lines.get(2));
+        
+        // Uma amostra de 1 em n registra só uma parte das consultas
+        fileSystem = open();
+        fileSystem.getAccessLog().setSampling(4);
+        for (int i = 0; i < 4000; i++) {
+            fileSystem.stat("/d");
+        }
+        long recorded = fileSystem.getAccessLog().getRecorded();
+        assertTrue(recorded > 500 && recorded < 1500, recorded + " consultas registradas");
+    }
+    
+    private FileSystemSimulator open() {
+        FileSystemSimulator simulator = new FileSystemSimulator(directory);
+        simulator.setCheckpointInterval(0);
+        simulator.getJournal().setGroupCommitSize(0);
+        return simulator;
+    }
+}
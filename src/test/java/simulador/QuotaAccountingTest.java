@@ -0,0 +1,119 @@
+package simulador;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.nio.file.Path;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// Contagem de bytes e arquivos por subárvore com copyTree e deleteTree: uma cópia que
+// passaria da capacidade ou de uma cota é recusada inteira, e apagar uma subárvore
+// devolve o espaço aos ancestrais
+class QuotaAccountingTest {
+    // /origem: a.txt com 100 bytes e sub/b.txt com 200 bytes
+    private static final long SOURCE_BYTES = 300;
+    private static final int SOURCE_FILES = 2;
+    
+    @TempDir
+    Path directory;
+    
+    private FileSystemSimulator fileSystem;
+    
+    @BeforeEach
+    void createSource() {
+        fileSystem = new FileSystemSimulator(directory);
+        fileSystem.setCheckpointInterval(0);
+        assertEquals(FsStatus.OK, fileSystem.createDirectory("/origem"));
+        assertEquals(FsStatus.OK, fileSystem.createDirectory("/origem/sub"));
+        assertEquals(FsStatus.OK, fileSystem.createFile("/origem/a.txt", "a".repeat(100)));
+        assertEquals(FsStatus.OK, fileSystem.createFile("/origem/sub/b.txt", "b".repeat(200)));
+        assertUsage("/origem", SOURCE_BYTES, SOURCE_FILES);
+    }
+    
+    @AfterEach
+    void close() {
+        fileSystem.close();
+    }
+    
+    @Test
+    void copyTreeCountsTheWholeSubtree() {
+        assertEquals(FsStatus.OK, fileSystem.createDirectory("/destino"));
+        assertEquals(FsStatus.OK, fileSystem.copyTree("/origem", "/destino/copia"));
+        
+        assertUsage("/destino", SOURCE_BYTES, SOURCE_FILES);
+        assertUsage("/destino/copia/sub", 200, 1);
+        assertUsage("/", 2 * SOURCE_BYTES, 2 * SOURCE_FILES);
+    }
+    
+    @Test
+    void copyTreePastCapacityIsRefused() {
+        fileSystem.setCapacity(2 * SOURCE_BYTES + 50);
+        assertEquals(FsStatus.OK, fileSystem.copyTree("/origem", "/copia1"));
+        assertEquals(FsStatus.NO_SPACE, fileSystem.copyTree("/origem", "/copia2"));
+        
+        assertFalse(fileSystem.stat("/copia2").isOk());
+        assertUsage("/", 2 * SOURCE_BYTES, 2 * SOURCE_FILES);
+    }
+    
+    @Test
+    void deleteTreeReleasesCapacity() {
+        fileSystem.setCapacity(2 * SOURCE_BYTES + 50);
+        assertEquals(FsStatus.OK, fileSystem.copyTree("/origem", "/copia1"));
+        assertEquals(FsStatus.OK, fileSystem.deleteTree("/copia1"));
+        assertUsage("/", SOURCE_BYTES, SOURCE_FILES);
+        
+        assertEquals(FsStatus.OK, fileSystem.copyTree("/origem", "/copia2"));
+        assertUsage("/", 2 * SOURCE_BYTES, 2 * SOURCE_FILES);
+    }
+    
+    @Test
+    void fileQuotaRefusesCopyAndIsReleasedByDelete() {
+        assertEquals(FsStatus.OK, fileSystem.createDirectory("/cota"));
+        assertEquals(FsStatus.OK, fileSystem.setQuota("/cota", 0, SOURCE_FILES + 1));
+        assertEquals(FsStatus.OK, fileSystem.copyTree("/origem", "/cota/a"));
+        assertEquals(FsStatus.QUOTA_EXCEEDED, fileSystem.copyTree("/origem", "/cota/b"));
+        assertFalse(fileSystem.stat("/cota/b").isOk());
+        assertUsage("/cota", SOURCE_BYTES, SOURCE_FILES);
+        
+        assertEquals(FsStatus.OK, fileSystem.deleteTree("/cota/a"));
+        assertUsage("/cota", 0, 0);
+        assertEquals(FsStatus.OK, fileSystem.copyTree("/origem", "/cota/b"));
+        assertUsage("/cota", SOURCE_BYTES, SOURCE_FILES);
+    }
+    
+    @Test
+    void byteQuotaAppliesToDeeperTargets() {
+        assertEquals(FsStatus.OK, fileSystem.createDirectory("/cota"));
+        assertEquals(FsStatus.OK, fileSystem.createDirectory("/cota/fundo"));
+        assertEquals(FsStatus.OK, fileSystem.setQuota("/cota", SOURCE_BYTES + 50, 0));
+        assertEquals(FsStatus.OK, fileSystem.copyTree("/origem", "/cota/fundo/a"));
+        assertEquals(FsStatus.QUOTA_EXCEEDED, fileSystem.copyTree("/origem", "/cota/fundo/b"));
+        
+        // Apagar a subárvore de cima libera a cota inteira
+        assertEquals(FsStatus.OK, fileSystem.deleteTree("/cota/fundo"));
+        assertUsage("/cota", 0, 0);
+        assertEquals(FsStatus.OK, fileSystem.copyTree("/origem", "/cota/b"));
+        assertUsage("/", 2 * SOURCE_BYTES, 2 * SOURCE_FILES);
+    }
+    
+    @Test
+    void usageIsRebuiltByJournalReplay() {
+        assertEquals(FsStatus.OK, fileSystem.copyTree("/origem", "/copia"));
+        assertEquals(FsStatus.OK, fileSystem.deleteTree("/origem/sub"));
+        fileSystem.close();
+        
+        fileSystem = new FileSystemSimulator(directory);
+        assertUsage("/origem", 100, 1);
+        assertUsage("/copia", SOURCE_BYTES, SOURCE_FILES);
+        assertUsage("/", SOURCE_BYTES + 100, SOURCE_FILES + 1);
+    }
+    
+    private void assertUsage(String path, long bytes, int files) {
+        DiskUsage usage = fileSystem.diskUsage(path).getValue();
+        assertEquals(bytes, usage.getBytes(), "bytes em " + path);
+        assertEquals(files, usage.getFiles(), "arquivos em " + path);
+    }
+}
@@ -0,0 +1,146 @@
+package simulador;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// find e grep pelo índice: os padrões glob e as palavras inteiras dão o mesmo resultado
+// que uma varredura, e o índice montado na primeira consulta acompanha criações,
+// renomeações, movimentos, cópias, remoções e alterações de conteúdo feitas depois dela
+class SearchIndexTest {
+    @TempDir
+    Path directory;
+    
+    private FileSystemSimulator fileSystem;
+    
+    @BeforeEach
+    void open() {
+        fileSystem = new FileSystemSimulator(directory);
+        fileSystem.setCheckpointInterval(0);
+        fileSystem.getJournal().setGroupCommitSize(0);
+        assertEquals(FsStatus.OK, fileSystem.createDirectory("/docs"));
+        assertEquals(FsStatus.OK, fileSystem.createDirectory("/docs/antigos"));
+        assertEquals(FsStatus.OK, fileSystem.createDirectory("/src"));
+        assertEquals(FsStatus.OK, fileSystem.createFile("/docs/relatorio.txt", "Vendas do mês\nrelatório anual"));
+        assertEquals(FsStatus.OK, fileSystem.createFile("/docs/antigos/relatorio.txt", "vendas antigas"));
+        assertEquals(FsStatus.OK, fileSystem.createFile("/docs/notas.md", "revendas não contam"));
+        assertEquals(FsStatus.OK, fileSystem.createFile("/src/a.c", "int vendas;"));
+        assertEquals(FsStatus.OK, fileSystem.createFile("/src/b.c", ""));
+    }
+    
+    @AfterEach
+    void close() {
+        if (fileSystem != null) fileSystem.close();
+    }
+    
+    @Test
+    void globPatternsAndScope() {
+        assertEquals(List.of("/docs/antigos/relatorio.txt", "/docs/relatorio.txt"), find("*.txt", null));
+        assertEquals(List.of("/docs/antigos/relatorio.txt", "/docs/relatorio.txt"), find("rel*", null));
+        assertEquals(List.of("/src/a.c", "/src/b.c"), find("?.c", null));
+        assertEquals(List.of("/docs/notas.md"), find("notas.md", null));
+        // O padrão vale para o nome do item, e não para o caminho
+        assertEquals(List.of("/docs/antigos"), find("*antigo*", null));
+        assertEquals(List.of("/docs/antigos/relatorio.txt"), find("*.txt", "/docs/antigos"));
+        assertEquals(List.of(), find("*.pdf", null));
+        assertEquals(FsStatus.DIRECTORY_NOT_FOUND, fileSystem.find("*", "/nada").getStatus());
+    }
+    
+    @Test
+    void grepMatchesWholeWordsIgnoringCase() {
+        List<SearchMatch> matches = fileSystem.grep("VENDAS", null).getValue();
+        assertEquals(List.of("/docs/antigos/relatorio.txt:1", "/docs/relatorio.txt:1", "/src/a.c:1"), locations(matches));
+        assertEquals("Vendas do mês", matches.get(1).getText());
+        assertEquals(List.of("/docs/relatorio.txt:2"), locations(fileSystem.grep("relatório anual", null).getValue()));
+        assertEquals(List.of("/src/a.c:1"), locations(fileSystem.grep("vendas;", "/src").getValue()));
+        assertEquals(FsStatus.INVALID_ARGUMENT, fileSystem.grep("  ", null).getStatus());
+        assertEquals(FsStatus.DIRECTORY_NOT_FOUND, fileSystem.grep("vendas", "/nada").getStatus());
+    }
+    
+    @Test
+    void indexFollowsNamespaceChanges() {
+        // A primeira consulta monta o índice; as seguintes dependem da manutenção
+        assertEquals(2, find("*.txt", null).size());
+        assertEquals(FsStatus.OK, fileSystem.createFile("/src/novo.txt", ""));
+        assertEquals(FsStatus.OK, fileSystem.renameFile("/docs/notas.md", "notas.txt"));
+        assertEquals(FsStatus.OK, fileSystem.deleteFile("/docs/relatorio.txt"));
+        assertEquals(List.of("/docs/antigos/relatorio.txt", "/docs/notas.txt", "/src/novo.txt"), find("*.txt", null));
+        
+        assertEquals(FsStatus.OK, fileSystem.renameDirectory("/docs/antigos", "arquivo"));
+        assertEquals(FsStatus.OK, fileSystem.move("/docs/arquivo", "/src/arquivo"));
+        assertEquals(FsStatus.OK, fileSystem.copyTree("/src/arquivo", "/docs/copia"));
+        assertEquals(List.of("/docs/copia/relatorio.txt", "/src/arquivo/relatorio.txt"), find("relatorio.txt", null));
+        assertEquals(List.of("/docs/copia/relatorio.txt", "/src/arquivo/relatorio.txt"),
+                paths(fileSystem.grep("antigas", null).getValue()));
+        
+        assertEquals(FsStatus.OK, fileSystem.deleteTree("/src"));
+        assertEquals(List.of("/docs/copia/relatorio.txt", "/docs/notas.txt"), find("*.txt", null));
+        assertEquals(List.of("/docs/copia/relatorio.txt"), paths(fileSystem.grep("antigas", null).getValue()));
+    }
+    
+    @Test
+    void indexFollowsContentChanges() {
+        assertEquals(3, fileSystem.grep("vendas", null).getValue().size());
+        assertEquals(FsStatus.OK, fileSystem.appendFile("/src/b.c", ByteBuffer.wrap("\nvendas = 0;".getBytes(StandardCharsets.UTF_8))));
+        assertEquals(FsStatus.OK, fileSystem.truncateFile("/src/a.c", 4));
+        assertEquals(FsStatus.OK, fileSystem.writeFile("/docs/notas.md", 0, ByteBuffer.wrap("   ".getBytes(StandardCharsets.UTF_8))));
+        assertEquals(List.of("/docs/antigos/relatorio.txt:1", "/docs/relatorio.txt:1", "/src/b.c:2"),
+                locations(fileSystem.grep("vendas", null).getValue()));
+        assertEquals(List.of("/docs/notas.md:1"), locations(fileSystem.grep("endas", null).getValue()));
+        
+        // Arquivos acima do limite do índice são lidos por inteiro
+        StringBuilder large = new StringBuilder();
+        while (large.length() <= SearchIndex.MAX_INDEXED_SIZE) {
+            large.append("linha sem a palavra\n");
+        }
+        large.append("agulha");
+        assertEquals(FsStatus.OK, fileSystem.createFile("/docs/grande.log", large.toString()));
+        assertEquals(List.of("/docs/grande.log"), paths(fileSystem.grep("agulha", null).getValue()));
+    }
+    
+    @Test
+    void manyRenamesKeepNamesCorrect() {
+        assertEquals(FsStatus.OK, fileSystem.createDirectory("/muitos"));
+        for (int i = 0; i < 200; i++) {
+            assertEquals(FsStatus.OK, fileSystem.createFile("/muitos/f" + i + ".tmp", ""));
+        }
+        assertEquals(200, find("*.tmp", null).size());
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 200; i++) {
+                assertEquals(FsStatus.OK, fileSystem.renameFile("/muitos/f" + i + ".tmp", "g" + i + "_" + round + ".tmp"));
+                assertEquals(FsStatus.OK, fileSystem.renameFile("/muitos/g" + i + "_" + round + ".tmp", "f" + i + ".tmp"));
+            }
+        }
+        assertEquals(200, find("f*.tmp", null).size());
+        assertEquals(List.of(), find("g*", null));
+        assertEquals(List.of("/muitos/f17.tmp"), find("f17.tmp", null));
+    }
+    
+    private List<String> find(String glob, String scope) {
+        return fileSystem.find(glob, scope).getValue();
+    }
+    
+    private static List<String> locations(List<SearchMatch> matches) {
+        List<String> locations = new ArrayList<>();
+        for (SearchMatch match : matches) {
+            locations.add(match.getPath() + ":" + match.getLine());
+        }
+        return locations;
+    }
+    
+    private static List<String> paths(List<SearchMatch> matches) {
+        List<String> paths = new ArrayList<>();
+        for (SearchMatch match : matches) {
+            paths.add(match.getPath());
+        }
+        return paths;
+    }
+}
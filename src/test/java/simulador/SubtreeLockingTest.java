@@ -0,0 +1,146 @@
+package simulador;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// copyTree trava só as faixas da subárvore de origem e deleteTree só desliga a subárvore
+// sob o lock exclusivo: com outras alterações concorrentes, cada cópia e cada remoção
+// continua inteira, e a ordem do journal reproduz a mesma árvore na reabertura
+class SubtreeLockingTest {
+    @TempDir
+    Path directory;
+    
+    private FileSystemSimulator fileSystem;
+    
+    @AfterEach
+    void close() {
+        if (fileSystem != null) fileSystem.close();
+    }
+    
+    @Test
+    void copyAndDeleteSurviveReopen() {
+        fileSystem = open();
+        createTree("/origem", 3, 4);
+        assertEquals(FsStatus.OK, fileSystem.createDirectory("/destino"));
+        assertEquals(FsStatus.OK, fileSystem.copyTree("/origem", "/destino/copia"));
+        assertEquals(FsStatus.ALREADY_EXISTS, fileSystem.copyTree("/origem", "/destino/copia"));
+        assertEquals(FsStatus.INVALID_ARGUMENT, fileSystem.copyTree("/origem", "/origem/d0/dentro"));
+        
+        Map<String, String> original = contents("/origem");
+        assertEquals(original, contents("/destino/copia"));
+        assertEquals(FsStatus.OK, fileSystem.writeFile("/destino/copia/d0/f0.txt", 0, ByteBuffer.wrap(new byte[] {'X'})));
+        assertEquals(original, contents("/origem"));
+        
+        assertEquals(FsStatus.OK, fileSystem.deleteTree("/origem"));
+        assertFalse(fileSystem.stat("/origem").isOk());
+        assertEquals(FsStatus.DIRECTORY_NOT_FOUND, fileSystem.deleteTree("/origem"));
+        assertEquals(FsStatus.DIRECTORY_NOT_FOUND, fileSystem.copyTree("/origem", "/outra"));
+        long items = fileSystem.getItemCount();
+        Map<String, String> before = contents("/");
+        fileSystem.close();
+        
+        fileSystem = open();
+        assertEquals(before, contents("/"));
+        assertEquals(items, fileSystem.getItemCount());
+    }
+    
+    @Test
+    void concurrentTreeOperationsReplayInOrder() throws Exception {
+        fileSystem = open();
+        int threads = 4;
+        for (int t = 0; t < threads; t++) {
+            createTree("/t" + t, 2, 3);
+        }
+        
+        ExecutorService executor = Executors.newFixedThreadPool(threads + 1);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                String base = "/t" + t;
+                String neighbour = "/t" + ((t + 1) % threads);
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 30; i++) {
+                        fileSystem.copyTree(neighbour + "/d0", base + "/copia" + i);
+                        fileSystem.createFile(neighbour + "/d1/novo" + i + ".txt", base + i);
+                        fileSystem.createDirectory(neighbour + "/d0/sub" + i);
+                        if (i % 3 == 2) fileSystem.deleteTree(base + "/copia" + (i - 2));
+                    }
+                    return null;
+                }));
+            }
+            // Escritas de conteúdo numa origem que está sendo copiada
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 200; i++) {
+                    fileSystem.writeFile("/t0/d0/f0.txt", 0, ByteBuffer.wrap(Integer.toString(i).getBytes()));
+                }
+                return null;
+            }));
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        
+        Map<String, String> before = contents("/");
+        long items = fileSystem.getItemCount();
+        fileSystem.close();
+        
+        fileSystem = open();
+        assertEquals(before, contents("/"));
+        assertEquals(items, fileSystem.getItemCount());
+    }
+    
+    private void createTree(String base, int dirs, int files) {
+        assertEquals(FsStatus.OK, fileSystem.createDirectory(base));
+        for (int d = 0; d < dirs; d++) {
+            assertEquals(FsStatus.OK, fileSystem.createDirectory(base + "/d" + d));
+            for (int f = 0; f < files; f++) {
+                assertEquals(FsStatus.OK, fileSystem.createFile(base + "/d" + d + "/f" + f + ".txt", base + d + f));
+            }
+        }
+    }
+    
+    // Caminhos relativos a base e conteúdo dos arquivos ("/" para diretórios)
+    private Map<String, String> contents(String base) {
+        Map<String, String> items = new TreeMap<>();
+        collect(base.equals("/") ? "" : base, "", items);
+        return items;
+    }
+    
+    private void collect(String path, String relative, Map<String, String> items) {
+        FsResult<List<FileSystemItem>> children = fileSystem.listDirectory(path.isEmpty() ? "/" : path);
+        assertTrue(children.isOk());
+        for (FileSystemItem child : children.getValue()) {
+            String childPath = path + "/" + child.getName();
+            String childRelative = relative + "/" + child.getName();
+            if (child.isDirectory()) {
+                items.put(childRelative, "/");
+                collect(childPath, childRelative, items);
+            } else {
+                items.put(childRelative, fileSystem.readText(childPath).getValue());
+            }
+        }
+    }
+    
+    private FileSystemSimulator open() {
+        FileSystemSimulator simulator = new FileSystemSimulator(directory);
+        simulator.setCheckpointInterval(0);
+        simulator.getJournal().setGroupCommitSize(0);
+        return simulator;
+    }
+}